@@ -9,6 +9,42 @@ subprojects {
     apply(plugin = "java")
     apply(plugin = "maven-publish")
 
+    val sourceSets = the<SourceSetContainer>()
+    val main = sourceSets.getByName("main")
+
+    // micro benchmarks in src/jmh/java, the server api is only compileOnly so it is added by hand
+    val jmh = sourceSets.create("jmh") {
+        compileClasspath += main.output + main.compileClasspath
+        runtimeClasspath += main.output + main.compileClasspath + main.runtimeClasspath
+    }
+
+    dependencies {
+        "testImplementation"(platform("org.junit:junit-bom:${project.properties["junit_version"]}"))
+        "testImplementation"("org.junit.jupiter:junit-jupiter")
+        "testRuntimeOnly"("org.junit.platform:junit-platform-launcher")
+
+        "jmhImplementation"("org.openjdk.jmh:jmh-core:${project.properties["jmh_version"]}")
+        "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:${project.properties["jmh_version"]}")
+    }
+
+    tasks.named<Test>("test") {
+        useJUnitPlatform()
+        classpath += main.compileClasspath
+    }
+
+    // ./gradlew :paper:jmh -Pjmh.includes=VoxelChunkRemapperBenchmark
+    tasks.register<JavaExec>("jmh") {
+        classpath = jmh.runtimeClasspath
+        mainClass.set("org.openjdk.jmh.Main")
+        args(project.findProperty("jmh.includes")?.toString() ?: ".*")
+        // benchmarks of file based code write relative to the working directory
+        workingDir = layout.buildDirectory.dir("jmh").get().asFile
+        doFirst { workingDir.mkdirs() }
+
+        group = "verification"
+        description = "Runs the JMH benchmarks of this project"
+    }
+
     fun getVersionCounterFile(type: String): File {
         return file("${rootProject.rootDir}/.idea/version-counters/${project.name}-${type}.txt")
     }
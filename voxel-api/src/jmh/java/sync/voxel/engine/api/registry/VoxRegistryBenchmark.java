@@ -0,0 +1,121 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.api.registry;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import sync.voxel.engine.api.util.identifier.VoxIdentifiable;
+import sync.voxel.engine.api.util.identifier.VoxIdentifier;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and registrations of {@link VoxRegistry} against the plain {@link LinkedHashMap} it
+ * replaced. The map is not thread-safe, the contended lookups use a synchronized map instead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VoxRegistryBenchmark {
+
+    record Element(@NotNull VoxIdentifier identifier) implements VoxIdentifiable {
+    }
+
+    @Param({"1024"})
+    private int size;
+
+    private VoxIdentifier[] identifiers;
+    private Element[] elements;
+    private VoxRegistry<Element> frozen;
+    private VoxRegistry<Element> unfrozen;
+    private Map<VoxIdentifier, Element> legacy;
+    private Map<VoxIdentifier, Element> synchronizedLegacy;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Setup
+    public void setup() {
+        identifiers = new VoxIdentifier[size];
+        elements = new Element[size];
+        frozen = new VoxRegistry<>();
+        unfrozen = new VoxRegistry<>();
+        legacy = new LinkedHashMap<>();
+
+        for (int i = 0; i < size; i++) {
+            identifiers[i] = VoxIdentifier.of("bench", "element_" + i);
+            elements[i] = new Element(identifiers[i]);
+            frozen.register(elements[i]);
+            unfrozen.register(elements[i]);
+            legacy.put(identifiers[i], elements[i]);
+        }
+
+        frozen.freeze();
+        synchronizedLegacy = Collections.synchronizedMap(new LinkedHashMap<>(legacy));
+    }
+
+    private @NotNull VoxIdentifier next(@NotNull Cursor cursor) {
+        return identifiers[cursor.next++ & size - 1];
+    }
+
+    @Benchmark
+    public Element frozenLookup(Cursor cursor) {
+        return frozen.valueOf(next(cursor));
+    }
+
+    @Benchmark
+    public Element unfrozenLookup(Cursor cursor) {
+        return unfrozen.valueOf(next(cursor));
+    }
+
+    @Benchmark
+    public Element legacyLookup(Cursor cursor) {
+        return legacy.get(next(cursor));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Element frozenLookupContended(Cursor cursor) {
+        return frozen.valueOf(next(cursor));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Element synchronizedLegacyLookupContended(Cursor cursor) {
+        return synchronizedLegacy.get(next(cursor));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public VoxRegistry<Element> registerAll() {
+        VoxRegistry<Element> registry = new VoxRegistry<>();
+        for (Element element : elements) registry.register(element);
+        return registry;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Map<VoxIdentifier, Element> legacyRegisterAll() {
+        Map<VoxIdentifier, Element> registry = new LinkedHashMap<>();
+        for (Element element : elements) {
+            if (registry.containsKey(element.identifier())) throw new IllegalArgumentException();
+            registry.put(element.identifier(), element);
+        }
+        return registry;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.api.util.identifier;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and map lookups of interned {@link VoxIdentifier}s against the split based parser and
+ * the plain value class they replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VoxIdentifierBenchmark {
+
+    private static final int COUNT = 256;
+
+    /**
+     * The identifier before interning: no validation on parse, hash computed on every call.
+     */
+    record LegacyIdentifier(@NotNull String namespace, @NotNull String key, @NotNull String type) {
+
+        static @NotNull LegacyIdentifier parse(@NotNull String input) {
+            if (input.isBlank()) throw new IllegalArgumentException("Input identifier string is null or empty.");
+
+            String[] parts = input.split(String.valueOf(':'));
+            if (parts.length < 2 || parts.length > 3) throw new IllegalArgumentException("Invalid identifier format");
+            return new LegacyIdentifier(parts[0], parts[1], parts.length == 3 ? parts[2] : "none");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof LegacyIdentifier that && namespace.equals(that.namespace) && key.equals(that.key) && type.equals(that.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(namespace, key);
+        }
+    }
+
+    private String[] inputs;
+    private String line;
+    private int[] lineStarts;
+    private Map<VoxIdentifier, Integer> identifiers;
+    private Map<LegacyIdentifier, Integer> legacyIdentifiers;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Setup
+    public void setup() {
+        inputs = new String[COUNT];
+        lineStarts = new int[COUNT + 1];
+        identifiers = new HashMap<>();
+        legacyIdentifiers = new HashMap<>();
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < COUNT; i++) {
+            inputs[i] = "voxel:block/ruby_ore_" + i;
+            lineStarts[i] = builder.length();
+            builder.append(inputs[i]).append(' ');
+            identifiers.put(VoxIdentifier.parse(inputs[i]), i);
+            legacyIdentifiers.put(LegacyIdentifier.parse(inputs[i]), i);
+        }
+        lineStarts[COUNT] = builder.length();
+        line = builder.toString();
+    }
+
+    @Benchmark
+    public VoxIdentifier parse(Cursor cursor) {
+        return VoxIdentifier.parse(inputs[cursor.next++ & COUNT - 1]);
+    }
+
+    @Benchmark
+    public VoxIdentifier parseRange(Cursor cursor) {
+        int index = cursor.next++ & COUNT - 1;
+        return VoxIdentifier.parse(line, lineStarts[index], lineStarts[index + 1] - 1);
+    }
+
+    @Benchmark
+    public LegacyIdentifier legacyParse(Cursor cursor) {
+        return LegacyIdentifier.parse(inputs[cursor.next++ & COUNT - 1]);
+    }
+
+    @Benchmark
+    public Integer parseAndLookup(Cursor cursor) {
+        return identifiers.get(VoxIdentifier.parse(inputs[cursor.next++ & COUNT - 1]));
+    }
+
+    @Benchmark
+    public Integer legacyParseAndLookup(Cursor cursor) {
+        return legacyIdentifiers.get(LegacyIdentifier.parse(inputs[cursor.next++ & COUNT - 1]));
+    }
+}
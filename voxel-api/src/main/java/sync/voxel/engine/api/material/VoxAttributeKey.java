@@ -0,0 +1,165 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.api.material;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A typed key of a {@link VoxMaterial} attribute.
+ * <p>
+ * Every key gets a slot when it is created. Materials store their attributes in arrays indexed
+ * by slot, so reading an attribute through a key is an array access instead of a map lookup and
+ * a cast. Keys are interned by name, equal names always give the same key.
+ *
+ * @param <T> the type of the attribute value
+ */
+public final class VoxAttributeKey<T> {
+
+    private static final Set<Class<?>> TYPES = Set.of(String.class, Integer.class, Long.class, Float.class, Double.class, Boolean.class);
+    private static final Map<String, VoxAttributeKey<?>> KEYS = new ConcurrentHashMap<>();
+    private static final Object LOCK = new Object();
+    private static volatile VoxAttributeKey<?>[] bySlot = new VoxAttributeKey<?>[0];
+
+    /**
+     * The time it takes to break the block, like vanilla block hardness.
+     */
+    public static final VoxAttributeKey<Float> HARDNESS = of("hardness", Float.class);
+
+    /**
+     * The light level the block emits, from 0 to 15.
+     */
+    public static final VoxAttributeKey<Integer> LIGHT_LEVEL = of("light_level", Integer.class);
+
+    /**
+     * The model of the block or item, like {@code namespace:block/name}.
+     */
+    public static final VoxAttributeKey<String> MODEL = of("model", String.class);
+
+    /**
+     * The loot table dropped when the block is broken.
+     */
+    public static final VoxAttributeKey<String> DROPS = of("drops", String.class);
+
+    private final String name;
+    private final Class<T> type;
+    private final int slot;
+
+    private VoxAttributeKey(@NotNull String name, @NotNull Class<T> type, int slot) {
+        this.name = name;
+        this.type = type;
+        this.slot = slot;
+    }
+
+    /**
+     * Returns the key with the given name, creating it on first use.
+     *
+     * @param name the attribute name, as used in {@code materials.yml}
+     * @param type the value type, one of String, Integer, Long, Float, Double and Boolean
+     * @return the key
+     * @throws IllegalArgumentException if the type is not supported or the key exists with another type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> @NotNull VoxAttributeKey<T> of(@NotNull String name, @NotNull Class<T> type) {
+        VoxAttributeKey<?> key = KEYS.get(name);
+        if (key == null) {
+            if (!TYPES.contains(type)) throw new IllegalArgumentException("Unsupported attribute type: " + type.getName());
+
+            synchronized (LOCK) {
+                key = KEYS.get(name);
+                if (key == null) {
+                    VoxAttributeKey<?>[] keys = bySlot;
+                    key = new VoxAttributeKey<>(name, type, keys.length);
+
+                    keys = Arrays.copyOf(keys, keys.length + 1);
+                    keys[key.slot] = key;
+                    bySlot = keys;
+                    KEYS.put(name, key);
+                }
+            }
+        }
+
+        if (key.type != type) {
+            throw new IllegalArgumentException("Attribute " + name + " is of type " + key.type.getSimpleName() + ", not " + type.getSimpleName());
+        }
+        return (VoxAttributeKey<T>) key;
+    }
+
+    /**
+     * Returns the key with the given name.
+     *
+     * @return the key, or null if no key has this name
+     */
+    public static @Nullable VoxAttributeKey<?> byName(@NotNull String name) {
+        return KEYS.get(name);
+    }
+
+    /**
+     * Returns all keys, indexed by slot.
+     * <p>
+     * The returned array is shared and must not be modified.
+     */
+    static VoxAttributeKey<?> @NotNull [] bySlot() {
+        return bySlot;
+    }
+
+    public @NotNull String name() {
+        return name;
+    }
+
+    public @NotNull Class<T> type() {
+        return type;
+    }
+
+    /**
+     * Returns the index of this key in the attribute arrays of materials.
+     */
+    public int slot() {
+        return slot;
+    }
+
+    /**
+     * Converts a parsed attribute value to the type of this key.
+     * <p>
+     * Numbers are converted between number types as long as no information is lost, except
+     * that any number can be read as a float or double.
+     *
+     * @return the converted value, or null if the value cannot be converted
+     */
+    @Nullable T convert(@Nullable Object value) {
+        if (value == null || type.isInstance(value)) return type.cast(value);
+        if (!(value instanceof Number number)) return null;
+
+        Object converted = null;
+        if (type == Float.class) {
+            converted = number.floatValue();
+        } else if (type == Double.class) {
+            converted = number.doubleValue();
+        } else if (type == Long.class || type == Integer.class) {
+            double real = number.doubleValue();
+            long integral = number.longValue();
+            if (real == integral || number instanceof Long) {
+                if (type == Long.class) converted = integral;
+                else if (integral == (int) integral) converted = (int) integral;
+            }
+        }
+        return type.cast(converted);
+    }
+
+    @Override
+    public String toString() {
+        return name + "<" + type.getSimpleName() + ">";
+    }
+}
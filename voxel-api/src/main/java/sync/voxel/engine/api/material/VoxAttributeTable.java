@@ -0,0 +1,142 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.api.material;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.util.Map;
+
+/**
+ * The attributes of a material, resolved to the slots of {@link VoxAttributeKey}s.
+ * <p>
+ * Values are converted to the type of their key once when the table is created. Int, float and
+ * boolean values are additionally kept as raw bits, so the primitive getters never box. Keys
+ * created after the table are resolved the first time they are read.
+ */
+public final class VoxAttributeTable {
+
+    /**
+     * A table without attributes.
+     */
+    public static final VoxAttributeTable EMPTY = new VoxAttributeTable(Map.of());
+
+    private final Map<String, Object> values;
+    private volatile Slots slots;
+
+    /**
+     * The values indexed by key slot, bits holds int, float and boolean values as raw bits.
+     */
+    private record Slots(Object @NotNull [] values, long @NotNull [] bits) {
+    }
+
+    private VoxAttributeTable(@NotNull Map<String, Object> values) {
+        this.values = values;
+        this.slots = resolve(values);
+    }
+
+    /**
+     * Creates a table from parsed attribute values.
+     *
+     * @param values the values by attribute name, the map is copied
+     * @return the table
+     */
+    public static @NotNull VoxAttributeTable of(@NotNull Map<String, Object> values) {
+        return values.isEmpty() ? EMPTY : new VoxAttributeTable(Map.copyOf(values));
+    }
+
+    /**
+     * Returns the value of an attribute.
+     *
+     * @return the value, or null if the material has no value of the key type
+     */
+    public <T> @Nullable T get(@NotNull VoxAttributeKey<T> key) {
+        return key.type().cast(slots(key.slot()).values[key.slot()]);
+    }
+
+    /**
+     * Returns the value of an attribute.
+     *
+     * @return the value, or the default if the material has no value of the key type
+     */
+    public <T> T get(@NotNull VoxAttributeKey<T> key, T defaultValue) {
+        Object value = slots(key.slot()).values[key.slot()];
+        return value != null ? key.type().cast(value) : defaultValue;
+    }
+
+    public int getInt(@NotNull VoxAttributeKey<Integer> key, int defaultValue) {
+        Slots current = slots(key.slot());
+        return current.values[key.slot()] != null ? (int) current.bits[key.slot()] : defaultValue;
+    }
+
+    public float getFloat(@NotNull VoxAttributeKey<Float> key, float defaultValue) {
+        Slots current = slots(key.slot());
+        return current.values[key.slot()] != null ? Float.intBitsToFloat((int) current.bits[key.slot()]) : defaultValue;
+    }
+
+    public boolean getBoolean(@NotNull VoxAttributeKey<Boolean> key, boolean defaultValue) {
+        Slots current = slots(key.slot());
+        return current.values[key.slot()] != null ? current.bits[key.slot()] != 0 : defaultValue;
+    }
+
+    /**
+     * Returns the value of an attribute by name.
+     * <p>
+     * If a key with this name and type exists the value is read through it, converted like by
+     * {@link #get(VoxAttributeKey, Object)}. Other values are returned as they were parsed. This is
+     * a map lookup, prefer the getters taking a {@link VoxAttributeKey}.
+     *
+     * @return the value, or the default if the value is missing or not of the given type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(@NotNull String name, @NotNull Class<T> type, T defaultValue) {
+        VoxAttributeKey<?> key = VoxAttributeKey.byName(name);
+        if (key != null && key.type() == type) return get((VoxAttributeKey<T>) key, defaultValue);
+
+        Object value = values.get(name);
+        return type.isInstance(value) ? type.cast(value) : defaultValue;
+    }
+
+    /**
+     * Returns all attributes by name, as they were parsed.
+     */
+    public @Unmodifiable @NotNull Map<String, Object> values() {
+        return values;
+    }
+
+    private @NotNull Slots slots(int slot) {
+        Slots current = slots;
+        return slot < current.values.length ? current : grow();
+    }
+
+    private synchronized @NotNull Slots grow() {
+        Slots current = slots;
+        if (current.values.length < VoxAttributeKey.bySlot().length) slots = current = resolve(values);
+        return current;
+    }
+
+    private static @NotNull Slots resolve(@NotNull Map<String, Object> values) {
+        VoxAttributeKey<?>[] keys = VoxAttributeKey.bySlot();
+        Object[] resolved = new Object[keys.length];
+        long[] bits = new long[keys.length];
+
+        for (VoxAttributeKey<?> key : keys) {
+            Object value = key.convert(values.get(key.name()));
+            resolved[key.slot()] = value;
+
+            if (value instanceof Integer number) bits[key.slot()] = number;
+            else if (value instanceof Float number) bits[key.slot()] = Float.floatToRawIntBits(number);
+            else if (value instanceof Boolean bool) bits[key.slot()] = bool ? 1 : 0;
+        }
+
+        return new Slots(resolved, bits);
+    }
+}
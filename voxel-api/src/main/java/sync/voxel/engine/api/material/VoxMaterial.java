@@ -10,6 +10,7 @@
 package sync.voxel.engine.api.material;
 
 import org.bukkit.Material;
+import org.jetbrains.annotations.NotNull;
 import sync.voxel.engine.api.resourcepack.validator.VoxMaterialPresets;
 import sync.voxel.engine.api.util.identifier.VoxIdentifiable;
 
@@ -31,8 +32,18 @@ public interface VoxMaterial extends VoxIdentifiable {
 
     VoxMaterialPresets getVoxRenderType();
 
+    /**
+     * Returns the attributes of this material.
+     */
+    default @NotNull VoxAttributeTable getAttributes() {
+        return VoxAttributeTable.EMPTY;
+    }
+
     /**
      * Gets a specific setting value from this material's configuration.
+     * <p>
+     * This looks the value up by name, prefer {@link #getAttribute(VoxAttributeKey, Object)} for
+     * values read often.
      *
      * @param key The setting key to retrieve
      * @param type The class type of the setting value
@@ -40,5 +51,39 @@ public interface VoxMaterial extends VoxIdentifiable {
      * @param <T> The type of the setting value
      * @return The setting value or defaultValue if not found
      */
-    <T> T getAttribute(String key, Class<T> type, T defaultValue);
+    default <T> T getAttribute(String key, Class<T> type, T defaultValue) {
+        return getAttributes().get(key, type, defaultValue);
+    }
+
+    /**
+     * Gets an attribute value through its slot.
+     *
+     * @param key          the attribute key
+     * @param defaultValue the value returned if the material has no value of the key type
+     * @return the value or defaultValue if not found
+     */
+    default <T> T getAttribute(@NotNull VoxAttributeKey<T> key, T defaultValue) {
+        return getAttributes().get(key, defaultValue);
+    }
+
+    /**
+     * Gets an int attribute without boxing.
+     */
+    default int getInt(@NotNull VoxAttributeKey<Integer> key, int defaultValue) {
+        return getAttributes().getInt(key, defaultValue);
+    }
+
+    /**
+     * Gets a float attribute without boxing.
+     */
+    default float getFloat(@NotNull VoxAttributeKey<Float> key, float defaultValue) {
+        return getAttributes().getFloat(key, defaultValue);
+    }
+
+    /**
+     * Gets a boolean attribute without boxing.
+     */
+    default boolean getBoolean(@NotNull VoxAttributeKey<Boolean> key, boolean defaultValue) {
+        return getAttributes().getBoolean(key, defaultValue);
+    }
 }
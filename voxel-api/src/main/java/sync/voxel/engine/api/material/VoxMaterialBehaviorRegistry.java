@@ -10,38 +10,227 @@
 package sync.voxel.engine.api.material;
 
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import sync.voxel.engine.api.registry.VoxRegistries;
 import sync.voxel.engine.api.util.group.VoxBehaviorGroup;
-import sync.voxel.engine.api.registry.VoxRegistry;
+import sync.voxel.engine.api.registry.VoxIndexedRegistry;
+import sync.voxel.engine.api.registry.VoxRegistrySnapshot;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Registry class for managing groups of {@link VoxMaterial}.
  * <p>
  * Each material can belong to one or more {@link VoxBehaviorGroup}s.
  * This registry allows you to retrieve all groups a material is part of.
+ * <p>
+ * Membership is kept in a reverse index keyed by the material raw id. Every index entry is
+ * immutable and replaced as a whole when a group changes, so lookups never lock or allocate.
  */
-public class VoxMaterialBehaviorRegistry extends VoxRegistry<VoxBehaviorGroup<VoxMaterial>> {
+public class VoxMaterialBehaviorRegistry extends VoxIndexedRegistry<VoxBehaviorGroup<VoxMaterial>> {
+
+    private static final Membership EMPTY = new Membership(List.of(), new BitSet());
+
+    private final Object indexLock = new Object();
+    private volatile AtomicReferenceArray<Membership> index = new AtomicReferenceArray<>(256);
 
     @ApiStatus.Internal
     public VoxMaterialBehaviorRegistry() {}
 
+    /**
+     * Registers a group and indexes all of its current members.
+     *
+     * @param group the group to add
+     * @return the group that is registered under the identifier after this call
+     */
+    @Override
+    public @NotNull VoxBehaviorGroup<VoxMaterial> registerIfAbsent(@NotNull VoxBehaviorGroup<VoxMaterial> group) {
+        VoxBehaviorGroup<VoxMaterial> registered = super.registerIfAbsent(group);
+        if (registered == group) group.forEach(material -> updateMembership(group, material, true));
+        return registered;
+    }
+
     /**
      * Returns all registered {@link VoxBehaviorGroup}s that contain the given material.
+     * <p>
+     * For registered materials the returned list is cached and shared, it cannot be modified.
      *
      * @param material the material to check
-     * @return an array of material groups that contain the specified material
+     * @return an unmodifiable list of material groups that contain the specified material
      */
-    public VoxBehaviorGroup<VoxMaterial>[] valuesFor(VoxMaterial material) {
-        List<VoxBehaviorGroup<VoxMaterial>> groups = new ArrayList<>();
+    public @NotNull List<VoxBehaviorGroup<VoxMaterial>> valuesFor(VoxMaterial material) {
+        int materialRawId = VoxRegistries.MATERIAL.rawIdOf(material);
+        if (materialRawId != UNKNOWN_RAW_ID) return membership(materialRawId).groups;
 
-        entries.forEach(((identifier, group) -> {
+        List<VoxBehaviorGroup<VoxMaterial>> groups = new ArrayList<>();
+        for (VoxBehaviorGroup<VoxMaterial> group : values()) {
             if (group.contains(material)) groups.add(group);
-        }));
+        }
+
+        return List.copyOf(groups);
+    }
+
+    /**
+     * Checks in constant time whether a material is part of the group with the given raw id.
+     *
+     * @param material     the material to check
+     * @param groupRawId   the raw id of the group in this registry
+     * @return true if the material is part of the group
+     */
+    public boolean isIn(@NotNull VoxMaterial material, int groupRawId) {
+        int materialRawId = VoxRegistries.MATERIAL.rawIdOf(material);
+        if (materialRawId == UNKNOWN_RAW_ID || groupRawId < 0) return false;
+
+        return membership(materialRawId).bits.get(groupRawId);
+    }
+
+    /**
+     * Updates the reverse index after a group gained or lost a material.
+     * <p>
+     * Group implementations call this from their {@code add} and {@code remove} methods.
+     * Updates for groups that are not registered here are ignored.
+     *
+     * @param group    the group that changed
+     * @param material the material that was added or removed
+     * @param member   true if the material was added, false if it was removed
+     */
+    @ApiStatus.Internal
+    public void updateMembership(@NotNull VoxBehaviorGroup<VoxMaterial> group, @NotNull VoxMaterial material, boolean member) {
+        int groupRawId = rawIdOf(group);
+        int materialRawId = VoxRegistries.MATERIAL.rawIdOf(material);
+        if (groupRawId == UNKNOWN_RAW_ID || materialRawId == UNKNOWN_RAW_ID) return;
+
+        synchronized (indexLock) {
+            AtomicReferenceArray<Membership> entries = ensureCapacity(materialRawId + 1);
+            Membership current = entries.get(materialRawId);
+            if (current == null) current = EMPTY;
+            if (current.bits.get(groupRawId) == member) return;
+
+            entries.set(materialRawId, member ? current.with(group, groupRawId) : current.without(group, groupRawId));
+        }
+    }
+
+    /**
+     * Rebuilds the reverse index entries of the groups that changed in a {@link #swap}.
+     * <p>
+     * The new index is built aside and published before the snapshot, so lookups never see a
+     * material in a group that is not registered anymore. Materials must be swapped before the
+     * groups that reference them.
+     */
+    @Override
+    protected void onSwap(@NotNull VoxRegistrySnapshot<VoxBehaviorGroup<VoxMaterial>> previous,
+                          @NotNull VoxRegistrySnapshot<VoxBehaviorGroup<VoxMaterial>> next) {
+        BitSet changed = new BitSet();
+        int groupCount = Math.max(previous.size(), next.size());
+        for (int groupRawId = 0; groupRawId < groupCount; groupRawId++) {
+            if (previous.valueOf(groupRawId) != next.valueOf(groupRawId)) changed.set(groupRawId);
+        }
+        if (changed.isEmpty()) return;
+
+        synchronized (indexLock) {
+            AtomicReferenceArray<Membership> entries = index;
+            AtomicReferenceArray<Membership> updated = new AtomicReferenceArray<>(Math.max(entries.length(), VoxRegistries.MATERIAL.size()));
+            for (int materialRawId = 0; materialRawId < entries.length(); materialRawId++) {
+                Membership membership = entries.get(materialRawId);
+                if (membership != null && membership.bits.intersects(changed)) membership = membership.without(changed, previous);
+                updated.set(materialRawId, membership);
+            }
+
+            for (int groupRawId = changed.nextSetBit(0); groupRawId >= 0; groupRawId = changed.nextSetBit(groupRawId + 1)) {
+                VoxBehaviorGroup<VoxMaterial> group = next.valueOf(groupRawId);
+                if (group == null) continue;
+
+                int rawId = groupRawId;
+                group.forEach(material -> {
+                    int materialRawId = VoxRegistries.MATERIAL.rawIdOf(material);
+                    if (materialRawId == UNKNOWN_RAW_ID || materialRawId >= updated.length()) return;
+
+                    Membership current = updated.get(materialRawId);
+                    if (current == null) current = EMPTY;
+                    if (!current.bits.get(rawId)) updated.set(materialRawId, current.with(group, rawId));
+                });
+            }
+
+            index = updated;
+        }
+    }
 
-        //noinspection unchecked
-        return groups.toArray(new VoxBehaviorGroup[0]);
+    /**
+     * Clears all registered groups and the reverse index.
+     */
+    @Override
+    public void clear() {
+        synchronized (indexLock) {
+            super.clear();
+            index = new AtomicReferenceArray<>(256);
+        }
     }
 
+    private @NotNull Membership membership(int materialRawId) {
+        AtomicReferenceArray<Membership> entries = index;
+        if (materialRawId >= entries.length()) return EMPTY;
+
+        Membership membership = entries.get(materialRawId);
+        return membership != null ? membership : EMPTY;
+    }
+
+    private AtomicReferenceArray<Membership> ensureCapacity(int capacity) {
+        AtomicReferenceArray<Membership> entries = index;
+        if (capacity <= entries.length()) return entries;
+
+        AtomicReferenceArray<Membership> grown = new AtomicReferenceArray<>(Math.max(capacity, entries.length() << 1));
+        for (int i = 0; i < entries.length(); i++) grown.set(i, entries.get(i));
+
+        index = grown;
+        return grown;
+    }
+
+    /**
+     * Immutable set of groups a single material belongs to.
+     */
+    private static final class Membership {
+        private final List<VoxBehaviorGroup<VoxMaterial>> groups;
+        private final BitSet bits;
+
+        private Membership(List<VoxBehaviorGroup<VoxMaterial>> groups, BitSet bits) {
+            this.groups = groups;
+            this.bits = bits;
+        }
+
+        private @NotNull Membership with(VoxBehaviorGroup<VoxMaterial> group, int groupRawId) {
+            List<VoxBehaviorGroup<VoxMaterial>> newGroups = new ArrayList<>(groups.size() + 1);
+            newGroups.addAll(groups);
+            newGroups.add(group);
+
+            BitSet newBits = (BitSet) bits.clone();
+            newBits.set(groupRawId);
+            return new Membership(List.copyOf(newGroups), newBits);
+        }
+
+        private @NotNull Membership without(VoxBehaviorGroup<VoxMaterial> group, int groupRawId) {
+            List<VoxBehaviorGroup<VoxMaterial>> newGroups = new ArrayList<>(groups.size());
+            for (VoxBehaviorGroup<VoxMaterial> existing : groups) {
+                if (existing != group) newGroups.add(existing);
+            }
+
+            BitSet newBits = (BitSet) bits.clone();
+            newBits.clear(groupRawId);
+            return new Membership(List.copyOf(newGroups), newBits);
+        }
+
+        private @NotNull Membership without(@NotNull BitSet removed, @NotNull VoxRegistrySnapshot<VoxBehaviorGroup<VoxMaterial>> owner) {
+            List<VoxBehaviorGroup<VoxMaterial>> kept = new ArrayList<>(groups.size());
+            for (VoxBehaviorGroup<VoxMaterial> existing : groups) {
+                int groupRawId = owner.rawIdOf(existing);
+                if (groupRawId == UNKNOWN_RAW_ID || !removed.get(groupRawId)) kept.add(existing);
+            }
+
+            BitSet newBits = (BitSet) bits.clone();
+            newBits.andNot(removed);
+            return new Membership(List.copyOf(kept), newBits);
+        }
+    }
 }
@@ -13,14 +13,48 @@ import org.bukkit.Material;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import sync.voxel.engine.api.util.identifier.VoxIdentifier;
-import sync.voxel.engine.api.registry.VoxRegistry;
+import sync.voxel.engine.api.registry.VoxIndexedRegistry;
+import sync.voxel.engine.api.registry.VoxRegistrySnapshot;
 
-public class VoxMaterialRegistry extends VoxRegistry<VoxMaterial> {
+/**
+ * Registry for all {@link VoxMaterial}s.
+ * <p>
+ * Vanilla materials are additionally indexed by {@link Material#ordinal()}, so resolving the
+ * wrapper of a bukkit {@link Material} is a single array access.
+ */
+public class VoxMaterialRegistry extends VoxIndexedRegistry<VoxMaterial> {
+
+    // written during registration, a racing read sees null and takes the identifier lookup
+    private final VoxMaterial[] byVaMaterial = new VoxMaterial[Material.values().length];
 
     @ApiStatus.Internal
     public VoxMaterialRegistry() {}
 
+    @Override
+    public @NotNull VoxMaterial registerIfAbsent(@NotNull VoxMaterial element) {
+        VoxMaterial registered = super.registerIfAbsent(element);
+        if (registered == element && element.isVanillaMaterial()) {
+            byVaMaterial[element.toVaMaterial().ordinal()] = element;
+        }
+        return registered;
+    }
+
+    @Override
+    protected void onSwap(@NotNull VoxRegistrySnapshot<VoxMaterial> previous, @NotNull VoxRegistrySnapshot<VoxMaterial> next) {
+        for (int rawId = 0; rawId < previous.size(); rawId++) {
+            VoxMaterial old = previous.valueOf(rawId);
+            if (old != null && old != next.valueOf(rawId) && old.isVanillaMaterial()) byVaMaterial[old.toVaMaterial().ordinal()] = null;
+        }
+        for (int rawId = 0; rawId < next.size(); rawId++) {
+            VoxMaterial material = next.valueOf(rawId);
+            if (material != null && material != previous.valueOf(rawId) && material.isVanillaMaterial()) byVaMaterial[material.toVaMaterial().ordinal()] = material;
+        }
+    }
+
     public VoxMaterial valueOf(@NotNull Material vaMaterial) {
+        VoxMaterial material = byVaMaterial[vaMaterial.ordinal()];
+        if (material != null) return material;
+
         return valueOf(VoxIdentifier.represent(vaMaterial.getKey()));
     }
 }
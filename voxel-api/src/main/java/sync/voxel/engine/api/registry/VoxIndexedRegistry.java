@@ -0,0 +1,54 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.api.registry;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.api.util.identifier.VoxIdentifiable;
+
+/**
+ * A {@link VoxRegistry} that exposes the dense {@code int} raw id of every element.
+ * <p>
+ * Raw ids are handed out in registration order starting at {@code 0} and never change for the
+ * lifetime of the registry. Once the registry is {@link #freeze() frozen}, lookups in both
+ * directions are plain array accesses, which makes them suitable for hot paths such as block
+ * interactions and packet handling.
+ *
+ * @param <VRI> the type of elements must implement VoxIdentifiable
+ */
+public class VoxIndexedRegistry<VRI extends VoxIdentifiable> extends VoxRegistry<VRI> {
+
+    /**
+     * Raw id returned for elements that are not part of this registry.
+     */
+    public static final int UNKNOWN_RAW_ID = -1;
+
+    /**
+     * Returns an element by its raw id.
+     *
+     * @param rawId the raw id
+     * @return the element, or null if no element has this raw id
+     */
+    public @Nullable VRI valueOf(int rawId) {
+        return elementAt(rawId);
+    }
+
+    /**
+     * Returns the raw id of an element.
+     * <p>
+     * The lookup is identity based, the exact instance that was registered has to be passed.
+     *
+     * @param element the element
+     * @return the raw id, or {@link #UNKNOWN_RAW_ID} if the element is not registered
+     */
+    public int rawIdOf(@NotNull VRI element) {
+        return rawIdFor(element);
+    }
+}
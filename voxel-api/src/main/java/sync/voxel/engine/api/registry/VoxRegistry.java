@@ -11,22 +11,66 @@ package sync.voxel.engine.api.registry;
 
 import org.bukkit.NamespacedKey;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
 import sync.voxel.engine.api.util.identifier.VoxIdentifiable;
 import sync.voxel.engine.api.util.identifier.VoxIdentifier;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A dynamic registry similar to an enum, holding uniquely identifiable elements.
+ * <p>
+ * The registry is safe to use from multiple threads. Lookups never lock, registrations are
+ * serialized. Elements keep their registration order, the position of an element in that order
+ * is its raw id.
+ * <p>
+ * After startup the registry should be {@link #freeze() frozen}. This publishes an immutable
+ * {@link VoxRegistrySnapshot} that all lookups are served from. Registrations after freezing are
+ * still accepted and reported to the registered {@link VoxRegistryListener}s. They only mark the
+ * snapshot as outdated, lookups fall back to the lock-free index until {@link #values()} or
+ * {@link #snapshot()} publish a new one, so registering many elements one by one costs a single
+ * rebuild.
+ * <p>
+ * Reloads change many elements at once through {@link #swap}, which publishes all changes in a
+ * single snapshot.
  *
  * @param <VRI> the type of elements must implement VoxIdentifiable
  */
 public class VoxRegistry<VRI extends VoxIdentifiable> {
 
-    protected final Map<VoxIdentifier, VRI> entries = new LinkedHashMap<>();
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final Object lock = new Object();
+    private final Map<VoxIdentifier, Indexed<VRI>> index = new ConcurrentHashMap<>();
+    private final List<VoxRegistryListener<VRI>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile Elements elements = new Elements(new Object[DEFAULT_CAPACITY], 0);
+    private volatile boolean frozen;
+    // null while unfrozen or outdated by a registration after freezing
+    private volatile VoxRegistrySnapshot<VRI> snapshot;
+
+    /**
+     * The elements by raw id, published as one value so readers never see a size that does not
+     * match the array.
+     */
+    private record Elements(Object @NotNull [] array, int size) {
+    }
+
+    /**
+     * An element and its raw id, stored together so a lookup by identifier never depends on the
+     * published size.
+     */
+    private record Indexed<VRI>(@NotNull VRI element, int rawId) {
+    }
 
     /**
      * Registers an element into the registry.
@@ -36,10 +80,124 @@ public class VoxRegistry<VRI extends VoxIdentifiable> {
      */
     public void register(@NotNull VRI element) {
         VoxIdentifier identifier = element.identifier();
-        if (entries.containsKey(identifier)) {
+        if (registerIfAbsent(element) != element) {
             throw new IllegalArgumentException("Identifier already registered: " + identifier);
         }
-        entries.put(identifier, element);
+    }
+
+    /**
+     * Atomically registers an element unless an element with the same identifier is already present.
+     *
+     * @param element the element to add
+     * @return the element that is registered under the identifier after this call
+     */
+    public @NotNull VRI registerIfAbsent(@NotNull VRI element) {
+        VoxIdentifier identifier = element.identifier();
+        int rawId;
+
+        synchronized (lock) {
+            Indexed<VRI> existing = index.get(identifier);
+            if (existing != null) return existing.element();
+
+            Elements current = elements;
+            rawId = current.size;
+            Object[] array = current.array;
+            if (rawId == array.length) array = Arrays.copyOf(array, rawId << 1);
+            array[rawId] = element;
+
+            // a reader that finds the identifier gets the element from the index entry itself, one that
+            // finds the raw id below the new size also finds the element and its index entry
+            index.put(identifier, new Indexed<>(element, rawId));
+            elements = new Elements(array, rawId + 1);
+            snapshot = null;
+
+            if (!frozen) return element;
+        }
+
+        if (!listeners.isEmpty()) {
+            VoxRegistrySnapshot<VRI> published = current();
+            for (VoxRegistryListener<VRI> listener : listeners) listener.onRegister(element, rawId, published);
+        }
+        return element;
+    }
+
+    /**
+     * Atomically replaces, removes and adds elements, publishing all changes in one snapshot.
+     * <p>
+     * Replaced elements keep the raw id of the element they replace. Raw ids of removed elements
+     * are never reused, so data stored by raw id never points at a different element. Added
+     * elements get new raw ids in the given order. The registry is frozen by this call, readers
+     * see either the state before or the state after the swap, never a part of it.
+     *
+     * @param replacements elements replacing the registered element with the same identifier
+     * @param removals     identifiers of the elements to remove
+     * @param additions    elements with identifiers that are not registered yet
+     * @return the published snapshot
+     * @throws IllegalArgumentException if a replaced or removed identifier is not registered, an
+     *                                  added identifier is already registered or an identifier is
+     *                                  part of the swap twice; the registry is unchanged then
+     */
+    public @NotNull VoxRegistrySnapshot<VRI> swap(@NotNull Collection<? extends VRI> replacements, @NotNull Collection<VoxIdentifier> removals,
+                                                  @NotNull Collection<? extends VRI> additions) {
+        VoxRegistrySnapshot<VRI> published;
+        int firstAdded;
+
+        synchronized (lock) {
+            Set<VoxIdentifier> touched = new HashSet<>();
+            for (VRI element : replacements) requireSwappable(element.identifier(), true, touched);
+            for (VoxIdentifier identifier : removals) requireSwappable(identifier, true, touched);
+            for (VRI element : additions) requireSwappable(element.identifier(), false, touched);
+
+            Elements current = elements;
+            VoxRegistrySnapshot<VRI> previous = snapshot != null ? snapshot : new VoxRegistrySnapshot<>(current.array, current.size);
+
+            firstAdded = current.size;
+            int newSize = firstAdded + additions.size();
+            Object[] array = Arrays.copyOf(current.array, Math.max(current.array.length, Integer.highestOneBit(Math.max(1, newSize)) << 1));
+            for (VRI element : replacements) array[index.get(element.identifier()).rawId()] = element;
+            for (VoxIdentifier identifier : removals) array[index.get(identifier).rawId()] = null;
+
+            int rawId = firstAdded;
+            for (VRI element : additions) array[rawId++] = element;
+
+            published = new VoxRegistrySnapshot<>(array, newSize);
+            onSwap(previous, published);
+
+            // lookups use the snapshot from here on, the index only serves registrations
+            elements = new Elements(array, newSize);
+            snapshot = published;
+            frozen = true;
+
+            for (VRI element : replacements) index.computeIfPresent(element.identifier(), (identifier, old) -> new Indexed<>(element, old.rawId()));
+            for (VoxIdentifier identifier : removals) index.remove(identifier);
+            rawId = firstAdded;
+            for (VRI element : additions) index.put(element.identifier(), new Indexed<>(element, rawId++));
+        }
+
+        int rawId = firstAdded;
+        for (VRI element : additions) {
+            for (VoxRegistryListener<VRI> listener : listeners) listener.onRegister(element, rawId, published);
+            rawId++;
+        }
+        return published;
+    }
+
+    /**
+     * Called by {@link #swap} while holding the registry lock, before the new snapshot is published.
+     * <p>
+     * Subclasses update their own indexes here, so they change together with the snapshot.
+     *
+     * @param previous the snapshot before the swap
+     * @param next     the snapshot that is published next
+     */
+    protected void onSwap(@NotNull VoxRegistrySnapshot<VRI> previous, @NotNull VoxRegistrySnapshot<VRI> next) {
+    }
+
+    private void requireSwappable(@NotNull VoxIdentifier identifier, boolean registered, @NotNull Set<VoxIdentifier> touched) {
+        if (!touched.add(identifier)) throw new IllegalArgumentException("Identifier is part of the swap twice: " + identifier);
+        if (index.containsKey(identifier) != registered) {
+            throw new IllegalArgumentException(registered ? "Identifier not registered: " + identifier : "Identifier already registered: " + identifier);
+        }
     }
 
     /**
@@ -49,7 +207,11 @@ public class VoxRegistry<VRI extends VoxIdentifiable> {
      * @return the element, or null if not found
      */
     public VRI valueOf(@NotNull VoxIdentifier id) {
-        return entries.get(id);
+        VoxRegistrySnapshot<VRI> current = snapshot;
+        if (current != null) return current.valueOf(id);
+
+        Indexed<VRI> indexed = index.get(id);
+        return indexed == null ? null : indexed.element();
     }
 
     /**
@@ -59,34 +221,151 @@ public class VoxRegistry<VRI extends VoxIdentifiable> {
      * @return the element, or null if not found
      */
     public VRI valueOf(@NotNull NamespacedKey identifier) {
-        return entries.get(VoxIdentifier.represent(identifier));
+        return valueOf(VoxIdentifier.represent(identifier));
     }
 
     /**
      * Returns true if the registry contains an element with this identifier.
      */
     public boolean contains(@NotNull VoxIdentifier id) {
-        return entries.containsKey(id);
+        VoxRegistrySnapshot<VRI> current = snapshot;
+        return current != null ? current.contains(id) : index.containsKey(id);
     }
 
     /**
      * Returns all registered elements in insertion order.
+     * <p>
+     * The returned collection is a snapshot, it does not reflect later registrations.
      */
-    public Collection<VRI> values() {
-        return Collections.unmodifiableCollection(entries.values());
+    public @Unmodifiable Collection<VRI> values() {
+        VoxRegistrySnapshot<VRI> current = current();
+        if (current != null) return current.values();
+
+        Elements unfrozen = elements;
+        @SuppressWarnings("unchecked")
+        List<VRI> values = (List<VRI>) (List<?>) Arrays.asList(Arrays.copyOf(unfrozen.array, unfrozen.size));
+        return Collections.unmodifiableList(values);
     }
 
     /**
-     * Returns the number of registered elements.
+     * Returns the number of raw ids in use, including raw ids of removed elements.
      */
     public int size() {
-        return entries.size();
+        return elements.size;
+    }
+
+    /**
+     * Freezes the registry and publishes an immutable snapshot of its content.
+     * <p>
+     * Calling this method on a frozen registry returns the current snapshot.
+     *
+     * @return the published snapshot
+     */
+    public @NotNull VoxRegistrySnapshot<VRI> freeze() {
+        synchronized (lock) {
+            frozen = true;
+            return publish();
+        }
+    }
+
+    /**
+     * Returns true if the registry has been frozen.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Returns the current snapshot, publishing a new one if registrations outdated the last one.
+     *
+     * @return the current snapshot, or null if the registry is not frozen yet
+     */
+    public @Nullable VoxRegistrySnapshot<VRI> snapshot() {
+        return current();
+    }
+
+    private @Nullable VoxRegistrySnapshot<VRI> current() {
+        VoxRegistrySnapshot<VRI> current = snapshot;
+        if (current != null || !frozen) return current;
+
+        synchronized (lock) {
+            return publish();
+        }
+    }
+
+    // must hold the lock
+    private @NotNull VoxRegistrySnapshot<VRI> publish() {
+        VoxRegistrySnapshot<VRI> current = snapshot;
+        if (current == null) {
+            Elements published = elements;
+            snapshot = current = new VoxRegistrySnapshot<>(published.array, published.size);
+        }
+        return current;
+    }
+
+    /**
+     * Adds a listener that is notified about registrations that happen after freezing.
+     * <p>
+     * Listeners receive a snapshot containing the new element, so while listeners are added every
+     * registration after freezing publishes a snapshot.
+     *
+     * @param listener the listener
+     */
+    public void addListener(@NotNull VoxRegistryListener<VRI> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a previously added listener.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(@NotNull VoxRegistryListener<VRI> listener) {
+        listeners.remove(listener);
     }
 
     /**
      * Clears all registered elements.
+     *
+     * @throws IllegalStateException if the registry is frozen
      */
     public void clear() {
-        entries.clear();
+        synchronized (lock) {
+            if (frozen) throw new IllegalStateException("Registry is frozen");
+
+            index.clear();
+            elements = new Elements(new Object[DEFAULT_CAPACITY], 0);
+        }
+    }
+
+    /**
+     * Returns the element with the given raw id.
+     *
+     * @param rawId the raw id
+     * @return the element, or null if no element has this raw id
+     */
+    @SuppressWarnings("unchecked")
+    protected @Nullable VRI elementAt(int rawId) {
+        VoxRegistrySnapshot<VRI> current = snapshot;
+        if (current != null) return current.valueOf(rawId);
+
+        Elements unfrozen = elements;
+        if (rawId < 0 || rawId >= unfrozen.size) return null;
+        return (VRI) unfrozen.array[rawId];
+    }
+
+    /**
+     * Returns the raw id of the given element.
+     *
+     * @param element the element
+     * @return the raw id, or {@link VoxIndexedRegistry#UNKNOWN_RAW_ID} if the element is not registered
+     */
+    protected int rawIdFor(@NotNull VRI element) {
+        VoxRegistrySnapshot<VRI> current = snapshot;
+        if (current != null) return current.rawIdOf(element);
+
+        Indexed<VRI> indexed = index.get(element.identifier());
+        if (indexed == null || indexed.element() != element) return VoxIndexedRegistry.UNKNOWN_RAW_ID;
+        return indexed.rawId();
     }
 }
@@ -0,0 +1,32 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.api.registry;
+
+import org.jetbrains.annotations.NotNull;
+import sync.voxel.engine.api.util.identifier.VoxIdentifiable;
+
+/**
+ * Listener for registrations that happen after a {@link VoxRegistry} has been frozen.
+ *
+ * @param <VRI> the type of elements must implement VoxIdentifiable
+ */
+@FunctionalInterface
+public interface VoxRegistryListener<VRI extends VoxIdentifiable> {
+
+    /**
+     * Called after the element has been registered and the new snapshot has been published.
+     *
+     * @param element  the registered element
+     * @param rawId    the raw id assigned to the element
+     * @param snapshot the snapshot that contains the element
+     */
+    void onRegister(@NotNull VRI element, int rawId, @NotNull VoxRegistrySnapshot<VRI> snapshot);
+
+}
@@ -0,0 +1,146 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.api.registry;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+import sync.voxel.engine.api.util.identifier.VoxIdentifiable;
+import sync.voxel.engine.api.util.identifier.VoxIdentifier;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, array-based view of a {@link VoxRegistry} at one point in time.
+ * <p>
+ * Snapshots are published by {@link VoxRegistry#freeze()} and can be read from any thread
+ * without locking. A snapshot never changes, later registrations publish a new one.
+ * <p>
+ * Raw ids of elements removed by {@link VoxRegistry#swap} stay empty, {@link #valueOf(int)}
+ * returns null for them and {@link #values()} skips them.
+ *
+ * @param <VRI> the type of elements must implement VoxIdentifiable
+ */
+public final class VoxRegistrySnapshot<VRI extends VoxIdentifiable> {
+
+    private final Object[] byRawId;
+    private final Map<VoxIdentifier, VRI> byId;
+    private final List<VRI> values;
+
+    // open addressing identity table: element -> raw id
+    private final Object[] identityKeys;
+    private final int[] identityIds;
+
+    @SuppressWarnings("unchecked")
+    VoxRegistrySnapshot(Object @NotNull [] elements, int size) {
+        this.byRawId = Arrays.copyOf(elements, size);
+        this.byId = new HashMap<>(Math.max(16, size * 2));
+
+        int capacity = Integer.highestOneBit(Math.max(4, size) * 2) << 1;
+        this.identityKeys = new Object[capacity];
+        this.identityIds = new int[capacity];
+
+        int present = 0;
+        for (int rawId = 0; rawId < size; rawId++) {
+            VRI element = (VRI) byRawId[rawId];
+            if (element == null) continue;
+
+            byId.put(element.identifier(), element);
+            insertIdentity(element, rawId);
+            present++;
+        }
+
+        Object[] compact = byRawId;
+        if (present != size) {
+            compact = new Object[present];
+            int i = 0;
+            for (Object element : byRawId) if (element != null) compact[i++] = element;
+        }
+        this.values = Collections.unmodifiableList((List<VRI>) (List<?>) Arrays.asList(compact));
+    }
+
+    /**
+     * Returns an element by its identifier.
+     *
+     * @param id the identifier
+     * @return the element, or null if not found
+     */
+    public @Nullable VRI valueOf(@NotNull VoxIdentifier id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Returns an element by its raw id.
+     *
+     * @param rawId the raw id
+     * @return the element, or null if no element has this raw id
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable VRI valueOf(int rawId) {
+        if (rawId < 0 || rawId >= byRawId.length) return null;
+        return (VRI) byRawId[rawId];
+    }
+
+    /**
+     * Returns the raw id of an element.
+     *
+     * @param element the element
+     * @return the raw id, or {@link VoxIndexedRegistry#UNKNOWN_RAW_ID} if the element is not part of this snapshot
+     */
+    public int rawIdOf(@NotNull VRI element) {
+        Object[] keys = identityKeys;
+        int mask = keys.length - 1;
+
+        for (int i = mix(element) & mask; ; i = (i + 1) & mask) {
+            Object key = keys[i];
+            if (key == element) return identityIds[i];
+            if (key == null) return VoxIndexedRegistry.UNKNOWN_RAW_ID;
+        }
+    }
+
+    /**
+     * Returns true if the snapshot contains an element with this identifier.
+     */
+    public boolean contains(@NotNull VoxIdentifier id) {
+        return byId.containsKey(id);
+    }
+
+    /**
+     * Returns all elements in raw id order, without removed raw ids.
+     */
+    public @Unmodifiable List<VRI> values() {
+        return values;
+    }
+
+    /**
+     * Returns the number of raw ids covered by this snapshot.
+     */
+    public int size() {
+        return byRawId.length;
+    }
+
+    private void insertIdentity(Object element, int rawId) {
+        int mask = identityKeys.length - 1;
+        int i = mix(element) & mask;
+        while (identityKeys[i] != null) i = (i + 1) & mask;
+
+        identityKeys[i] = element;
+        identityIds[i] = rawId;
+    }
+
+    private static int mix(Object element) {
+        int h = System.identityHashCode(element);
+        return h ^ (h >>> 16);
+    }
+}
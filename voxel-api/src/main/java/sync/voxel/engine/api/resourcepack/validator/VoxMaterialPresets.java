@@ -10,53 +10,57 @@
 package sync.voxel.engine.api.resourcepack.validator;
 
 import lombok.Getter;
+import org.bukkit.Material;
 import org.jetbrains.annotations.ApiStatus;
 
 @Getter
 public enum VoxMaterialPresets {
-    SOLID_BLOCK(false, true),
+    SOLID_BLOCK(false, true, Material.NOTE_BLOCK),
 
-    BLOCK_ENTITY(false, true),
+    BLOCK_ENTITY(false, true, Material.BARRIER),
 
-    STAIR(false, true),
+    STAIR(false, true, Material.WAXED_CUT_COPPER_STAIRS),
 
-    SLAP(false, true),
+    SLAP(false, true, Material.WAXED_CUT_COPPER_SLAB),
 
-    FANCE(false, true),
+    FANCE(false, true, Material.NETHER_BRICK_FENCE),
 
-    FANCE_GATE(false, true),
+    FANCE_GATE(false, true, Material.CRIMSON_FENCE_GATE),
 
-    TRAPDOOR(false, true),
+    TRAPDOOR(false, true, Material.WAXED_COPPER_TRAPDOOR),
 
-    DOOR(false, true),
+    DOOR(false, true, Material.WAXED_COPPER_DOOR),
 
-    PLANT(false, true),
+    PLANT(false, true, Material.TRIPWIRE),
 
-    ABSTRACT_ITEM(true, false),
+    ABSTRACT_ITEM(true, false, Material.PAPER),
 
-    EATABLE_ITEM(true, false),
+    EATABLE_ITEM(true, false, Material.BREAD),
 
-    EMPTY_ITEM(true, false),
+    EMPTY_ITEM(true, false, Material.PAPER),
 
     /**
      * Internal preset for vanilla-compatible materials.
      * Not intended for general use - has no custom model support and is not placeable.
      */
     @ApiStatus.Internal
-    VANILLA(false, false);
+    VANILLA(false, false, null);
 
     private final boolean customModel;
     private final boolean placeable;
+    private final Material carrier;
 
     /**
      * Constructs a new material preset with the given properties.
      *
      * @param customModel whether this preset supports custom models
      * @param placeable whether blocks/items with this preset can be placed in the world
+     * @param carrier the vanilla material custom materials with this preset are backed by, null for {@link #VANILLA}
      */
-    VoxMaterialPresets(boolean customModel, boolean placeable) {
+    VoxMaterialPresets(boolean customModel, boolean placeable, Material carrier) {
         this.customModel = customModel;
         this.placeable = placeable;
+        this.carrier = carrier;
     }
 
 }
@@ -10,8 +10,11 @@
 package sync.voxel.engine.api.util.group;
 
 import sync.voxel.engine.api.material.VoxMaterial;
+import sync.voxel.engine.api.registry.VoxRegistries;
 import sync.voxel.engine.api.util.identifier.VoxIdentifiable;
 
+import java.util.function.Consumer;
+
 /**
  * Represents a group of {@link VoxMaterial}s.
  * <p>
@@ -41,4 +44,19 @@ public interface VoxBehaviorGroup<VGI extends  VoxIdentifiable> extends VoxIdent
      */
     boolean contains(VoxMaterial element);
 
+    /**
+     * Performs the given action for every element of the group.
+     * <p>
+     * The default implementation tests every registered material with {@link #contains}, groups
+     * that know their members should override it.
+     *
+     * @param action the action to perform
+     */
+    @SuppressWarnings("unchecked")
+    default void forEach(Consumer<? super VGI> action) {
+        for (VoxMaterial material : VoxRegistries.MATERIAL.values()) {
+            if (contains(material)) action.accept((VGI) material);
+        }
+    }
+
 }
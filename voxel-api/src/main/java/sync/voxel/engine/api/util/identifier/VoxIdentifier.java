@@ -19,25 +19,32 @@ import org.jetbrains.annotations.NotNull;
  * <p>
  * Format: {@code namespace:key}
  * <p>
- * All characters must be lowercase a-z, digits, dots, underscores or hyphens.
+ * All characters must be lowercase a-z, digits, dots, underscores or hyphens. Keys may
+ * additionally contain slashes, like Minecraft resource locations do.
+ * <p>
+ * Identifiers are interned: equal identifiers are always the same instance, so they can be
+ * compared with {@code ==}.
  */
 public final class VoxIdentifier {
 
+    private static final String DEFAULT_TYPE = "none";
+    private static final VoxIdentifierPool POOL = new VoxIdentifierPool();
+
     private final String namespace;
     private final String key;
     private final String type;
+    private final int hash;
 
     /**
-     * Parses a string representation of a {@code VoxIdentifier}.
-     * Expected format is {@code namespace:key} or {@code namespace:key:type}.
+     * Returns the {@code VoxIdentifier} for a bukkit {@link org.bukkit.NamespacedKey}.
      *
      * @param namespacedKey the bukkit {@link org.bukkit.NamespacedKey}
      * @return the {@code VoxIdentifier} for the {@link org.bukkit.NamespacedKey}
-     * @throws IllegalArgumentException if the format is invalid or contains illegal characters
+     * @throws IllegalArgumentException if the key contains illegal characters
      */
-    @Contract(value = "_ -> new", pure = true)
+    @Contract(pure = true)
     public static @NotNull VoxIdentifier represent(@NotNull NamespacedKey namespacedKey) {
-        return VoxIdentifier.parse(namespacedKey.toString());
+        return VoxIdentifier.of(namespacedKey.getNamespace(), namespacedKey.getKey(), DEFAULT_TYPE);
     }
 
 
@@ -49,7 +56,7 @@ public final class VoxIdentifier {
      * @return the parsed {@code VoxIdentifier}
      * @throws IllegalArgumentException if the format is invalid or contains illegal characters
      */
-    @Contract(value = "_ -> new", pure = true)
+    @Contract(pure = true)
     public static @NotNull VoxIdentifier parse(String input) {
         return VoxIdentifier.parse(input, ':');
     }
@@ -63,22 +70,72 @@ public final class VoxIdentifier {
      * @return the parsed {@code VoxIdentifier}
      * @throws IllegalArgumentException if the format is invalid or contains illegal characters
      */
-    @Contract(value = "_, _ -> new", pure = true)
+    @Contract(pure = true)
     public static @NotNull VoxIdentifier parse(String input, char separator) {
         if (input == null || input.isBlank()) {
             throw new IllegalArgumentException("Input identifier string is null or empty.");
         }
 
-        String[] parts = input.split(String.valueOf(separator));
-        if (parts.length < 2 || parts.length > 3) {
-            throw new IllegalArgumentException("Invalid identifier format: expected namespace:key or namespace:key:type");
+        return VoxIdentifier.parse(input, 0, input.length(), separator);
+    }
+
+    /**
+     * Parses a {@code VoxIdentifier} from a range of a character sequence without copying it.
+     * Expected format is {@code namespace:key} or {@code namespace:key:type}.
+     *
+     * @param input the input characters
+     * @param start the index of the first character, inclusive
+     * @param end   the index of the last character, exclusive
+     * @return the parsed {@code VoxIdentifier}
+     * @throws IllegalArgumentException if the format is invalid or contains illegal characters
+     */
+    @Contract(pure = true)
+    public static @NotNull VoxIdentifier parse(@NotNull CharSequence input, int start, int end) {
+        return VoxIdentifier.parse(input, start, end, ':');
+    }
+
+    /**
+     * Parses a {@code VoxIdentifier} from a range of a character sequence without copying it.
+     * Expected format is {@code namespace:key} or {@code namespace:key:type}.
+     *
+     * @param input     the input characters
+     * @param start     the index of the first character, inclusive
+     * @param end       the index of the last character, exclusive
+     * @param separator the separator default ':'
+     * @return the parsed {@code VoxIdentifier}
+     * @throws IllegalArgumentException if the format is invalid or contains illegal characters
+     */
+    @Contract(pure = true)
+    public static @NotNull VoxIdentifier parse(@NotNull CharSequence input, int start, int end, char separator) {
+        if (start < 0 || end > input.length() || start >= end) {
+            throw new IllegalArgumentException("Input identifier string is null or empty.");
+        }
+
+        int keyStart = -1;
+        int typeStart = -1;
+
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+
+            if (c == separator) {
+                if (keyStart < 0) keyStart = i + 1;
+                else if (typeStart < 0) typeStart = i + 1;
+                else throw invalidFormat();
+            } else if (isInvalidChar(c) && (c != '/' || keyStart < 0 || typeStart >= 0)) {
+                throw new IllegalArgumentException("identifier contains invalid character: '" + c + "'");
+            }
+        }
+
+        int keyEnd = typeStart < 0 ? end : typeStart - 1;
+        if (keyStart < 0 || keyStart - 1 == start || keyStart == keyEnd || typeStart == end) {
+            throw invalidFormat();
         }
 
-        String namespace = parts[0];
-        String key = parts[1];
-        String type = parts.length == 3 ? parts[2] : "none";
+        if (typeStart < 0) {
+            return POOL.intern(input, start, keyStart - 1, input, keyStart, keyEnd, DEFAULT_TYPE, 0, DEFAULT_TYPE.length());
+        }
 
-        return new VoxIdentifier(namespace, key, type);
+        return POOL.intern(input, start, keyStart - 1, input, keyStart, keyEnd, input, typeStart, end);
     }
 
     /**
@@ -88,9 +145,9 @@ public final class VoxIdentifier {
      * @param key       the key
      * @return the identifier
      */
-    @Contract(value = "_, _ -> new", pure = true)
+    @Contract(pure = true)
     public static @NotNull VoxIdentifier of(String namespace, String key) {
-        return new VoxIdentifier(namespace, key, "none");
+        return VoxIdentifier.of(namespace, key, DEFAULT_TYPE);
     }
 
     /**
@@ -101,19 +158,20 @@ public final class VoxIdentifier {
      * @param type      the type
      * @return the identifier
      */
-    @Contract(value = "_, _, _ -> new", pure = true)
+    @Contract(pure = true)
     public static @NotNull VoxIdentifier of(String namespace, String key, String type) {
-        validate(namespace, "namespace");
-        validate(key, "key");
-        validate(type, "type");
+        validate(namespace, "namespace", false);
+        validate(key, "key", true);
+        validate(type, "type", false);
 
-        return new VoxIdentifier(namespace, key, type);
+        return POOL.intern(namespace, 0, namespace.length(), key, 0, key.length(), type, 0, type.length());
     }
 
-    private VoxIdentifier(String namespace, String key, String type) {
+    VoxIdentifier(String namespace, String key, String type, int hash) {
         this.namespace = namespace;
         this.key = key;
         this.type = type;
+        this.hash = hash;
     }
 
     public String namespace() {
@@ -167,16 +225,18 @@ public final class VoxIdentifier {
     /**
      * Validates a string to ensure all characters are allowed.
      *
-     * @param value the string to validate
-     * @param name  name of the field (for an error message)
+     * @param value      the string to validate
+     * @param name       name of the field (for an error message)
+     * @param allowSlash whether slashes are allowed
      */
-    private static void validate(String value, String name) {
+    private static void validate(String value, String name, boolean allowSlash) {
         if (value == null || value.isBlank()) {
             throw new IllegalArgumentException(name + " cannot be null or empty");
         }
 
-        for (char c : value.toCharArray()) {
-            if (isInvalidChar(c)) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (isInvalidChar(c) && (c != '/' || !allowSlash)) {
                 throw new IllegalArgumentException(name + " contains invalid character: '" + c + "'");
             }
         }
@@ -191,13 +251,20 @@ public final class VoxIdentifier {
                 c != '.' && c != '_' && c != '-';
     }
 
+    private static @NotNull IllegalArgumentException invalidFormat() {
+        return new IllegalArgumentException("Invalid identifier format: expected namespace:key or namespace:key:type");
+    }
+
     /**
-     * Checks equality based on namespace and key.
+     * Checks equality based on namespace, key and type.
+     * <p>
+     * Identifiers are interned, so this is an identity check for all instances created through
+     * the factory methods.
      */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (!(o instanceof VoxIdentifier that)) return false;
+        if (!(o instanceof VoxIdentifier that) || hash != that.hash) return false;
 
         return namespace.equals(that.namespace()) &&
                 key.equals(that.key()) &&
@@ -206,11 +273,11 @@ public final class VoxIdentifier {
     }
 
     /**
-     * Hash code based on namespace and key.
+     * Hash code based on namespace and key, computed once on creation.
      */
     @Override
     public int hashCode() {
-        return 31 * namespace.hashCode() + key.hashCode();
+        return hash;
     }
 
 }
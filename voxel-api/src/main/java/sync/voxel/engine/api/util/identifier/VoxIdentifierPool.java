@@ -0,0 +1,170 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.api.util.identifier;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Weak intern pool that holds the canonical instance of every live {@link VoxIdentifier}.
+ * <p>
+ * Lookups work on character ranges, so a hit never allocates. The pool is split into segments,
+ * reads never lock and may miss an entry that is being inserted concurrently, in which case
+ * they fall through to the locked insert path that checks again.
+ */
+final class VoxIdentifierPool {
+
+    private static final int SEGMENT_COUNT = 16;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    VoxIdentifierPool() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) segments[i] = new Segment();
+    }
+
+    /**
+     * Returns the canonical identifier for the given ranges, creating it if needed.
+     * The ranges must already be validated.
+     */
+    @NotNull VoxIdentifier intern(@NotNull CharSequence ns, int nsStart, int nsEnd,
+                                  @NotNull CharSequence key, int keyStart, int keyEnd,
+                                  @NotNull CharSequence type, int typeStart, int typeEnd) {
+        int hash = 31 * hash(ns, nsStart, nsEnd) + hash(key, keyStart, keyEnd);
+        Segment segment = segments[spread(hash) & (SEGMENT_COUNT - 1)];
+
+        VoxIdentifier found = segment.find(hash, ns, nsStart, nsEnd, key, keyStart, keyEnd, type, typeStart, typeEnd);
+        if (found != null) return found;
+
+        return segment.insert(hash, ns, nsStart, nsEnd, key, keyStart, keyEnd, type, typeStart, typeEnd);
+    }
+
+    /**
+     * Computes {@link String#hashCode()} of a character range.
+     */
+    static int hash(@NotNull CharSequence value, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + value.charAt(i);
+        return h;
+    }
+
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x9E3779B9 >>> 16;
+    }
+
+    private static boolean matches(@NotNull String value, @NotNull CharSequence other, int start, int end) {
+        int length = end - start;
+        if (value.length() != length) return false;
+
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != other.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private static final class Entry extends WeakReference<VoxIdentifier> {
+        final int hash;
+        volatile Entry next;
+
+        Entry(VoxIdentifier identifier, int hash, Entry next, ReferenceQueue<VoxIdentifier> queue) {
+            super(identifier, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    private static final class Segment {
+        private final ReferenceQueue<VoxIdentifier> queue = new ReferenceQueue<>();
+        private volatile Entry[] table = new Entry[INITIAL_CAPACITY];
+        private int count;
+
+        VoxIdentifier find(int hash, CharSequence ns, int nsStart, int nsEnd,
+                           CharSequence key, int keyStart, int keyEnd,
+                           CharSequence type, int typeStart, int typeEnd) {
+            Entry[] tab = table;
+            for (Entry e = tab[hash & (tab.length - 1)]; e != null; e = e.next) {
+                if (e.hash != hash) continue;
+
+                VoxIdentifier candidate = e.get();
+                if (candidate != null
+                        && matches(candidate.key(), key, keyStart, keyEnd)
+                        && matches(candidate.namespace(), ns, nsStart, nsEnd)
+                        && matches(candidate.type(), type, typeStart, typeEnd)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        synchronized VoxIdentifier insert(int hash, CharSequence ns, int nsStart, int nsEnd,
+                                          CharSequence key, int keyStart, int keyEnd,
+                                          CharSequence type, int typeStart, int typeEnd) {
+            VoxIdentifier found = find(hash, ns, nsStart, nsEnd, key, keyStart, keyEnd, type, typeStart, typeEnd);
+            if (found != null) return found;
+
+            expungeStaleEntries();
+            if (count >= table.length * 3 / 4) resize();
+
+            VoxIdentifier identifier = new VoxIdentifier(
+                    ns.subSequence(nsStart, nsEnd).toString(),
+                    key.subSequence(keyStart, keyEnd).toString(),
+                    type.subSequence(typeStart, typeEnd).toString(),
+                    hash);
+
+            Entry[] tab = table;
+            int index = hash & (tab.length - 1);
+            tab[index] = new Entry(identifier, hash, tab[index], queue);
+            count++;
+
+            return identifier;
+        }
+
+        private void expungeStaleEntries() {
+            for (Object stale; (stale = queue.poll()) != null; ) {
+                Entry entry = (Entry) stale;
+                Entry[] tab = table;
+                int index = entry.hash & (tab.length - 1);
+
+                Entry prev = null;
+                for (Entry e = tab[index]; e != null; prev = e, e = e.next) {
+                    if (e != entry) continue;
+
+                    if (prev == null) tab[index] = e.next;
+                    else prev.next = e.next;
+                    count--;
+                    break;
+                }
+            }
+        }
+
+        private void resize() {
+            Entry[] oldTable = table;
+            Entry[] newTable = new Entry[oldTable.length << 1];
+            int mask = newTable.length - 1;
+
+            for (Entry head : oldTable) {
+                for (Entry e = head; e != null; e = e.next) {
+                    VoxIdentifier identifier = e.get();
+                    if (identifier == null) {
+                        count--;
+                        continue;
+                    }
+
+                    int index = e.hash & mask;
+                    newTable[index] = new Entry(identifier, e.hash, newTable[index], queue);
+                }
+            }
+
+            table = newTable;
+        }
+    }
+}
@@ -9,8 +9,32 @@
  */
 package sync.voxel.engine.api.world;
 
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.api.material.VoxMaterial;
 import sync.voxel.engine.api.util.uuid.VoxUuIdentifiable;
 
 public interface VoxWorld extends VoxUuIdentifiable {
 
+    /**
+     * Returns the custom material placed at the given block position.
+     *
+     * @param x the block x coordinate
+     * @param y the block y coordinate
+     * @param z the block z coordinate
+     * @return the custom material, or null if there is none
+     */
+    @Nullable VoxMaterial getCustomBlock(int x, int y, int z);
+
+    /**
+     * Places a custom material at the given block position.
+     *
+     * @param x        the block x coordinate
+     * @param y        the block y coordinate
+     * @param z        the block z coordinate
+     * @param material the material, or null to remove the custom block
+     * @return true if the block changed
+     * @throws IllegalArgumentException if the material is not registered or y is outside the world height
+     */
+    boolean setCustomBlock(int x, int y, int z, @Nullable VoxMaterial material);
+
 }
@@ -0,0 +1,66 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.api.material;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoxAttributeKeyTest {
+
+    @Test
+    void keysAreInternedByName() {
+        VoxAttributeKey<Integer> key = VoxAttributeKey.of("key_test_interned", Integer.class);
+
+        assertSame(key, VoxAttributeKey.of("key_test_interned", Integer.class));
+        assertSame(key, VoxAttributeKey.byName("key_test_interned"));
+        assertSame(key, VoxAttributeKey.bySlot()[key.slot()]);
+        assertNull(VoxAttributeKey.byName("key_test_missing"));
+    }
+
+    @Test
+    void keysKeepTheirType() {
+        VoxAttributeKey.of("key_test_typed", Float.class);
+
+        assertThrows(IllegalArgumentException.class, () -> VoxAttributeKey.of("key_test_typed", Integer.class));
+        assertThrows(IllegalArgumentException.class, () -> VoxAttributeKey.of("key_test_list", List.class));
+    }
+
+    @Test
+    void anyNumberConvertsToFloatingPoint() {
+        assertEquals(2.0f, VoxAttributeKey.HARDNESS.convert(2));
+        assertEquals(2.5f, VoxAttributeKey.HARDNESS.convert(2.5));
+        assertEquals(3.0f, VoxAttributeKey.HARDNESS.convert(3L));
+        assertEquals(1.5, VoxAttributeKey.of("key_test_double", Double.class).convert(1.5f));
+    }
+
+    @Test
+    void integralConversionsMustNotLoseInformation() {
+        VoxAttributeKey<Long> longKey = VoxAttributeKey.of("key_test_long", Long.class);
+
+        assertEquals(7, VoxAttributeKey.LIGHT_LEVEL.convert(7L));
+        assertEquals(7, VoxAttributeKey.LIGHT_LEVEL.convert(7.0));
+        assertNull(VoxAttributeKey.LIGHT_LEVEL.convert(7.5));
+        assertNull(VoxAttributeKey.LIGHT_LEVEL.convert(1L << 40));
+        assertEquals(1L << 40, longKey.convert(1L << 40));
+        assertEquals(3L, longKey.convert(3));
+    }
+
+    @Test
+    void otherValuesOnlyMatchTheirOwnType() {
+        assertEquals("voxel:block/ruby", VoxAttributeKey.MODEL.convert("voxel:block/ruby"));
+        assertNull(VoxAttributeKey.MODEL.convert(5));
+        assertNull(VoxAttributeKey.HARDNESS.convert("2"));
+        assertNull(VoxAttributeKey.of("key_test_boolean", Boolean.class).convert(1));
+        assertNull(VoxAttributeKey.HARDNESS.convert(null));
+    }
+}
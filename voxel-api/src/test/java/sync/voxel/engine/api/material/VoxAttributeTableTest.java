@@ -0,0 +1,72 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.api.material;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoxAttributeTableTest {
+
+    @Test
+    void valuesAreConvertedToTheKeyType() {
+        VoxAttributeTable table = VoxAttributeTable.of(Map.of("hardness", 2, "light_level", 12L, "model", "voxel:block/ruby"));
+
+        assertEquals(2.0f, table.getFloat(VoxAttributeKey.HARDNESS, -1f));
+        assertEquals(2.0f, table.get(VoxAttributeKey.HARDNESS));
+        assertEquals(12, table.getInt(VoxAttributeKey.LIGHT_LEVEL, -1));
+        assertEquals("voxel:block/ruby", table.get(VoxAttributeKey.MODEL, "none"));
+        assertEquals("none", table.get(VoxAttributeKey.DROPS, "none"));
+        assertNull(table.get(VoxAttributeKey.DROPS));
+    }
+
+    @Test
+    void valuesThatCannotBeConvertedReadAsMissing() {
+        VoxAttributeTable table = VoxAttributeTable.of(Map.of("hardness", "hard", "light_level", 2.5));
+
+        assertEquals(-1f, table.getFloat(VoxAttributeKey.HARDNESS, -1f));
+        assertEquals(-1, table.getInt(VoxAttributeKey.LIGHT_LEVEL, -1));
+        assertNull(table.get(VoxAttributeKey.HARDNESS));
+    }
+
+    @Test
+    void nameLookupsAgreeWithKeyLookups() {
+        VoxAttributeTable table = VoxAttributeTable.of(Map.of("hardness", 2, "table_test_unkeyed", 4));
+
+        // hardness is parsed as an int but has a float key
+        assertEquals(2.0f, table.get("hardness", Float.class, -1f));
+        assertEquals(table.getFloat(VoxAttributeKey.HARDNESS, -1f), table.get("hardness", Float.class, -1f));
+
+        // without a key of the requested type the parsed value is returned as is
+        assertEquals(2, table.get("hardness", Integer.class, -1));
+        assertEquals(4, table.get("table_test_unkeyed", Integer.class, -1));
+        assertEquals(-1f, table.get("table_test_unkeyed", Float.class, -1f));
+        assertEquals("none", table.get("table_test_missing", String.class, "none"));
+    }
+
+    @Test
+    void keysCreatedAfterTheTableAreResolvedOnRead() {
+        VoxAttributeTable table = VoxAttributeTable.of(Map.of("table_test_late", 3, "table_test_late_flag", true));
+
+        VoxAttributeKey<Integer> late = VoxAttributeKey.of("table_test_late", Integer.class);
+        VoxAttributeKey<Boolean> flag = VoxAttributeKey.of("table_test_late_flag", Boolean.class);
+        assertEquals(3, table.getInt(late, -1));
+        assertTrue(table.getBoolean(flag, false));
+    }
+
+    @Test
+    void emptyValuesGiveTheSharedEmptyTable() {
+        assertSame(VoxAttributeTable.EMPTY, VoxAttributeTable.of(Map.of()));
+        assertEquals(5f, VoxAttributeTable.EMPTY.getFloat(VoxAttributeKey.HARDNESS, 5f));
+        assertEquals("none", VoxAttributeTable.EMPTY.get("hardness", String.class, "none"));
+    }
+}
@@ -0,0 +1,324 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.api.registry;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import sync.voxel.engine.api.util.identifier.VoxIdentifiable;
+import sync.voxel.engine.api.util.identifier.VoxIdentifier;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoxRegistryTest {
+
+    private static final int THREADS = 8;
+    private static final int IDENTIFIERS = 20_000;
+
+    record Element(@NotNull VoxIdentifier identifier) implements VoxIdentifiable {
+    }
+
+    record Versioned(@NotNull VoxIdentifier identifier, int generation) implements VoxIdentifiable {
+    }
+
+    private static @NotNull VoxIdentifier identifier(int index) {
+        return VoxIdentifier.of("test", "element_" + index);
+    }
+
+    @Test
+    void concurrentRegistrationsAgreeOnOneElementPerIdentifier() throws Exception {
+        VoxRegistry<Element> registry = new VoxRegistry<>();
+        Map<VoxIdentifier, Element> winners = new ConcurrentHashMap<>();
+        AtomicBoolean registering = new AtomicBoolean(true);
+        AtomicInteger readerFailures = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 2);
+
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int offset = thread * (IDENTIFIERS / THREADS);
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    // every thread registers every identifier, starting at a different one
+                    for (int i = 0; i < IDENTIFIERS; i++) {
+                        VoxIdentifier identifier = identifier((offset + i) % IDENTIFIERS);
+                        Element registered = registry.registerIfAbsent(new Element(identifier));
+                        Element previous = winners.putIfAbsent(identifier, registered);
+                        if (previous != null && previous != registered) throw new AssertionError("Two elements won " + identifier);
+                    }
+                    return null;
+                }));
+            }
+
+            // lookups never see an empty slot or an element under the wrong raw id
+            for (int reader = 0; reader < 2; reader++) {
+                executor.submit(() -> {
+                    start.await();
+                    while (registering.get()) {
+                        int size = registry.size();
+                        if (size == 0) continue;
+
+                        int rawId = ThreadLocalRandom.current().nextInt(size);
+                        Element element = registry.elementAt(rawId);
+                        if (element == null || registry.rawIdFor(element) != rawId || registry.valueOf(element.identifier()) != element) {
+                            readerFailures.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+
+            start.countDown();
+            for (Future<?> writer : writers) writer.get(60, TimeUnit.SECONDS);
+        } finally {
+            registering.set(false);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(0, readerFailures.get());
+        assertEquals(IDENTIFIERS, registry.size());
+
+        Set<VoxIdentifier> seen = new HashSet<>();
+        for (int rawId = 0; rawId < registry.size(); rawId++) {
+            Element element = registry.elementAt(rawId);
+            assertNotNull(element);
+            assertTrue(seen.add(element.identifier()));
+            assertSame(winners.get(element.identifier()), element);
+        }
+    }
+
+    @Test
+    void identifierLookupsSeeAnElementAsSoonAsItIsContained() throws Exception {
+        VoxRegistry<Element> registry = new VoxRegistry<>();
+        AtomicInteger next = new AtomicInteger();
+        AtomicBoolean registering = new AtomicBoolean(true);
+        AtomicInteger failures = new AtomicInteger();
+        AtomicInteger hits = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int reader = 0; reader < 2; reader++) {
+                readers.add(executor.submit(() -> {
+                    // chase the identifier that is registered next, the window between index and size
+                    while (registering.get()) {
+                        VoxIdentifier identifier = identifier(next.get());
+                        if (!registry.contains(identifier)) continue;
+
+                        Element element = registry.valueOf(identifier);
+                        if (element == null || element.identifier() != identifier || registry.rawIdFor(element) < 0) failures.incrementAndGet();
+                        hits.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+
+            for (int i = 0; i < IDENTIFIERS; i++) {
+                next.set(i);
+                registry.register(new Element(identifier(i)));
+            }
+
+            registering.set(false);
+            for (Future<?> reader : readers) reader.get(10, TimeUnit.SECONDS);
+        } finally {
+            registering.set(false);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(0, failures.get());
+        assertTrue(hits.get() > 0);
+    }
+
+    @Test
+    void registrationsAfterFreezingNotifyListenersWithANewSnapshot() {
+        VoxRegistry<Element> registry = new VoxRegistry<>();
+        registry.register(new Element(identifier(0)));
+        registry.register(new Element(identifier(1)));
+
+        VoxRegistrySnapshot<Element> frozen = registry.freeze();
+        assertTrue(registry.isFrozen());
+        assertSame(frozen, registry.snapshot());
+
+        List<Integer> notified = new ArrayList<>();
+        registry.addListener((element, rawId, snapshot) -> {
+            assertSame(element, snapshot.valueOf(rawId));
+            notified.add(rawId);
+        });
+
+        Element added = new Element(identifier(2));
+        registry.register(added);
+
+        assertEquals(List.of(2), notified);
+        assertEquals(2, frozen.size());
+        assertNull(frozen.valueOf(identifier(2)));
+        assertSame(added, registry.valueOf(identifier(2)));
+        assertEquals(3, registry.values().size());
+        assertNotSame(frozen, registry.snapshot());
+    }
+
+    @Test
+    void duplicateRegistrationIsRejected() {
+        VoxRegistry<Element> registry = new VoxRegistry<>();
+        Element first = new Element(identifier(0));
+        registry.register(first);
+
+        assertThrows(IllegalArgumentException.class, () -> registry.register(new Element(identifier(0))));
+        assertSame(first, registry.registerIfAbsent(new Element(identifier(0))));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void frozenRegistryCannotBeCleared() {
+        VoxRegistry<Element> registry = new VoxRegistry<>();
+        registry.register(new Element(identifier(0)));
+        registry.clear();
+        assertEquals(0, registry.size());
+
+        registry.freeze();
+        assertThrows(IllegalStateException.class, registry::clear);
+    }
+
+    private static boolean uniform(@NotNull VoxRegistrySnapshot<Versioned> snapshot) {
+        int generation = snapshot.valueOf(0).generation();
+        for (int rawId = 1; rawId < snapshot.size(); rawId++) {
+            if (snapshot.valueOf(rawId).generation() != generation) return false;
+        }
+        return true;
+    }
+
+    @Test
+    void readersSeeASwapWholeOrNotAtAll() throws Exception {
+        int elements = 200;
+        int swaps = 500;
+        AtomicBoolean swapping = new AtomicBoolean(true);
+        AtomicInteger tornSnapshots = new AtomicInteger();
+        VoxRegistry<Versioned> registry = new VoxRegistry<>() {
+            @Override
+            protected void onSwap(@NotNull VoxRegistrySnapshot<Versioned> previous, @NotNull VoxRegistrySnapshot<Versioned> next) {
+                // the new state is complete here, readers must still see all of the old one
+                if (snapshot() != previous || !uniform(previous) || !uniform(next)) tornSnapshots.incrementAndGet();
+            }
+        };
+        for (int i = 0; i < elements; i++) registry.register(new Versioned(identifier(i), 0));
+        registry.freeze();
+
+        AtomicInteger snapshotsRead = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int reader = 0; reader < 2; reader++) {
+                readers.add(executor.submit(() -> {
+                    int lastGeneration = 0;
+                    while (swapping.get()) {
+                        VoxRegistrySnapshot<Versioned> snapshot = registry.snapshot();
+                        if (!uniform(snapshot)) tornSnapshots.incrementAndGet();
+
+                        int generation = snapshot.valueOf(0).generation();
+                        if (generation < lastGeneration) tornSnapshots.incrementAndGet();
+                        lastGeneration = generation;
+                        snapshotsRead.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+
+            for (int generation = 1; generation <= swaps; generation++) {
+                List<Versioned> replacements = new ArrayList<>(elements);
+                for (int i = 0; i < elements; i++) replacements.add(new Versioned(identifier(i), generation));
+                registry.swap(replacements, List.of(), List.of());
+                if (generation % 50 == 0) Thread.yield();
+            }
+
+            swapping.set(false);
+            for (Future<?> reader : readers) reader.get(10, TimeUnit.SECONDS);
+        } finally {
+            swapping.set(false);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(0, tornSnapshots.get());
+        assertTrue(snapshotsRead.get() > 0);
+        assertEquals(swaps, registry.valueOf(identifier(elements - 1)).generation());
+    }
+
+    @Test
+    void failedSwapLeavesTheRegistryUnchanged() {
+        VoxRegistry<Element> registry = new VoxRegistry<>();
+        Element first = new Element(identifier(0));
+        registry.register(first);
+        registry.register(new Element(identifier(1)));
+        VoxRegistrySnapshot<Element> before = registry.freeze();
+
+        Element replacement = new Element(identifier(0));
+        Element added = new Element(identifier(5));
+
+        // a removal of an unknown identifier after a valid replacement and before a valid addition
+        assertThrows(IllegalArgumentException.class, () -> registry.swap(List.of(replacement), List.of(identifier(9)), List.of(added)));
+        assertThrows(IllegalArgumentException.class, () -> registry.swap(List.of(replacement), List.of(identifier(0)), List.of()));
+        assertThrows(IllegalArgumentException.class, () -> registry.swap(List.of(), List.of(), List.of(new Element(identifier(1)))));
+        assertThrows(IllegalArgumentException.class, () -> registry.swap(List.of(new Element(identifier(7))), List.of(), List.of()));
+
+        assertSame(before, registry.snapshot());
+        assertSame(first, registry.valueOf(identifier(0)));
+        assertFalse(registry.contains(identifier(5)));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    void swapKeepsRawIdsAndNeverReusesRemovedOnes() {
+        VoxRegistry<Element> registry = new VoxRegistry<>();
+        for (int i = 0; i < 3; i++) registry.register(new Element(identifier(i)));
+        registry.freeze();
+
+        List<Integer> notified = new ArrayList<>();
+        registry.addListener((element, rawId, snapshot) -> {
+            assertSame(element, snapshot.valueOf(rawId));
+            notified.add(rawId);
+        });
+
+        Element replacement = new Element(identifier(2));
+        Element added = new Element(identifier(3));
+        VoxRegistrySnapshot<Element> swapped = registry.swap(List.of(replacement), List.of(identifier(1)), List.of(added));
+
+        assertSame(swapped, registry.snapshot());
+        assertEquals(4, swapped.size());
+        assertNull(swapped.valueOf(1));
+        assertNull(registry.valueOf(identifier(1)));
+        assertSame(replacement, swapped.valueOf(2));
+        assertEquals(3, swapped.rawIdOf(added));
+        assertEquals(List.of(3), notified);
+
+        // the removed identifier comes back with a new raw id
+        Element restored = new Element(identifier(1));
+        registry.swap(List.of(), List.of(), List.of(restored));
+        assertEquals(4, registry.snapshot().rawIdOf(restored));
+        assertNull(registry.snapshot().valueOf(1));
+        assertEquals(List.of(3, 4), notified);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.api.util.identifier;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoxIdentifierTest {
+
+    @Test
+    void parsesNamespaceKeyAndType() {
+        VoxIdentifier identifier = VoxIdentifier.parse("voxel:ruby_ore:block");
+
+        assertEquals("voxel", identifier.namespace());
+        assertEquals("ruby_ore", identifier.key());
+        assertEquals("block", identifier.type());
+        assertEquals("none", VoxIdentifier.parse("voxel:ruby_ore").type());
+    }
+
+    @Test
+    void equalIdentifiersAreTheSameInstance() {
+        VoxIdentifier parsed = VoxIdentifier.parse("voxel:ruby_ore");
+
+        assertSame(parsed, VoxIdentifier.of("voxel", "ruby_ore"));
+        assertSame(parsed, VoxIdentifier.parse("voxel/ruby_ore", '/'));
+        assertSame(parsed, VoxIdentifier.parse("[voxel:ruby_ore]", 1, 15));
+        assertSame(parsed, VoxIdentifier.parse(new StringBuilder("voxel:ruby_ore"), 0, 14));
+        assertNotSame(parsed, VoxIdentifier.parse("voxel:ruby_ore:block"));
+    }
+
+    @Test
+    void slashesAreOnlyAllowedInTheKey() {
+        assertEquals("block/ruby_ore", VoxIdentifier.parse("voxel:block/ruby_ore").key());
+
+        assertThrows(IllegalArgumentException.class, () -> VoxIdentifier.parse("vox/el:ruby_ore"));
+        assertThrows(IllegalArgumentException.class, () -> VoxIdentifier.parse("voxel:ruby_ore:bl/ock"));
+    }
+
+    @Test
+    void malformedInputIsRejected() {
+        for (String input : new String[]{"", " ", "voxel", ":ruby_ore", "voxel:", "voxel::block", "voxel:ruby_ore:", "a:b:c:d", "Voxel:ruby_ore", "voxel:ruby ore"}) {
+            assertThrows(IllegalArgumentException.class, () -> VoxIdentifier.parse(input), input);
+        }
+        assertThrows(IllegalArgumentException.class, () -> VoxIdentifier.parse("voxel:ruby_ore", 5, 3));
+        assertThrows(IllegalArgumentException.class, () -> VoxIdentifier.of("voxel", "Ruby"));
+    }
+
+    @Test
+    void toStringRoundTrips() {
+        VoxIdentifier identifier = VoxIdentifier.parse("voxel:ruby_ore:block");
+
+        assertEquals("voxel:ruby_ore", identifier.toString());
+        assertSame(VoxIdentifier.parse("voxel:ruby_ore"), VoxIdentifier.parse(identifier.toString()));
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.common.logger;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of log lines by {@link VoxelLogger} against the regex based formatter it replaced.
+ * Nothing is written, only the line is built.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VoxelLoggerBenchmark {
+
+    private static final String MESSAGE = "Loaded {} materials from {} in {} ms";
+
+    private VoxelLogger logger;
+    private Object[] args;
+    private Object[] argsWithThrowable;
+
+    @Setup
+    public void setup() {
+        logger = new VoxelLogger("VoxelEngine");
+        args = new Object[]{1542, "voxel:block/ruby_ore", 12.5};
+        argsWithThrowable = new Object[]{1542, "voxel:block/ruby_ore", 12.5, new IllegalStateException("broken pack")};
+    }
+
+    @Benchmark
+    public CharSequence render() {
+        return logger.render(VoxelLogLevel.INFO, MESSAGE, args);
+    }
+
+    @Benchmark
+    public String legacyRender() {
+        return legacyRender(VoxelLogLevel.INFO, MESSAGE, args);
+    }
+
+    @Benchmark
+    public CharSequence renderWithThrowable() {
+        return logger.render(VoxelLogLevel.ERROR, MESSAGE, argsWithThrowable);
+    }
+
+    @Benchmark
+    public String legacyRenderWithThrowable() {
+        return legacyRender(VoxelLogLevel.ERROR, MESSAGE, argsWithThrowable);
+    }
+
+    // the formatter before the single pass rewrite, copied unchanged
+
+    private @NotNull String legacyRender(@NotNull VoxelLogLevel level, String msg, Object[] args) {
+        String formattedMsg = legacyFormatMessage(msg, args);
+        String reset = "\u001B[0m";
+        String moveToStart = "\u001B[0G";
+        return moveToStart + logger.getColoredPrefix() + " [" + level.name() + "] " + reset + formattedMsg + "\n";
+    }
+
+    private String legacyFormatMessage(String msg, Object... args) {
+        if (args == null || args.length == 0) {
+            return msg;
+        }
+
+        Throwable throwable = null;
+        if (args[args.length - 1] instanceof Throwable) {
+            throwable = (Throwable) args[args.length - 1];
+            args = removeLastElement(args);
+        }
+
+        String formattedMsg = msg;
+        for (Object arg : args) {
+            formattedMsg = formattedMsg.replaceFirst("\\{\\}", arg != null ? arg.toString() : "null");
+        }
+
+        if (throwable != null) {
+            formattedMsg += "\n" + getStackTraceAsString(throwable);
+        }
+
+        return formattedMsg;
+    }
+
+    private Object @NotNull [] removeLastElement(Object @NotNull [] array) {
+        Object[] newArray = new Object[array.length - 1];
+        System.arraycopy(array, 0, newArray, 0, newArray.length);
+        return newArray;
+    }
+
+    private @NotNull String getStackTraceAsString(@NotNull Throwable throwable) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(throwable.toString()).append("\n");
+        for (StackTraceElement element : throwable.getStackTrace()) {
+            sb.append("\t").append(element.toString()).append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package sync.voxel.engine.common.logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background appender of an asynchronous {@link VoxelLogger}.
+ * <p>
+ * Callers only publish the raw event into a {@link VoxelLogRingBuffer}, a single consumer
+ * thread formats the events and writes them through {@link VoxelLogOutput}.
+ */
+final class VoxelAsyncAppender implements Runnable {
+
+    private static final int SAMPLE_RATE = 8;
+    private static final int DRAIN_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = 50_000_000L;
+
+    private final VoxelLogger logger;
+    private final VoxelLogRingBuffer buffer;
+    private final VoxelLogOverflowPolicy policy;
+    private final VoxelLogOutput output;
+    private final Thread thread;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampleCounter = new AtomicLong();
+
+    private volatile boolean running = true;
+    private volatile boolean idle;
+
+    VoxelAsyncAppender(VoxelLogger logger, int capacity, VoxelLogOverflowPolicy policy, VoxelLogOutput output) {
+        this.logger = logger;
+        this.buffer = new VoxelLogRingBuffer(capacity);
+        this.policy = policy;
+        this.output = output;
+
+        this.thread = new Thread(this, "VoxelLogger-" + logger.getPrefix());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    void append(VoxelLogLevel level, String msg, Object[] args) {
+        if (policy == VoxelLogOverflowPolicy.SAMPLE && level.getLevel() > VoxelLogLevel.WARN.getLevel()
+                && buffer.size() >= buffer.capacity() - (buffer.capacity() >> 2)
+                && sampleCounter.incrementAndGet() % SAMPLE_RATE != 0) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        while (!buffer.offer(level, msg, args)) {
+            if (policy != VoxelLogOverflowPolicy.BLOCK || !running || Thread.currentThread() == thread) {
+                dropped.incrementAndGet();
+                return;
+            }
+
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(10_000L);
+        }
+
+        if (idle) LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stops the consumer thread after it wrote every event that is already buffered.
+     */
+    void shutdown() {
+        running = false;
+        LockSupport.unpark(thread);
+
+        try {
+            thread.join(5_000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        VoxelLogRingBuffer.Handler handler = (level, msg, args) -> output.append(logger.render(level, msg, args));
+
+        while (true) {
+            int drained = buffer.drain(handler, DRAIN_BATCH);
+            if (drained > 0) {
+                reportDropped();
+                output.flush();
+                continue;
+            }
+
+            if (!running) break;
+
+            idle = true;
+            if (buffer.size() == 0 && running) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            idle = false;
+        }
+
+        buffer.drain(handler, Integer.MAX_VALUE);
+        reportDropped();
+        output.flush();
+    }
+
+    private void reportDropped() {
+        long count = dropped.getAndSet(0);
+        if (count > 0) {
+            output.append(logger.render(VoxelLogLevel.WARN, "{} log messages were dropped, the log buffer was full.", new Object[]{count}));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package sync.voxel.engine.common.logger;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Shared, buffered writer for standard out.
+ * <p>
+ * The channel, encoder and byte buffer are created once and reused for every line.
+ */
+final class VoxelLogOutput {
+
+    static final VoxelLogOutput STDOUT = new VoxelLogOutput(new FileOutputStream(FileDescriptor.out).getChannel());
+
+    private final FileChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(16 * 1024);
+
+    private VoxelLogOutput(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Encodes the text into the buffer, writing it out whenever the buffer is full.
+     * Call {@link #flush()} to write what is left.
+     */
+    synchronized void append(CharSequence text) {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (!result.isOverflow()) break;
+            flushBuffer();
+        }
+
+        while (encoder.flush(buffer).isOverflow()) flushBuffer();
+    }
+
+    synchronized void write(CharSequence text) {
+        append(text);
+        flush();
+    }
+
+    synchronized void flush() {
+        flushBuffer();
+    }
+
+    private void flushBuffer() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException ignored) {
+            // standard out is gone, nothing sensible left to do with the line
+        } finally {
+            buffer.clear();
+        }
+    }
+}
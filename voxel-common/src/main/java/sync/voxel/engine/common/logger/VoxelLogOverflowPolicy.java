@@ -0,0 +1,24 @@
+package sync.voxel.engine.common.logger;
+
+/**
+ * Decides what an asynchronous {@link VoxelLogger} does when its ring buffer cannot take more events.
+ */
+public enum VoxelLogOverflowPolicy {
+
+    /**
+     * Drops events while the buffer is full.
+     */
+    DROP,
+
+    /**
+     * Blocks the calling thread until the buffer has room again.
+     */
+    BLOCK,
+
+    /**
+     * Keeps only every n-th {@link VoxelLogLevel#INFO} and {@link VoxelLogLevel#DEBUG} event once the
+     * buffer is three quarters full, drops events while it is full.
+     */
+    SAMPLE
+
+}
@@ -0,0 +1,117 @@
+package sync.voxel.engine.common.logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free multi-producer, single-consumer ring buffer of log events.
+ * <p>
+ * Every slot carries a sequence number. A producer claims a slot by advancing the tail with a
+ * CAS, writes the event and publishes it by bumping the slot sequence. The consumer reads the
+ * event once the sequence says it is published and hands the slot back to the producers.
+ */
+final class VoxelLogRingBuffer {
+
+    /**
+     * Receives events drained from the buffer.
+     */
+    interface Handler {
+        void handle(VoxelLogLevel level, String message, Object[] args);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+
+    private final VoxelLogLevel[] levels;
+    private final String[] messages;
+    private final Object[][] args;
+
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    VoxelLogRingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        this.levels = new VoxelLogLevel[capacity];
+        this.messages = new String[capacity];
+        this.args = new Object[capacity][];
+
+        for (int i = 0; i < capacity; i++) sequences.set(i, i);
+    }
+
+    /**
+     * Tries to publish an event.
+     *
+     * @return false if the buffer is full
+     */
+    boolean offer(VoxelLogLevel level, String message, Object[] arguments) {
+        long position = tail.get();
+
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    levels[index] = level;
+                    messages[index] = message;
+                    args[index] = arguments;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Drains up to {@code limit} published events, must only be called by the consumer thread.
+     *
+     * @return the number of drained events
+     */
+    int drain(Handler handler, int limit) {
+        long position = head;
+        int drained = 0;
+
+        while (drained < limit) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) break;
+
+            VoxelLogLevel level = levels[index];
+            String message = messages[index];
+            Object[] arguments = args[index];
+            levels[index] = null;
+            messages[index] = null;
+            args[index] = null;
+
+            sequences.set(index, position + capacity);
+            head = ++position;
+            drained++;
+
+            handler.handle(level, message, arguments);
+        }
+
+        return drained;
+    }
+
+    /**
+     * Returns the approximate number of events waiting in the buffer.
+     */
+    int size() {
+        return (int) Math.max(0, Math.min(capacity, tail.get() - head));
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
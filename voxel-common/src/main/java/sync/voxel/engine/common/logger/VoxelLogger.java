@@ -1,17 +1,28 @@
 package sync.voxel.engine.common.logger;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import sync.voxel.engine.common.util.AsciColorUtil;
 
 import java.awt.*;
-import java.io.FileDescriptor;
-import java.io.FileOutputStream;
+import java.util.function.Supplier;
+
 @Getter
 public class VoxelLogger {
+    public static final int DEFAULT_ASYNC_CAPACITY = 8192;
+
+    private static final String RESET = "\u001B[0m";
+    private static final String MOVE_TO_START = "\u001B[0G";
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_CAPACITY));
+
     private final String prefix;
     private final String coloredPrefix;
-    private VoxelLogLevel currentLevel = VoxelLogLevel.INFO;
+    private volatile VoxelLogLevel currentLevel = VoxelLogLevel.INFO;
+    @Getter(AccessLevel.NONE)
+    private volatile VoxelAsyncAppender appender;
 
     public VoxelLogger(String prefix) {
         this.prefix = prefix;
@@ -28,6 +39,45 @@ public class VoxelLogger {
         this.currentLevel = level;
     }
 
+    /**
+     * Switches the logger to asynchronous mode.
+     * <p>
+     * Log calls then only push the raw event into a bounded lock-free ring buffer, a single
+     * background thread formats and writes them. Disabled levels are still rejected before
+     * anything is buffered or formatted. {@link Supplier} arguments are resolved on the
+     * background thread.
+     *
+     * @param capacity the ring buffer capacity, must be a power of two
+     * @param policy   what to do when the ring buffer is full
+     */
+    public synchronized void enableAsync(int capacity, @NotNull VoxelLogOverflowPolicy policy) {
+        disableAsync();
+        this.appender = new VoxelAsyncAppender(this, capacity, policy, VoxelLogOutput.STDOUT);
+    }
+
+    /**
+     * Switches the logger back to synchronous mode, writing all buffered events first.
+     */
+    public synchronized void disableAsync() {
+        VoxelAsyncAppender current = this.appender;
+        if (current == null) return;
+
+        this.appender = null;
+        current.shutdown();
+    }
+
+    public boolean isAsync() {
+        return appender != null;
+    }
+
+    public boolean isEnabled(@NotNull VoxelLogLevel level) {
+        return level.getLevel() <= currentLevel.getLevel();
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(VoxelLogLevel.DEBUG);
+    }
+
     public void error(String msg, Object... args) {
         log(VoxelLogLevel.ERROR, msg, args);
     }
@@ -44,54 +94,104 @@ public class VoxelLogger {
         log(VoxelLogLevel.DEBUG, msg, args);
     }
 
+    /**
+     * Logs an error, the suppliers are only called if the level is enabled.
+     */
+    public void error(String msg, Supplier<?>... args) {
+        log(VoxelLogLevel.ERROR, msg, (Object[]) args);
+    }
+
+    /**
+     * Logs a warning, the suppliers are only called if the level is enabled.
+     */
+    public void warn(String msg, Supplier<?>... args) {
+        log(VoxelLogLevel.WARN, msg, (Object[]) args);
+    }
+
+    /**
+     * Logs an info message, the suppliers are only called if the level is enabled.
+     */
+    public void info(String msg, Supplier<?>... args) {
+        log(VoxelLogLevel.INFO, msg, (Object[]) args);
+    }
+
+    /**
+     * Logs a debug message, the suppliers are only called if the level is enabled.
+     */
+    public void debug(String msg, Supplier<?>... args) {
+        log(VoxelLogLevel.DEBUG, msg, (Object[]) args);
+    }
+
     private void log(@NotNull VoxelLogLevel level, String msg, Object... args) {
         if (level.getLevel() > currentLevel.getLevel()) return;
 
-        String formattedMsg = formatMessage(msg, args);
-        String reset = "\u001B[0m";
-        String moveToStart = "\u001B[0G";
-        String fullMsg = moveToStart + coloredPrefix + " [" + level.name() + "] " + reset + formattedMsg + "\n";
+        VoxelAsyncAppender async = appender;
+        if (async != null) {
+            async.append(level, msg, args);
+            return;
+        }
 
-        try {
-            new FileOutputStream(FileDescriptor.out).write(fullMsg.getBytes());
-        } catch (Exception e) {}
+        VoxelLogOutput.STDOUT.write(render(level, msg, args));
     }
 
-    private String formatMessage(String msg, Object... args) {
-        if (args == null || args.length == 0) {
-            return msg;
+    /**
+     * Renders a full log line into the reusable builder of the current thread.
+     * <p>
+     * The returned builder is only valid until the next call on the same thread.
+     */
+    @NotNull CharSequence render(@NotNull VoxelLogLevel level, String msg, Object[] args) {
+        StringBuilder sb = BUILDER.get();
+        if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+            sb = new StringBuilder(INITIAL_CAPACITY);
+            BUILDER.set(sb);
         }
 
+        sb.setLength(0);
+        sb.append(MOVE_TO_START).append(coloredPrefix).append(" [").append(level.name()).append("] ").append(RESET);
+        formatMessage(sb, msg, args);
+        return sb.append('\n');
+    }
+
+    /**
+     * Replaces every {@code {}} placeholder with the next argument in a single pass.
+     * A {@link Throwable} as last argument is not used for a placeholder, its stack trace is appended instead.
+     */
+    private void formatMessage(@NotNull StringBuilder sb, String msg, Object[] args) {
+        if (msg == null) msg = "null";
+
+        int argCount = args == null ? 0 : args.length;
         Throwable throwable = null;
-        if (args[args.length - 1] instanceof Throwable) {
-            throwable = (Throwable) args[args.length - 1];
-            args = removeLastElement(args);
+        if (argCount > 0 && args[argCount - 1] instanceof Throwable last) {
+            throwable = last;
+            argCount--;
         }
 
-        String formattedMsg = msg;
-        for (Object arg : args) {
-            formattedMsg = formattedMsg.replaceFirst("\\{\\}", arg != null ? arg.toString() : "null");
+        int start = 0;
+        for (int argIndex = 0; argIndex < argCount; argIndex++) {
+            int placeholder = msg.indexOf("{}", start);
+            if (placeholder < 0) break;
+
+            sb.append(msg, start, placeholder);
+            appendArgument(sb, args[argIndex]);
+            start = placeholder + 2;
         }
+        sb.append(msg, start, msg.length());
 
         if (throwable != null) {
-            formattedMsg += "\n" + getStackTraceAsString(throwable);
+            sb.append('\n');
+            appendStackTrace(sb, throwable);
         }
-
-        return formattedMsg;
     }
 
-    private Object @NotNull [] removeLastElement(Object @NotNull [] array) {
-        Object[] newArray = new Object[array.length - 1];
-        System.arraycopy(array, 0, newArray, 0, newArray.length);
-        return newArray;
+    private void appendArgument(@NotNull StringBuilder sb, Object arg) {
+        if (arg instanceof Supplier<?> supplier) arg = supplier.get();
+        sb.append(arg);
     }
 
-    private @NotNull String getStackTraceAsString(@NotNull Throwable throwable) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(throwable.toString()).append("\n");
+    private void appendStackTrace(@NotNull StringBuilder sb, @NotNull Throwable throwable) {
+        sb.append(throwable).append('\n');
         for (StackTraceElement element : throwable.getStackTrace()) {
-            sb.append("\t").append(element.toString()).append("\n");
+            sb.append('\t').append(element).append('\n');
         }
-        return sb.toString();
     }
 }
@@ -0,0 +1,87 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.material;
+
+import org.bukkit.Material;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import sync.voxel.engine.api.material.VoxMaterial;
+import sync.voxel.engine.api.material.VoxMaterialRegistry;
+import sync.voxel.engine.api.util.identifier.VoxIdentifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolving the wrapper of a bukkit {@link Material} through the ordinal index of
+ * {@link VoxMaterialRegistry} against the identifier lookup and the string based lookup it
+ * replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VoxMaterialLookupBenchmark {
+
+    private static final int COUNT = 1024;
+
+    private VoxMaterialRegistry registry;
+    private Material[] materials;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Setup
+    public void setup() {
+        registry = new VoxMaterialRegistry();
+
+        List<Material> vanilla = new ArrayList<>();
+        for (Material material : Material.values()) {
+            if (material.isLegacy()) continue;
+            registry.registerIfAbsent(new VoxelBukkitMaterial(material));
+            vanilla.add(material);
+        }
+
+        // a random walk over the materials, as the blocks of a chunk would be
+        Collections.shuffle(vanilla, new Random(42));
+        materials = new Material[COUNT];
+        for (int i = 0; i < COUNT; i++) materials[i] = vanilla.get(i % vanilla.size());
+    }
+
+    private @NotNull Material next(@NotNull Cursor cursor) {
+        return materials[cursor.next++ & COUNT - 1];
+    }
+
+    @Benchmark
+    public VoxMaterial ordinalLookup(Cursor cursor) {
+        return registry.valueOf(next(cursor));
+    }
+
+    @Benchmark
+    public VoxMaterial identifierLookup(Cursor cursor) {
+        return registry.valueOf(VoxIdentifier.represent(next(cursor).getKey()));
+    }
+
+    /**
+     * The lookup before the ordinal index, the key was formatted and split again on every call.
+     */
+    @Benchmark
+    public VoxMaterial legacyLookup(Cursor cursor) {
+        String[] parts = next(cursor).getKey().toString().split(String.valueOf(':'));
+        return registry.valueOf(VoxIdentifier.of(parts[0], parts[1]));
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.network;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import sync.voxel.engine.paper.world.storage.VoxelChunk;
+import sync.voxel.engine.paper.world.storage.VoxelChunkSection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rewriting of synthetic 1.21.4 chunk data packets. The chunk has 24 sections: eight of stone
+ * with ores, two surface sections with many states and air above.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VoxelChunkRemapperBenchmark {
+
+    private static final int VOLUME = VoxelChunkSection.VOLUME;
+    private static final int MIN_SECTION = -4;
+    private static final int SECTIONS = 24;
+    private static final int CARRIER_FIRST = 580;
+    private static final int CARRIER_DEFAULT = 600;
+
+    private VoxelClientStates.Tables tables;
+    private byte[] packet;
+    private VoxelChunk twoCustomSections;
+    private VoxelChunk allCustomSections;
+
+    @Setup
+    public void setup() throws IOException {
+        int[] serverToClient = new int[CARRIER_DEFAULT + 20];
+        for (int state = 0; state < serverToClient.length; state++) serverToClient[state] = state;
+        for (int state = CARRIER_FIRST; state < CARRIER_FIRST + 16; state++) serverToClient[state] = CARRIER_DEFAULT;
+        int[] clientStateByRawId = new int[16];
+        for (int rawId = 0; rawId < clientStateByRawId.length; rawId++) clientStateByRawId[rawId] = CARRIER_FIRST + rawId;
+        tables = new VoxelClientStates.Tables(serverToClient, clientStateByRawId, new boolean[]{true});
+
+        Random random = new Random(11);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream sections = new DataOutputStream(data);
+        for (int section = 0; section < SECTIONS; section++) {
+            int[] states = new int[VOLUME];
+            if (section < 8) {
+                for (int i = 0; i < VOLUME; i++) states[i] = random.nextInt(20) == 0 ? 100 + random.nextInt(10) : 1;
+            } else if (section < 10) {
+                // placed carrier blocks of custom materials among the surface blocks
+                for (int i = 0; i < VOLUME; i++) states[i] = random.nextInt(4) == 0 ? 200 + random.nextInt(40) : random.nextInt(100) == 0 ? CARRIER_FIRST + random.nextInt(4) : 0;
+            }
+            writeSection(sections, states);
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeByte(10);
+        out.writeByte(12);
+        out.writeUTF("MOTION_BLOCKING");
+        out.writeInt(37);
+        for (int i = 0; i < 37; i++) out.writeLong(random.nextLong());
+        out.writeByte(0);
+        writeVarInt(out, data.size());
+        out.write(data.toByteArray());
+        writeVarInt(out, 0);
+        for (int i = 0; i < 6; i++) writeVarInt(out, 0);
+        packet = body.toByteArray();
+
+        twoCustomSections = new VoxelChunk(0, 0, MIN_SECTION, SECTIONS);
+        allCustomSections = new VoxelChunk(0, 0, MIN_SECTION, SECTIONS);
+        for (int section = 0; section < SECTIONS; section++) {
+            int y = (MIN_SECTION + section) * 16;
+            if (section == 8 || section == 9) twoCustomSections.set(random.nextInt(16), y + random.nextInt(16), random.nextInt(16), random.nextInt(16));
+            allCustomSections.set(random.nextInt(16), y + random.nextInt(16), random.nextInt(16), random.nextInt(16));
+        }
+    }
+
+    private static void writeSection(@NotNull DataOutputStream out, int @NotNull [] states) throws IOException {
+        int[] palette = Arrays.stream(states).distinct().toArray();
+        out.writeShort((int) Arrays.stream(states).filter(state -> state != 0).count());
+
+        if (palette.length == 1) {
+            out.writeByte(0);
+            writeVarInt(out, palette[0]);
+            writeVarInt(out, 0);
+        } else {
+            int bits = Math.max(4, 32 - Integer.numberOfLeadingZeros(palette.length - 1));
+            out.writeByte(bits);
+            writeVarInt(out, palette.length);
+            for (int state : palette) writeVarInt(out, state);
+
+            int[] indexByState = new int[CARRIER_DEFAULT + 20];
+            for (int i = 0; i < palette.length; i++) indexByState[palette[i]] = i;
+
+            int perLong = 64 / bits;
+            int longs = (VOLUME + perLong - 1) / perLong;
+            writeVarInt(out, longs);
+            int index = 0;
+            for (int l = 0; l < longs; l++) {
+                long word = 0;
+                for (int j = 0; j < perLong && index < VOLUME; j++) word |= (long) indexByState[states[index++]] << j * bits;
+                out.writeLong(word);
+            }
+        }
+
+        out.writeByte(0);
+        writeVarInt(out, 1);
+        writeVarInt(out, 0);
+    }
+
+    private static void writeVarInt(@NotNull DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    @Benchmark
+    public byte[] paletteOnly() {
+        return VoxelChunkRemapper.remapChunkPacket(packet, packet.length, tables, (x, z) -> null);
+    }
+
+    @Benchmark
+    public byte[] twoCustomSections() {
+        return VoxelChunkRemapper.remapChunkPacket(packet, packet.length, tables, (x, z) -> twoCustomSections);
+    }
+
+    /**
+     * Every section is unpacked and packed again, the cost without the palette only path.
+     */
+    @Benchmark
+    public byte[] allSectionsRewritten() {
+        return VoxelChunkRemapper.remapChunkPacket(packet, packet.length, tables, (x, z) -> allCustomSections);
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.resourcepack.builder;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import sync.voxel.engine.common.logger.VoxelLogLevel;
+import sync.voxel.engine.paper.VoxelEngine;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Builds of a generated pack with 5000 textures and 5000 models. The builder works on
+ * {@code plugins/voxel} in the working directory, the pack is generated there.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VoxelResourcePackBuilderBenchmark {
+
+    private static final int ASSETS = 5000;
+    private static final Path PACK = Paths.get("plugins/voxel/pack");
+    private static final Path BUILD = Paths.get("plugins/voxel/build");
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    @Param({"1", "4"})
+    private int parallelism;
+
+    private VoxelResourcePackBuilder.BuildOptions options;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        VoxelEngine.LOGGER.setLevel(VoxelLogLevel.WARN);
+        options = new VoxelResourcePackBuilder.BuildOptions(parallelism, false, false);
+        random = new Random(5);
+
+        delete(PACK);
+        delete(BUILD);
+        Path textures = Files.createDirectories(PACK.resolve("textures/bench/block"));
+        Path models = Files.createDirectories(PACK.resolve("models/bench/block"));
+        for (int i = 0; i < ASSETS; i++) {
+            Files.write(textures.resolve("texture_" + i + ".png"), png(512 + random.nextInt(3584)));
+            Files.writeString(models.resolve("model_" + i + ".json"), model(i));
+        }
+
+        // the incremental benchmarks start from a finished build
+        VoxelResourcePackBuilder.build(options);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws IOException {
+        delete(Paths.get("plugins"));
+    }
+
+    private byte @NotNull [] png(int size) {
+        byte[] data = new byte[size];
+        System.arraycopy(PNG_SIGNATURE, 0, data, 0, PNG_SIGNATURE.length);
+        // a few distinct values, compressible like image data
+        for (int i = PNG_SIGNATURE.length; i < size; i++) data[i] = (byte) random.nextInt(16);
+        return data;
+    }
+
+    private static @NotNull String model(int i) {
+        return "{\"parent\":\"minecraft:block/cube_all\",\"textures\":{\"all\":\"bench:block/texture_" + i + "\"}}";
+    }
+
+    private static void delete(@NotNull Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ColdBuild {
+        @Setup(Level.Iteration)
+        public void dropPreviousBuild() throws IOException {
+            delete(BUILD);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class OneChanged {
+        private int round;
+
+        @Setup(Level.Iteration)
+        public void changeOneTexture(VoxelResourcePackBuilderBenchmark pack) throws IOException {
+            Files.write(PACK.resolve("textures/bench/block/texture_" + round++ % ASSETS + ".png"), pack.png(2048));
+        }
+    }
+
+    @Benchmark
+    public VoxelResourcePackBuilder.BuildResult coldBuild(ColdBuild cold) throws IOException {
+        return VoxelResourcePackBuilder.build(options);
+    }
+
+    @Benchmark
+    public VoxelResourcePackBuilder.BuildResult unchangedBuild() throws IOException {
+        return VoxelResourcePackBuilder.build(options);
+    }
+
+    @Benchmark
+    public VoxelResourcePackBuilder.BuildResult oneChangedBuild(OneChanged changed) throws IOException {
+        return VoxelResourcePackBuilder.build(options);
+    }
+}
@@ -10,17 +10,53 @@
 package sync.voxel.engine.paper;
 
 import com.github.retrooper.packetevents.PacketEvents;
+import com.github.retrooper.packetevents.event.PacketListenerPriority;
 import io.github.retrooper.packetevents.factory.spigot.SpigotPacketEventsBuilder;
 
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.TextColor;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.jetbrains.annotations.NotNull;
+import sync.voxel.engine.api.registry.VoxRegistries;
+import sync.voxel.engine.common.logger.VoxelLogOverflowPolicy;
+import sync.voxel.engine.common.logger.VoxelLogger;
+import sync.voxel.engine.paper.command.VoxelEngineCommand;
+import sync.voxel.engine.paper.network.VoxelBlockChangeBatcher;
+import sync.voxel.engine.paper.network.VoxelBlockPacketListener;
+import sync.voxel.engine.paper.network.VoxelClientStates;
+import sync.voxel.engine.paper.resourcepack.builder.VoxelResourcePackBuilder;
+import sync.voxel.engine.paper.resourcepack.builder.VoxelVanillaConverter;
+import sync.voxel.engine.paper.resourcepack.registry.VoxelRegistryLoader;
+import sync.voxel.engine.paper.resourcepack.server.VoxelPackSender;
+import sync.voxel.engine.paper.resourcepack.server.VoxelPackServer;
+import sync.voxel.engine.paper.resourcepack.watcher.VoxelPackWatcher;
+import sync.voxel.engine.paper.scheduler.VoxelTickScheduler;
+import sync.voxel.engine.paper.world.VoxelWorld;
+import sync.voxel.engine.paper.world.VoxelWorldListener;
+import sync.voxel.engine.paper.world.storage.VoxelChunkPipeline;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 
 public class PaperPlugin extends JavaPlugin {
 
     public static PaperPlugin plugin;
     public static Component prefix = Component.text("V").color(TextColor.color(0xff0241)).append(Component.text("E").color(TextColor.color(0x00244f)).append(Component.text(" »").color(TextColor.color(0x555555)))) ;
 
+    private VoxelResourcePackBuilder.BuildOptions buildOptions;
+    private VoxelPackWatcher packWatcher;
+
     @Override
     public void onLoad() {
         PacketEvents.setAPI(SpigotPacketEventsBuilder.build(this));
@@ -31,15 +67,241 @@ public class PaperPlugin extends JavaPlugin {
     public void onEnable() {
 
         PaperPlugin.plugin = this;
+        saveDefaultConfig();
+        startAsyncLogging(getConfig());
+
         sync.voxel.engine.api.VoxelEngine.register(new VoxelEngine());
         PacketEvents.getAPI().init();
 
+        VoxelTickScheduler scheduler = new VoxelTickScheduler(getConfig().getLong("scheduler.tick-budget-nanos", VoxelTickScheduler.DEFAULT_BUDGET_NANOS));
+        getServer().getPluginManager().registerEvents(scheduler, this);
+        VoxelEngine.setScheduler(scheduler);
+
+        // runs in parallel off this thread, but dependent plugins expect the registries to be filled once we are enabled
+        VoxelVanillaConverter.convertVanilla();
+        VoxelRegistryLoader.load();
+        VoxelClientStates.rebuild();
+        // lookups are served from immutable snapshots from here on
+        VoxRegistries.MATERIAL.freeze();
+        VoxRegistries.MATERIAL_GROUPS.freeze();
+
+        startPackServer(getConfig());
+        buildOptions = new VoxelResourcePackBuilder.BuildOptions(Runtime.getRuntime().availableProcessors(),
+                false, getConfig().getBoolean("resource-pack.optimize-textures", false));
+        buildResourcePack();
+        startPackWatcher(getConfig());
+        PacketEvents.getAPI().getEventManager().registerListener(new VoxelBlockPacketListener(), PacketListenerPriority.HIGHEST);
+
+        VoxelChunkPipeline chunkPipeline = new VoxelChunkPipeline(VoxelChunkPipeline.DEFAULT_MAX_IN_FLIGHT, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        chunkPipeline.start(scheduler);
+        VoxelEngine.setChunkPipeline(chunkPipeline);
+
+        VoxelBlockChangeBatcher blockChangeBatcher = new VoxelBlockChangeBatcher();
+        blockChangeBatcher.start(scheduler);
+        VoxelEngine.setBlockChangeBatcher(blockChangeBatcher);
+
+        getServer().getPluginManager().registerEvents(new VoxelWorldListener(), this);
+
+        PluginCommand command = getCommand("voxelengine");
+        if (command != null) {
+            VoxelEngineCommand executor = new VoxelEngineCommand(this);
+            command.setExecutor(executor);
+            command.setTabCompleter(executor);
+        }
+        for (World world : Bukkit.getWorlds()) {
+            VoxelWorld voxelWorld = VoxelEngine.loadWorld(world);
+            for (Chunk chunk : world.getLoadedChunks()) chunkPipeline.request(voxelWorld, chunk.getX(), chunk.getZ());
+        }
+
+    }
+
+    /**
+     * Builds the resource pack in the background and serves it once done.
+     * <p>
+     * Must be called on the main thread, the pack entries are generated from the registries right away.
+     */
+    public void buildResourcePack() {
+        VoxelResourcePackBuilder.buildAsync(ForkJoinPool.commonPool(), buildOptions).thenAccept(result -> {
+            VoxelPackSender packSender = VoxelEngine.getPackSender();
+            if (packSender != null) packSender.publish(result);
+        }).exceptionally(error -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            VoxelEngine.LOGGER.error("Failed to build the resource pack", cause);
+            return null;
+        });
+    }
+
+    /**
+     * Reloads the pack registries and sends what changed to the players.
+     * <p>
+     * The registries are parsed and diffed off the main thread and swapped in by a high priority
+     * engine task. In the same task the client states are rebuilt, the loaded blocks whose client
+     * state changed are then collected world by world and resent. The resource pack is rebuilt
+     * incrementally and only sent again if its hash changed.
+     * <p>
+     * Must be called on the main thread.
+     *
+     * @return a future completing with the applied changes
+     * @throws IllegalStateException if a reload is already running
+     */
+    public @NotNull CompletableFuture<VoxelRegistryLoader.ReloadResult> reloadPack() {
+        VoxelTickScheduler scheduler = VoxelEngine.getScheduler();
+        return VoxelRegistryLoader.reloadAsync(ForkJoinPool.commonPool(), scheduler.executor(VoxelTickScheduler.Priority.HIGH)).thenApply(result -> {
+            if (result.isEmpty()) return result;
+
+            // completes inside the swap task, players never get a block with the old client states
+            BitSet changed = VoxelClientStates.rebuild();
+            VoxelEngine.LOGGER.info("Pack registries reloaded, {} materials changed their client state", changed.cardinality());
+            if (!changed.isEmpty()) {
+                for (VoxelWorld world : VoxelEngine.getLoadedWorlds()) {
+                    scheduler.execute(VoxelTickScheduler.Priority.NORMAL, () -> {
+                        int blocks = world.recordBlocks(changed);
+                        if (blocks > 0) VoxelEngine.LOGGER.debug("Resending {} blocks in {}", blocks, world.getBukkitWorld().getName());
+                    });
+                }
+            }
+
+            buildResourcePack();
+            return result;
+        });
+    }
+
+    private void startAsyncLogging(FileConfiguration config) {
+        if (!config.getBoolean("logging.async", true)) return;
+
+        int bufferSize = config.getInt("logging.buffer-size", VoxelLogger.DEFAULT_ASYNC_CAPACITY);
+        if (bufferSize < 2 || Integer.bitCount(bufferSize) != 1) {
+            VoxelEngine.LOGGER.warn("logging.buffer-size {} is not a power of two, using {}", bufferSize, VoxelLogger.DEFAULT_ASYNC_CAPACITY);
+            bufferSize = VoxelLogger.DEFAULT_ASYNC_CAPACITY;
+        }
+
+        String policyName = config.getString("logging.overflow-policy", "sample");
+        VoxelLogOverflowPolicy policy;
+        try {
+            policy = VoxelLogOverflowPolicy.valueOf(policyName.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            VoxelEngine.LOGGER.warn("Unknown logging.overflow-policy {}, using sample", policyName);
+            policy = VoxelLogOverflowPolicy.SAMPLE;
+        }
+
+        VoxelEngine.LOGGER.enableAsync(bufferSize, policy);
+    }
+
+    private void startPackWatcher(FileConfiguration config) {
+        if (!config.getBoolean("resource-pack.watch.enabled", false)) return;
+
+        long quietMillis = config.getLong("resource-pack.watch.quiet-millis", VoxelPackWatcher.DEFAULT_QUIET_MILLIS);
+        long maxDelayMillis = config.getLong("resource-pack.watch.max-delay-millis", VoxelPackWatcher.DEFAULT_MAX_DELAY_MILLIS);
+        try {
+            packWatcher = new VoxelPackWatcher(Paths.get("plugins/voxel/pack"), quietMillis, maxDelayMillis,
+                    changes -> VoxelEngine.getScheduler().execute(VoxelTickScheduler.Priority.NORMAL, () -> applyPackChanges(changes)));
+            VoxelEngine.LOGGER.info("Watching plugins/voxel/pack for changes");
+        } catch (IOException | IllegalArgumentException e) {
+            VoxelEngine.LOGGER.error("Failed to watch the pack folder", e);
+        }
+    }
+
+    /**
+     * Reloads the registries and rebuilds the pack for changed pack files, on the main thread.
+     */
+    private void applyPackChanges(@NotNull VoxelPackWatcher.Changes changes) {
+        if (!isEnabled()) return;
+        VoxelEngine.LOGGER.info("Pack files changed (namespaces {}, {} models, {} textures{})", changes.namespaces(), changes.models(), changes.textures(),
+                changes.overflow() ? ", events lost" : "");
+
+        if (!changes.registryChanged()) {
+            buildResourcePack();
+            return;
+        }
+
+        CompletableFuture<VoxelRegistryLoader.ReloadResult> reload;
+        try {
+            reload = reloadPack();
+        } catch (IllegalStateException e) {
+            // a reload is running, try again once it had time to finish
+            Bukkit.getScheduler().runTaskLater(this, () -> applyPackChanges(changes), 20);
+            return;
+        }
+
+        reload.whenComplete((result, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                VoxelEngine.LOGGER.error("Failed to reload the pack registries", cause);
+            }
+
+            // a reload that changed something rebuilt the pack already
+            if ((error != null || result.isEmpty()) && changes.assetsChanged()) {
+                VoxelEngine.getScheduler().execute(VoxelTickScheduler.Priority.LOW, this::buildResourcePack);
+            }
+        });
+    }
+
+    private VoxelPackSender startPackServer(FileConfiguration config) {
+        if (!config.getBoolean("resource-pack.server.enabled", false)) return null;
+
+        String bind = config.getString("resource-pack.server.bind", "0.0.0.0");
+        int port = config.getInt("resource-pack.server.port", VoxelPackServer.DEFAULT_PORT);
+        int maxDownloads = config.getInt("resource-pack.server.max-downloads", VoxelPackServer.DEFAULT_MAX_DOWNLOADS);
+
+        // players are never sent a url they cannot reach
+        String url = config.getString("resource-pack.server.public-url", "");
+        String host = !bind.equals("0.0.0.0") ? bind : Bukkit.getIp();
+        if (url.isBlank() && host.isBlank()) {
+            VoxelEngine.LOGGER.warn("Not starting the resource pack server, set resource-pack.server.public-url or the server-ip.");
+            return null;
+        }
+
+        VoxelPackServer server;
+        try {
+            server = new VoxelPackServer(new InetSocketAddress(bind, port), maxDownloads);
+        } catch (IOException e) {
+            VoxelEngine.LOGGER.error("Failed to start the resource pack server on {}:{}", bind, port, e);
+            return null;
+        }
+        if (url.isBlank()) url = "http://" + host + ":" + server.getPort();
+
+        VoxelPackSender sender = new VoxelPackSender(server, url, config.getBoolean("resource-pack.force", false));
+        getServer().getPluginManager().registerEvents(sender, this);
+        VoxelEngine.setPackSender(sender);
+        return sender;
     }
 
     @Override
     public void onDisable() {
+        if (packWatcher != null) {
+            try {
+                packWatcher.close();
+            } catch (IOException e) {
+                VoxelEngine.LOGGER.warn("Failed to stop the pack watcher", e);
+            }
+            packWatcher = null;
+        }
+
+        VoxelEngine.getChunkPipeline().stop();
+        VoxelEngine.setChunkPipeline(null);
+        VoxelEngine.getBlockChangeBatcher().stop();
+        VoxelEngine.setBlockChangeBatcher(null);
+        VoxelEngine.getScheduler().stop();
+        VoxelEngine.setScheduler(null);
+
+        VoxelPackSender packSender = VoxelEngine.getPackSender();
+        VoxelEngine.setPackSender(null);
+        if (packSender != null) {
+            try {
+                packSender.getServer().close();
+            } catch (IOException e) {
+                VoxelEngine.LOGGER.warn("Failed to stop the resource pack server", e);
+            }
+        }
+
+        for (World world : Bukkit.getWorlds()) {
+            VoxelWorld voxelWorld = VoxelEngine.unloadWorld(world);
+            if (voxelWorld != null) voxelWorld.close().join();
+        }
+
         sync.voxel.engine.api.VoxelEngine.unregister();
         PacketEvents.getAPI().terminate();
+        VoxelEngine.LOGGER.disableAsync();
     }
 
 }
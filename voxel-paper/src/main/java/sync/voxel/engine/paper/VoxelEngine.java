@@ -9,31 +9,186 @@
  */
 package sync.voxel.engine.paper;
 
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import sync.voxel.engine.api.VoxEngine;
 import sync.voxel.engine.api.world.VoxWorld;
 import sync.voxel.engine.common.logger.VoxelLogger;
+import sync.voxel.engine.paper.network.VoxelBlockChangeBatcher;
+import sync.voxel.engine.paper.network.VoxelChunkPacketCache;
+import sync.voxel.engine.paper.resourcepack.server.VoxelPackSender;
+import sync.voxel.engine.paper.scheduler.VoxelTickScheduler;
+import sync.voxel.engine.paper.world.VoxelWorld;
+import sync.voxel.engine.paper.world.storage.VoxelChunkPipeline;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class VoxelEngine implements VoxEngine {
 
     public static VoxelLogger LOGGER = new VoxelLogger("VoxelEngine");
     public static boolean IS_BUILDING;
 
-    public static Set<VoxWorld> worlds = new HashSet<>();
+    private static final Object WORLD_LOCK = new Object();
+    private static final Map<UUID, VoxelWorld> worlds = new ConcurrentHashMap<>();
+    private static volatile VoxelWorld[] worldsByHandle = new VoxelWorld[8];
+    private static volatile List<VoxWorld> worldSnapshot = List.of();
+    private static volatile VoxelTickScheduler scheduler;
+    private static volatile VoxelChunkPipeline chunkPipeline;
+    private static volatile VoxelBlockChangeBatcher blockChangeBatcher;
+    private static volatile VoxelPackSender packSender;
+    private static final VoxelChunkPacketCache chunkPacketCache = new VoxelChunkPacketCache(VoxelChunkPacketCache.DEFAULT_MAX_BYTES);
 
     @Override
     public VoxWorld getWorld(UUID uuid) {
-        for (VoxWorld world : worlds)
-            if (world.uuid().equals(uuid))
-                return world;
-
-        return null;
+        return worlds.get(uuid);
     }
 
     @Override
     public Collection<VoxWorld> getWorlds() {
-        return Collections.unmodifiableSet(worlds);
+        return worldSnapshot;
+    }
+
+    /**
+     * Returns the scheduler running engine work on the main thread, its metrics show the time spent per tick.
+     *
+     * @throws IllegalStateException if the engine is not enabled
+     */
+    public static @NotNull VoxelTickScheduler getScheduler() {
+        VoxelTickScheduler current = scheduler;
+        if (current == null) throw new IllegalStateException("The engine scheduler is not running");
+        return current;
+    }
+
+    static void setScheduler(@Nullable VoxelTickScheduler scheduler) {
+        VoxelEngine.scheduler = scheduler;
+    }
+
+    /**
+     * Returns the pipeline loading the custom blocks of chunks, its metrics show queue depths and stage latencies.
+     *
+     * @throws IllegalStateException if the engine is not enabled
+     */
+    public static @NotNull VoxelChunkPipeline getChunkPipeline() {
+        VoxelChunkPipeline pipeline = chunkPipeline;
+        if (pipeline == null) throw new IllegalStateException("The chunk pipeline is not running");
+        return pipeline;
+    }
+
+    static void setChunkPipeline(@Nullable VoxelChunkPipeline pipeline) {
+        chunkPipeline = pipeline;
+    }
+
+    /**
+     * Returns the batcher sending custom block changes, its metrics show batch sizes and bytes per tick.
+     *
+     * @throws IllegalStateException if the engine is not enabled
+     */
+    public static @NotNull VoxelBlockChangeBatcher getBlockChangeBatcher() {
+        VoxelBlockChangeBatcher batcher = blockChangeBatcher;
+        if (batcher == null) throw new IllegalStateException("The block change batcher is not running");
+        return batcher;
+    }
+
+    static void setBlockChangeBatcher(@Nullable VoxelBlockChangeBatcher batcher) {
+        blockChangeBatcher = batcher;
+    }
+
+    /**
+     * Returns the sender handing the resource pack to players, its server shows download metrics.
+     *
+     * @return the sender, or null if the resource pack server is disabled
+     */
+    public static @Nullable VoxelPackSender getPackSender() {
+        return packSender;
+    }
+
+    static void setPackSender(@Nullable VoxelPackSender sender) {
+        packSender = sender;
+    }
+
+    /**
+     * Returns the cache of remapped chunk packets, its metrics show hits, misses and evictions.
+     */
+    public static @NotNull VoxelChunkPacketCache getChunkPacketCache() {
+        return chunkPacketCache;
+    }
+
+    /**
+     * Returns a live view of all loaded worlds.
+     */
+    public static @NotNull Collection<VoxelWorld> getLoadedWorlds() {
+        return worlds.values();
+    }
+
+    /**
+     * Returns the world for a bukkit world.
+     *
+     * @param world the bukkit world
+     * @return the world, or null if it is not loaded
+     */
+    public static @Nullable VoxelWorld getWorld(@NotNull World world) {
+        return worlds.get(world.getUID());
+    }
+
+    /**
+     * Returns the world with the given handle.
+     *
+     * @param handle the handle of the world
+     * @return the world, or null if no world has this handle
+     */
+    public static @Nullable VoxelWorld getWorld(int handle) {
+        VoxelWorld[] byHandle = worldsByHandle;
+        return handle >= 0 && handle < byHandle.length ? byHandle[handle] : null;
+    }
+
+    /**
+     * Adds a bukkit world to the index, assigning it the lowest free handle.
+     *
+     * @param world the loaded bukkit world
+     * @return the indexed world
+     */
+    public static @NotNull VoxelWorld loadWorld(@NotNull World world) {
+        synchronized (WORLD_LOCK) {
+            VoxelWorld existing = worlds.get(world.getUID());
+            if (existing != null) return existing;
+
+            VoxelWorld[] byHandle = worldsByHandle;
+            int handle = 0;
+            while (handle < byHandle.length && byHandle[handle] != null) handle++;
+
+            byHandle = Arrays.copyOf(byHandle, Math.max(byHandle.length, handle + 1));
+            VoxelWorld voxelWorld = new VoxelWorld(world, handle);
+            byHandle[handle] = voxelWorld;
+
+            worldsByHandle = byHandle;
+            worlds.put(voxelWorld.uuid(), voxelWorld);
+            worldSnapshot = List.copyOf(worlds.values());
+            return voxelWorld;
+        }
+    }
+
+    /**
+     * Removes a bukkit world from the index and frees its handle.
+     *
+     * @param world the unloaded bukkit world
+     * @return the removed world, or null if it was not indexed
+     */
+    public static @Nullable VoxelWorld unloadWorld(@NotNull World world) {
+        synchronized (WORLD_LOCK) {
+            VoxelWorld removed = worlds.remove(world.getUID());
+            if (removed == null) return null;
+
+            VoxelWorld[] byHandle = worldsByHandle.clone();
+            byHandle[removed.handle()] = null;
+
+            worldsByHandle = byHandle;
+            worldSnapshot = List.copyOf(worlds.values());
+            // the handle is given to the next loaded world
+            chunkPacketCache.invalidateAll(removed.handle());
+            return removed;
+        }
     }
 
 }
@@ -0,0 +1,149 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.command;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.jetbrains.annotations.NotNull;
+import sync.voxel.engine.paper.PaperPlugin;
+import sync.voxel.engine.paper.VoxelEngine;
+import sync.voxel.engine.paper.resourcepack.registry.VoxelRegistryLoader;
+import sync.voxel.engine.paper.scheduler.VoxelTickScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The {@code /voxelengine} command.
+ * <p>
+ * {@code /voxelengine reload} reloads the pack registries without a restart, see {@link PaperPlugin#reloadPack()}.
+ * {@code /voxelengine scheduler} shows how much of each tick the engine work takes, see {@link VoxelTickScheduler}.
+ */
+public class VoxelEngineCommand implements TabExecutor {
+
+    private static final String PERMISSION = "voxelengine.command.main";
+    private static final String RELOAD_PERMISSION = "voxelengine.command.reload";
+    private static final String SCHEDULER_PERMISSION = "voxelengine.command.scheduler";
+
+    private final PaperPlugin plugin;
+
+    public VoxelEngineCommand(@NotNull PaperPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String @NotNull [] args) {
+        if (!sender.hasPermission(PERMISSION)) {
+            send(sender, Component.text("You are not allowed to use this command.", NamedTextColor.RED));
+            return true;
+        }
+
+        if (args.length == 1 && args[0].equalsIgnoreCase("reload")) {
+            if (!sender.hasPermission(RELOAD_PERMISSION)) {
+                send(sender, Component.text("You are not allowed to reload the pack.", NamedTextColor.RED));
+                return true;
+            }
+            reload(sender);
+            return true;
+        }
+
+        if (args.length >= 1 && args.length <= 2 && args[0].equalsIgnoreCase("scheduler")) {
+            if (!sender.hasPermission(SCHEDULER_PERMISSION)) {
+                send(sender, Component.text("You are not allowed to view the scheduler.", NamedTextColor.RED));
+                return true;
+            }
+            scheduler(sender, args.length == 2 && args[1].equalsIgnoreCase("reset"));
+            return true;
+        }
+
+        send(sender, Component.text("Usage: /" + label + " <reload|scheduler [reset]>", NamedTextColor.GRAY));
+        return true;
+    }
+
+    @Override
+    public @NotNull List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String @NotNull [] args) {
+        List<String> completions = new ArrayList<>();
+        if (args.length == 1) {
+            String typed = args[0].toLowerCase();
+            if (sender.hasPermission(RELOAD_PERMISSION) && "reload".startsWith(typed)) completions.add("reload");
+            if (sender.hasPermission(SCHEDULER_PERMISSION) && "scheduler".startsWith(typed)) completions.add("scheduler");
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("scheduler") && sender.hasPermission(SCHEDULER_PERMISSION)
+                && "reset".startsWith(args[1].toLowerCase())) {
+            completions.add("reset");
+        }
+        return completions;
+    }
+
+    private void scheduler(@NotNull CommandSender sender, boolean reset) {
+        VoxelTickScheduler scheduler = VoxelEngine.getScheduler();
+        VoxelTickScheduler.TickMetrics metrics = scheduler.getMetrics();
+        if (reset) {
+            metrics.reset();
+            send(sender, Component.text("Scheduler metrics reset.", NamedTextColor.GRAY));
+            return;
+        }
+
+        send(sender, Component.text("Budget " + micros(scheduler.getBudgetNanos()) + " per tick, " + scheduler.getPendingCount() + " tasks pending", NamedTextColor.GRAY));
+        send(sender, Component.text(metrics.getTicks() + " ticks, " + metrics.getTasks() + " tasks, avg " + micros(metrics.getAverageNanos())
+                + ", max " + micros(metrics.getMaxNanos()) + ", " + metrics.getExhaustedTicks() + " ticks left work over", NamedTextColor.GRAY));
+
+        long[] bounds = VoxelTickScheduler.TickMetrics.getBucketBoundsNanos();
+        long[] counts = metrics.getBucketCounts();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            String range = i < bounds.length ? "<= " + micros(bounds[i]) : "> " + micros(bounds[bounds.length - 1]);
+            send(sender, Component.text(range + ": " + counts[i], NamedTextColor.YELLOW));
+        }
+    }
+
+    private static @NotNull String micros(long nanos) {
+        return nanos / 1000 + " µs";
+    }
+
+    private void reload(@NotNull CommandSender sender) {
+        long start = System.nanoTime();
+        CompletableFuture<VoxelRegistryLoader.ReloadResult> reload;
+        try {
+            reload = plugin.reloadPack();
+        } catch (IllegalStateException e) {
+            send(sender, Component.text(e.getMessage() + ".", NamedTextColor.RED));
+            return;
+        }
+
+        send(sender, Component.text("Reloading the pack registries...", NamedTextColor.GRAY));
+        reload.whenComplete((result, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                VoxelEngine.LOGGER.error("Failed to reload the pack registries", cause);
+                send(sender, Component.text("Reload failed: " + cause.getMessage(), NamedTextColor.RED));
+            } else if (result.isEmpty()) {
+                send(sender, Component.text("Nothing changed.", NamedTextColor.GRAY));
+            } else {
+                send(sender, Component.text(summary(result, (System.nanoTime() - start) / 1_000_000), NamedTextColor.GREEN));
+            }
+        });
+    }
+
+    private static @NotNull String summary(@NotNull VoxelRegistryLoader.ReloadResult result, long millis) {
+        return "Reloaded " + result.parsed() + " namespaces in " + millis + " ms: materials +" + result.addedMaterials()
+                + " ~" + result.changedMaterials() + " -" + result.removedMaterials() + ", groups +" + result.addedGroups()
+                + " ~" + result.changedGroups() + " -" + result.removedGroups()
+                + (result.invalid() > 0 ? ", " + result.invalid() + " invalid entries, see the console" : "");
+    }
+
+    private static void send(@NotNull CommandSender sender, @NotNull Component message) {
+        sender.sendMessage(PaperPlugin.prefix.append(Component.space()).append(message));
+    }
+}
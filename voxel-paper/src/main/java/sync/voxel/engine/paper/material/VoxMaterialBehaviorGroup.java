@@ -3,10 +3,12 @@ package sync.voxel.engine.paper.material;
 import org.jetbrains.annotations.NotNull;
 import sync.voxel.engine.api.util.group.VoxBehaviorGroup;
 import sync.voxel.engine.api.material.VoxMaterial;
+import sync.voxel.engine.api.registry.VoxRegistries;
 import sync.voxel.engine.api.util.identifier.VoxIdentifier;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public class VoxMaterialBehaviorGroup implements VoxBehaviorGroup<VoxMaterial> {
 
@@ -20,12 +22,15 @@ public class VoxMaterialBehaviorGroup implements VoxBehaviorGroup<VoxMaterial> {
 
     @Override
     public void add(@NotNull VoxMaterial element) {
-        if (!elements.containsKey(element.identifier())) elements.put(element.identifier(), element);
+        if (elements.putIfAbsent(element.identifier(), element) == null) {
+            VoxRegistries.MATERIAL_GROUPS.updateMembership(this, element, true);
+        }
     }
 
     @Override
     public void remove(@NotNull VoxMaterial element) {
-        elements.remove(element.identifier());
+        VoxMaterial removed = elements.remove(element.identifier());
+        if (removed != null) VoxRegistries.MATERIAL_GROUPS.updateMembership(this, removed, false);
     }
 
     @Override
@@ -33,6 +38,11 @@ public class VoxMaterialBehaviorGroup implements VoxBehaviorGroup<VoxMaterial> {
         return elements.containsKey(element.identifier());
     }
 
+    @Override
+    public void forEach(@NotNull Consumer<? super VoxMaterial> action) {
+        elements.values().forEach(action);
+    }
+
     @Override
     public VoxIdentifier identifier() {
         return identifier;
@@ -0,0 +1,214 @@
+package sync.voxel.engine.paper.material;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import sync.voxel.engine.api.material.VoxMaterial;
+import sync.voxel.engine.api.registry.VoxIndexedRegistry;
+import sync.voxel.engine.api.registry.VoxRegistries;
+import sync.voxel.engine.api.util.group.VoxBehaviorGroup;
+import sync.voxel.engine.api.util.identifier.VoxIdentifier;
+
+import java.util.BitSet;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * A {@link VoxBehaviorGroup} whose membership is a bitset keyed on the material raw ids of
+ * {@link VoxRegistries#MATERIAL}.
+ * <p>
+ * The bitset is replaced on every change, so {@link #contains(VoxMaterial)} never locks. Filling
+ * a group one material at a time copies the bitset for every material, use {@link #addAll} to
+ * add many materials at once.
+ * Groups can be composed with {@link #union}, {@link #intersection} and {@link #difference}.
+ */
+public class VoxMaterialBitsetGroup implements VoxBehaviorGroup<VoxMaterial> {
+
+    private final VoxIdentifier identifier;
+    private volatile BitSet members;
+
+    public VoxMaterialBitsetGroup(VoxIdentifier identifier) {
+        this(identifier, new BitSet());
+    }
+
+    /**
+     * Creates a group from a set of material raw ids.
+     *
+     * @param identifier the group identifier
+     * @param members    the raw ids of the members, the bitset is copied
+     */
+    public VoxMaterialBitsetGroup(VoxIdentifier identifier, @NotNull BitSet members) {
+        this.identifier = identifier;
+        this.members = (BitSet) members.clone();
+    }
+
+    @Override
+    public void add(@NotNull VoxMaterial element) {
+        int rawId = requireRawId(element);
+        if (update(rawId, true)) VoxRegistries.MATERIAL_GROUPS.updateMembership(this, element, true);
+    }
+
+    @Override
+    public void remove(@NotNull VoxMaterial element) {
+        int rawId = VoxRegistries.MATERIAL.rawIdOf(element);
+        if (rawId == VoxIndexedRegistry.UNKNOWN_RAW_ID) return;
+        if (update(rawId, false)) VoxRegistries.MATERIAL_GROUPS.updateMembership(this, element, false);
+    }
+
+    /**
+     * Adds all materials with the given raw ids, publishing the members once.
+     *
+     * @param rawIds the material raw ids
+     * @throws IllegalArgumentException if a raw id belongs to no registered material
+     */
+    public void addAll(@NotNull BitSet rawIds) {
+        for (int rawId = rawIds.nextSetBit(0); rawId >= 0; rawId = rawIds.nextSetBit(rawId + 1)) {
+            if (VoxRegistries.MATERIAL.valueOf(rawId) == null) throw new IllegalArgumentException("No material is registered with raw id " + rawId);
+        }
+        updateMemberships(updateAll(rawIds, true), true);
+    }
+
+    /**
+     * Removes all materials with the given raw ids, publishing the members once.
+     *
+     * @param rawIds the material raw ids
+     */
+    public void removeAll(@NotNull BitSet rawIds) {
+        updateMemberships(updateAll(rawIds, false), false);
+    }
+
+    @Override
+    public boolean contains(@NotNull VoxMaterial element) {
+        return containsRawId(VoxRegistries.MATERIAL.rawIdOf(element));
+    }
+
+    /**
+     * Checks whether the material with the given raw id is part of this group.
+     *
+     * @param rawId the material raw id
+     * @return true if the material is part of the group
+     */
+    public boolean containsRawId(int rawId) {
+        return rawId >= 0 && members.get(rawId);
+    }
+
+    @Override
+    public void forEach(@NotNull Consumer<? super VoxMaterial> action) {
+        forEachRawId(rawId -> {
+            VoxMaterial material = VoxRegistries.MATERIAL.valueOf(rawId);
+            if (material != null) action.accept(material);
+        });
+    }
+
+    /**
+     * Performs the given action for the raw id of every member, without boxing.
+     *
+     * @param action the action to perform
+     */
+    public void forEachRawId(@NotNull IntConsumer action) {
+        BitSet bits = members;
+        for (int rawId = bits.nextSetBit(0); rawId >= 0; rawId = bits.nextSetBit(rawId + 1)) {
+            action.accept(rawId);
+        }
+    }
+
+    /**
+     * Returns true if both groups have exactly the same members.
+     */
+    public boolean hasSameMembers(@NotNull VoxMaterialBitsetGroup other) {
+        return members.equals(other.members);
+    }
+
+    /**
+     * Returns the number of members.
+     */
+    public int size() {
+        return members.cardinality();
+    }
+
+    /**
+     * Creates a new group with all members of this group and the other group.
+     *
+     * @param identifier the identifier of the new group
+     * @param other      the other group
+     * @return the new group
+     */
+    @Contract("_, _ -> new")
+    public @NotNull VoxMaterialBitsetGroup union(@NotNull VoxIdentifier identifier, @NotNull VoxMaterialBitsetGroup other) {
+        BitSet bits = (BitSet) members.clone();
+        bits.or(other.members);
+        return new VoxMaterialBitsetGroup(identifier, bits);
+    }
+
+    /**
+     * Creates a new group with the members that are part of both this group and the other group.
+     *
+     * @param identifier the identifier of the new group
+     * @param other      the other group
+     * @return the new group
+     */
+    @Contract("_, _ -> new")
+    public @NotNull VoxMaterialBitsetGroup intersection(@NotNull VoxIdentifier identifier, @NotNull VoxMaterialBitsetGroup other) {
+        BitSet bits = (BitSet) members.clone();
+        bits.and(other.members);
+        return new VoxMaterialBitsetGroup(identifier, bits);
+    }
+
+    /**
+     * Creates a new group with the members of this group that are not part of the other group.
+     *
+     * @param identifier the identifier of the new group
+     * @param other      the other group
+     * @return the new group
+     */
+    @Contract("_, _ -> new")
+    public @NotNull VoxMaterialBitsetGroup difference(@NotNull VoxIdentifier identifier, @NotNull VoxMaterialBitsetGroup other) {
+        BitSet bits = (BitSet) members.clone();
+        bits.andNot(other.members);
+        return new VoxMaterialBitsetGroup(identifier, bits);
+    }
+
+    @Override
+    public VoxIdentifier identifier() {
+        return identifier;
+    }
+
+    private synchronized boolean update(int rawId, boolean member) {
+        if (members.get(rawId) == member) return false;
+
+        BitSet bits = (BitSet) members.clone();
+        bits.set(rawId, member);
+        members = bits;
+        return true;
+    }
+
+    /**
+     * Sets or clears the given raw ids and returns the ones that changed.
+     */
+    private synchronized @NotNull BitSet updateAll(@NotNull BitSet rawIds, boolean member) {
+        BitSet changed = (BitSet) rawIds.clone();
+        if (member) changed.andNot(members);
+        else changed.and(members);
+        if (changed.isEmpty()) return changed;
+
+        BitSet bits = (BitSet) members.clone();
+        if (member) bits.or(changed);
+        else bits.andNot(changed);
+        members = bits;
+        return changed;
+    }
+
+    private void updateMemberships(@NotNull BitSet changed, boolean member) {
+        for (int rawId = changed.nextSetBit(0); rawId >= 0; rawId = changed.nextSetBit(rawId + 1)) {
+            VoxMaterial material = VoxRegistries.MATERIAL.valueOf(rawId);
+            if (material != null) VoxRegistries.MATERIAL_GROUPS.updateMembership(this, material, member);
+        }
+    }
+
+    private static int requireRawId(@NotNull VoxMaterial element) {
+        int rawId = VoxRegistries.MATERIAL.rawIdOf(element);
+        if (rawId == VoxIndexedRegistry.UNKNOWN_RAW_ID) {
+            throw new IllegalArgumentException("Material is not registered: " + element.identifier());
+        }
+        return rawId;
+    }
+}
@@ -32,11 +32,6 @@ public class VoxelBukkitMaterial implements VoxMaterial {
         return VoxMaterialPresets.VANILLA;
     }
 
-    @Override
-    public <T> T getAttribute(String key, Class<T> type, T defaultValue) {
-        return defaultValue;
-    }
-
     @Override
     public VoxIdentifier identifier() {
         return identifier;
@@ -0,0 +1,62 @@
+package sync.voxel.engine.paper.material;
+
+import org.bukkit.Material;
+import org.jetbrains.annotations.NotNull;
+
+import sync.voxel.engine.api.material.VoxAttributeTable;
+import sync.voxel.engine.api.material.VoxMaterial;
+import sync.voxel.engine.api.resourcepack.validator.VoxMaterialPresets;
+import sync.voxel.engine.api.util.identifier.VoxIdentifier;
+
+import java.util.Map;
+
+/**
+ * A material defined by a voxel pack.
+ * <p>
+ * The vanilla {@link Material} a custom material is backed by is resolved from its preset once,
+ * {@link #toVaMaterial()} only returns that constant. Attributes are resolved to the slots of
+ * the attribute keys on creation.
+ */
+public class VoxelCustomMaterial implements VoxMaterial {
+    private final VoxIdentifier identifier;
+    private final VoxMaterialPresets preset;
+    private final Material vaMaterial;
+    private final VoxAttributeTable attributes;
+
+    public VoxelCustomMaterial(@NotNull VoxIdentifier identifier, @NotNull VoxMaterialPresets preset, @NotNull Map<String, Object> attributes) {
+        if (preset.getCarrier() == null) {
+            throw new IllegalArgumentException("Preset " + preset + " cannot be used for custom materials");
+        }
+
+        this.identifier = identifier;
+        this.preset = preset;
+        this.vaMaterial = preset.getCarrier();
+        this.attributes = VoxAttributeTable.of(attributes);
+    }
+
+    @Override
+    public @NotNull Material toVaMaterial() {
+        return vaMaterial;
+    }
+
+    @Override
+    public boolean isVanillaMaterial() {
+        return false;
+    }
+
+    @Override
+    public VoxMaterialPresets getVoxRenderType() {
+        return preset;
+    }
+
+    @Override
+    public @NotNull VoxAttributeTable getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public VoxIdentifier identifier() {
+        return identifier;
+    }
+
+}
@@ -0,0 +1,262 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.network;
+
+import com.github.retrooper.packetevents.PacketEvents;
+import com.github.retrooper.packetevents.manager.player.PlayerManager;
+import com.github.retrooper.packetevents.util.Vector3i;
+import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerMultiBlockChange;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import sync.voxel.engine.paper.VoxelEngine;
+import sync.voxel.engine.paper.scheduler.VoxelTickScheduler;
+import sync.voxel.engine.paper.world.VoxelBlockChanges;
+import sync.voxel.engine.paper.world.VoxelWorld;
+import sync.voxel.engine.paper.world.storage.VoxelChunk;
+import sync.voxel.engine.paper.world.storage.VoxelChunkSection;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends the custom block changes of a tick to the players that can see them.
+ * <p>
+ * At the end of every tick the recorded changes of each world are drained and every changed
+ * section is sent as one multi block change packet to each player in view distance, no matter
+ * how many of its blocks changed. Flushing runs first in the {@link VoxelTickScheduler} budget,
+ * sections that do not fit in it are sent next tick.
+ */
+public final class VoxelBlockChangeBatcher {
+
+    private final LongAdder totalTicks = new LongAdder();
+    private final LongAdder totalSections = new LongAdder();
+    private final LongAdder totalBlocks = new LongAdder();
+    private final LongAdder totalPackets = new LongAdder();
+    private final LongAdder totalBytes = new LongAdder();
+
+    private volatile int lastTickSections;
+    private volatile int lastTickBlocks;
+    private volatile int lastTickPackets;
+    private volatile long lastTickBytes;
+    private volatile long lastTickMaxPlayerBytes;
+
+    // reused on the main thread while flushing
+    private Viewer[] viewers = new Viewer[16];
+    private int viewerCount;
+    private int tickSections;
+    private int tickBlocks;
+    private int tickPackets;
+    private long tickBytes;
+    private volatile boolean running;
+    private volatile boolean stopped;
+
+    /**
+     * Starts flushing the recorded changes every tick.
+     */
+    public void start(@NotNull VoxelTickScheduler scheduler) {
+        if (running) throw new IllegalStateException("Block change batcher is already running");
+        running = true;
+        scheduler.submit(VoxelTickScheduler.Priority.HIGH, deadlineNanos -> {
+            if (stopped) return VoxelTickScheduler.Result.DONE;
+            return flush(true, deadlineNanos) ? VoxelTickScheduler.Result.CONTINUE : VoxelTickScheduler.Result.IDLE;
+        });
+    }
+
+    /**
+     * Stops flushing, changes recorded afterwards are only sent by {@link #flush()}.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Sends all recorded changes, must run on the main thread.
+     */
+    public void flush() {
+        flush(false, 0L);
+    }
+
+    /**
+     * @return true if any world had changes to send
+     */
+    private boolean flush(boolean bounded, long deadlineNanos) {
+        tickSections = 0;
+        tickBlocks = 0;
+        tickPackets = 0;
+        tickBytes = 0;
+        long maxPlayerBytes = 0;
+        boolean drained = false;
+
+        PlayerManager players = PacketEvents.getAPI().getPlayerManager();
+        for (VoxelWorld world : VoxelEngine.getLoadedWorlds()) {
+            VoxelBlockChanges changes = world.getBlockChanges();
+            if (changes.isEmpty()) continue;
+
+            drained = true;
+            collectViewers(world.getBukkitWorld());
+            VoxelBlockChanges.Consumer consumer = (sectionX, sectionY, sectionZ, positions, count) ->
+                    send(players, world, sectionX, sectionY, sectionZ, positions, count);
+            if (bounded) changes.drain(consumer, deadlineNanos);
+            else changes.drain(consumer);
+
+            for (int i = 0; i < viewerCount; i++) {
+                maxPlayerBytes = Math.max(maxPlayerBytes, viewers[i].bytes);
+                viewers[i].player = null;
+            }
+        }
+
+        lastTickSections = tickSections;
+        lastTickBlocks = tickBlocks;
+        lastTickPackets = tickPackets;
+        lastTickBytes = tickBytes;
+        lastTickMaxPlayerBytes = maxPlayerBytes;
+
+        totalTicks.increment();
+        totalSections.add(tickSections);
+        totalBlocks.add(tickBlocks);
+        totalPackets.add(tickPackets);
+        totalBytes.add(tickBytes);
+        return drained;
+    }
+
+    private void collectViewers(@NotNull World world) {
+        List<Player> players = world.getPlayers();
+        if (viewers.length < players.size()) viewers = new Viewer[Integer.highestOneBit(players.size()) << 1];
+
+        viewerCount = 0;
+        for (Player player : players) {
+            Viewer viewer = viewers[viewerCount];
+            if (viewer == null) viewers[viewerCount] = viewer = new Viewer();
+
+            Location location = player.getLocation();
+            viewer.player = player;
+            viewer.chunkX = location.getBlockX() >> 4;
+            viewer.chunkZ = location.getBlockZ() >> 4;
+            viewer.bytes = 0;
+            viewerCount++;
+        }
+    }
+
+    private void send(@NotNull PlayerManager players, @NotNull VoxelWorld world, int sectionX, int sectionY, int sectionZ, short @NotNull [] positions, int count) {
+        World bukkitWorld = world.getBukkitWorld();
+        int viewDistance = bukkitWorld.getViewDistance();
+        VoxelChunk chunk = world.getChunk(sectionX, sectionZ);
+        VoxelChunkSection section = chunk == null ? null : chunk.getSection(sectionY);
+
+        int baseX = sectionX << 4;
+        int baseY = sectionY << 4;
+        int baseZ = sectionZ << 4;
+
+        WrapperPlayServerMultiBlockChange.EncodedBlock[] blocks = new WrapperPlayServerMultiBlockChange.EncodedBlock[count];
+        // section position (8), trust edges (1) and block count (varint)
+        long bytes = 9 + varIntSize(count);
+
+        for (int i = 0; i < count; i++) {
+            int position = positions[i];
+            int x = position & 15;
+            int y = position >> 8 & 15;
+            int z = position >> 4 & 15;
+
+            int rawId = section == null ? VoxelChunkSection.NO_BLOCK : section.get(x, y, z);
+            int state = rawId == VoxelChunkSection.NO_BLOCK
+                    ? VoxelClientStates.stateOf(bukkitWorld.getBlockAt(baseX + x, baseY + y, baseZ + z).getBlockData())
+                    : VoxelClientStates.stateOf(rawId);
+
+            blocks[i] = new WrapperPlayServerMultiBlockChange.EncodedBlock(state, baseX + x, baseY + y, baseZ + z);
+            bytes += varLongSize((long) state << 12 | (x << 8 | z << 4 | y));
+        }
+
+        tickSections++;
+        tickBlocks += count;
+
+        WrapperPlayServerMultiBlockChange packet = new WrapperPlayServerMultiBlockChange(new Vector3i(sectionX, sectionY, sectionZ), true, blocks);
+        for (int i = 0; i < viewerCount; i++) {
+            Viewer viewer = viewers[i];
+            if (Math.abs(viewer.chunkX - sectionX) > viewDistance || Math.abs(viewer.chunkZ - sectionZ) > viewDistance) continue;
+
+            players.sendPacket(viewer.player, packet);
+            viewer.bytes += bytes;
+            tickPackets++;
+            tickBytes += bytes;
+        }
+    }
+
+    private static int varIntSize(int value) {
+        return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    private static int varLongSize(long value) {
+        return (63 - Long.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    /**
+     * Returns the number of sections sent in the last tick.
+     */
+    public int getLastTickSections() {
+        return lastTickSections;
+    }
+
+    /**
+     * Returns the number of changed blocks sent in the last tick.
+     */
+    public int getLastTickBlocks() {
+        return lastTickBlocks;
+    }
+
+    /**
+     * Returns the number of packets sent in the last tick, one per section and viewer.
+     */
+    public int getLastTickPackets() {
+        return lastTickPackets;
+    }
+
+    /**
+     * Returns the estimated payload bytes sent in the last tick.
+     */
+    public long getLastTickBytes() {
+        return lastTickBytes;
+    }
+
+    /**
+     * Returns the estimated payload bytes the most affected player received in the last tick.
+     */
+    public long getLastTickMaxPlayerBytes() {
+        return lastTickMaxPlayerBytes;
+    }
+
+    /**
+     * Returns the average number of blocks per section packet since the start.
+     */
+    public double getAverageBatchSize() {
+        long sections = totalSections.sum();
+        return sections == 0 ? 0 : (double) totalBlocks.sum() / sections;
+    }
+
+    /**
+     * Returns the average estimated payload bytes sent per tick since the start.
+     */
+    public double getAverageBytesPerTick() {
+        long ticks = totalTicks.sum();
+        return ticks == 0 ? 0 : (double) totalBytes.sum() / ticks;
+    }
+
+    public long getTotalPackets() {
+        return totalPackets.sum();
+    }
+
+    private static final class Viewer {
+        private Player player;
+        private int chunkX;
+        private int chunkZ;
+        private long bytes;
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.network;
+
+import com.github.retrooper.packetevents.event.PacketListener;
+import com.github.retrooper.packetevents.event.PacketSendEvent;
+import com.github.retrooper.packetevents.netty.buffer.ByteBufHelper;
+import com.github.retrooper.packetevents.protocol.packettype.PacketType;
+import com.github.retrooper.packetevents.protocol.packettype.PacketTypeCommon;
+import com.github.retrooper.packetevents.util.Vector3i;
+import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerBlockChange;
+import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerMultiBlockChange;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.paper.VoxelEngine;
+import sync.voxel.engine.paper.world.VoxelWorld;
+import sync.voxel.engine.paper.world.storage.VoxelChunk;
+import sync.voxel.engine.paper.world.storage.VoxelChunkSection;
+
+/**
+ * Replaces server block states with the states the client renders in outgoing chunk and block
+ * change packets, and puts custom blocks into them.
+ * <p>
+ * Runs on the netty threads. All lookups go through the precomputed {@link VoxelClientStates}
+ * tables, no registry or bukkit block is touched while a packet is rewritten.
+ */
+public final class VoxelBlockPacketListener implements PacketListener {
+
+    private volatile boolean failureLogged;
+
+    @Override
+    public void onPacketSend(@NotNull PacketSendEvent event) {
+        PacketTypeCommon type = event.getPacketType();
+        if (type != PacketType.Play.Server.CHUNK_DATA && type != PacketType.Play.Server.BLOCK_CHANGE && type != PacketType.Play.Server.MULTI_BLOCK_CHANGE) return;
+
+        VoxelClientStates.Tables tables = VoxelClientStates.getTables();
+        VoxelWorld world = worldOf(event);
+
+        try {
+            if (type == PacketType.Play.Server.CHUNK_DATA) {
+                remapChunk(event, tables, world);
+            } else if (type == PacketType.Play.Server.BLOCK_CHANGE) {
+                remapBlockChange(event, tables, world);
+            } else {
+                remapMultiBlockChange(event, tables, world);
+            }
+        } catch (RuntimeException e) {
+            // the packet is sent unchanged, log once to not flood the console
+            if (!failureLogged) {
+                failureLogged = true;
+                VoxelEngine.LOGGER.warn("Failed to remap {} packet, it is sent unchanged", type, e);
+            }
+        }
+    }
+
+    private void remapChunk(@NotNull PacketSendEvent event, @NotNull VoxelClientStates.Tables tables, @Nullable VoxelWorld world) {
+        Object buffer = event.getByteBuf();
+        int start = ByteBufHelper.readerIndex(buffer);
+        int length = ByteBufHelper.readableBytes(buffer);
+        if (length < 8) return;
+
+        // the chunk position is enough to skip chunks without anything to remap
+        byte[] position = new byte[8];
+        ByteBufHelper.getBytes(buffer, start, position);
+        int chunkX = readInt(position, 0);
+        int chunkZ = readInt(position, 4);
+        VoxelChunk chunk = world == null ? null : world.getChunk(chunkX, chunkZ);
+        if (tables.serverToClient().length == 0 && chunk == null) return;
+
+        byte[] packet = new byte[length];
+        ByteBufHelper.getBytes(buffer, start, packet);
+
+        byte[] remapped;
+        if (world == null) {
+            remapped = VoxelChunkRemapper.remapChunkPacket(packet, length, tables, (x, z) -> null);
+        } else {
+            // the same chunk is sent to every player that loads it, remap it once for all of them
+            remapped = VoxelEngine.getChunkPacketCache().remap(world.handle(), chunkX, chunkZ, packet, length, tables, chunk);
+        }
+        if (remapped == null) return;
+
+        ByteBufHelper.writerIndex(buffer, start);
+        ByteBufHelper.writeBytes(buffer, remapped);
+    }
+
+    private void remapBlockChange(@NotNull PacketSendEvent event, @NotNull VoxelClientStates.Tables tables, @Nullable VoxelWorld world) {
+        WrapperPlayServerBlockChange packet = new WrapperPlayServerBlockChange(event);
+        Vector3i position = packet.getBlockPosition();
+
+        int state = packet.getBlockId();
+        int remapped = clientState(tables, world, position.getX(), position.getY(), position.getZ(), state);
+        if (remapped == state) return;
+
+        packet.setBlockId(remapped);
+        event.markForReEncode(true);
+    }
+
+    private void remapMultiBlockChange(@NotNull PacketSendEvent event, @NotNull VoxelClientStates.Tables tables, @Nullable VoxelWorld world) {
+        WrapperPlayServerMultiBlockChange packet = new WrapperPlayServerMultiBlockChange(event);
+
+        boolean changed = false;
+        for (WrapperPlayServerMultiBlockChange.EncodedBlock block : packet.getBlocks()) {
+            int state = block.getBlockId();
+            int remapped = clientState(tables, world, block.getX(), block.getY(), block.getZ(), state);
+            if (remapped == state) continue;
+
+            block.setBlockId(remapped);
+            changed = true;
+        }
+
+        if (changed) event.markForReEncode(true);
+    }
+
+    private static int clientState(@NotNull VoxelClientStates.Tables tables, @Nullable VoxelWorld world, int x, int y, int z, int serverState) {
+        VoxelChunk chunk = world == null ? null : world.getChunk(x >> 4, z >> 4);
+        int rawId = chunk == null ? VoxelChunkSection.NO_BLOCK : chunk.get(x, y, z);
+        return rawId == VoxelChunkSection.NO_BLOCK ? tables.translate(serverState) : tables.stateOf(rawId);
+    }
+
+    private static int readInt(byte @NotNull [] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16 | (bytes[offset + 2] & 0xFF) << 8 | bytes[offset + 3] & 0xFF;
+    }
+
+    private static @Nullable VoxelWorld worldOf(@NotNull PacketSendEvent event) {
+        Object player = event.getPlayer();
+        return player instanceof Player bukkitPlayer ? VoxelEngine.getWorld(bukkitPlayer.getWorld()) : null;
+    }
+}
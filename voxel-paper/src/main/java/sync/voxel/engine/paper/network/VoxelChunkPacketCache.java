@@ -0,0 +1,231 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.network;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.paper.world.storage.VoxelChunk;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remapped chunk data packets, shared by all players that load the same chunk.
+ * <p>
+ * An entry is keyed by world handle and chunk and only reused while the custom blocks of the
+ * chunk have the same version, the client state tables did not change and the server packet
+ * has the same length and 64-bit hash, vanilla block changes do not reach the cache otherwise.
+ * Only the hash of the server packet is kept, not the packet itself. Entries are dropped as soon as a custom block of their chunk changes,
+ * and the least recently used entries are evicted once the cache holds more than its byte limit.
+ */
+public final class VoxelChunkPacketCache {
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    // map entry, key and object headers
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final long maxBytes;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(256, 0.75F, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public VoxelChunkPacketCache(long maxBytes) {
+        if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be positive");
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the remapped packet, remapping and caching it on a miss.
+     *
+     * @param world  the handle of the world the chunk is in
+     * @param packet the packet body as sent by the server
+     * @param length the number of valid bytes in packet
+     * @param tables the current translation tables
+     * @param chunk  the custom blocks of the chunk, null if it has none
+     * @return the remapped packet body, or null if the packet stays unchanged
+     */
+    public byte @Nullable [] remap(int world, int chunkX, int chunkZ, byte @NotNull [] packet, int length,
+                                   @NotNull VoxelClientStates.Tables tables, @Nullable VoxelChunk chunk) {
+        Key key = new Key(world, VoxelChunk.key(chunkX, chunkZ));
+        // read before remapping, a change while remapping then only makes the entry stale
+        long version = chunk == null ? 0 : chunk.getVersion();
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+
+        long hash = hash(packet, length);
+        if (entry != null && entry.matches(length, hash, tables, chunk, version)) {
+            hits.increment();
+            return entry.output;
+        }
+
+        misses.increment();
+        byte[] output = VoxelChunkRemapper.remapChunkPacket(packet, length, tables, (x, z) -> chunk);
+        put(key, new Entry(length, hash, tables, chunk, version, output));
+        return output;
+    }
+
+    /**
+     * Hashes the first length bytes of a packet, eight bytes at a time.
+     */
+    static long hash(byte @NotNull [] packet, int length) {
+        long hash = length * 0x9E3779B97F4A7C15L;
+        int index = 0;
+        for (; index + Long.BYTES <= length; index += Long.BYTES) {
+            hash = Long.rotateLeft(hash ^ (long) LONGS.get(packet, index) * 0xC2B2AE3D27D4EB4FL, 31) * 0x9E3779B97F4A7C15L;
+        }
+        for (; index < length; index++) {
+            hash = Long.rotateLeft(hash ^ (packet[index] & 0xFFL) * 0xC2B2AE3D27D4EB4FL, 11) * 0x9E3779B97F4A7C15L;
+        }
+        return hash ^ hash >>> 29;
+    }
+
+    /**
+     * Drops the cached packet of a chunk.
+     */
+    public void invalidate(int world, int chunkX, int chunkZ) {
+        Entry removed;
+        synchronized (this) {
+            removed = entries.remove(new Key(world, VoxelChunk.key(chunkX, chunkZ)));
+            if (removed != null) bytes -= removed.size;
+        }
+
+        if (removed != null) invalidations.increment();
+    }
+
+    /**
+     * Drops all cached packets of a world.
+     */
+    public void invalidateAll(int world) {
+        int removed = 0;
+        synchronized (this) {
+            Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, Entry> next = iterator.next();
+                if (next.getKey().world != world) continue;
+
+                bytes -= next.getValue().size;
+                iterator.remove();
+                removed++;
+            }
+        }
+
+        invalidations.add(removed);
+    }
+
+    /**
+     * Drops all cached packets.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private void put(@NotNull Key key, @NotNull Entry entry) {
+        if (entry.size > maxBytes) return;
+
+        int evicted = 0;
+        synchronized (this) {
+            Entry previous = entries.put(key, entry);
+            bytes += entry.size;
+            if (previous != null) bytes -= previous.size;
+
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                bytes -= iterator.next().size;
+                iterator.remove();
+                evicted++;
+            }
+        }
+
+        evictions.add(evicted);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the estimated heap bytes held by the cache.
+     */
+    public synchronized long getSizeBytes() {
+        return bytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Returns the share of lookups answered from the cache, between 0 and 1.
+     */
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    private record Key(int world, long chunk) {
+    }
+
+    private static final class Entry {
+        private final int length;
+        private final long hash;
+        private final VoxelClientStates.Tables tables;
+        private final VoxelChunk chunk;
+        private final long version;
+        private final byte[] output;
+        private final long size;
+
+        private Entry(int length, long hash, @NotNull VoxelClientStates.Tables tables, @Nullable VoxelChunk chunk, long version, byte @Nullable [] output) {
+            this.length = length;
+            this.hash = hash;
+            this.tables = tables;
+            this.chunk = chunk;
+            this.version = version;
+            this.output = output;
+            this.size = ENTRY_OVERHEAD + (output == null ? 0 : output.length);
+        }
+
+        private boolean matches(int length, long hash, @NotNull VoxelClientStates.Tables tables, @Nullable VoxelChunk chunk, long version) {
+            return this.tables == tables && this.chunk == chunk && this.version == version && this.length == length && this.hash == hash;
+        }
+    }
+}
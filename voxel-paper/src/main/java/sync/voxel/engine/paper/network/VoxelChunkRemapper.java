@@ -0,0 +1,458 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.network;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.paper.world.storage.VoxelChunk;
+import sync.voxel.engine.paper.world.storage.VoxelChunkSection;
+
+import java.util.Arrays;
+
+/**
+ * Rewrites the block states of a serialized chunk data packet without decoding it into objects.
+ * <p>
+ * Sections without custom blocks that use a palette only have their palette entries translated,
+ * the packed block data is copied as is. Only sections holding custom blocks, or sections in
+ * direct mode, are unpacked into their 4096 states and packed again.
+ * <p>
+ * Expects the 1.21.4 layout: chunk x and z, heightmaps as network NBT, then the length prefixed
+ * section data, where every paletted container ends with a length prefixed long array.
+ */
+public final class VoxelChunkRemapper {
+
+    private static final int VOLUME = VoxelChunkSection.VOLUME;
+    private static final int MIN_BLOCK_BITS = 4;
+    private static final int MAX_INDIRECT_BITS = 8;
+    private static final int MAX_BIOME_INDIRECT_BITS = 3;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    // bits of the direct block palette, taken from the first direct section that is seen
+    private static volatile int directBits = 15;
+
+    private VoxelChunkRemapper() {
+    }
+
+    /**
+     * Looks up the custom blocks of the chunk a packet is about.
+     */
+    @FunctionalInterface
+    public interface ChunkLookup {
+        @Nullable VoxelChunk chunk(int chunkX, int chunkZ);
+    }
+
+    /**
+     * Rewrites a chunk data packet body.
+     *
+     * @param packet the packet body without packet id
+     * @param length the number of valid bytes in packet
+     * @param tables the translation tables to use
+     * @param lookup the custom block lookup, may return null for every chunk
+     * @return the rewritten packet body, or null if nothing changed
+     * @throws IllegalStateException if the packet is malformed
+     */
+    public static byte @Nullable [] remapChunkPacket(byte @NotNull [] packet, int length, @NotNull VoxelClientStates.Tables tables, @NotNull ChunkLookup lookup) {
+        Scratch scratch = SCRATCH.get();
+        Reader in = scratch.reader.reset(packet, 0, length);
+
+        int chunkX = in.readInt();
+        int chunkZ = in.readInt();
+        skipNetworkNbt(in);
+
+        int sizeStart = in.pos;
+        int dataLength = in.readVarInt();
+        int dataStart = in.pos;
+        int dataEnd = dataStart + dataLength;
+        if (dataLength < 0 || dataEnd > length) throw new IllegalStateException("Chunk data length out of bounds");
+
+        VoxelChunk chunk = lookup.chunk(chunkX, chunkZ);
+        Writer data = scratch.writer.reset(dataLength + 256);
+        boolean changed = remapSections(in.limit(dataEnd), data, tables, chunk, scratch);
+        if (!changed) return null;
+
+        Writer out = new Writer().reset(length + data.size - dataLength + 5);
+        out.writeBytes(packet, 0, sizeStart);
+        out.writeVarInt(data.size);
+        out.writeBytes(data.buffer, 0, data.size);
+        out.writeBytes(packet, dataEnd, length - dataEnd);
+        return out.toByteArray();
+    }
+
+    /**
+     * Rewrites the serialized sections of a chunk.
+     *
+     * @return true if any byte changed
+     */
+    static boolean remapSections(@NotNull Reader in, @NotNull Writer out, @NotNull VoxelClientStates.Tables tables, @Nullable VoxelChunk chunk, @NotNull Scratch scratch) {
+        boolean changed = false;
+        int sectionIndex = 0;
+
+        while (in.pos < in.limit) {
+            VoxelChunkSection custom = chunk == null ? null : chunk.getSection(chunk.getMinSection() + sectionIndex);
+            if (custom != null && custom.isEmpty()) custom = null;
+
+            int blockCount = in.readShort();
+            int bits = in.readUnsignedByte();
+            if (custom == null && bits <= MAX_INDIRECT_BITS) {
+                changed |= translatePalette(in, out, tables, blockCount, bits);
+            } else {
+                rewriteBlocks(in, out, tables, custom, blockCount, bits, scratch);
+                changed = true;
+            }
+
+            copyBiomes(in, out);
+            sectionIndex++;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Translates the palette of a section in place, cost is proportional to the palette size.
+     */
+    private static boolean translatePalette(@NotNull Reader in, @NotNull Writer out, @NotNull VoxelClientStates.Tables tables, int blockCount, int bits) {
+        boolean changed = false;
+        out.writeShort(blockCount);
+        out.writeByte(bits);
+
+        int entries = bits == 0 ? 1 : in.readVarInt();
+        if (bits != 0) out.writeVarInt(entries);
+        for (int i = 0; i < entries; i++) {
+            int state = in.readVarInt();
+            int translated = tables.translate(state);
+            changed |= translated != state;
+            out.writeVarInt(translated);
+        }
+
+        int longs = in.readVarInt();
+        out.writeVarInt(longs);
+        out.writeBytes(in.buffer, in.skip(longs * 8), longs * 8);
+        return changed;
+    }
+
+    /**
+     * Unpacks all states of a section, applies the translation and custom blocks and packs them again.
+     */
+    private static void rewriteBlocks(@NotNull Reader in, @NotNull Writer out, @NotNull VoxelClientStates.Tables tables,
+                                      @Nullable VoxelChunkSection custom, int blockCount, int bits, @NotNull Scratch scratch) {
+        int[] states = scratch.states;
+
+        if (bits == 0) {
+            Arrays.fill(states, tables.translate(in.readVarInt()));
+            in.skip(in.readVarInt() * 8);
+        } else if (bits <= MAX_INDIRECT_BITS) {
+            int entries = in.readVarInt();
+            int[] palette = scratch.palette(entries);
+            for (int i = 0; i < entries; i++) palette[i] = tables.translate(in.readVarInt());
+
+            unpack(in, bits, states);
+            for (int i = 0; i < VOLUME; i++) {
+                int index = states[i];
+                if (index >= entries) throw new IllegalStateException("Palette index out of bounds");
+                states[i] = palette[index];
+            }
+        } else {
+            directBits = bits;
+            unpack(in, bits, states);
+            for (int i = 0; i < VOLUME; i++) states[i] = tables.translate(states[i]);
+        }
+
+        if (custom != null) {
+            int[] rawIds = scratch.rawIds;
+            custom.copyTo(rawIds);
+
+            blockCount = 0;
+            for (int i = 0; i < VOLUME; i++) {
+                if (rawIds[i] != VoxelChunkSection.NO_BLOCK) states[i] = tables.stateOf(rawIds[i]);
+                if (!tables.isAir(states[i])) blockCount++;
+            }
+        }
+
+        out.writeShort(blockCount);
+        writeBlocks(out, states, scratch);
+    }
+
+    private static void writeBlocks(@NotNull Writer out, int @NotNull [] states, @NotNull Scratch scratch) {
+        int paletteSize = scratch.buildPalette(states);
+        int[] palette = scratch.paletteValues;
+
+        if (paletteSize == 1) {
+            out.writeByte(0);
+            out.writeVarInt(palette[0]);
+            out.writeVarInt(0);
+            return;
+        }
+
+        int bits = Math.max(MIN_BLOCK_BITS, 32 - Integer.numberOfLeadingZeros(paletteSize - 1));
+        if (bits > MAX_INDIRECT_BITS) {
+            bits = directBits;
+            out.writeByte(bits);
+            pack(out, bits, states);
+            return;
+        }
+
+        out.writeByte(bits);
+        out.writeVarInt(paletteSize);
+        for (int i = 0; i < paletteSize; i++) out.writeVarInt(palette[i]);
+
+        int[] indices = scratch.indices;
+        for (int i = 0; i < VOLUME; i++) indices[i] = scratch.indexOf(states[i]);
+        pack(out, bits, indices);
+    }
+
+    private static void copyBiomes(@NotNull Reader in, @NotNull Writer out) {
+        int start = in.pos;
+        int bits = in.readUnsignedByte();
+        if (bits == 0) {
+            in.readVarInt();
+        } else if (bits <= MAX_BIOME_INDIRECT_BITS) {
+            int entries = in.readVarInt();
+            for (int i = 0; i < entries; i++) in.readVarInt();
+        }
+
+        in.skip(in.readVarInt() * 8);
+        out.writeBytes(in.buffer, start, in.pos - start);
+    }
+
+    private static void unpack(@NotNull Reader in, int bits, int @NotNull [] values) {
+        int longs = in.readVarInt();
+        int perLong = 64 / bits;
+        if (longs < (VOLUME + perLong - 1) / perLong) throw new IllegalStateException("Section data too short");
+
+        int offset = in.skip(longs * 8);
+        long mask = (1L << bits) - 1;
+        int index = 0;
+        for (int l = 0; l < longs && index < VOLUME; l++) {
+            long word = Reader.getLong(in.buffer, offset + l * 8);
+            for (int j = 0; j < perLong && index < VOLUME; j++) {
+                values[index++] = (int) (word & mask);
+                word >>>= bits;
+            }
+        }
+    }
+
+    private static void pack(@NotNull Writer out, int bits, int @NotNull [] values) {
+        int perLong = 64 / bits;
+        int longs = (VOLUME + perLong - 1) / perLong;
+        out.writeVarInt(longs);
+
+        long mask = (1L << bits) - 1;
+        int index = 0;
+        for (int l = 0; l < longs; l++) {
+            long word = 0;
+            for (int j = 0; j < perLong && index < VOLUME; j++) {
+                word |= (values[index++] & mask) << (j * bits);
+            }
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Skips an unnamed network NBT tag.
+     */
+    static void skipNetworkNbt(@NotNull Reader in) {
+        int type = in.readUnsignedByte();
+        if (type != 0) skipNbtPayload(in, type, 0);
+    }
+
+    private static void skipNbtPayload(@NotNull Reader in, int type, int depth) {
+        if (depth > 512) throw new IllegalStateException("NBT nested too deep");
+
+        switch (type) {
+            case 1 -> in.skip(1);
+            case 2 -> in.skip(2);
+            case 3, 5 -> in.skip(4);
+            case 4, 6 -> in.skip(8);
+            case 7 -> in.skip(in.readInt());
+            case 8 -> in.skip(in.readUnsignedShort());
+            case 9 -> {
+                int elementType = in.readUnsignedByte();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) skipNbtPayload(in, elementType, depth + 1);
+            }
+            case 10 -> {
+                int child;
+                while ((child = in.readUnsignedByte()) != 0) {
+                    in.skip(in.readUnsignedShort());
+                    skipNbtPayload(in, child, depth + 1);
+                }
+            }
+            case 11 -> in.skip(in.readInt() * 4);
+            case 12 -> in.skip(in.readInt() * 8);
+            default -> throw new IllegalStateException("Unknown NBT type " + type);
+        }
+    }
+
+    /**
+     * Big endian reader over a byte array.
+     */
+    static final class Reader {
+        private byte[] buffer;
+        private int pos;
+        private int limit;
+
+        Reader reset(byte @NotNull [] buffer, int pos, int limit) {
+            this.buffer = buffer;
+            this.pos = pos;
+            this.limit = limit;
+            return this;
+        }
+
+        Reader limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        int skip(int bytes) {
+            if (bytes < 0 || pos + bytes > limit) throw new IllegalStateException("Read past the end of the packet");
+            int start = pos;
+            pos += bytes;
+            return start;
+        }
+
+        int readUnsignedByte() {
+            return buffer[skip(1)] & 0xFF;
+        }
+
+        int readShort() {
+            int at = skip(2);
+            return (short) ((buffer[at] & 0xFF) << 8 | buffer[at + 1] & 0xFF);
+        }
+
+        int readUnsignedShort() {
+            return readShort() & 0xFFFF;
+        }
+
+        int readInt() {
+            int at = skip(4);
+            return (buffer[at] & 0xFF) << 24 | (buffer[at + 1] & 0xFF) << 16 | (buffer[at + 2] & 0xFF) << 8 | buffer[at + 3] & 0xFF;
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalStateException("VarInt too long");
+        }
+
+        static long getLong(byte @NotNull [] buffer, int at) {
+            long value = 0;
+            for (int i = 0; i < 8; i++) value = value << 8 | buffer[at + i] & 0xFF;
+            return value;
+        }
+    }
+
+    /**
+     * Big endian writer into a growing byte array.
+     */
+    static final class Writer {
+        private byte[] buffer = new byte[0];
+        private int size;
+
+        Writer reset(int capacity) {
+            if (buffer.length < capacity) buffer = new byte[capacity];
+            size = 0;
+            return this;
+        }
+
+        private void ensure(int bytes) {
+            if (size + bytes > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + bytes));
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeShort(int value) {
+            ensure(2);
+            buffer[size++] = (byte) (value >> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) buffer[size++] = (byte) (value >>> shift);
+        }
+
+        void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeBytes(byte @NotNull [] source, int offset, int length) {
+            ensure(length);
+            System.arraycopy(source, offset, buffer, size, length);
+            size += length;
+        }
+
+        byte @NotNull [] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    /**
+     * Per thread buffers, netty threads rewrite many chunks one after another.
+     */
+    static final class Scratch {
+        private final Reader reader = new Reader();
+        private final Writer writer = new Writer();
+        private final int[] states = new int[VOLUME];
+        private final int[] indices = new int[VOLUME];
+        private final int[] rawIds = new int[VOLUME];
+        private int[] palette = new int[16];
+
+        // palette building: state -> index, valid where stamp matches the current generation
+        private int[] paletteValues = new int[16];
+        private int[] indexByState = new int[1 << 15];
+        private int[] stampByState = new int[1 << 15];
+        private int generation;
+
+        private int[] palette(int entries) {
+            if (palette.length < entries) palette = new int[entries];
+            return palette;
+        }
+
+        private int buildPalette(int @NotNull [] states) {
+            if (++generation == 0) {
+                Arrays.fill(stampByState, 0);
+                generation = 1;
+            }
+
+            int size = 0;
+            for (int state : states) {
+                if (state >= stampByState.length) {
+                    int length = Integer.highestOneBit(state) << 1;
+                    indexByState = Arrays.copyOf(indexByState, length);
+                    stampByState = Arrays.copyOf(stampByState, length);
+                }
+
+                if (stampByState[state] == generation) continue;
+                stampByState[state] = generation;
+                indexByState[state] = size;
+                if (size == paletteValues.length) paletteValues = Arrays.copyOf(paletteValues, size * 2);
+                paletteValues[size++] = state;
+            }
+            return size;
+        }
+
+        private int indexOf(int state) {
+            return indexByState[state];
+        }
+    }
+}
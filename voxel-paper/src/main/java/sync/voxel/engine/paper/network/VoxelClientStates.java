@@ -0,0 +1,269 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.network;
+
+import com.github.retrooper.packetevents.protocol.world.states.WrappedBlockState;
+import com.github.retrooper.packetevents.protocol.world.states.type.StateType;
+import io.github.retrooper.packetevents.util.SpigotConversionUtil;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.api.material.VoxMaterial;
+import sync.voxel.engine.api.registry.VoxRegistries;
+import sync.voxel.engine.api.resourcepack.validator.VoxMaterialPresets;
+import sync.voxel.engine.paper.VoxelEngine;
+
+import java.util.*;
+
+/**
+ * Maps materials and server block states to the global block state ids the client renders.
+ * <p>
+ * Custom materials of the {@link VoxMaterialPresets#SOLID_BLOCK} and {@link VoxMaterialPresets#PLANT}
+ * presets each get one non-default state of their carrier block, in raw id order. Vanilla blocks
+ * in a state that was handed out show as the carrier default on the client, so vanilla note blocks
+ * and tripwires never look like a custom block, all other carrier states render as usual. Other
+ * presets use the default state of their carrier.
+ * <p>
+ * The translation tables are built by {@link #rebuild()} and replaced as a whole, readers on
+ * netty threads never see a partially built table.
+ */
+public final class VoxelClientStates {
+
+    private static final Set<VoxMaterialPresets> ALLOCATING_PRESETS = EnumSet.of(VoxMaterialPresets.SOLID_BLOCK, VoxMaterialPresets.PLANT);
+
+    private static volatile Tables tables = new Tables(new int[0], new int[0], new boolean[1]);
+
+    // allocation state of the last rebuild, only touched by rebuild
+    private static final Map<Material, Carrier> carriers = new EnumMap<>(Material.class);
+    private static Material[] carrierByRawId = new Material[0];
+
+    private VoxelClientStates() {
+    }
+
+    /**
+     * Returns the client block state of a material raw id, air for materials that are no block.
+     */
+    public static int stateOf(int rawId) {
+        int[] states = tables.clientStateByRawId;
+        return rawId >= 0 && rawId < states.length ? states[rawId] : 0;
+    }
+
+    /**
+     * Returns the client block state of bukkit block data.
+     */
+    public static int stateOf(@NotNull BlockData data) {
+        return translate(serverStateOf(data));
+    }
+
+    /**
+     * Translates a server block state into the state the client renders.
+     */
+    public static int translate(int serverState) {
+        int[] table = tables.serverToClient;
+        return serverState >= 0 && serverState < table.length ? table[serverState] : serverState;
+    }
+
+    /**
+     * Returns the block state properties of a global state, as used for blockstate variants.
+     *
+     * @return the properties like {@code instrument=harp,note=1,powered=false}, empty for blocks without properties
+     */
+    public static @NotNull String propertiesOf(int state) {
+        String data = SpigotConversionUtil.toBukkitBlockData(WrappedBlockState.getByGlobalId(state)).getAsString();
+        int start = data.indexOf('[');
+        return start < 0 ? "" : data.substring(start + 1, data.length() - 1);
+    }
+
+    /**
+     * Returns the current translation tables.
+     */
+    public static @NotNull Tables getTables() {
+        return tables;
+    }
+
+    /**
+     * Allocates carrier states for all registered materials and rebuilds the translation tables.
+     * Must run after the material registry changed.
+     * <p>
+     * Materials that keep their raw id and carrier keep their client state. States of materials
+     * that were removed or moved to another carrier are released and handed out again, so a
+     * reload only changes the client state of the materials it touched.
+     *
+     * @return the raw ids whose client state changed
+     */
+    public static synchronized @NotNull BitSet rebuild() {
+        Tables previous = tables;
+        int materialCount = VoxRegistries.MATERIAL.size();
+        int[] clientStateByRawId = new int[materialCount];
+        Material[] allocatedCarriers = new Material[materialCount];
+
+        for (int rawId = 0; rawId < carrierByRawId.length; rawId++) {
+            Material carrier = carrierByRawId[rawId];
+            if (carrier != null && carrier != allocatingCarrier(VoxRegistries.MATERIAL.valueOf(rawId))) {
+                carriers.get(carrier).release(previous.clientStateByRawId[rawId]);
+            }
+        }
+
+        for (int rawId = 0; rawId < materialCount; rawId++) {
+            VoxMaterial material = VoxRegistries.MATERIAL.valueOf(rawId);
+            if (material == null && rawId < carrierByRawId.length) {
+                // blocks of removed materials are left in the world, they show as their plain carrier
+                Material carrier = carrierByRawId[rawId];
+                clientStateByRawId[rawId] = carrier != null ? carriers.get(carrier).defaultState : previous.clientStateByRawId[rawId];
+                continue;
+            }
+
+            Material vaMaterial = material == null ? null : material.toVaMaterial();
+            if (vaMaterial == null || !vaMaterial.isBlock()) continue;
+
+            if (allocatingCarrier(material) == null) {
+                clientStateByRawId[rawId] = serverStateOf(vaMaterial.createBlockData());
+                continue;
+            }
+
+            Carrier carrier = carriers.computeIfAbsent(vaMaterial, Carrier::new);
+            boolean kept = rawId < carrierByRawId.length && carrierByRawId[rawId] == vaMaterial;
+            int state = kept ? previous.clientStateByRawId[rawId] : carrier.allocate(material);
+
+            clientStateByRawId[rawId] = state;
+            if (state != carrier.defaultState) allocatedCarriers[rawId] = vaMaterial;
+        }
+
+        int maxState = 0;
+        for (Carrier carrier : carriers.values()) maxState = Math.max(maxState, carrier.next - 1);
+
+        // released states stay translated, the client may still know them as a custom block
+        int[] serverToClient = new int[maxState + 1];
+        for (int state = 0; state < serverToClient.length; state++) serverToClient[state] = state;
+        for (Carrier carrier : carriers.values()) {
+            for (int state = carrier.first; state < carrier.next; state++) serverToClient[state] = carrier.defaultState;
+        }
+
+        boolean[] air = new boolean[Math.max(serverToClient.length, 1)];
+        for (Material material : new Material[]{Material.AIR, Material.CAVE_AIR, Material.VOID_AIR}) {
+            int state = serverStateOf(material.createBlockData());
+            if (state >= air.length) air = Arrays.copyOf(air, state + 1);
+            air[state] = true;
+        }
+
+        Tables rebuilt = new Tables(serverToClient, clientStateByRawId, air);
+        tables = rebuilt;
+        carrierByRawId = allocatedCarriers;
+
+        BitSet changed = new BitSet();
+        int compared = Math.max(previous.clientStateByRawId.length, materialCount);
+        for (int rawId = 0; rawId < compared; rawId++) {
+            if (previous.stateOf(rawId) != rebuilt.stateOf(rawId)) changed.set(rawId);
+        }
+
+        int allocated = 0;
+        for (Carrier carrier : carriers.values()) allocated += carrier.allocated;
+        VoxelEngine.LOGGER.info("Allocated {} client block states on {} carrier blocks", allocated, carriers.size());
+        return changed;
+    }
+
+    /**
+     * Returns the carrier a material allocates a state of, null for materials using a plain block state.
+     */
+    private static @Nullable Material allocatingCarrier(@Nullable VoxMaterial material) {
+        if (material == null || material.isVanillaMaterial() || !ALLOCATING_PRESETS.contains(material.getVoxRenderType())) return null;
+
+        Material vaMaterial = material.toVaMaterial();
+        return vaMaterial != null && vaMaterial.isBlock() ? vaMaterial : null;
+    }
+
+    private static int serverStateOf(@NotNull BlockData data) {
+        return SpigotConversionUtil.fromBukkitBlockData(data).getGlobalId();
+    }
+
+    /**
+     * Immutable translation tables.
+     *
+     * @param serverToClient     client state by server state, states past the end are not translated
+     * @param clientStateByRawId client state by material raw id
+     * @param air                true for client states that are air, used to keep section block counts right
+     */
+    public record Tables(int @NotNull [] serverToClient, int @NotNull [] clientStateByRawId, boolean @NotNull [] air) {
+
+        public int translate(int serverState) {
+            return serverState < serverToClient.length ? serverToClient[serverState] : serverState;
+        }
+
+        public int stateOf(int rawId) {
+            return rawId < clientStateByRawId.length ? clientStateByRawId[rawId] : 0;
+        }
+
+        public boolean isAir(int clientState) {
+            return clientState < air.length && air[clientState];
+        }
+    }
+
+    /**
+     * The contiguous range of global states of one carrier block.
+     */
+    private static final class Carrier {
+        private final Material material;
+        private final int defaultState;
+        private final int first;
+        private final int last;
+        private final BitSet released = new BitSet();
+        private int next;
+        private int allocated;
+        private boolean exhausted;
+
+        private Carrier(@NotNull Material material) {
+            this.material = material;
+            this.defaultState = serverStateOf(material.createBlockData());
+
+            StateType type = typeOf(defaultState);
+            int low = defaultState;
+            while (low > 0 && Objects.equals(typeOf(low - 1), type)) low--;
+            int high = defaultState;
+            while (Objects.equals(typeOf(high + 1), type)) high++;
+
+            this.first = low;
+            this.last = high;
+            this.next = low;
+        }
+
+        private int allocate(@NotNull VoxMaterial voxMaterial) {
+            int free = released.nextSetBit(0);
+            if (free >= 0) {
+                released.clear(free);
+                allocated++;
+                return free;
+            }
+
+            if (next == defaultState) next++;
+            if (next > last) {
+                if (!exhausted) {
+                    exhausted = true;
+                    VoxelEngine.LOGGER.warn("No free {} states left, {} and later materials show as plain {}", material, voxMaterial.identifier(), material);
+                }
+                return defaultState;
+            }
+
+            allocated++;
+            return next++;
+        }
+
+        private void release(int state) {
+            released.set(state);
+            allocated--;
+            exhausted = false;
+        }
+
+        private static @Nullable StateType typeOf(int state) {
+            WrappedBlockState wrapped = WrappedBlockState.getByGlobalId(state);
+            return wrapped == null ? null : wrapped.getType();
+        }
+    }
+}
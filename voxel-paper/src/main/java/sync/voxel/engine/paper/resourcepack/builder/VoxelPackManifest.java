@@ -0,0 +1,157 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.resourcepack.builder;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.paper.VoxelEngine;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What the previous pack build read and wrote.
+ * <p>
+ * Input files are remembered with size, modification time and content hash, so unchanged files
+ * are not read again. Every zip entry is remembered with the hash of the input it was made from
+ * and its position in the zip, so unchanged entries are copied from the previous zip without
+ * compressing them again.
+ */
+final class VoxelPackManifest {
+
+    private static final int MAGIC = 0x5658504D; // VXPM
+    private static final int FORMAT = 2;
+
+    /**
+     * A source file as seen by the last build.
+     */
+    record Input(long size, long modified, byte @NotNull [] hash) {
+    }
+
+    /**
+     * A zip entry of the last build.
+     */
+    record Output(@NotNull VoxelZipWriter.Entry entry, byte @NotNull [] inputHash) {
+    }
+
+    final Map<String, Input> inputs;
+    final Map<String, Output> outputs;
+    final int settings;
+    final long zipSize;
+    final long zipModified;
+    final byte[] packHash;
+
+    /**
+     * @param settings the build settings that change entry data, entries are only reused with the same settings
+     */
+    VoxelPackManifest(@NotNull Map<String, Input> inputs, @NotNull Map<String, Output> outputs, int settings, long zipSize, long zipModified, byte @NotNull [] packHash) {
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.settings = settings;
+        this.zipSize = zipSize;
+        this.zipModified = zipModified;
+        this.packHash = packHash;
+    }
+
+    static @NotNull VoxelPackManifest empty() {
+        return new VoxelPackManifest(Map.of(), Map.of(), -1, -1, -1, new byte[0]);
+    }
+
+    /**
+     * Reads the manifest, returns null if it is missing, unreadable or of another format.
+     */
+    static @Nullable VoxelPackManifest read(@NotNull Path file) {
+        if (!Files.isRegularFile(file)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                VoxelEngine.LOGGER.debug("Pack manifest is outdated, rebuilding all entries.");
+                return null;
+            }
+
+            int settings = in.readInt();
+            long zipSize = in.readLong();
+            long zipModified = in.readLong();
+            byte[] packHash = readBytes(in);
+
+            int inputCount = in.readInt();
+            Map<String, Input> inputs = new HashMap<>(inputCount * 2);
+            for (int i = 0; i < inputCount; i++) {
+                inputs.put(in.readUTF(), new Input(in.readLong(), in.readLong(), readBytes(in)));
+            }
+
+            int outputCount = in.readInt();
+            Map<String, Output> outputs = new HashMap<>(outputCount * 2);
+            for (int i = 0; i < outputCount; i++) {
+                VoxelZipWriter.Entry entry = new VoxelZipWriter.Entry(in.readUTF(), in.readUnsignedShort(), in.readInt(), in.readLong(), in.readLong(), in.readLong());
+                outputs.put(entry.name(), new Output(entry, readBytes(in)));
+            }
+
+            return new VoxelPackManifest(inputs, outputs, settings, zipSize, zipModified, packHash);
+        } catch (IOException e) {
+            VoxelEngine.LOGGER.warn("Failed to read pack manifest, rebuilding all entries", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the manifest, replacing the old one atomically.
+     */
+    void write(@NotNull Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(settings);
+            out.writeLong(zipSize);
+            out.writeLong(zipModified);
+            writeBytes(out, packHash);
+
+            out.writeInt(inputs.size());
+            for (Map.Entry<String, Input> input : inputs.entrySet()) {
+                out.writeUTF(input.getKey());
+                out.writeLong(input.getValue().size());
+                out.writeLong(input.getValue().modified());
+                writeBytes(out, input.getValue().hash());
+            }
+
+            out.writeInt(outputs.size());
+            for (Output output : outputs.values()) {
+                VoxelZipWriter.Entry entry = output.entry();
+                out.writeUTF(entry.name());
+                out.writeShort(entry.method());
+                out.writeInt(entry.crc());
+                out.writeLong(entry.compressedSize());
+                out.writeLong(entry.size());
+                out.writeLong(entry.offset());
+                writeBytes(out, output.inputHash());
+            }
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte @NotNull [] readBytes(@NotNull DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedByte()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(@NotNull DataOutputStream out, byte @NotNull [] bytes) throws IOException {
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -9,19 +9,43 @@
  */
 package sync.voxel.engine.paper.resourcepack.builder;
 
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.bukkit.Material;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.api.material.VoxAttributeKey;
+import sync.voxel.engine.api.material.VoxMaterial;
+import sync.voxel.engine.api.registry.VoxRegistries;
 import sync.voxel.engine.paper.VoxelEngine;
+import sync.voxel.engine.paper.network.VoxelClientStates;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.Enumeration;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
 
 /**
  * Utility class for building and managing the voxel resource pack.
+ * <p>
+ * {@link #build(BuildOptions)} compiles the {@code models/} and {@code textures/} folders of the
+ * voxel pack and the generated blockstates of custom blocks into a client pack zip. Builds are
+ * incremental: entries whose input hash did not change since the last build are copied from the
+ * previous zip without compressing them again. Changed entries are hashed, validated and
+ * compressed in parallel and streamed into the zip in name order, so the zip is deterministic,
+ * the same inputs always give the same SHA-1.
+ * <p>
+ * With {@link BuildOptions#optimizeTextures()} textures are deduplicated and shrunk by the
+ * {@link VoxelTextureStage}. Every build writes a size report next to the zip.
  */
 public class VoxelResourcePackBuilder {
 
@@ -29,6 +53,90 @@ public class VoxelResourcePackBuilder {
     private static final Path TARGET_PACK = Paths.get("plugins/voxel/pack");
     private static final Path TARGET_REGISTRY = TARGET_PACK.resolve("registry");
 
+    private static final Path BUILD_FOLDER = Paths.get("plugins/voxel/build");
+    private static final Path PACK_FILE = BUILD_FOLDER.resolve("voxel-pack.zip");
+    private static final Path MANIFEST_FILE = BUILD_FOLDER.resolve("voxel-pack.manifest");
+    private static final Path REPORT_FILE = BUILD_FOLDER.resolve("size-report.txt");
+    private static final String[] ASSET_FOLDERS = {"models", "textures"};
+    // pack format of 1.21.4
+    private static final int PACK_FORMAT = 46;
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * The outcome of a pack build.
+     *
+     * @param file       the built zip
+     * @param sha1       the SHA-1 of the zip, as sent to clients
+     * @param size       the size of the zip in bytes
+     * @param entries    the number of zip entries
+     * @param compressed the number of entries compressed by this build
+     * @param reused     the number of entries copied from the previous build
+     * @param nanos      the build duration
+     */
+    public record BuildResult(@NotNull Path file, byte @NotNull [] sha1, long size, int entries, int compressed, int reused, long nanos) {
+
+        public @NotNull String sha1Hex() {
+            return HexFormat.of().formatHex(sha1);
+        }
+    }
+
+    /**
+     * Settings of a pack build.
+     *
+     * @param parallelism the number of threads hashing, validating and compressing entries
+     * @param storePngs        store png files instead of deflating them, they are compressed already
+     * @param optimizeTextures deduplicate identical block and item textures and shrink png files losslessly
+     */
+    public record BuildOptions(int parallelism, boolean storePngs, boolean optimizeTextures) {
+
+        public static final BuildOptions DEFAULT = new BuildOptions(Runtime.getRuntime().availableProcessors(), false, false);
+
+        public BuildOptions {
+            if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive");
+        }
+
+        /**
+         * Returns the settings that change the written entries, as stored in the manifest.
+         */
+        int settings() {
+            return (storePngs ? 1 : 0) | (optimizeTextures ? 2 : 0);
+        }
+    }
+
+    /**
+     * An entry ready to be written, compressed is null if the entry is copied from the previous zip.
+     *
+     * @param hash      the hash of everything the entry data depends on
+     * @param inputSize the size of the source before optimizing it
+     */
+    private record Prepared(@NotNull Source source, VoxelPackManifest.@Nullable Input input, byte @NotNull [] hash, long inputSize,
+                            VoxelZipWriter.@Nullable Compressed compressed, @Nullable String error) {
+    }
+
+    /**
+     * A hashed source file, data is only set if the file had to be read.
+     */
+    private record Hashed(VoxelPackManifest.@NotNull Input input, byte @Nullable [] data) {
+    }
+
+    /**
+     * The texture optimizations of a build.
+     *
+     * @param textures   the already hashed texture inputs
+     * @param duplicates duplicate texture ids mapped to the kept texture ids
+     * @param digest     the hash of the duplicates, part of the hash of every model
+     * @param deflaters  the deflaters for png image data
+     */
+    private record TextureStage(@NotNull Map<String, VoxelPackManifest.Input> textures, @NotNull SortedMap<String, String> duplicates,
+                                byte @NotNull [] digest, @NotNull Queue<Deflater> deflaters) {
+    }
+
+    /**
+     * A zip entry and where its content comes from, either a file or generated bytes.
+     */
+    private record Source(@NotNull String name, @Nullable String input, @Nullable Path file, byte @Nullable [] data) {
+    }
+
     /**
      * Builds the resource pack by ensuring required files are in place.
      */
@@ -44,6 +152,454 @@ public class VoxelResourcePackBuilder {
         }
     }
 
+    /**
+     * Builds the client pack on the given executor.
+     * <p>
+     * The generated entries are taken from the registries on the calling thread, all file work
+     * runs on the executor.
+     *
+     * @return a future completing with the build result
+     */
+    public static @NotNull CompletableFuture<BuildResult> buildAsync(@NotNull Executor executor, @NotNull BuildOptions options) {
+        Map<String, byte[]> generated = generateEntries();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return build(generated, options);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Builds the client pack, blocking until done.
+     *
+     * @return the build result
+     * @throws IOException if reading an input or writing the pack failed
+     */
+    public static @NotNull BuildResult build(@NotNull BuildOptions options) throws IOException {
+        return build(generateEntries(), options);
+    }
+
+    private static synchronized @NotNull BuildResult build(@NotNull Map<String, byte[]> generated, @NotNull BuildOptions options) throws IOException {
+        long start = System.nanoTime();
+        VoxelEngine.IS_BUILDING = true;
+
+        ForkJoinPool pool = new ForkJoinPool(options.parallelism());
+        Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+        Queue<Deflater> pngDeflaters = new ConcurrentLinkedQueue<>();
+
+        try {
+            VoxelPackManifest previous = Objects.requireNonNullElseGet(VoxelPackManifest.read(MANIFEST_FILE), VoxelPackManifest::empty);
+            boolean previousZipValid = previous.settings == options.settings()
+                    && Files.isRegularFile(PACK_FILE)
+                    && Files.size(PACK_FILE) == previous.zipSize
+                    && Files.getLastModifiedTime(PACK_FILE).toMillis() == previous.zipModified;
+
+            SortedMap<String, Source> collected = collectSources(generated);
+            Map<String, VoxelPackManifest.Input> inputs = new HashMap<>(collected.size() * 2);
+            Map<String, VoxelPackManifest.Output> outputs = new HashMap<>(collected.size() * 2);
+            SizeReport report = new SizeReport();
+
+            TextureStage textures = null;
+            if (options.optimizeTextures()) {
+                textures = deduplicateTextures(collected, previous, pool, pngDeflaters);
+                for (String duplicate : textures.duplicates().keySet()) {
+                    Source source = Objects.requireNonNull(collected.remove(textureEntry(duplicate)));
+                    VoxelPackManifest.Input input = textures.textures().get(source.input());
+                    inputs.put(source.input(), input);
+                    report.duplicate(input.size());
+                }
+            }
+            TextureStage stage = textures;
+            List<Source> sources = new ArrayList<>(collected.values());
+
+            Files.createDirectories(BUILD_FOLDER);
+            Path tmp = PACK_FILE.resolveSibling(PACK_FILE.getFileName() + ".tmp");
+            int written = 0;
+            int compressed = 0;
+            int reused = 0;
+            int invalid = 0;
+            byte[] packHash;
+            long size;
+
+            try (FileChannel previousZip = previousZipValid ? FileChannel.open(PACK_FILE, StandardOpenOption.READ) : null;
+                 VoxelZipWriter zip = new VoxelZipWriter(new BufferedOutputStream(Files.newOutputStream(tmp), 65536))) {
+
+                // entries are prepared in parallel but written in name order, at most window entries are held in memory
+                int window = options.parallelism() * 4;
+                Deque<CompletableFuture<Prepared>> pending = new ArrayDeque<>(window);
+                int next = 0;
+
+                while (next < sources.size() || !pending.isEmpty()) {
+                    while (next < sources.size() && pending.size() < window) {
+                        Source source = sources.get(next++);
+                        pending.add(CompletableFuture.supplyAsync(() -> prepare(source, previous, previousZip != null, options, deflaters, stage), pool));
+                    }
+
+                    Prepared prepared = join(pending.poll());
+                    Source source = prepared.source();
+                    if (prepared.input() != null) inputs.put(source.input(), prepared.input());
+
+                    if (prepared.error() != null) {
+                        VoxelEngine.LOGGER.warn("Skipping invalid pack file {}: {}", source.input(), prepared.error());
+                        invalid++;
+                        continue;
+                    }
+
+                    VoxelZipWriter.Entry entry;
+                    if (prepared.compressed() == null) {
+                        entry = zip.copy(Objects.requireNonNull(previousZip), previous.outputs.get(source.name()).entry());
+                        reused++;
+                    } else {
+                        entry = zip.write(source.name(), prepared.compressed());
+                        compressed++;
+                    }
+
+                    outputs.put(source.name(), new VoxelPackManifest.Output(entry, prepared.hash()));
+                    report.entry(source.name(), prepared.inputSize(), entry.compressedSize());
+                    written++;
+                }
+
+                packHash = zip.finish();
+                size = zip.size();
+            }
+
+            Files.move(tmp, PACK_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            new VoxelPackManifest(inputs, outputs, options.settings(), size, Files.getLastModifiedTime(PACK_FILE).toMillis(), packHash).write(MANIFEST_FILE);
+
+            BuildResult result = new BuildResult(PACK_FILE, packHash, size, written, compressed, reused, System.nanoTime() - start);
+            VoxelEngine.LOGGER.info("Built resource pack with {} entries in {} ms ({} compressed, {} reused, {} invalid), sha1 {}",
+                    result.entries(), TimeUnit.NANOSECONDS.toMillis(result.nanos()), compressed, reused, invalid, result.sha1Hex());
+            VoxelEngine.LOGGER.info(report.summary(size));
+            Files.writeString(REPORT_FILE, report.table(size));
+            return result;
+        } finally {
+            pool.shutdown();
+            for (Deflater deflater : deflaters) deflater.end();
+            for (Deflater deflater : pngDeflaters) deflater.end();
+            VoxelEngine.IS_BUILDING = false;
+        }
+    }
+
+    /**
+     * Hashes, validates and compresses one entry, runs on the build pool.
+     */
+    private static @NotNull Prepared prepare(@NotNull Source source, @NotNull VoxelPackManifest previous, boolean previousZipValid,
+                                             @NotNull BuildOptions options, @NotNull Queue<Deflater> deflaters, @Nullable TextureStage textures) {
+        try {
+            byte[] data = source.data();
+            byte[] hash;
+            long inputSize;
+            VoxelPackManifest.Input input = null;
+
+            if (source.file() != null) {
+                VoxelPackManifest.Input hashed = textures == null ? null : textures.textures().get(source.input());
+                if (hashed != null) {
+                    input = hashed;
+                } else {
+                    Hashed read = hashInput(source, previous);
+                    input = read.input();
+                    data = read.data();
+                }
+                hash = input.hash();
+                inputSize = input.size();
+            } else {
+                hash = sha1().digest(Objects.requireNonNull(data));
+                inputSize = data.length;
+            }
+
+            boolean model = textures != null && !textures.duplicates().isEmpty() && isModel(source.name());
+            // a model changes whenever the textures it may point at change
+            if (model) {
+                MessageDigest digest = sha1();
+                digest.update(hash);
+                hash = digest.digest(textures.digest());
+            }
+
+            VoxelPackManifest.Output known = previous.outputs.get(source.name());
+            if (previousZipValid && known != null && Arrays.equals(known.inputHash(), hash)) {
+                return new Prepared(source, input, hash, inputSize, null, null);
+            }
+
+            if (data == null) data = Files.readAllBytes(Objects.requireNonNull(source.file()));
+
+            String error = validate(source.name(), data);
+            // forget the input so the file is checked again on the next build
+            if (error != null) return new Prepared(source, null, hash, inputSize, null, error);
+
+            if (model) data = VoxelTextureStage.rewriteModel(data, textures.duplicates());
+
+            if (textures != null && source.name().endsWith(".png")) {
+                Deflater deflater = textures.deflaters().poll();
+                if (deflater == null) deflater = new Deflater(Deflater.BEST_COMPRESSION);
+                try {
+                    data = VoxelTextureStage.optimizePng(data, deflater);
+                } finally {
+                    textures.deflaters().add(deflater);
+                }
+            }
+
+            if (options.storePngs() && source.name().endsWith(".png")) {
+                return new Prepared(source, input, hash, inputSize, VoxelZipWriter.stored(data), null);
+            }
+
+            Deflater deflater = deflaters.poll();
+            if (deflater == null) deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+            try {
+                return new Prepared(source, input, hash, inputSize, VoxelZipWriter.compress(data, deflater), null);
+            } finally {
+                deflaters.add(deflater);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the input of a source file, reading and hashing it only if it changed since the last build.
+     *
+     * @return the input and the content if the file was read
+     */
+    private static @NotNull Hashed hashInput(@NotNull Source source, @NotNull VoxelPackManifest previous) throws IOException {
+        Path file = Objects.requireNonNull(source.file());
+        long fileSize = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        VoxelPackManifest.Input known = previous.inputs.get(source.input());
+
+        // same size and modification time, trust the hash of the last build instead of reading the file
+        if (known != null && known.size() == fileSize && known.modified() == modified) {
+            return new Hashed(new VoxelPackManifest.Input(fileSize, modified, known.hash()), null);
+        }
+
+        byte[] data = Files.readAllBytes(file);
+        return new Hashed(new VoxelPackManifest.Input(fileSize, modified, sha1().digest(data)), data);
+    }
+
+    /**
+     * Hashes all textures on the pool and finds the identical ones.
+     */
+    private static @NotNull TextureStage deduplicateTextures(@NotNull SortedMap<String, Source> sources, @NotNull VoxelPackManifest previous,
+                                                             @NotNull ForkJoinPool pool, @NotNull Queue<Deflater> deflaters) throws IOException {
+        Map<String, VoxelPackManifest.Input> textures = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> hashing = new ArrayList<>();
+
+        for (Source source : sources.values()) {
+            if (source.file() == null || VoxelTextureStage.textureId(source.name()) == null) continue;
+
+            hashing.add(CompletableFuture.runAsync(() -> {
+                try {
+                    // the content is read again when the entry is prepared, only a window of entries is held in memory
+                    textures.put(source.input(), hashInput(source, previous).input());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, pool));
+        }
+
+        try {
+            CompletableFuture.allOf(hashing.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            throw e;
+        }
+
+        SortedMap<String, byte[]> hashes = new TreeMap<>();
+        for (Source source : sources.values()) {
+            VoxelPackManifest.Input input = source.input() == null ? null : textures.get(source.input());
+            if (input != null) hashes.put(source.name(), input.hash());
+        }
+
+        SortedMap<String, String> duplicates = VoxelTextureStage.findDuplicates(hashes, sources.keySet());
+        return new TextureStage(textures, duplicates, VoxelTextureStage.digest(duplicates), deflaters);
+    }
+
+    /**
+     * Returns the zip entry name of a texture id.
+     */
+    private static @NotNull String textureEntry(@NotNull String id) {
+        int separator = id.indexOf(':');
+        return "assets/" + id.substring(0, separator) + "/textures/" + id.substring(separator + 1) + ".png";
+    }
+
+    private static boolean isModel(@NotNull String name) {
+        return name.startsWith("assets/") && name.contains("/models/") && name.endsWith(".json");
+    }
+
+    /**
+     * Checks that a file can be read by the client.
+     *
+     * @return the problem, or null if the file is fine
+     */
+    private static @Nullable String validate(@NotNull String name, byte @NotNull [] data) {
+        if (name.endsWith(".png")) {
+            return data.length >= PNG_SIGNATURE.length && Arrays.equals(data, 0, PNG_SIGNATURE.length, PNG_SIGNATURE, 0, PNG_SIGNATURE.length)
+                    ? null : "not a png file";
+        }
+
+        if (name.endsWith(".json") || name.endsWith(".mcmeta")) {
+            try {
+                JsonParser.parseString(new String(data, StandardCharsets.UTF_8));
+            } catch (JsonParseException e) {
+                return "malformed json, " + e.getMessage();
+            }
+        }
+
+        return null;
+    }
+
+    private static @NotNull Prepared join(@NotNull CompletableFuture<Prepared> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Sizes of the pack entries by category, logged and written next to the zip after every build.
+     */
+    private static final class SizeReport {
+
+        private static final String[] CATEGORIES = {"models", "textures", "other"};
+
+        private final int[] entries = new int[CATEGORIES.length];
+        private final long[] inputBytes = new long[CATEGORIES.length];
+        private final long[] zipBytes = new long[CATEGORIES.length];
+        private int duplicates;
+        private long duplicateBytes;
+
+        void entry(@NotNull String name, long inputSize, long zipSize) {
+            int category = name.contains("/models/") ? 0 : name.contains("/textures/") ? 1 : 2;
+            entries[category]++;
+            inputBytes[category] += inputSize;
+            zipBytes[category] += zipSize;
+        }
+
+        void duplicate(long inputSize) {
+            duplicates++;
+            duplicateBytes += inputSize;
+        }
+
+        @NotNull String summary(long packSize) {
+            long input = Arrays.stream(inputBytes).sum() + duplicateBytes;
+            return String.format(Locale.ROOT, "Resource pack is %d bytes from %d bytes of sources (%.1f%%), %d duplicate textures removed",
+                    packSize, input, input == 0 ? 100.0 : packSize * 100.0 / input, duplicates);
+        }
+
+        @NotNull String table(long packSize) {
+            StringBuilder table = new StringBuilder();
+            table.append(String.format(Locale.ROOT, "%-10s %8s %14s %14s %7s%n", "category", "entries", "source bytes", "zip bytes", "ratio"));
+            for (int i = 0; i < CATEGORIES.length; i++) {
+                row(table, CATEGORIES[i], entries[i], inputBytes[i], zipBytes[i]);
+            }
+            row(table, "total", Arrays.stream(entries).sum(), Arrays.stream(inputBytes).sum(), Arrays.stream(zipBytes).sum());
+            table.append(String.format(Locale.ROOT, "%nduplicate textures removed: %d (%d bytes)%n", duplicates, duplicateBytes));
+            table.append(String.format(Locale.ROOT, "zip file size: %d bytes%n", packSize));
+            return table.toString();
+        }
+
+        private static void row(@NotNull StringBuilder table, @NotNull String category, int entries, long inputBytes, long zipBytes) {
+            table.append(String.format(Locale.ROOT, "%-10s %8d %14d %14d %6.1f%%%n", category, entries, inputBytes, zipBytes,
+                    inputBytes == 0 ? 100.0 : zipBytes * 100.0 / inputBytes));
+        }
+    }
+
+    /**
+     * Collects all entries of the client pack, sorted by name so the zip is reproducible.
+     */
+    private static @NotNull SortedMap<String, Source> collectSources(@NotNull Map<String, byte[]> generated) throws IOException {
+        SortedMap<String, Source> sources = new TreeMap<>();
+
+        for (String folder : ASSET_FOLDERS) {
+            Path root = TARGET_PACK.resolve(folder);
+            if (!Files.isDirectory(root)) continue;
+
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    Path relative = root.relativize(file);
+                    // textures/$namespace/block/a.png -> assets/$namespace/textures/block/a.png
+                    if (relative.getNameCount() < 2) continue;
+
+                    String namespace = relative.getName(0).toString();
+                    String path = separatorsToSlash(relative.subpath(1, relative.getNameCount()));
+                    String name = "assets/" + namespace + "/" + folder + "/" + path;
+                    sources.put(name, new Source(name, folder + "/" + separatorsToSlash(relative), file, null));
+                }
+            }
+        }
+
+        generated.forEach((name, data) -> sources.put(name, new Source(name, null, null, data)));
+        return sources;
+    }
+
+    /**
+     * Generates pack.mcmeta and the blockstates showing custom blocks on their carrier states.
+     */
+    private static @NotNull Map<String, byte[]> generateEntries() {
+        Map<String, byte[]> entries = new TreeMap<>();
+        entries.put("pack.mcmeta", ("{\"pack\":{\"pack_format\":" + PACK_FORMAT + ",\"description\":\"VoxelEngine\"}}").getBytes(StandardCharsets.UTF_8));
+
+        Map<Material, SortedMap<String, String>> variants = new EnumMap<>(Material.class);
+        for (int rawId = 0; rawId < VoxRegistries.MATERIAL.size(); rawId++) {
+            VoxMaterial material = VoxRegistries.MATERIAL.valueOf(rawId);
+            if (material == null || material.isVanillaMaterial()) continue;
+
+            Material carrier = material.toVaMaterial();
+            if (carrier == null || !carrier.isBlock()) continue;
+
+            int state = VoxelClientStates.stateOf(rawId);
+            int carrierState = VoxelClientStates.stateOf(carrier.createBlockData());
+            // not given an own state, it shows as the plain carrier
+            if (state == carrierState) continue;
+
+            SortedMap<String, String> carrierVariants = variants.computeIfAbsent(carrier, key -> {
+                SortedMap<String, String> created = new TreeMap<>();
+                created.put(VoxelClientStates.propertiesOf(carrierState), "minecraft:block/" + key.getKey().getKey());
+                return created;
+            });
+
+            String model = material.getAttribute(VoxAttributeKey.MODEL, material.identifier().namespace() + ":block/" + material.identifier().key());
+            carrierVariants.put(VoxelClientStates.propertiesOf(state), model);
+        }
+
+        variants.forEach((carrier, carrierVariants) -> {
+            StringBuilder json = new StringBuilder("{\"variants\":{");
+            carrierVariants.forEach((properties, model) -> {
+                if (json.charAt(json.length() - 1) != '{') json.append(',');
+                json.append(quote(properties)).append(":{\"model\":").append(quote(model)).append('}');
+            });
+            json.append("}}");
+
+            entries.put("assets/minecraft/blockstates/" + carrier.getKey().getKey() + ".json", json.toString().getBytes(StandardCharsets.UTF_8));
+        });
+
+        return entries;
+    }
+
+    private static @NotNull String quote(@NotNull String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') quoted.append('\\');
+            quoted.append(c);
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static @NotNull String separatorsToSlash(@NotNull Path path) {
+        return path.toString().replace(path.getFileSystem().getSeparator(), "/");
+    }
+
+    private static @NotNull MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
     /**
      * Extracts the resource pack from the JAR (inside resources/voxel/pack) to plugins/voxel/pack.
      *
@@ -84,10 +640,16 @@ public class VoxelResourcePackBuilder {
                     if (entry.isDirectory()) {
                         Files.createDirectories(outPath);
                     } else {
+                        byte[] content;
                         try (InputStream in = jarFile.getInputStream(entry)) {
-                            Files.createDirectories(outPath.getParent());
-                            Files.copy(in, outPath, StandardCopyOption.REPLACE_EXISTING);
+                            content = in.readAllBytes();
                         }
+
+                        // keep unchanged files untouched, their modification time lets the next build skip them
+                        if (Files.isRegularFile(outPath) && Files.size(outPath) == content.length && Arrays.equals(Files.readAllBytes(outPath), content)) continue;
+
+                        Files.createDirectories(outPath.getParent());
+                        Files.write(outPath, content);
                     }
                 }
             }
@@ -0,0 +1,259 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.resourcepack.builder;
+
+import com.google.gson.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional texture optimizations of the pack build.
+ * <p>
+ * Block and item textures with identical content are stored once, models referencing a
+ * duplicate are pointed at the texture that is kept. PNG files are shrunk losslessly: chunks
+ * the client ignores are dropped and the image data is deflated again at the best level.
+ * <p>
+ * The client stitches its texture atlases itself from the separate texture files, so textures
+ * are not packed into atlases here.
+ */
+final class VoxelTextureStage {
+
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    // chunks needed to show the image, everything else is dropped
+    private static final Set<String> KEPT_CHUNKS = Set.of("IHDR", "PLTE", "tRNS");
+    private static final String[] DEDUPLICATED_FOLDERS = {"block/", "item/"};
+    private static final long MAX_IMAGE_BYTES = 64L * 1024 * 1024;
+    private static final String VANILLA_NAMESPACE = "minecraft:";
+
+    private VoxelTextureStage() {
+    }
+
+    /**
+     * Returns the texture id of a zip entry if it may be deduplicated.
+     *
+     * @return the id like {@code namespace:block/stone}, or null
+     */
+    static @Nullable String textureId(@NotNull String entryName) {
+        if (!entryName.startsWith("assets/") || !entryName.endsWith(".png")) return null;
+
+        int namespaceEnd = entryName.indexOf('/', 7);
+        if (namespaceEnd < 0 || !entryName.startsWith("/textures/", namespaceEnd)) return null;
+
+        String path = entryName.substring(namespaceEnd + 10, entryName.length() - 4);
+        for (String folder : DEDUPLICATED_FOLDERS) {
+            if (path.startsWith(folder)) return entryName.substring(7, namespaceEnd) + ":" + path;
+        }
+        return null;
+    }
+
+    /**
+     * Finds textures with identical content.
+     * <p>
+     * Textures of the {@code minecraft} namespace override vanilla textures that vanilla models
+     * reference, the pack cannot rewrite those models, so these textures are always kept.
+     *
+     * @param textureHashes the content hash of every texture entry, sorted by entry name
+     * @param entryNames    the names of all entries, animated textures are never deduplicated
+     * @return the id of each duplicate texture mapped to the id of the texture that is kept
+     */
+    static @NotNull SortedMap<String, String> findDuplicates(@NotNull SortedMap<String, byte[]> textureHashes, @NotNull Set<String> entryNames) {
+        Map<String, String> kept = new HashMap<>();
+        SortedMap<String, String> duplicates = new TreeMap<>();
+
+        textureHashes.forEach((name, hash) -> {
+            String id = textureId(name);
+            if (id != null && id.startsWith(VANILLA_NAMESPACE) && !entryNames.contains(name + ".mcmeta")) {
+                kept.putIfAbsent(HexFormat.of().formatHex(hash), id);
+            }
+        });
+
+        textureHashes.forEach((name, hash) -> {
+            String id = textureId(name);
+            if (id == null || id.startsWith(VANILLA_NAMESPACE) || entryNames.contains(name + ".mcmeta")) return;
+
+            String original = kept.putIfAbsent(HexFormat.of().formatHex(hash), id);
+            if (original != null) duplicates.put(id, original);
+        });
+
+        return duplicates;
+    }
+
+    /**
+     * Returns a hash of the duplicate mapping, models have to be rewritten whenever it changes.
+     */
+    static byte @NotNull [] digest(@NotNull SortedMap<String, String> duplicates) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            duplicates.forEach((duplicate, original) -> digest.update((duplicate + '=' + original + '\n').getBytes(StandardCharsets.UTF_8)));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * Points the textures of a model at the kept textures.
+     *
+     * @return the rewritten model, or the given bytes if no texture is a duplicate
+     */
+    static byte @NotNull [] rewriteModel(byte @NotNull [] model, @NotNull Map<String, String> duplicates) {
+        JsonElement root = JsonParser.parseString(new String(model, StandardCharsets.UTF_8));
+        if (!root.isJsonObject() || !(root.getAsJsonObject().get("textures") instanceof JsonObject textures)) return model;
+
+        boolean changed = false;
+        for (Map.Entry<String, JsonElement> texture : textures.entrySet()) {
+            if (!(texture.getValue() instanceof JsonPrimitive primitive) || !primitive.isString()) continue;
+
+            String reference = primitive.getAsString();
+            // references to other texture variables
+            if (reference.startsWith("#")) continue;
+
+            String original = duplicates.get(reference.indexOf(':') < 0 ? "minecraft:" + reference : reference);
+            if (original == null) continue;
+
+            texture.setValue(new JsonPrimitive(original));
+            changed = true;
+        }
+
+        return changed ? GSON.toJson(root).getBytes(StandardCharsets.UTF_8) : model;
+    }
+
+    /**
+     * Shrinks a PNG without changing a single pixel.
+     *
+     * @return the smaller PNG, or the given bytes if it cannot be shrunk or is not understood
+     */
+    static byte @NotNull [] optimizePng(byte @NotNull [] png, @NotNull Deflater deflater) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(png);
+            byte[] signature = new byte[PNG_SIGNATURE.length];
+            in.get(signature);
+            if (!Arrays.equals(signature, PNG_SIGNATURE)) return png;
+
+            List<byte[]> kept = new ArrayList<>();
+            ByteArrayOutputStream imageData = new ByteArrayOutputStream(png.length);
+            byte[] header = null;
+            boolean ended = false;
+
+            while (!ended && in.remaining() >= 12) {
+                int length = in.getInt();
+                if (length < 0 || length > in.remaining() - 8) return png;
+
+                byte[] chunk = new byte[length + 4];
+                in.get(chunk);
+                in.getInt(); // crc, written again below
+                String type = new String(chunk, 0, 4, StandardCharsets.ISO_8859_1);
+
+                if (type.equals("IDAT")) {
+                    imageData.write(chunk, 4, length);
+                } else if (type.equals("IEND")) {
+                    ended = true;
+                } else if (KEPT_CHUNKS.contains(type)) {
+                    if (type.equals("IHDR")) header = chunk;
+                    kept.add(chunk);
+                } else if (Character.isUpperCase(type.charAt(0))) {
+                    // an unknown critical chunk, the image cannot be understood without it
+                    return png;
+                }
+            }
+
+            if (!ended || header == null || header.length != 17 || imageData.size() == 0) return png;
+
+            byte[] compressed = recompress(imageData.toByteArray(), header, deflater);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(png.length);
+            out.writeBytes(PNG_SIGNATURE);
+            // the palette and transparency have to come before the image data
+            for (byte[] chunk : kept) {
+                writeChunk(out, Arrays.copyOf(chunk, 4), Arrays.copyOfRange(chunk, 4, chunk.length));
+            }
+            writeChunk(out, "IDAT".getBytes(StandardCharsets.ISO_8859_1), compressed);
+            writeChunk(out, "IEND".getBytes(StandardCharsets.ISO_8859_1), new byte[0]);
+
+            byte[] optimized = out.toByteArray();
+            return optimized.length < png.length ? optimized : png;
+        } catch (RuntimeException | DataFormatException e) {
+            return png;
+        }
+    }
+
+    /**
+     * Deflates the image data again, keeping the original if it is smaller.
+     */
+    private static byte @NotNull [] recompress(byte @NotNull [] imageData, byte @NotNull [] header, @NotNull Deflater deflater) throws DataFormatException {
+        ByteBuffer ihdr = ByteBuffer.wrap(header, 4, 13);
+        long width = Integer.toUnsignedLong(ihdr.getInt());
+        long height = Integer.toUnsignedLong(ihdr.getInt());
+        int bitDepth = ihdr.get() & 0xFF;
+        int colorType = ihdr.get() & 0xFF;
+        ihdr.get();
+        ihdr.get();
+        int interlace = ihdr.get() & 0xFF;
+
+        int channels = switch (colorType) {
+            case 2 -> 3;
+            case 4 -> 2;
+            case 6 -> 4;
+            default -> 1;
+        };
+        // interlaced images have a different size, their data is kept as is
+        long rawSize = height * (1 + (width * channels * bitDepth + 7) / 8);
+        if (interlace != 0 || rawSize <= 0 || rawSize > MAX_IMAGE_BYTES) return imageData;
+
+        byte[] raw = new byte[(int) rawSize];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(imageData);
+            int read = 0;
+            while (read < raw.length && !inflater.finished()) {
+                int count = inflater.inflate(raw, read, raw.length - read);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) return imageData;
+                read += count;
+            }
+            if (read != raw.length) return imageData;
+        } finally {
+            inflater.end();
+        }
+
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(imageData.length);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+            if (compressed.size() >= imageData.length) return imageData;
+        }
+
+        return compressed.toByteArray();
+    }
+
+    private static void writeChunk(@NotNull ByteArrayOutputStream out, byte @NotNull [] type, byte @NotNull [] data) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(data);
+
+        out.writeBytes(ByteBuffer.allocate(4).putInt(data.length).array());
+        out.writeBytes(type);
+        out.writeBytes(data);
+        out.writeBytes(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
+}
@@ -1,47 +1,213 @@
 package sync.voxel.engine.paper.resourcepack.builder;
 
+import io.papermc.paper.datapack.Datapack;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 
 import org.bukkit.Tag;
 import org.jetbrains.annotations.NotNull;
-import sync.voxel.engine.paper.material.VoxMaterialBehaviorGroup;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.api.material.VoxMaterial;
+import sync.voxel.engine.api.registry.VoxIndexedRegistry;
+import sync.voxel.engine.paper.VoxelEngine;
+import sync.voxel.engine.paper.material.VoxMaterialBitsetGroup;
 import sync.voxel.engine.api.util.identifier.VoxIdentifier;
 import sync.voxel.engine.api.registry.VoxRegistries;
 import sync.voxel.engine.paper.material.VoxelBukkitMaterial;
 
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Converts the vanilla {@link Material}s and their tags into {@link VoxRegistries}.
+ * <p>
+ * Materials are wrapped in parallel and registered in ordinal order, so raw ids are stable
+ * between restarts. Tag membership is cached on disk keyed by the server version and the
+ * enabled datapacks, a restart with the same key skips reading the tags entirely. The enabled
+ * datapacks and the tag members are read through the Bukkit API on the calling thread, only
+ * the wrapping and the bitset work runs on the executor.
+ */
 public class VoxelVanillaConverter {
 
+    private static final Path CACHE_FILE = Paths.get("plugins/voxel/cache/vanilla-groups.bin");
+    private static final int CACHE_MAGIC = 0x56584347; // VXCG
+    private static final int CACHE_FORMAT = 1;
+
+    /**
+     * Converts all vanilla materials and tags, blocking until done. Must be called on the main thread.
+     */
     public static void convertVanilla() {
-        convertMaterials();
-        convertMaterialGroups();
+        convertVanillaAsync(ForkJoinPool.commonPool()).join();
+    }
+
+    /**
+     * Converts all vanilla materials and tags on the given executor.
+     * <p>
+     * Must be called on the main thread, the datapacks and tags are read before this method returns.
+     *
+     * @param executor the executor to run the conversion on
+     * @return a future that completes once all materials and groups are registered
+     */
+    public static @NotNull CompletableFuture<Void> convertVanillaAsync(@NotNull Executor executor) {
+        long start = System.nanoTime();
+        CompletableFuture<int[]> materials = CompletableFuture.supplyAsync(VoxelVanillaConverter::convertMaterials, executor);
+
+        String cacheKey = cacheKey();
+        Map<VoxIdentifier, BitSet> cached = readCache(cacheKey);
+        List<TagMembers> tags = cached == null ? readTags() : List.of();
+        long tagsRead = System.nanoTime();
+
+        CompletableFuture<Map<VoxIdentifier, BitSet>> groups = cached != null ? CompletableFuture.completedFuture(cached) : CompletableFuture.supplyAsync(() -> {
+            Map<VoxIdentifier, BitSet> collected = toOrdinals(tags);
+            writeCache(cacheKey, collected);
+            return collected;
+        }, executor);
+
+        return materials.thenCombineAsync(groups, (rawIdByOrdinal, members) -> {
+            long materialsDone = System.nanoTime();
+            registerGroups(members, rawIdByOrdinal);
+            long groupsDone = System.nanoTime();
+
+            VoxelEngine.LOGGER.info("Converted {} vanilla materials and {} tags in {} ms (tags read {} ms{}, groups {} ms)",
+                    VoxRegistries.MATERIAL.size(), members.size(), millis(groupsDone - start),
+                    millis(tagsRead - start), cached != null ? " cached" : "", millis(groupsDone - materialsDone));
+            return null;
+        }, executor);
     }
 
-    private static void convertMaterials() {
-        for (Material material : Material.values()) {
-            VoxRegistries.MATERIAL.register(new VoxelBukkitMaterial(material));
+    private static int @NotNull [] convertMaterials() {
+        Material[] materials = Material.values();
+        VoxelBukkitMaterial[] wrappers = new VoxelBukkitMaterial[materials.length];
+
+        IntStream.range(0, materials.length).parallel()
+                .filter(ordinal -> !materials[ordinal].isLegacy())
+                .forEach(ordinal -> wrappers[ordinal] = new VoxelBukkitMaterial(materials[ordinal]));
+
+        int[] rawIdByOrdinal = new int[materials.length];
+        Arrays.fill(rawIdByOrdinal, VoxIndexedRegistry.UNKNOWN_RAW_ID);
+
+        for (int ordinal = 0; ordinal < wrappers.length; ordinal++) {
+            if (wrappers[ordinal] == null) continue;
+
+            VoxMaterial registered = VoxRegistries.MATERIAL.registerIfAbsent(wrappers[ordinal]);
+            rawIdByOrdinal[ordinal] = VoxRegistries.MATERIAL.rawIdOf(registered);
         }
+
+        return rawIdByOrdinal;
     }
 
-    private static void convertMaterialGroups() {
-        Iterable<Tag<Material>> blockTags = Bukkit.getTags("blocks", Material.class);
-        Iterable<Tag<Material>> itemsTags = Bukkit.getTags("items", Material.class);
+    /**
+     * The members of one tag, copied out of the Bukkit API on the main thread.
+     */
+    private record TagMembers(@NotNull VoxIdentifier identifier, @NotNull Material @NotNull [] values) {
+    }
 
-        for (Tag<Material> block : blockTags) registerVanillaGroup(block);
-        for (Tag<Material> item : itemsTags) registerVanillaGroup(item);
+    private static @NotNull List<TagMembers> readTags() {
+        List<TagMembers> tags = new ArrayList<>();
+        for (String registry : List.of(Tag.REGISTRY_BLOCKS, Tag.REGISTRY_ITEMS)) {
+            for (Tag<Material> tag : Bukkit.getTags(registry, Material.class)) {
+                tags.add(new TagMembers(VoxIdentifier.represent(tag.getKey()), tag.getValues().toArray(Material[]::new)));
+            }
+        }
+        return tags;
     }
 
-    private static void registerVanillaGroup(@NotNull Tag<Material> tag) {
-        VoxMaterialBehaviorGroup group = new VoxMaterialBehaviorGroup(VoxIdentifier.represent(tag.getKey()));
+    private static @NotNull Map<VoxIdentifier, BitSet> toOrdinals(@NotNull List<TagMembers> tags) {
+        List<BitSet> members = tags.parallelStream().map(tag -> {
+            BitSet ordinals = new BitSet();
+            for (Material material : tag.values()) ordinals.set(material.ordinal());
+            return ordinals;
+        }).toList();
+
+        // block and item tags share keys, a material is part of the group if either tag contains it
+        Map<VoxIdentifier, BitSet> result = new LinkedHashMap<>();
+        for (int i = 0; i < tags.size(); i++) {
+            result.merge(tags.get(i).identifier(), members.get(i), (a, b) -> {
+                a.or(b);
+                return a;
+            });
+        }
+
+        return result;
+    }
 
-        for (Material material : tag.getValues()) {
-            VoxelBukkitMaterial voxelMaterial = (VoxelBukkitMaterial) VoxRegistries.MATERIAL.valueOf(VoxIdentifier.represent(material.getKey()));
-            if (voxelMaterial != null) {
-                group.add(voxelMaterial);
+    private static void registerGroups(@NotNull Map<VoxIdentifier, BitSet> tags, int @NotNull [] rawIdByOrdinal) {
+        tags.forEach((identifier, ordinals) -> {
+            BitSet rawIds = new BitSet(VoxRegistries.MATERIAL.size());
+            for (int ordinal = ordinals.nextSetBit(0); ordinal >= 0; ordinal = ordinals.nextSetBit(ordinal + 1)) {
+                if (ordinal < rawIdByOrdinal.length && rawIdByOrdinal[ordinal] >= 0) rawIds.set(rawIdByOrdinal[ordinal]);
             }
+
+            VoxRegistries.MATERIAL_GROUPS.registerIfAbsent(new VoxMaterialBitsetGroup(identifier, rawIds));
+        });
+    }
+
+    private static @NotNull String cacheKey() {
+        List<String> datapacks = new ArrayList<>();
+        for (Datapack datapack : Bukkit.getDatapackManager().getEnabledPacks()) datapacks.add(datapack.getName());
+        Collections.sort(datapacks);
+
+        return Bukkit.getVersion() + '|' + Material.values().length + '|' + String.join(",", datapacks);
+    }
+
+    private static @Nullable Map<VoxIdentifier, BitSet> readCache(@NotNull String cacheKey) {
+        if (!Files.isRegularFile(CACHE_FILE)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(CACHE_FILE)))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_FORMAT || !in.readUTF().equals(cacheKey)) {
+                VoxelEngine.LOGGER.debug("Vanilla group cache is outdated, rebuilding.");
+                return null;
+            }
+
+            int count = in.readInt();
+            Map<VoxIdentifier, BitSet> tags = new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                VoxIdentifier identifier = VoxIdentifier.parse(in.readUTF());
+                long[] words = new long[in.readInt()];
+                for (int w = 0; w < words.length; w++) words[w] = in.readLong();
+                tags.put(identifier, BitSet.valueOf(words));
+            }
+
+            return tags;
+        } catch (IOException | IllegalArgumentException e) {
+            VoxelEngine.LOGGER.warn("Failed to read vanilla group cache, rebuilding", e);
+            return null;
         }
+    }
+
+    private static void writeCache(@NotNull String cacheKey, @NotNull Map<VoxIdentifier, BitSet> tags) {
+        try {
+            Files.createDirectories(CACHE_FILE.getParent());
+            Path tmp = CACHE_FILE.resolveSibling(CACHE_FILE.getFileName() + ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(CACHE_MAGIC);
+                out.writeInt(CACHE_FORMAT);
+                out.writeUTF(cacheKey);
+                out.writeInt(tags.size());
+
+                for (Map.Entry<VoxIdentifier, BitSet> entry : tags.entrySet()) {
+                    out.writeUTF(entry.getKey().toString());
+                    long[] words = entry.getValue().toLongArray();
+                    out.writeInt(words.length);
+                    for (long word : words) out.writeLong(word);
+                }
+            }
+
+            Files.move(tmp, CACHE_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            VoxelEngine.LOGGER.warn("Failed to write vanilla group cache", e);
+        }
+    }
 
-        VoxRegistries.MATERIAL_GROUPS.register(group);
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
     }
 
 }
@@ -0,0 +1,252 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.resourcepack.builder;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes zip files whose bytes only depend on the entries written.
+ * <p>
+ * All entries get the same timestamp, no extra fields and no data descriptors, so writing the
+ * same entries in the same order always produces the same file and the same SHA-1. Compressed
+ * data of an entry can be copied unchanged from a zip written earlier by this class.
+ * Zip64 is not supported.
+ */
+final class VoxelZipWriter implements Closeable {
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int UTF8_FLAG = 0x0800;
+    // 1980-01-01 00:00, the earliest dos date
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = 1 << 5 | 1;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private final OutputStream out;
+    private final MessageDigest digest;
+    private final List<Entry> entries = new ArrayList<>();
+    private final ByteBuffer header = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+    private long position;
+    private boolean closed;
+
+    /**
+     * The written entry, enough to copy its compressed data into another zip later.
+     *
+     * @param offset the offset of the local header
+     */
+    record Entry(@NotNull String name, int method, int crc, long compressedSize, long size, long offset) {
+
+        /**
+         * Returns the offset of the compressed data.
+         */
+        long dataOffset() {
+            return offset + LOCAL_HEADER_SIZE + name.getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    VoxelZipWriter(@NotNull OutputStream out) {
+        this.out = out;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * Compresses data with the given deflater and returns it as stored data if that is not smaller.
+     *
+     * @return the compressed entry data, call {@link #write} to add it
+     */
+    static @NotNull Compressed compress(byte @NotNull [] data, @NotNull Deflater deflater) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            compressed.write(buffer, 0, length);
+            // stop early, the entry is stored anyway
+            if (compressed.size() >= data.length) break;
+        }
+
+        if (!deflater.finished() || compressed.size() >= data.length) {
+            return new Compressed(STORED, (int) crc.getValue(), data, data.length);
+        }
+        return new Compressed(DEFLATED, (int) crc.getValue(), compressed.toByteArray(), data.length);
+    }
+
+    /**
+     * Returns data as stored entry data, for content that is compressed already.
+     */
+    static @NotNull Compressed stored(byte @NotNull [] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return new Compressed(STORED, (int) crc.getValue(), data, data.length);
+    }
+
+    /**
+     * Data of one entry, ready to be written.
+     */
+    record Compressed(int method, int crc, byte @NotNull [] data, long size) {
+    }
+
+    /**
+     * Writes an entry with already compressed data.
+     */
+    @NotNull Entry write(@NotNull String name, @NotNull Compressed compressed) throws IOException {
+        Entry entry = begin(name, compressed.method(), compressed.crc(), compressed.data().length, compressed.size());
+        writeBytes(compressed.data(), 0, compressed.data().length);
+        return entry;
+    }
+
+    /**
+     * Copies the compressed data of an entry of another zip written by this class.
+     *
+     * @param source the zip containing the entry
+     * @param entry  the entry in the source zip
+     */
+    @NotNull Entry copy(@NotNull FileChannel source, @NotNull Entry entry) throws IOException {
+        Entry copied = begin(entry.name(), entry.method(), entry.crc(), entry.compressedSize(), entry.size());
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(65536, Math.max(1, entry.compressedSize())));
+        long offset = entry.dataOffset();
+        long remaining = entry.compressedSize();
+        while (remaining > 0) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+            int read = source.read(buffer, offset);
+            if (read < 0) throw new EOFException("Source zip ends inside entry " + entry.name());
+
+            writeBytes(buffer.array(), 0, read);
+            offset += read;
+            remaining -= read;
+        }
+
+        return copied;
+    }
+
+    private @NotNull Entry begin(@NotNull String name, int method, int crc, long compressedSize, long size) throws IOException {
+        if (closed) throw new IllegalStateException("Zip is already closed");
+        if (entries.size() >= MAX_ENTRIES) throw new IllegalStateException("Too many zip entries");
+        if (compressedSize > MAX_SIZE || size > MAX_SIZE) throw new IllegalStateException("Entry " + name + " is too large");
+
+        byte[] encodedName = name.getBytes(StandardCharsets.UTF_8);
+        Entry entry = new Entry(name, method, crc, compressedSize, size, position);
+        entries.add(entry);
+
+        header.clear();
+        header.putInt(LOCAL_HEADER)
+                .putShort((short) VERSION)
+                .putShort((short) UTF8_FLAG)
+                .putShort((short) method)
+                .putShort((short) DOS_TIME)
+                .putShort((short) DOS_DATE)
+                .putInt(crc)
+                .putInt((int) compressedSize)
+                .putInt((int) size)
+                .putShort((short) encodedName.length)
+                .putShort((short) 0);
+        writeBytes(header.array(), 0, header.position());
+        writeBytes(encodedName, 0, encodedName.length);
+        return entry;
+    }
+
+    private void writeBytes(byte @NotNull [] bytes, int offset, int length) throws IOException {
+        out.write(bytes, offset, length);
+        digest.update(bytes, offset, length);
+        position += length;
+        if (position > MAX_SIZE) throw new IllegalStateException("Zip is too large");
+    }
+
+    /**
+     * Returns the number of bytes written so far.
+     */
+    long size() {
+        return position;
+    }
+
+    /**
+     * Writes the central directory and returns the SHA-1 of the whole file.
+     */
+    byte @NotNull [] finish() throws IOException {
+        if (closed) throw new IllegalStateException("Zip is already closed");
+
+        long directoryOffset = position;
+        for (Entry entry : entries) {
+            byte[] encodedName = entry.name().getBytes(StandardCharsets.UTF_8);
+            header.clear();
+            header.putInt(CENTRAL_HEADER)
+                    .putShort((short) VERSION)
+                    .putShort((short) VERSION)
+                    .putShort((short) UTF8_FLAG)
+                    .putShort((short) entry.method())
+                    .putShort((short) DOS_TIME)
+                    .putShort((short) DOS_DATE)
+                    .putInt(entry.crc())
+                    .putInt((int) entry.compressedSize())
+                    .putInt((int) entry.size())
+                    .putShort((short) encodedName.length)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putInt(0)
+                    .putInt((int) entry.offset());
+            writeBytes(header.array(), 0, header.position());
+            writeBytes(encodedName, 0, encodedName.length);
+        }
+
+        header.clear();
+        header.putInt(END_OF_CENTRAL_DIRECTORY)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) entries.size())
+                .putShort((short) entries.size())
+                .putInt((int) (position - directoryOffset))
+                .putInt((int) directoryOffset)
+                .putShort((short) 0);
+        writeBytes(header.array(), 0, header.position());
+
+        out.flush();
+        closed = true;
+        return digest.digest();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        out.close();
+    }
+}
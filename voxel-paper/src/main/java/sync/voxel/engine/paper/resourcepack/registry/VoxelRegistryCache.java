@@ -0,0 +1,232 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.resourcepack.registry;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.api.resourcepack.validator.VoxMaterialPresets;
+import sync.voxel.engine.api.util.identifier.VoxIdentifier;
+import sync.voxel.engine.paper.VoxelEngine;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * The parsed registry definitions in a compact binary form.
+ * <p>
+ * All names and identifiers are stored once in a string table and referenced by index. The file
+ * is read through a memory map in a single pass, so loading it only costs decoding the strings
+ * and creating the definitions.
+ */
+final class VoxelRegistryCache {
+
+    private static final int MAGIC = 0x56585253; // VXRS
+    private static final int FORMAT = 1;
+
+    private static final byte STRING = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte LIST = 5;
+
+    private VoxelRegistryCache() {
+    }
+
+    /**
+     * Reads the definitions, returns null if the file is missing, unreadable or was written for other sources.
+     *
+     * @param key the hash of the source files the definitions have to be made from
+     */
+    static @Nullable VoxelRegistryLoader.Definitions read(@NotNull Path file, byte @NotNull [] key) {
+        if (!Files.isRegularFile(file)) return null;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT || !Arrays.equals(readBytes(in), key)) {
+                VoxelEngine.LOGGER.debug("Registry cache is outdated, parsing the registry files.");
+                return null;
+            }
+
+            String[] strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++) strings[i] = new String(readBytes(in), StandardCharsets.UTF_8);
+
+            VoxIdentifier[] identifiers = new VoxIdentifier[strings.length];
+            VoxMaterialPresets[] presets = VoxMaterialPresets.values();
+
+            int materialCount = in.getInt();
+            List<VoxelRegistryLoader.MaterialDefinition> materials = new ArrayList<>(materialCount);
+            for (int i = 0; i < materialCount; i++) {
+                VoxIdentifier identifier = identifier(strings, identifiers, in.getInt());
+                VoxMaterialPresets preset = presets[in.get()];
+
+                int attributeCount = in.getShort() & 0xFFFF;
+                Map<String, Object> attributes = new LinkedHashMap<>(Math.max(4, attributeCount * 2));
+                for (int a = 0; a < attributeCount; a++) attributes.put(strings[in.getInt()], readValue(in, strings));
+
+                materials.add(new VoxelRegistryLoader.MaterialDefinition(identifier, preset, attributes));
+            }
+
+            int groupCount = in.getInt();
+            List<VoxelRegistryLoader.GroupDefinition> groups = new ArrayList<>(groupCount);
+            for (int i = 0; i < groupCount; i++) {
+                VoxIdentifier identifier = identifier(strings, identifiers, in.getInt());
+                groups.add(new VoxelRegistryLoader.GroupDefinition(identifier, readIdentifiers(in, strings, identifiers), readIdentifiers(in, strings, identifiers)));
+            }
+
+            return new VoxelRegistryLoader.Definitions(materials, groups);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException | IllegalArgumentException e) {
+            VoxelEngine.LOGGER.warn("Failed to read registry cache, parsing the registry files", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the definitions, replacing the old cache atomically.
+     *
+     * @param key the hash of the source files the definitions were made from
+     */
+    static void write(@NotNull Path file, byte @NotNull [] key, @NotNull VoxelRegistryLoader.Definitions definitions) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (VoxelRegistryLoader.MaterialDefinition material : definitions.materials()) {
+            index(strings, material.identifier().toString());
+            material.attributes().forEach((name, value) -> {
+                index(strings, name);
+                if (value instanceof String string) index(strings, string);
+                if (value instanceof List<?> list) list.forEach(element -> {
+                    if (element instanceof String string) index(strings, string);
+                });
+            });
+        }
+        for (VoxelRegistryLoader.GroupDefinition group : definitions.groups()) {
+            index(strings, group.identifier().toString());
+            group.materials().forEach(member -> index(strings, member.toString()));
+            group.includes().forEach(include -> index(strings, include.toString()));
+        }
+
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 65536))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            writeBytes(out, key);
+
+            out.writeInt(strings.size());
+            for (String string : strings.keySet()) writeBytes(out, string.getBytes(StandardCharsets.UTF_8));
+
+            out.writeInt(definitions.materials().size());
+            for (VoxelRegistryLoader.MaterialDefinition material : definitions.materials()) {
+                out.writeInt(strings.get(material.identifier().toString()));
+                out.writeByte(material.preset().ordinal());
+
+                if (material.attributes().size() > 0xFFFF) throw new IllegalStateException("Material " + material.identifier() + " has too many attributes");
+                out.writeShort(material.attributes().size());
+                for (Map.Entry<String, Object> attribute : material.attributes().entrySet()) {
+                    out.writeInt(strings.get(attribute.getKey()));
+                    writeValue(out, attribute.getValue(), strings);
+                }
+            }
+
+            out.writeInt(definitions.groups().size());
+            for (VoxelRegistryLoader.GroupDefinition group : definitions.groups()) {
+                out.writeInt(strings.get(group.identifier().toString()));
+                writeIdentifiers(out, group.materials(), strings);
+                writeIdentifiers(out, group.includes(), strings);
+            }
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void index(@NotNull Map<String, Integer> strings, @NotNull String string) {
+        strings.putIfAbsent(string, strings.size());
+    }
+
+    private static @NotNull VoxIdentifier identifier(String @NotNull [] strings, VoxIdentifier @NotNull [] identifiers, int index) {
+        VoxIdentifier identifier = identifiers[index];
+        if (identifier == null) identifiers[index] = identifier = VoxIdentifier.parse(strings[index]);
+        return identifier;
+    }
+
+    private static @NotNull List<VoxIdentifier> readIdentifiers(@NotNull ByteBuffer in, String @NotNull [] strings, VoxIdentifier @NotNull [] identifiers) {
+        VoxIdentifier[] read = new VoxIdentifier[in.getInt()];
+        for (int i = 0; i < read.length; i++) read[i] = identifier(strings, identifiers, in.getInt());
+        return List.of(read);
+    }
+
+    private static void writeIdentifiers(@NotNull DataOutputStream out, @NotNull List<VoxIdentifier> identifiers, @NotNull Map<String, Integer> strings) throws IOException {
+        out.writeInt(identifiers.size());
+        for (VoxIdentifier identifier : identifiers) out.writeInt(strings.get(identifier.toString()));
+    }
+
+    private static @NotNull Object readValue(@NotNull ByteBuffer in, String @NotNull [] strings) throws IOException {
+        byte type = in.get();
+        return switch (type) {
+            case STRING -> strings[in.getInt()];
+            case INT -> in.getInt();
+            case LONG -> in.getLong();
+            case DOUBLE -> in.getDouble();
+            case BOOLEAN -> in.get() != 0;
+            case LIST -> {
+                Object[] values = new Object[in.getInt()];
+                for (int i = 0; i < values.length; i++) values[i] = readValue(in, strings);
+                yield List.of(values);
+            }
+            default -> throw new IOException("Unknown attribute type " + type);
+        };
+    }
+
+    private static void writeValue(@NotNull DataOutputStream out, @NotNull Object value, @NotNull Map<String, Integer> strings) throws IOException {
+        if (value instanceof String string) {
+            out.writeByte(STRING);
+            out.writeInt(strings.get(string));
+        } else if (value instanceof Integer number) {
+            out.writeByte(INT);
+            out.writeInt(number);
+        } else if (value instanceof Long number) {
+            out.writeByte(LONG);
+            out.writeLong(number);
+        } else if (value instanceof Double number) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(number);
+        } else if (value instanceof Boolean bool) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(bool);
+        } else if (value instanceof List<?> list) {
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object element : list) writeValue(out, element, strings);
+        } else {
+            throw new IllegalArgumentException("Unsupported attribute value " + value.getClass().getName());
+        }
+    }
+
+    private static byte @NotNull [] readBytes(@NotNull ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(@NotNull DataOutputStream out, byte @NotNull [] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
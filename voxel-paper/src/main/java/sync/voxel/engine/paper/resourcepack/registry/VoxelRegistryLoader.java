@@ -0,0 +1,657 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.resourcepack.registry;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.api.material.VoxMaterial;
+import sync.voxel.engine.api.registry.VoxIndexedRegistry;
+import sync.voxel.engine.api.registry.VoxRegistries;
+import sync.voxel.engine.api.resourcepack.validator.VoxMaterialPresets;
+import sync.voxel.engine.api.util.group.VoxBehaviorGroup;
+import sync.voxel.engine.api.util.identifier.VoxIdentifier;
+import sync.voxel.engine.paper.VoxelEngine;
+import sync.voxel.engine.paper.material.VoxMaterialBitsetGroup;
+import sync.voxel.engine.paper.material.VoxelCustomMaterial;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Loads the custom materials and material groups of the voxel pack into {@link VoxRegistries}.
+ * <p>
+ * Every folder in {@code registry/} is a namespace with a {@code materials.yml} and a
+ * {@code materialgroups.yml}. Namespaces are parsed in parallel and registered in name order,
+ * so raw ids are stable between restarts. The parsed definitions are cached on disk keyed by
+ * the size and modification time of the registry files, a restart with unchanged files skips
+ * parsing entirely. {@link #reloadAsync} only parses and diffs the namespaces whose files changed,
+ * together with the groups of other namespaces that depend on them, and swaps the differences
+ * into the registries.
+ * <p>
+ * A material is a mapping with a {@code preset} naming a {@link VoxMaterialPresets} and any
+ * number of attributes, nested mappings become dotted attribute names. A group is a list of
+ * material identifiers, {@code #namespace:group} includes another group. Identifiers without
+ * a namespace refer to the namespace of the file.
+ */
+public class VoxelRegistryLoader {
+
+    private static final Path REGISTRY_FOLDER = Paths.get("plugins/voxel/pack/registry");
+    private static final Path CACHE_FILE = Paths.get("plugins/voxel/cache/registry.bin");
+    private static final String MATERIALS_FILE = "materials.yml";
+    private static final String GROUPS_FILE = "materialgroups.yml";
+
+    /**
+     * A material as defined in a {@code materials.yml}.
+     */
+    record MaterialDefinition(@NotNull VoxIdentifier identifier, @NotNull VoxMaterialPresets preset, @NotNull Map<String, Object> attributes) {
+    }
+
+    /**
+     * A group as defined in a {@code materialgroups.yml}.
+     *
+     * @param materials the member materials
+     * @param includes  the groups whose members are members of this group
+     */
+    record GroupDefinition(@NotNull VoxIdentifier identifier, @NotNull List<VoxIdentifier> materials, @NotNull List<VoxIdentifier> includes) {
+    }
+
+    /**
+     * All definitions of the pack, in registration order.
+     */
+    record Definitions(@NotNull List<MaterialDefinition> materials, @NotNull List<GroupDefinition> groups) {
+    }
+
+    private record NamespaceResult(@NotNull List<MaterialDefinition> materials, @NotNull List<GroupDefinition> groups, int invalid) {
+    }
+
+    /**
+     * The definitions of one namespace, the state of its files when they were read and what it registered.
+     *
+     * @param stamp     the names, sizes and modification times of the registry files
+     * @param materials the identifiers of the materials registered from this namespace
+     * @param groups    the identifiers of the groups registered from this namespace
+     */
+    private record Namespace(@NotNull String stamp, @NotNull NamespaceResult result, @NotNull Set<VoxIdentifier> materials, @NotNull Set<VoxIdentifier> groups) {
+    }
+
+    /**
+     * What the pack has registered, reloads are diffed against it.
+     */
+    private record State(@NotNull Map<String, Namespace> namespaces) {
+    }
+
+    /**
+     * The outcome of a {@link #reloadAsync reload}.
+     *
+     * @param parsed  the number of namespaces whose files changed and were parsed again
+     * @param invalid the number of invalid entries in the parsed namespaces
+     */
+    public record ReloadResult(int parsed, int addedMaterials, int changedMaterials, int removedMaterials,
+                               int addedGroups, int changedGroups, int removedGroups, int invalid) {
+
+        /**
+         * Returns true if the reload did not change any registry.
+         */
+        public boolean isEmpty() {
+            return addedMaterials + changedMaterials + removedMaterials + addedGroups + changedGroups + removedGroups == 0;
+        }
+    }
+
+    /**
+     * The changes of a reload, computed off the main thread.
+     *
+     * @param expectedSize the material registry size the raw ids of added materials were predicted from
+     */
+    private record Prepared(@NotNull State state, int parsed, int invalid, int expectedSize,
+                            @NotNull List<VoxMaterial> changedMaterials, @NotNull List<VoxIdentifier> removedMaterials, @NotNull List<VoxMaterial> addedMaterials,
+                            @NotNull List<VoxMaterialBitsetGroup> changedGroups, @NotNull List<VoxIdentifier> removedGroups, @NotNull List<VoxMaterialBitsetGroup> addedGroups) {
+    }
+
+    private static final AtomicBoolean RELOADING = new AtomicBoolean();
+    private static volatile State state = new State(Map.of());
+
+    /**
+     * Loads the pack registries, blocking until done.
+     */
+    public static void load() {
+        loadAsync(ForkJoinPool.commonPool()).join();
+    }
+
+    /**
+     * Loads the pack registries on the given executor.
+     *
+     * @param executor the executor parsing the namespaces
+     * @return a future that completes once all materials and groups are registered
+     */
+    public static @NotNull CompletableFuture<Void> loadAsync(@NotNull Executor executor) {
+        return CompletableFuture.runAsync(() -> load(executor), executor);
+    }
+
+    private static void load(@NotNull Executor executor) {
+        long start = System.nanoTime();
+
+        Map<String, String> stamps;
+        byte[] cacheKey;
+        try {
+            stamps = stamps(namespaces());
+            cacheKey = cacheKey(stamps);
+        } catch (IOException e) {
+            VoxelEngine.LOGGER.error("Failed to list the pack registries", e);
+            return;
+        }
+
+        Definitions cached = VoxelRegistryCache.read(CACHE_FILE, cacheKey);
+        Map<String, NamespaceResult> results = cached != null ? split(cached, stamps.keySet()) : readNamespaces(stamps.keySet(), executor);
+        Definitions definitions = cached != null ? cached : merge(results.values());
+        int invalid = 0;
+        for (NamespaceResult result : results.values()) invalid += result.invalid();
+
+        // keep reporting the broken entries until they are fixed
+        if (cached == null && invalid == 0) writeCache(cacheKey, definitions);
+        long readDone = System.nanoTime();
+
+        Set<VoxIdentifier> materials = registerMaterials(definitions.materials());
+        Set<VoxIdentifier> groups = registerGroups(definitions.groups());
+        long registerDone = System.nanoTime();
+
+        // a definition repeated in a later namespace was skipped, the first namespace owns it
+        Set<VoxIdentifier> ownedMaterials = new HashSet<>(materials.size() * 2);
+        Set<VoxIdentifier> ownedGroups = new HashSet<>(groups.size() * 2);
+        Map<String, Namespace> namespaces = new TreeMap<>();
+        stamps.forEach((namespace, stamp) -> {
+            NamespaceResult result = results.get(namespace);
+            Set<VoxIdentifier> namespaceMaterials = new HashSet<>();
+            for (MaterialDefinition definition : result.materials()) {
+                if (materials.contains(definition.identifier()) && ownedMaterials.add(definition.identifier())) namespaceMaterials.add(definition.identifier());
+            }
+            Set<VoxIdentifier> namespaceGroups = new HashSet<>();
+            for (GroupDefinition definition : result.groups()) {
+                if (groups.contains(definition.identifier()) && ownedGroups.add(definition.identifier())) namespaceGroups.add(definition.identifier());
+            }
+            namespaces.put(namespace, new Namespace(stamp, result, namespaceMaterials, namespaceGroups));
+        });
+        state = new State(namespaces);
+
+        VoxelEngine.LOGGER.info("Loaded {} materials and {} groups from {} namespaces in {} ms (read {} ms{}, register {} ms, {} invalid entries)",
+                materials.size(), groups.size(), stamps.size(), millis(registerDone - start), millis(readDone - start),
+                cached != null ? " cached" : "", millis(registerDone - readDone), invalid);
+    }
+
+    /**
+     * Reloads the pack registries, parsing only the namespaces whose files changed.
+     * <p>
+     * Parsing and diffing run on the executor. The changes are then applied on the main thread
+     * executor in one step: materials first, then groups, each published as a single registry
+     * snapshot. Unchanged materials and groups keep their instances and raw ids, removed ones
+     * leave their raw id empty.
+     *
+     * @param executor   the executor parsing and diffing the namespaces
+     * @param mainThread the executor running tasks on the server thread at the next tick
+     * @return a future completing with the applied changes, on the main thread if anything changed
+     * @throws IllegalStateException if a reload is already running
+     */
+    public static @NotNull CompletableFuture<ReloadResult> reloadAsync(@NotNull Executor executor, @NotNull Executor mainThread) {
+        if (!RELOADING.compareAndSet(false, true)) throw new IllegalStateException("A reload is already running");
+
+        CompletableFuture<ReloadResult> reload;
+        try {
+            reload = CompletableFuture.supplyAsync(() -> prepare(executor), executor)
+                    .thenCompose(prepared -> prepared == null
+                            ? CompletableFuture.completedFuture(null)
+                            : CompletableFuture.supplyAsync(() -> apply(prepared), mainThread))
+                    .thenApply(result -> result != null ? result : new ReloadResult(0, 0, 0, 0, 0, 0, 0, 0));
+        } catch (RuntimeException e) {
+            RELOADING.set(false);
+            throw e;
+        }
+        return reload.whenComplete((result, error) -> RELOADING.set(false));
+    }
+
+    /**
+     * Parses the changed namespaces and diffs them against the registries.
+     * <p>
+     * Only the definitions of changed and removed namespaces are diffed, materials of other
+     * namespaces keep their raw ids and need no work. Groups of other namespaces are resolved
+     * again only if they contain an added or removed material or include a group that may
+     * change, finding them scans the group references of the pack once.
+     *
+     * @return the changes, or null if no registry file changed
+     */
+    private static @Nullable Prepared prepare(@NotNull Executor executor) {
+        State current = state;
+
+        Map<String, String> stamps;
+        byte[] cacheKey;
+        try {
+            stamps = stamps(namespaces());
+            cacheKey = cacheKey(stamps);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list the pack registries", e);
+        }
+
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String> entry : stamps.entrySet()) {
+            Namespace loaded = current.namespaces().get(entry.getKey());
+            if (loaded == null || !loaded.stamp().equals(entry.getValue())) changed.add(entry.getKey());
+        }
+
+        // what the changed and removed namespaces registered before the reload
+        Set<VoxIdentifier> previousMaterials = new HashSet<>();
+        Set<VoxIdentifier> previousGroups = new HashSet<>();
+        boolean removedNamespace = false;
+        for (Map.Entry<String, Namespace> entry : current.namespaces().entrySet()) {
+            boolean removed = !stamps.containsKey(entry.getKey());
+            if (!removed && !changed.contains(entry.getKey())) continue;
+
+            removedNamespace |= removed;
+            previousMaterials.addAll(entry.getValue().materials());
+            previousGroups.addAll(entry.getValue().groups());
+        }
+        if (changed.isEmpty() && !removedNamespace) return null;
+
+        Map<String, NamespaceResult> parsed = readNamespaces(changed, executor);
+        int invalid = 0;
+        int parsedInvalid = 0;
+        for (Map.Entry<String, String> entry : stamps.entrySet()) {
+            NamespaceResult result = parsed.get(entry.getKey());
+            if (result != null) parsedInvalid += result.invalid();
+            else result = current.namespaces().get(entry.getKey()).result();
+            invalid += result.invalid();
+        }
+
+        int expectedSize = VoxRegistries.MATERIAL.size();
+        List<VoxMaterial> changedMaterials = new ArrayList<>();
+        List<VoxMaterial> addedMaterials = new ArrayList<>();
+        Set<VoxIdentifier> materials = new HashSet<>();
+        Map<VoxIdentifier, Integer> addedRawIds = new HashMap<>();
+        Map<String, Set<VoxIdentifier>> namespaceMaterials = new HashMap<>();
+
+        parsed.forEach((namespace, result) -> {
+            Set<VoxIdentifier> owned = namespaceMaterials.computeIfAbsent(namespace, key -> new HashSet<>());
+            for (MaterialDefinition definition : result.materials()) {
+                VoxIdentifier identifier = definition.identifier();
+                VoxMaterial existing = VoxRegistries.MATERIAL.valueOf(identifier);
+
+                if (existing == null && !addedRawIds.containsKey(identifier)) {
+                    addedRawIds.put(identifier, expectedSize + addedMaterials.size());
+                    addedMaterials.add(new VoxelCustomMaterial(identifier, definition.preset(), definition.attributes()));
+                    materials.add(identifier);
+                    owned.add(identifier);
+                } else if (existing != null && previousMaterials.contains(identifier) && materials.add(identifier)) {
+                    if (existing.getVoxRenderType() != definition.preset() || !existing.getAttributes().values().equals(definition.attributes())) {
+                        changedMaterials.add(new VoxelCustomMaterial(identifier, definition.preset(), definition.attributes()));
+                    }
+                    owned.add(identifier);
+                } else {
+                    VoxelEngine.LOGGER.warn("Material {} is already registered, skipping its pack definition.", identifier);
+                }
+            }
+        });
+
+        List<VoxIdentifier> removedMaterials = new ArrayList<>();
+        for (VoxIdentifier identifier : previousMaterials) {
+            if (!materials.contains(identifier)) removedMaterials.add(identifier);
+        }
+
+        // resolve the groups against the raw ids the materials will have after the swap
+        Set<VoxIdentifier> removedMaterialSet = new HashSet<>(removedMaterials);
+        ToIntFunction<VoxIdentifier> rawIds = identifier -> {
+            Integer added = addedRawIds.get(identifier);
+            if (added != null) return added;
+            if (removedMaterialSet.contains(identifier)) return VoxIndexedRegistry.UNKNOWN_RAW_ID;
+
+            VoxMaterial material = VoxRegistries.MATERIAL.valueOf(identifier);
+            return material == null ? VoxIndexedRegistry.UNKNOWN_RAW_ID : VoxRegistries.MATERIAL.rawIdOf(material);
+        };
+
+        List<GroupDefinition> parsedGroups = new ArrayList<>();
+        Map<VoxIdentifier, String> groupNamespaces = new HashMap<>();
+        Set<VoxIdentifier> removedGroupSet = new HashSet<>(previousGroups);
+        parsed.forEach((namespace, result) -> {
+            for (GroupDefinition definition : result.groups()) {
+                parsedGroups.add(definition);
+                groupNamespaces.putIfAbsent(definition.identifier(), namespace);
+                removedGroupSet.remove(definition.identifier());
+            }
+        });
+
+        // groups of unchanged namespaces whose members may change, until no further group includes one of them
+        Set<VoxIdentifier> affectedGroups = new HashSet<>(previousGroups);
+        affectedGroups.addAll(groupNamespaces.keySet());
+        Set<VoxIdentifier> dependentGroups = new HashSet<>();
+        // dependent groups come first, their namespace owns them over a new definition elsewhere
+        List<GroupDefinition> groupDefinitions = new ArrayList<>();
+        boolean found = true;
+        while (found) {
+            found = false;
+            for (Map.Entry<String, Namespace> entry : current.namespaces().entrySet()) {
+                if (!stamps.containsKey(entry.getKey()) || parsed.containsKey(entry.getKey())) continue;
+
+                Set<VoxIdentifier> owned = entry.getValue().groups();
+                for (GroupDefinition definition : entry.getValue().result().groups()) {
+                    VoxIdentifier identifier = definition.identifier();
+                    if (!owned.contains(identifier) || dependentGroups.contains(identifier) || !dependsOn(definition, addedRawIds.keySet(), removedMaterialSet, affectedGroups)) continue;
+
+                    groupDefinitions.add(definition);
+                    dependentGroups.add(identifier);
+                    affectedGroups.add(identifier);
+                    found = true;
+                }
+            }
+        }
+        groupDefinitions.addAll(parsedGroups);
+
+        List<VoxMaterialBitsetGroup> changedGroups = new ArrayList<>();
+        List<VoxMaterialBitsetGroup> addedGroups = new ArrayList<>();
+        Map<String, Set<VoxIdentifier>> namespaceGroups = new HashMap<>();
+        for (VoxMaterialBitsetGroup group : resolveGroups(groupDefinitions, rawIds, removedGroupSet)) {
+            VoxIdentifier identifier = group.identifier();
+            VoxBehaviorGroup<VoxMaterial> existing = VoxRegistries.MATERIAL_GROUPS.valueOf(identifier);
+            boolean dependent = dependentGroups.contains(identifier);
+
+            if (existing == null) {
+                addedGroups.add(group);
+            } else if ((dependent || previousGroups.contains(identifier)) && existing instanceof VoxMaterialBitsetGroup bitsetGroup) {
+                if (!bitsetGroup.hasSameMembers(group)) changedGroups.add(group);
+            } else {
+                VoxelEngine.LOGGER.warn("Group {} is already registered, skipping its pack definition.", identifier);
+                continue;
+            }
+            if (!dependent) namespaceGroups.computeIfAbsent(groupNamespaces.get(identifier), key -> new HashSet<>()).add(identifier);
+        }
+
+        Map<String, Namespace> namespaces = new TreeMap<>();
+        List<NamespaceResult> results = new ArrayList<>(stamps.size());
+        for (Map.Entry<String, String> entry : stamps.entrySet()) {
+            String namespace = entry.getKey();
+            NamespaceResult result = parsed.get(namespace);
+            Namespace updated = result == null
+                    ? current.namespaces().get(namespace)
+                    : new Namespace(entry.getValue(), result, namespaceMaterials.getOrDefault(namespace, Set.of()), namespaceGroups.getOrDefault(namespace, Set.of()));
+            namespaces.put(namespace, updated);
+            results.add(updated.result());
+        }
+        if (invalid == 0) writeCache(cacheKey, merge(results));
+
+        return new Prepared(new State(namespaces), changed.size(), parsedInvalid, expectedSize,
+                changedMaterials, removedMaterials, addedMaterials, changedGroups, List.copyOf(removedGroupSet), addedGroups);
+    }
+
+    /**
+     * Returns true if a group contains one of the given materials or includes one of the given groups.
+     */
+    private static boolean dependsOn(@NotNull GroupDefinition definition, @NotNull Set<VoxIdentifier> addedMaterials,
+                                     @NotNull Set<VoxIdentifier> removedMaterials, @NotNull Set<VoxIdentifier> groups) {
+        for (VoxIdentifier identifier : definition.materials()) {
+            if (addedMaterials.contains(identifier) || removedMaterials.contains(identifier)) return true;
+        }
+        for (VoxIdentifier identifier : definition.includes()) {
+            if (groups.contains(identifier)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Swaps the prepared changes into the registries, on the main thread.
+     */
+    private static @NotNull ReloadResult apply(@NotNull Prepared prepared) {
+        if (VoxRegistries.MATERIAL.size() != prepared.expectedSize()) {
+            throw new IllegalStateException("Materials were registered during the reload, reload again");
+        }
+
+        VoxRegistries.MATERIAL.swap(prepared.changedMaterials(), prepared.removedMaterials(), prepared.addedMaterials());
+        VoxRegistries.MATERIAL_GROUPS.swap(prepared.changedGroups(), prepared.removedGroups(), prepared.addedGroups());
+        state = prepared.state();
+
+        return new ReloadResult(prepared.parsed(), prepared.addedMaterials().size(), prepared.changedMaterials().size(), prepared.removedMaterials().size(),
+                prepared.addedGroups().size(), prepared.changedGroups().size(), prepared.removedGroups().size(), prepared.invalid());
+    }
+
+    private static @NotNull List<String> namespaces() throws IOException {
+        if (!Files.isDirectory(REGISTRY_FOLDER)) return List.of();
+
+        try (Stream<Path> folders = Files.list(REGISTRY_FOLDER)) {
+            return folders.filter(Files::isDirectory).map(folder -> folder.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    /**
+     * Parses the given namespaces in parallel.
+     *
+     * @return the results by namespace
+     */
+    private static @NotNull Map<String, NamespaceResult> readNamespaces(@NotNull Collection<String> namespaces, @NotNull Executor executor) {
+        Map<String, CompletableFuture<NamespaceResult>> parsing = new TreeMap<>();
+        for (String namespace : namespaces) parsing.put(namespace, CompletableFuture.supplyAsync(() -> readNamespace(namespace), executor));
+
+        Map<String, NamespaceResult> results = new TreeMap<>();
+        parsing.forEach((namespace, future) -> results.put(namespace, future.join()));
+        return results;
+    }
+
+    /**
+     * Splits cached definitions by the namespace of their identifiers.
+     */
+    private static @NotNull Map<String, NamespaceResult> split(@NotNull Definitions definitions, @NotNull Collection<String> namespaces) {
+        Map<String, NamespaceResult> results = new TreeMap<>();
+        for (String namespace : namespaces) results.put(namespace, new NamespaceResult(new ArrayList<>(), new ArrayList<>(), 0));
+
+        for (MaterialDefinition material : definitions.materials()) {
+            NamespaceResult result = results.get(material.identifier().namespace());
+            if (result != null) result.materials().add(material);
+        }
+        for (GroupDefinition group : definitions.groups()) {
+            NamespaceResult result = results.get(group.identifier().namespace());
+            if (result != null) result.groups().add(group);
+        }
+        return results;
+    }
+
+    private static @NotNull Definitions merge(@NotNull Collection<NamespaceResult> results) {
+        List<MaterialDefinition> materials = new ArrayList<>();
+        List<GroupDefinition> groups = new ArrayList<>();
+        for (NamespaceResult result : results) {
+            materials.addAll(result.materials());
+            groups.addAll(result.groups());
+        }
+        return new Definitions(materials, groups);
+    }
+
+    private static void writeCache(byte @NotNull [] cacheKey, @NotNull Definitions definitions) {
+        try {
+            VoxelRegistryCache.write(CACHE_FILE, cacheKey, definitions);
+        } catch (IOException e) {
+            VoxelEngine.LOGGER.warn("Failed to write registry cache", e);
+        }
+    }
+
+    private static @NotNull NamespaceResult readNamespace(@NotNull String namespace) {
+        List<MaterialDefinition> materials = new ArrayList<>();
+        List<GroupDefinition> groups = new ArrayList<>();
+        int invalid = 0;
+
+        Path folder = REGISTRY_FOLDER.resolve(namespace);
+        try {
+            VoxIdentifier.of(namespace, "namespace");
+        } catch (IllegalArgumentException e) {
+            VoxelEngine.LOGGER.warn("Skipping registry folder {}, it is not a valid namespace", folder, e);
+            return new NamespaceResult(materials, groups, 1);
+        }
+
+        try {
+            Path materialsFile = folder.resolve(MATERIALS_FILE);
+            if (Files.isRegularFile(materialsFile)) {
+                invalid += VoxelRegistryReader.readMaterials(materialsFile, "registry/" + namespace + "/" + MATERIALS_FILE, namespace, materials::add);
+            }
+
+            Path groupsFile = folder.resolve(GROUPS_FILE);
+            if (Files.isRegularFile(groupsFile)) {
+                invalid += VoxelRegistryReader.readGroups(groupsFile, "registry/" + namespace + "/" + GROUPS_FILE, namespace, groups::add);
+            }
+        } catch (IOException e) {
+            VoxelEngine.LOGGER.error("Failed to read the registry of namespace {}", namespace, e);
+            invalid++;
+        }
+
+        return new NamespaceResult(materials, groups, invalid);
+    }
+
+    private static @NotNull Set<VoxIdentifier> registerMaterials(@NotNull List<MaterialDefinition> definitions) {
+        Set<VoxIdentifier> registered = new HashSet<>(definitions.size() * 2);
+        for (MaterialDefinition definition : definitions) {
+            VoxelCustomMaterial material = new VoxelCustomMaterial(definition.identifier(), definition.preset(), definition.attributes());
+            if (VoxRegistries.MATERIAL.registerIfAbsent(material) == material) {
+                registered.add(definition.identifier());
+            } else {
+                VoxelEngine.LOGGER.warn("Material {} is already registered, skipping its pack definition.", definition.identifier());
+            }
+        }
+        return registered;
+    }
+
+    private static @NotNull Set<VoxIdentifier> registerGroups(@NotNull List<GroupDefinition> definitions) {
+        ToIntFunction<VoxIdentifier> rawIds = identifier -> {
+            VoxMaterial material = VoxRegistries.MATERIAL.valueOf(identifier);
+            return material == null ? VoxIndexedRegistry.UNKNOWN_RAW_ID : VoxRegistries.MATERIAL.rawIdOf(material);
+        };
+
+        Set<VoxIdentifier> registered = new HashSet<>(definitions.size() * 2);
+        for (VoxMaterialBitsetGroup group : resolveGroups(definitions, rawIds, Set.of())) {
+            if (VoxRegistries.MATERIAL_GROUPS.registerIfAbsent(group) == group) {
+                registered.add(group.identifier());
+            } else {
+                VoxelEngine.LOGGER.warn("Group {} is already registered, skipping its pack definition.", group.identifier());
+            }
+        }
+        return registered;
+    }
+
+    /**
+     * Creates the groups of the pack, with the members of included groups resolved.
+     *
+     * @param rawIds  the raw id of a material identifier, {@link VoxIndexedRegistry#UNKNOWN_RAW_ID} for unknown materials
+     * @param removed registered groups that must not be included anymore
+     * @return one group per distinct identifier, in definition order
+     */
+    private static @NotNull List<VoxMaterialBitsetGroup> resolveGroups(@NotNull List<GroupDefinition> definitions, @NotNull ToIntFunction<VoxIdentifier> rawIds,
+                                                                      @NotNull Set<VoxIdentifier> removed) {
+        Map<VoxIdentifier, GroupDefinition> byIdentifier = new LinkedHashMap<>(definitions.size() * 2);
+        for (GroupDefinition definition : definitions) byIdentifier.putIfAbsent(definition.identifier(), definition);
+
+        Map<VoxIdentifier, BitSet> resolved = new HashMap<>(definitions.size() * 2);
+        List<VoxMaterialBitsetGroup> groups = new ArrayList<>(byIdentifier.size());
+        for (GroupDefinition definition : byIdentifier.values()) {
+            groups.add(new VoxMaterialBitsetGroup(definition.identifier(), resolve(definition, byIdentifier, rawIds, removed, resolved, new HashSet<>())));
+        }
+        return groups;
+    }
+
+    /**
+     * Returns the raw ids of all members of a group, including those of included groups.
+     *
+     * @param visiting the groups currently being resolved, to detect include cycles
+     */
+    private static @NotNull BitSet resolve(@NotNull GroupDefinition definition, @NotNull Map<VoxIdentifier, GroupDefinition> byIdentifier,
+                                           @NotNull ToIntFunction<VoxIdentifier> rawIds, @NotNull Set<VoxIdentifier> removed,
+                                           @NotNull Map<VoxIdentifier, BitSet> resolved, @NotNull Set<VoxIdentifier> visiting) {
+        BitSet known = resolved.get(definition.identifier());
+        if (known != null) return known;
+
+        BitSet members = new BitSet(VoxRegistries.MATERIAL.size());
+        visiting.add(definition.identifier());
+
+        for (VoxIdentifier identifier : definition.materials()) {
+            int rawId = rawIds.applyAsInt(identifier);
+            if (rawId == VoxIndexedRegistry.UNKNOWN_RAW_ID) {
+                VoxelEngine.LOGGER.warn("Group {} contains unknown material {}", definition.identifier(), identifier);
+                continue;
+            }
+            members.set(rawId);
+        }
+
+        for (VoxIdentifier identifier : definition.includes()) {
+            GroupDefinition included = byIdentifier.get(identifier);
+            if (included != null) {
+                if (visiting.contains(identifier)) {
+                    VoxelEngine.LOGGER.warn("Group {} includes itself through {}", definition.identifier(), identifier);
+                } else {
+                    members.or(resolve(included, byIdentifier, rawIds, removed, resolved, visiting));
+                }
+                continue;
+            }
+
+            VoxBehaviorGroup<VoxMaterial> group = removed.contains(identifier) ? null : VoxRegistries.MATERIAL_GROUPS.valueOf(identifier);
+            if (group instanceof VoxMaterialBitsetGroup bitsetGroup) {
+                bitsetGroup.forEachRawId(members::set);
+            } else if (group != null) {
+                group.forEach(material -> members.set(VoxRegistries.MATERIAL.rawIdOf(material)));
+            } else {
+                VoxelEngine.LOGGER.warn("Group {} includes unknown group {}", definition.identifier(), identifier);
+            }
+        }
+
+        visiting.remove(definition.identifier());
+        resolved.put(definition.identifier(), members);
+        return members;
+    }
+
+    /**
+     * Returns the names, sizes and modification times of the registry files of every namespace.
+     */
+    private static @NotNull Map<String, String> stamps(@NotNull List<String> namespaces) throws IOException {
+        Map<String, String> stamps = new TreeMap<>();
+        for (String namespace : namespaces) {
+            StringBuilder stamp = new StringBuilder();
+            for (String name : new String[]{MATERIALS_FILE, GROUPS_FILE}) {
+                Path file = REGISTRY_FOLDER.resolve(namespace).resolve(name);
+                if (!Files.isRegularFile(file)) continue;
+
+                stamp.append(namespace).append('/').append(name).append(':').append(Files.size(file)).append(':')
+                        .append(Files.getLastModifiedTime(file).toMillis()).append('\n');
+            }
+            stamps.put(namespace, stamp.toString());
+        }
+        return stamps;
+    }
+
+    /**
+     * Hashes the stamps of all namespaces.
+     */
+    private static byte @NotNull [] cacheKey(@NotNull Map<String, String> stamps) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+
+        for (String stamp : stamps.values()) digest.update(stamp.getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+}
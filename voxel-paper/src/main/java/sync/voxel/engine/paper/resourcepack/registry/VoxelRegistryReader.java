@@ -0,0 +1,352 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.resourcepack.registry;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+import sync.voxel.engine.api.resourcepack.validator.VoxMaterialPresets;
+import sync.voxel.engine.api.util.identifier.VoxIdentifier;
+import sync.voxel.engine.paper.VoxelEngine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Reads the registry files of one namespace with the YAML event parser.
+ * <p>
+ * No document tree is built: each entry is validated and handed to the consumer as soon as
+ * its last event is read, so memory only depends on the size of the largest entry. Invalid
+ * entries are logged with their line and skipped.
+ */
+final class VoxelRegistryReader {
+
+    private static final Resolver RESOLVER = new Resolver();
+
+    private final Parser parser;
+    private final String file;
+    private final String namespace;
+    private int invalid;
+
+    private VoxelRegistryReader(@NotNull Reader reader, @NotNull String file, @NotNull String namespace) {
+        LoaderOptions options = new LoaderOptions();
+        // packs with many materials easily exceed the default limit of 3 MB
+        options.setCodePointLimit(Integer.MAX_VALUE);
+
+        this.parser = new ParserImpl(new StreamReader(reader), options);
+        this.file = file;
+        this.namespace = namespace;
+    }
+
+    /**
+     * Reads a {@code materials.yml}.
+     *
+     * @param file      the file to read
+     * @param name      the name of the file in log messages
+     * @param namespace the namespace of the materials
+     * @param sink      receives every valid material
+     * @return the number of skipped entries
+     */
+    static int readMaterials(@NotNull Path file, @NotNull String name, @NotNull String namespace,
+                             @NotNull Consumer<VoxelRegistryLoader.MaterialDefinition> sink) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            VoxelRegistryReader registryReader = new VoxelRegistryReader(reader, name, namespace);
+            registryReader.readEntries(identifier -> registryReader.readMaterial(identifier, sink));
+            return registryReader.invalid;
+        }
+    }
+
+    /**
+     * Reads a {@code materialgroups.yml}.
+     *
+     * @param file      the file to read
+     * @param name      the name of the file in log messages
+     * @param namespace the namespace of the groups, also used for members without namespace
+     * @param sink      receives every valid group
+     * @return the number of skipped entries
+     */
+    static int readGroups(@NotNull Path file, @NotNull String name, @NotNull String namespace,
+                          @NotNull Consumer<VoxelRegistryLoader.GroupDefinition> sink) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            VoxelRegistryReader registryReader = new VoxelRegistryReader(reader, name, namespace);
+            registryReader.readEntries(identifier -> registryReader.readGroup(identifier, sink));
+            return registryReader.invalid;
+        }
+    }
+
+    /**
+     * Reads the top level mapping, calling the entry reader with the parser positioned at each value.
+     */
+    private void readEntries(@NotNull Consumer<VoxIdentifier> entryReader) {
+        try {
+            parser.getEvent();
+            // an empty file or one with comments only
+            if (parser.checkEvent(Event.ID.StreamEnd)) return;
+            parser.getEvent();
+
+            if (!parser.checkEvent(Event.ID.MappingStart)) {
+                Event event = parser.peekEvent();
+                if (!(event instanceof ScalarEvent scalar) || !scalar.getValue().isEmpty()) problem(event, "expected a mapping of entries");
+                return;
+            }
+            parser.getEvent();
+
+            while (!parser.checkEvent(Event.ID.MappingEnd)) {
+                Event key = parser.getEvent();
+                if (!(key instanceof ScalarEvent scalar)) {
+                    problem(key, "expected an entry name");
+                    skipRest(key);
+                    skipNode();
+                    invalid++;
+                    continue;
+                }
+
+                VoxIdentifier identifier;
+                try {
+                    identifier = VoxIdentifier.of(namespace, scalar.getValue());
+                } catch (IllegalArgumentException e) {
+                    problem(key, "invalid name '" + scalar.getValue() + "', " + e.getMessage());
+                    skipNode();
+                    invalid++;
+                    continue;
+                }
+
+                entryReader.accept(identifier);
+            }
+        } catch (YAMLException e) {
+            // entries before the syntax error are already delivered
+            VoxelEngine.LOGGER.error("Failed to parse {}", file, e);
+            invalid++;
+        }
+    }
+
+    private void readMaterial(@NotNull VoxIdentifier identifier, @NotNull Consumer<VoxelRegistryLoader.MaterialDefinition> sink) {
+        Event start = parser.getEvent();
+        if (!start.is(Event.ID.MappingStart)) {
+            problem(start, "material " + identifier + " must be a mapping");
+            skipRest(start);
+            invalid++;
+            return;
+        }
+
+        VoxMaterialPresets preset = null;
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        boolean valid = true;
+
+        while (!parser.checkEvent(Event.ID.MappingEnd)) {
+            Event key = parser.getEvent();
+            if (!(key instanceof ScalarEvent scalar)) {
+                problem(key, "expected an attribute name");
+                skipRest(key);
+                skipNode();
+                valid = false;
+            } else if (scalar.getValue().equals("preset")) {
+                Event value = parser.getEvent();
+                preset = value instanceof ScalarEvent presetName ? preset(presetName) : null;
+                if (preset == null) {
+                    if (!(value instanceof ScalarEvent)) problem(value, "preset must be a name");
+                    skipRest(value);
+                    valid = false;
+                }
+            } else {
+                valid &= readAttribute(scalar.getValue(), attributes);
+            }
+        }
+        parser.getEvent();
+
+        if (valid && preset == null) problem(start, "material " + identifier + " has no preset");
+
+        if (valid && preset != null) {
+            sink.accept(new VoxelRegistryLoader.MaterialDefinition(identifier, preset, attributes));
+        } else {
+            invalid++;
+        }
+    }
+
+    private @Nullable VoxMaterialPresets preset(@NotNull ScalarEvent name) {
+        VoxMaterialPresets preset;
+        try {
+            preset = VoxMaterialPresets.valueOf(name.getValue().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            problem(name, "unknown preset '" + name.getValue() + "'");
+            return null;
+        }
+
+        if (preset.getCarrier() == null) {
+            problem(name, "preset " + preset + " cannot be used for custom materials");
+            return null;
+        }
+        return preset;
+    }
+
+    /**
+     * Reads an attribute value, nested mappings are flattened into dotted names.
+     *
+     * @return false if the value is invalid
+     */
+    private boolean readAttribute(@NotNull String name, @NotNull Map<String, Object> attributes) {
+        Event event = parser.getEvent();
+
+        if (event instanceof ScalarEvent scalar) {
+            Object value = scalarValue(scalar);
+            if (value != null) attributes.put(name, value);
+            return true;
+        }
+
+        if (event.is(Event.ID.SequenceStart)) {
+            List<Object> values = new ArrayList<>();
+            boolean valid = true;
+            while (!parser.checkEvent(Event.ID.SequenceEnd)) {
+                Event element = parser.getEvent();
+                if (element instanceof ScalarEvent scalar) {
+                    Object value = scalarValue(scalar);
+                    if (value != null) values.add(value);
+                } else {
+                    problem(element, "list attribute " + name + " may only contain plain values");
+                    skipRest(element);
+                    valid = false;
+                }
+            }
+            parser.getEvent();
+
+            if (valid) attributes.put(name, List.copyOf(values));
+            return valid;
+        }
+
+        if (event.is(Event.ID.MappingStart)) {
+            boolean valid = true;
+            while (!parser.checkEvent(Event.ID.MappingEnd)) {
+                Event key = parser.getEvent();
+                if (key instanceof ScalarEvent scalar) {
+                    valid &= readAttribute(name + "." + scalar.getValue(), attributes);
+                } else {
+                    problem(key, "expected an attribute name");
+                    skipRest(key);
+                    skipNode();
+                    valid = false;
+                }
+            }
+            parser.getEvent();
+            return valid;
+        }
+
+        problem(event, "aliases are not supported");
+        return false;
+    }
+
+    private void readGroup(@NotNull VoxIdentifier identifier, @NotNull Consumer<VoxelRegistryLoader.GroupDefinition> sink) {
+        Event start = parser.getEvent();
+        if (!start.is(Event.ID.SequenceStart)) {
+            problem(start, "group " + identifier + " must be a list");
+            skipRest(start);
+            invalid++;
+            return;
+        }
+
+        List<VoxIdentifier> materials = new ArrayList<>();
+        List<VoxIdentifier> includes = new ArrayList<>();
+        boolean valid = true;
+
+        while (!parser.checkEvent(Event.ID.SequenceEnd)) {
+            Event event = parser.getEvent();
+            if (!(event instanceof ScalarEvent scalar)) {
+                problem(event, "group members must be identifiers");
+                skipRest(event);
+                valid = false;
+                continue;
+            }
+
+            // #namespace:group includes all members of another group
+            String member = scalar.getValue();
+            boolean include = member.startsWith("#");
+            if (include) member = member.substring(1);
+
+            try {
+                VoxIdentifier memberIdentifier = member.indexOf(':') < 0 ? VoxIdentifier.of(namespace, member) : VoxIdentifier.parse(member);
+                (include ? includes : materials).add(memberIdentifier);
+            } catch (IllegalArgumentException e) {
+                problem(event, "invalid member '" + scalar.getValue() + "', " + e.getMessage());
+                valid = false;
+            }
+        }
+        parser.getEvent();
+
+        if (valid) {
+            sink.accept(new VoxelRegistryLoader.GroupDefinition(identifier, List.copyOf(materials), List.copyOf(includes)));
+        } else {
+            invalid++;
+        }
+    }
+
+    /**
+     * Converts a scalar to a string, integer, long, double or boolean, like YAML 1.1 resolves plain scalars.
+     *
+     * @return the value, or null for a YAML null
+     */
+    private static @Nullable Object scalarValue(@NotNull ScalarEvent scalar) {
+        String value = scalar.getValue();
+        // quoted and explicitly tagged scalars stay strings
+        if (!scalar.isPlain() || scalar.getTag() != null) return value;
+
+        Tag tag = RESOLVER.resolve(NodeId.scalar, value, true);
+        try {
+            if (tag.equals(Tag.NULL)) return null;
+            if (tag.equals(Tag.BOOL)) return switch (value.toLowerCase(Locale.ROOT)) {
+                case "true", "yes", "y", "on" -> true;
+                default -> false;
+            };
+            if (tag.equals(Tag.INT)) {
+                long number = Long.decode(value.replace("_", ""));
+                return number == (int) number ? (Object) (int) number : (Object) number;
+            }
+            if (tag.equals(Tag.FLOAT)) return Double.parseDouble(value.replace("_", ""));
+        } catch (NumberFormatException e) {
+            // forms like sexagesimal numbers are kept as written
+        }
+        return value;
+    }
+
+    /**
+     * Skips the next node including all its children.
+     */
+    private void skipNode() {
+        skipRest(parser.getEvent());
+    }
+
+    /**
+     * Skips the children of a node whose first event was already read.
+     */
+    private void skipRest(@NotNull Event first) {
+        int depth = first.is(Event.ID.MappingStart) || first.is(Event.ID.SequenceStart) ? 1 : 0;
+        while (depth > 0) {
+            Event event = parser.getEvent();
+            if (event.is(Event.ID.MappingStart) || event.is(Event.ID.SequenceStart)) depth++;
+            else if (event.is(Event.ID.MappingEnd) || event.is(Event.ID.SequenceEnd)) depth--;
+        }
+    }
+
+    private void problem(@NotNull Event event, @NotNull String message) {
+        VoxelEngine.LOGGER.warn("{}:{}: {}", file, event.getStartMark().getLine() + 1, message);
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.resourcepack.server;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.paper.VoxelEngine;
+import sync.voxel.engine.paper.resourcepack.builder.VoxelResourcePackBuilder;
+import sync.voxel.engine.paper.scheduler.VoxelTickScheduler;
+
+import java.io.IOException;
+
+/**
+ * Tells players where to download the resource pack served by a {@link VoxelPackServer}.
+ * <p>
+ * Joining players get the pack URL and SHA-1 right away, a newly published pack is sent to
+ * everyone online. The URL contains the pack hash, so clients never reuse an outdated download.
+ */
+public final class VoxelPackSender implements Listener {
+
+    private final VoxelPackServer server;
+    private final String baseUrl;
+    private final boolean force;
+
+    private volatile Published published;
+
+    /**
+     * @param baseUrl the URL players reach the server at, without trailing slash
+     * @param force   kick players that decline the pack
+     */
+    public VoxelPackSender(@NotNull VoxelPackServer server, @NotNull String baseUrl, boolean force) {
+        this.server = server;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.force = force;
+    }
+
+    /**
+     * Serves a freshly built pack and sends it to all online players, may be called from any thread.
+     */
+    public void publish(@NotNull VoxelResourcePackBuilder.BuildResult result) {
+        try {
+            server.setPack(result.file(), result.sha1());
+        } catch (IOException e) {
+            VoxelEngine.LOGGER.error("Failed to serve resource pack {}", result.file(), e);
+            return;
+        }
+
+        Published previous = published;
+        published = new Published(baseUrl + "/" + result.sha1Hex() + ".zip", result.sha1());
+        VoxelEngine.LOGGER.info("Serving resource pack at {}", published.url());
+
+        // players that joined before the first build finished have no pack yet
+        if (previous == null || !previous.url().equals(published.url())) {
+            VoxelEngine.getScheduler().execute(VoxelTickScheduler.Priority.NORMAL, () -> {
+                for (Player player : Bukkit.getOnlinePlayers()) send(player);
+            });
+        }
+    }
+
+    /**
+     * Returns the URL of the current pack, null if no pack is built yet.
+     */
+    public @Nullable String getUrl() {
+        Published current = published;
+        return current == null ? null : current.url();
+    }
+
+    public @NotNull VoxelPackServer getServer() {
+        return server;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(@NotNull PlayerJoinEvent event) {
+        send(event.getPlayer());
+    }
+
+    private void send(@NotNull Player player) {
+        Published current = published;
+        if (current != null) player.setResourcePack(current.url(), current.sha1(), force);
+    }
+
+    private record Published(@NotNull String url, byte @NotNull [] sha1) {
+    }
+}
@@ -0,0 +1,566 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.resourcepack.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.paper.VoxelEngine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A small HTTP server handing the built resource pack to clients.
+ * <p>
+ * All connections are handled by one selector thread, the main thread is never involved. The
+ * pack is sent from its file with {@link FileChannel#transferTo}, so the kernel copies it to the
+ * socket without passing through the heap. Responses carry the pack SHA-1 as {@code ETag}, support
+ * {@code If-None-Match} and single byte ranges, and always close the connection.
+ * <p>
+ * At most {@code maxDownloads} pack bodies are sent at the same time, further downloads wait in
+ * line, so hundreds of players joining at once share the bandwidth instead of all stalling.
+ */
+public final class VoxelPackServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 8163;
+    public static final int DEFAULT_MAX_DOWNLOADS = 32;
+
+    private static final int MAX_REQUEST_BYTES = 8192;
+    private static final int MAX_WAITING = 4096;
+    private static final long TRANSFER_CHUNK = 1024 * 1024;
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private final int maxDownloads;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile Pack pack;
+
+    // only touched by the selector thread
+    private final Deque<Connection> waiting = new ArrayDeque<>();
+    private int activeDownloads;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder downloads = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private volatile int activeDownloadCount;
+    private volatile int waitingCount;
+
+    /**
+     * Binds the server and starts its thread.
+     *
+     * @param address      the address to listen on, port 0 picks a free port
+     * @param maxDownloads the number of pack bodies sent at the same time
+     * @throws IOException if the address cannot be bound
+     */
+    public VoxelPackServer(@NotNull InetSocketAddress address, int maxDownloads) throws IOException {
+        if (maxDownloads <= 0) throw new IllegalArgumentException("maxDownloads must be positive");
+
+        this.maxDownloads = maxDownloads;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+
+        try {
+            serverChannel.bind(address, 512);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+
+        this.thread = new Thread(this::run, "VoxelEngine-PackServer-" + THREAD_ID.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Serves the given pack from now on, downloads already running finish with the old pack.
+     *
+     * @param file the pack zip, must not be modified while it is served
+     * @param sha1 the SHA-1 of the pack
+     * @throws IOException if the file cannot be opened
+     */
+    public void setPack(@NotNull Path file, byte @NotNull [] sha1) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        Pack previous = pack;
+        pack = new Pack(channel, channel.size(), HexFormat.of().formatHex(sha1));
+        if (previous != null) previous.release();
+    }
+
+    /**
+     * Returns the SHA-1 of the served pack as hex, null if no pack is served yet.
+     */
+    public @Nullable String getPackHash() {
+        Pack current = pack;
+        return current == null ? null : current.hash;
+    }
+
+    /**
+     * Returns the port the server listens on.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Returns the number of started pack downloads, including partial ones.
+     */
+    public long getDownloadCount() {
+        return downloads.sum();
+    }
+
+    public long getNotModifiedCount() {
+        return notModified.sum();
+    }
+
+    /**
+     * Returns the number of requests answered with 503 because too many downloads were waiting.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public int getActiveDownloads() {
+        return activeDownloadCount;
+    }
+
+    public int getWaitingDownloads() {
+        return waitingCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Pack current = pack;
+        pack = null;
+        if (current != null) current.release();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(1000);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+
+                closeIdle();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) VoxelEngine.LOGGER.error("Resource pack server stopped", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection connection) close(connection);
+            }
+            waiting.clear();
+
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                VoxelEngine.LOGGER.warn("Failed to close resource pack server", e);
+            }
+        }
+    }
+
+    private void handle(@NotNull SelectionKey key) {
+        if (!key.isValid()) return;
+
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) read(connection);
+            if (key.isValid() && key.isWritable()) write(connection);
+        } catch (IOException e) {
+            // clients dropping the connection are normal
+            close(connection);
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        try {
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            }
+        } catch (IOException e) {
+            VoxelEngine.LOGGER.warn("Failed to accept resource pack download", e);
+        }
+    }
+
+    private void read(@NotNull Connection connection) throws IOException {
+        if (connection.pack != null) {
+            // waiting for a download slot, reading only notices clients that gave up
+            connection.request.clear();
+            if (connection.channel.read(connection.request) < 0) close(connection);
+            return;
+        }
+
+        if (connection.channel.read(connection.request) < 0) {
+            close(connection);
+            return;
+        }
+        connection.lastActivity = System.nanoTime();
+
+        int end = headerEnd(connection.request);
+        if (end < 0) {
+            if (!connection.request.hasRemaining()) respond(connection, 431, "Request Header Fields Too Large", "");
+            return;
+        }
+
+        requests.increment();
+        connection.key.interestOps(0);
+        handleRequest(connection, new String(connection.request.array(), 0, end, StandardCharsets.ISO_8859_1));
+    }
+
+    private void handleRequest(@NotNull Connection connection, @NotNull String request) {
+        String[] lines = request.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) {
+            respond(connection, 400, "Bad Request", "");
+            return;
+        }
+
+        String method = requestLine[0];
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            respond(connection, 405, "Method Not Allowed", "Allow: GET, HEAD\r\n");
+            return;
+        }
+
+        Pack current = acquirePack();
+        if (current == null) {
+            respond(connection, 503, "Service Unavailable", "Retry-After: 5\r\n");
+            return;
+        }
+
+        String path = requestLine[1];
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+        if (!path.equals("/") && !path.equals("/pack.zip") && !path.equals("/" + current.hash + ".zip")) {
+            current.release();
+            respond(connection, 404, "Not Found", "");
+            return;
+        }
+
+        String ifNoneMatch = null;
+        String range = null;
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) continue;
+
+            String name = lines[i].substring(0, colon).trim();
+            String value = lines[i].substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("If-None-Match")) ifNoneMatch = value;
+            else if (name.equalsIgnoreCase("Range")) range = value;
+        }
+
+        String etag = "\"" + current.hash + "\"";
+        String packHeaders = "ETag: " + etag + "\r\nAccept-Ranges: bytes\r\nCache-Control: no-cache\r\n";
+
+        if (ifNoneMatch != null && (ifNoneMatch.equals("*") || Arrays.stream(ifNoneMatch.split(",")).map(String::trim).anyMatch(etag::equals))) {
+            current.release();
+            notModified.increment();
+            respond(connection, 304, "Not Modified", packHeaders);
+            return;
+        }
+
+        long start = 0;
+        long end = current.size - 1;
+        int status = 200;
+        String reason = "OK";
+
+        if (range != null) {
+            long[] bounds = parseRange(range, current.size);
+            if (bounds == null) {
+                current.release();
+                respond(connection, 416, "Range Not Satisfiable", "Content-Range: bytes */" + current.size + "\r\n");
+                return;
+            }
+
+            // multiple ranges are answered with the whole pack
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                status = 206;
+                reason = "Partial Content";
+                packHeaders += "Content-Range: bytes " + start + "-" + end + "/" + current.size + "\r\n";
+            }
+        }
+
+        long length = end - start + 1;
+        connection.header = ByteBuffer.wrap(("HTTP/1.1 " + status + " " + reason + "\r\n"
+                + "Content-Type: application/zip\r\n"
+                + "Content-Length: " + length + "\r\n"
+                + packHeaders
+                + "Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+
+        if (method.equals("HEAD") || length == 0) {
+            current.release();
+            connection.key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+
+        connection.pack = current;
+        connection.position = start;
+        connection.end = start + length;
+
+        if (activeDownloads < maxDownloads) {
+            startDownload(connection);
+        } else if (waiting.size() < MAX_WAITING) {
+            waiting.add(connection);
+            waitingCount = waiting.size();
+            connection.key.interestOps(SelectionKey.OP_READ);
+        } else {
+            connection.pack = null;
+            current.release();
+            rejected.increment();
+            respond(connection, 503, "Service Unavailable", "Retry-After: 2\r\n");
+        }
+    }
+
+    private void startDownload(@NotNull Connection connection) {
+        activeDownloads++;
+        activeDownloadCount = activeDownloads;
+        connection.downloading = true;
+        connection.lastActivity = System.nanoTime();
+        connection.key.interestOps(SelectionKey.OP_WRITE);
+        downloads.increment();
+    }
+
+    private void write(@NotNull Connection connection) throws IOException {
+        if (connection.header != null) {
+            bytesSent.add(connection.channel.write(connection.header));
+            if (connection.header.hasRemaining()) return;
+            connection.header = null;
+        }
+
+        Pack current = connection.pack;
+        if (current != null && connection.position < connection.end) {
+            long count = Math.min(TRANSFER_CHUNK, connection.end - connection.position);
+            long sent = current.channel.transferTo(connection.position, count, connection.channel);
+            connection.position += sent;
+            bytesSent.add(sent);
+            if (sent > 0) connection.lastActivity = System.nanoTime();
+            if (connection.position < connection.end) return;
+        }
+
+        close(connection);
+    }
+
+    private void respond(@NotNull Connection connection, int status, @NotNull String reason, @NotNull String headers) {
+        connection.header = ByteBuffer.wrap(("HTTP/1.1 " + status + " " + reason + "\r\n"
+                + headers
+                + "Content-Length: 0\r\n"
+                + "Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        connection.key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    private void close(@NotNull Connection connection) {
+        if (connection.closed) return;
+        connection.closed = true;
+
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+            // nothing left to do with this connection
+        }
+
+        if (connection.pack != null) {
+            connection.pack.release();
+            connection.pack = null;
+        }
+
+        if (connection.downloading) {
+            connection.downloading = false;
+            activeDownloads--;
+            startWaiting();
+            activeDownloadCount = activeDownloads;
+        }
+    }
+
+    private void startWaiting() {
+        Connection next;
+        while (activeDownloads < maxDownloads && (next = waiting.poll()) != null) {
+            if (next.closed || !next.key.isValid()) {
+                close(next);
+                continue;
+            }
+            startDownload(next);
+        }
+        waitingCount = waiting.size();
+    }
+
+    private void closeIdle() {
+        long now = System.nanoTime();
+        for (SelectionKey key : selector.keys()) {
+            if (!(key.attachment() instanceof Connection connection)) continue;
+            // waiting for a download slot is not idling
+            if (connection.pack != null && !connection.downloading) continue;
+            if (now - connection.lastActivity > IDLE_TIMEOUT_NANOS) close(connection);
+        }
+
+        // drop downloads that gave up while waiting
+        if (waiting.removeIf(connection -> connection.closed || !connection.channel.isOpen())) waitingCount = waiting.size();
+    }
+
+    private @Nullable Pack acquirePack() {
+        while (true) {
+            Pack current = pack;
+            if (current == null || current.tryAcquire()) return current;
+        }
+    }
+
+    /**
+     * Finds the end of the request headers.
+     *
+     * @return the length of the header block, or -1 if it is not complete yet
+     */
+    private static int headerEnd(@NotNull ByteBuffer request) {
+        byte[] bytes = request.array();
+        for (int i = 3; i < request.position(); i++) {
+            if (bytes[i - 3] == '\r' && bytes[i - 2] == '\n' && bytes[i - 1] == '\r' && bytes[i] == '\n') return i - 3;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a {@code Range} header.
+     *
+     * @return the first and last byte of a single range, an empty array for ranges that are
+     * ignored, or null if the range cannot be satisfied
+     */
+    static long @Nullable [] parseRange(@NotNull String header, long size) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) return new long[0];
+
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return new long[0];
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            if (first.isEmpty()) {
+                // the last n bytes
+                long suffix = Long.parseLong(last);
+                if (suffix < 0) return new long[0];
+                if (suffix == 0 || size == 0) return null;
+                return new long[]{Math.max(0, size - suffix), size - 1};
+            }
+
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            // an end before the start makes the header invalid, it is ignored like other invalid ones
+            if (start < 0 || end < start) return new long[0];
+            if (start >= size) return null;
+            return new long[]{start, Math.min(end, size - 1)};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    /**
+     * An opened pack file, closed once it is replaced and no download uses it anymore.
+     */
+    private static final class Pack {
+        private final FileChannel channel;
+        private final long size;
+        private final String hash;
+        // the server holds one reference until the pack is replaced
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Pack(@NotNull FileChannel channel, long size, @NotNull String hash) {
+            this.channel = channel;
+            this.size = size;
+            this.hash = hash;
+        }
+
+        private boolean tryAcquire() {
+            int current;
+            do {
+                current = references.get();
+                if (current == 0) return false;
+            } while (!references.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        private void release() {
+            if (references.decrementAndGet() != 0) return;
+
+            try {
+                channel.close();
+            } catch (IOException e) {
+                VoxelEngine.LOGGER.warn("Failed to close resource pack file", e);
+            }
+        }
+    }
+
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+        private SelectionKey key;
+        private ByteBuffer header;
+        private Pack pack;
+        private long position;
+        private long end;
+        private boolean downloading;
+        private boolean closed;
+        private long lastActivity = System.nanoTime();
+
+        private Connection(@NotNull SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.resourcepack.watcher;
+
+import org.jetbrains.annotations.NotNull;
+import sync.voxel.engine.paper.VoxelEngine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the voxel pack folder and reports which parts of the pack changed.
+ * <p>
+ * Events are collected until the folder has been quiet for a moment, so an editor saving a file
+ * or a whole folder being copied in gives one report instead of one per file. A report is sent
+ * at the latest after the maximum delay, even if events keep coming. Collecting an event only
+ * classifies its path, the work happens once per report.
+ * <p>
+ * Only the files the pack is built from count: the {@code materials.yml} and
+ * {@code materialgroups.yml} of every registry namespace, json files in {@code models/} and png
+ * and mcmeta files in {@code textures/}. Hidden files and editor backups are ignored, so editors
+ * that save to a temporary file and rename it over the original only report the original.
+ * Folders created later are watched as soon as they appear, the files copied into them before
+ * that are found by walking the new folder.
+ */
+public final class VoxelPackWatcher implements Closeable {
+
+    public static final long DEFAULT_QUIET_MILLIS = 500;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 5000;
+
+    private static final String REGISTRY = "registry";
+    private static final String MODELS = "models";
+    private static final String TEXTURES = "textures";
+    private static final Set<String> REGISTRY_FILES = Set.of("materials.yml", "materialgroups.yml");
+
+    /**
+     * The parts of the pack that changed since the last report.
+     *
+     * @param namespaces the registry namespaces whose files changed
+     * @param models     the number of changed model files and folders
+     * @param textures   the number of changed texture files and folders
+     * @param overflow   true if events were lost, everything has to be treated as changed
+     */
+    public record Changes(@NotNull Set<String> namespaces, int models, int textures, boolean overflow) {
+
+        /**
+         * Returns true if the registries have to be reloaded.
+         */
+        public boolean registryChanged() {
+            return overflow || !namespaces.isEmpty();
+        }
+
+        /**
+         * Returns true if models or textures of the client pack changed.
+         */
+        public boolean assetsChanged() {
+            return overflow || models + textures > 0;
+        }
+    }
+
+    private final Path root;
+    private final long quietNanos;
+    private final long maxDelayNanos;
+    private final Consumer<Changes> listener;
+    private final WatchService service;
+    private final Map<WatchKey, Path> folders = new HashMap<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // only touched by the watcher thread
+    private final Set<String> namespaces = new TreeSet<>();
+    private final Set<Path> models = new HashSet<>();
+    private final Set<Path> textures = new HashSet<>();
+    private boolean overflow;
+    private long firstEvent;
+    private long lastEvent;
+
+    /**
+     * Starts watching the pack folder.
+     *
+     * @param root           the pack folder
+     * @param quietMillis    how long the folder has to be quiet before changes are reported
+     * @param maxDelayMillis how long changes are collected at most
+     * @param listener       receives the changes on the watcher thread
+     * @throws IOException if the folder cannot be watched
+     */
+    public VoxelPackWatcher(@NotNull Path root, long quietMillis, long maxDelayMillis, @NotNull Consumer<Changes> listener) throws IOException {
+        if (quietMillis <= 0 || maxDelayMillis < quietMillis) throw new IllegalArgumentException("Invalid delays " + quietMillis + "/" + maxDelayMillis);
+
+        this.root = root.toAbsolutePath().normalize();
+        this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.listener = listener;
+        this.service = this.root.getFileSystem().newWatchService();
+
+        try {
+            Files.createDirectories(this.root);
+            registerAll(this.root, false);
+        } catch (IOException e) {
+            service.close();
+            throw e;
+        }
+
+        this.thread = new Thread(this::run, "VoxelEngine-PackWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        service.close();
+
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                WatchKey key;
+                if (!hasChanges()) {
+                    key = service.take();
+                } else {
+                    long now = System.nanoTime();
+                    long wait = Math.min(lastEvent + quietNanos, firstEvent + maxDelayNanos) - now;
+                    key = wait > 0 ? service.poll(wait, TimeUnit.NANOSECONDS) : null;
+                }
+
+                if (key != null) {
+                    process(key);
+                } else if (hasChanges()) {
+                    report();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // closed
+        } catch (RuntimeException e) {
+            VoxelEngine.LOGGER.error("Resource pack watcher stopped", e);
+        }
+    }
+
+    private void process(@NotNull WatchKey key) {
+        Path folder = folders.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed();
+                overflow = true;
+                continue;
+            }
+            if (folder == null) continue;
+
+            Path path = folder.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                // files copied in before the folder was watched never get their own event
+                try {
+                    registerAll(path, true);
+                } catch (IOException e) {
+                    VoxelEngine.LOGGER.warn("Failed to watch {}", path, e);
+                    changed();
+                    overflow = true;
+                }
+                continue;
+            }
+
+            classify(path, event.kind() == StandardWatchEventKinds.ENTRY_DELETE);
+        }
+
+        if (!key.reset()) folders.remove(key);
+    }
+
+    private void registerAll(@NotNull Path start, boolean classify) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                WatchKey key = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                folders.put(key, dir);
+                if (classify) classify(dir, false);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (classify) classify(file, false);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Records what a changed path belongs to, paths the pack is not built from are ignored.
+     *
+     * @param deleted true if the path is gone, it may have been a folder then
+     */
+    private void classify(@NotNull Path path, boolean deleted) {
+        Path relative = root.relativize(path);
+        int count = relative.getNameCount();
+        String top = relative.getName(0).toString();
+        String name = relative.getFileName().toString();
+        if (isIgnored(name)) return;
+
+        boolean folder = deleted ? name.indexOf('.') < 0 : Files.isDirectory(path);
+        switch (top) {
+            case REGISTRY -> {
+                if (count == 2 && folder || count == 3 && REGISTRY_FILES.contains(name)) {
+                    changed();
+                    namespaces.add(relative.getName(1).toString());
+                }
+            }
+            case MODELS -> {
+                if (count > 1 && (folder && deleted || name.endsWith(".json"))) {
+                    changed();
+                    models.add(relative);
+                }
+            }
+            case TEXTURES -> {
+                if (count > 1 && (folder && deleted || name.endsWith(".png") || name.endsWith(".png.mcmeta"))) {
+                    changed();
+                    textures.add(relative);
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Hidden files, backups and temporary files of common editors.
+     */
+    private static boolean isIgnored(@NotNull String name) {
+        return name.startsWith(".") || name.startsWith("#") || name.endsWith("~") || name.endsWith(".tmp") || name.endsWith(".swp")
+                || name.endsWith(".bak") || name.contains("___jb_");
+    }
+
+    private void changed() {
+        long now = System.nanoTime();
+        if (!hasChanges()) firstEvent = now;
+        lastEvent = now;
+    }
+
+    private boolean hasChanges() {
+        return overflow || !namespaces.isEmpty() || !models.isEmpty() || !textures.isEmpty();
+    }
+
+    private void report() {
+        Changes changes = new Changes(Set.copyOf(namespaces), models.size(), textures.size(), overflow);
+        namespaces.clear();
+        models.clear();
+        textures.clear();
+        overflow = false;
+
+        try {
+            listener.accept(changes);
+        } catch (RuntimeException e) {
+            VoxelEngine.LOGGER.error("Failed to handle resource pack changes", e);
+        }
+    }
+}
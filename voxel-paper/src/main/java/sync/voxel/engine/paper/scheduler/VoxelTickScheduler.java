@@ -0,0 +1,377 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.scheduler;
+
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.jetbrains.annotations.NotNull;
+import sync.voxel.engine.paper.VoxelEngine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs engine work on the main thread without letting it take more than a fixed share of a tick.
+ * <p>
+ * Tasks can be submitted from any thread. At the end of every tick queued tasks run by priority,
+ * in submission order within a priority, until the budget or the time left in the tick is used
+ * up, while the server is behind tasks still get a tenth of the budget. Whatever did not run
+ * stays queued for the next tick. Long work can be split with a {@link Task} that stops at the
+ * deadline and is run again next tick, before newer tasks of the same priority. Every priority
+ * gets at least one turn per tick, so a busy priority cannot starve the lower ones and the
+ * queue always makes progress.
+ * <p>
+ * A task that throws is logged and, unless it runs only once, kept queued. Only a task failing
+ * {@value #MAX_FAILURES} times in a row is dropped, so a single failure does not stop recurring
+ * work like chunk installs for good.
+ */
+public final class VoxelTickScheduler implements Listener, Executor {
+
+    public static final long DEFAULT_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    public static final int MAX_FAILURES = 5;
+
+    /**
+     * The order in which queued tasks run, the budget goes to higher priorities first.
+     */
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    /**
+     * A task that can spread its work over several ticks.
+     */
+    @FunctionalInterface
+    public interface Task {
+
+        /**
+         * Runs a part of the task on the main thread.
+         *
+         * @param deadlineNanos the {@link System#nanoTime()} by which the task should return
+         * @return whether the task is done or runs again next tick
+         */
+        @NotNull Result run(long deadlineNanos);
+    }
+
+    /**
+     * The outcome of one run of a {@link Task}.
+     */
+    public enum Result {
+        /**
+         * The task is done and removed from the queue.
+         */
+        DONE,
+        /**
+         * The task did work and runs again next tick.
+         */
+        CONTINUE,
+        /**
+         * The task had nothing to do and runs again next tick. Idle runs do not use up the turn
+         * of their priority and are left out of the metrics.
+         */
+        IDLE
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final long budgetNanos;
+    private final List<Queue<Task>> queues = new ArrayList<>(PRIORITIES.length);
+    private final AtomicInteger pending = new AtomicInteger();
+    private final TickMetrics metrics = new TickMetrics();
+    private volatile boolean stopped;
+
+    // only used on the main thread, tasks that did not finish in an earlier tick
+    private final List<ArrayDeque<Task>> carried = new ArrayList<>(PRIORITIES.length);
+    private final List<ArrayDeque<Task>> unfinished = new ArrayList<>(PRIORITIES.length);
+    private final Map<Task, Integer> failures = new IdentityHashMap<>();
+
+    /**
+     * @param budgetNanos the time tasks may take per tick
+     */
+    public VoxelTickScheduler(long budgetNanos) {
+        if (budgetNanos <= 0) throw new IllegalArgumentException("budgetNanos must be positive");
+        this.budgetNanos = budgetNanos;
+
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues.add(new ConcurrentLinkedQueue<>());
+            carried.add(new ArrayDeque<>());
+            unfinished.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Queues a task with {@link Priority#NORMAL}.
+     */
+    @Override
+    public void execute(@NotNull Runnable task) {
+        execute(Priority.NORMAL, task);
+    }
+
+    /**
+     * Queues a task that runs once.
+     *
+     * @throws RejectedExecutionException if the scheduler is stopped
+     */
+    public void execute(@NotNull Priority priority, @NotNull Runnable task) {
+        submit(priority, deadlineNanos -> {
+            // a failed one-shot task is not run again, it may have done part of its work
+            try {
+                task.run();
+            } catch (RuntimeException | LinkageError e) {
+                VoxelEngine.LOGGER.error("Engine task {} failed", task, e);
+            }
+            return Result.DONE;
+        });
+    }
+
+    /**
+     * Queues a task that runs every tick until it returns {@link Result#DONE}.
+     *
+     * @throws RejectedExecutionException if the scheduler is stopped
+     */
+    public void submit(@NotNull Priority priority, @NotNull Task task) {
+        if (stopped) throw new RejectedExecutionException("The engine scheduler is stopped");
+
+        pending.incrementAndGet();
+        queues.get(priority.ordinal()).add(task);
+    }
+
+    /**
+     * Returns an executor queueing tasks with the given priority.
+     */
+    public @NotNull Executor executor(@NotNull Priority priority) {
+        return task -> execute(priority, task);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onTickEnd(@NotNull ServerTickEndEvent event) {
+        tick(event.getTimeRemaining());
+    }
+
+    /**
+     * Runs queued tasks until the budget is used up, must run on the main thread.
+     *
+     * @param remainingNanos the time left until the next tick is due, the budget is cut to it
+     */
+    public void tick(long remainingNanos) {
+        long start = System.nanoTime();
+        long deadline = start + Math.max(budgetNanos / 10, Math.min(budgetNanos, remainingNanos));
+        int worked = 0;
+        boolean exhausted = false;
+
+        for (int priority = 0; priority < PRIORITIES.length; priority++) {
+            ArrayDeque<Task> carriedTasks = carried.get(priority);
+            Queue<Task> queue = queues.get(priority);
+            // the first task with work runs even past the deadline, every priority gets a turn
+            boolean turn = false;
+
+            while (true) {
+                if (turn && System.nanoTime() - deadline >= 0) {
+                    exhausted = true;
+                    break;
+                }
+
+                Task task = carriedTasks.poll();
+                if (task == null) task = queue.poll();
+                if (task == null) break;
+
+                Result result = runSafely(task, deadline);
+                if (result == Result.DONE) pending.decrementAndGet();
+                else unfinished.get(priority).add(task);
+
+                if (result != Result.IDLE) {
+                    turn = true;
+                    worked++;
+                }
+            }
+        }
+
+        // unfinished tasks run after the carried tasks that had no turn this tick
+        for (int priority = 0; priority < PRIORITIES.length; priority++) {
+            ArrayDeque<Task> tasks = unfinished.get(priority);
+            if (tasks.isEmpty()) continue;
+
+            carried.get(priority).addAll(tasks);
+            tasks.clear();
+        }
+
+        metrics.record(System.nanoTime() - start, worked, exhausted);
+    }
+
+    private @NotNull Result runSafely(@NotNull Task task, long deadline) {
+        try {
+            Result result = task.run(deadline);
+            if (!failures.isEmpty()) failures.remove(task);
+            return result;
+        } catch (RuntimeException | LinkageError e) {
+            int failed = failures.merge(task, 1, Integer::sum);
+            if (failed < MAX_FAILURES) {
+                VoxelEngine.LOGGER.error("Engine task {} failed, running it again next tick", task, e);
+                return Result.CONTINUE;
+            }
+
+            failures.remove(task);
+            VoxelEngine.LOGGER.error("Engine task {} failed {} times in a row, dropping it", task, failed, e);
+            return Result.DONE;
+        }
+    }
+
+    /**
+     * Stops accepting tasks and drops all queued ones.
+     */
+    public void stop() {
+        stopped = true;
+
+        int dropped = 0;
+        for (int priority = 0; priority < PRIORITIES.length; priority++) {
+            dropped += carried.get(priority).size();
+            carried.get(priority).clear();
+
+            Queue<Task> queue = queues.get(priority);
+            while (queue.poll() != null) dropped++;
+        }
+        pending.addAndGet(-dropped);
+        failures.clear();
+
+        if (dropped > 0) VoxelEngine.LOGGER.debug("Dropped {} engine tasks on shutdown", dropped);
+    }
+
+    /**
+     * Returns the time tasks may take per tick.
+     */
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    /**
+     * Returns the number of queued tasks, including tasks that continue next tick.
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Returns the time spent running tasks per tick.
+     */
+    public @NotNull TickMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Histogram of the time spent running tasks per tick.
+     */
+    public static final class TickMetrics {
+
+        private static final long[] BUCKET_BOUNDS_NANOS = {
+                TimeUnit.MICROSECONDS.toNanos(50),
+                TimeUnit.MICROSECONDS.toNanos(100),
+                TimeUnit.MICROSECONDS.toNanos(250),
+                TimeUnit.MICROSECONDS.toNanos(500),
+                TimeUnit.MILLISECONDS.toNanos(1),
+                TimeUnit.MICROSECONDS.toNanos(2500),
+                TimeUnit.MILLISECONDS.toNanos(5),
+                TimeUnit.MILLISECONDS.toNanos(10),
+                TimeUnit.MILLISECONDS.toNanos(25)
+        };
+
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_NANOS.length + 1];
+        private final LongAdder ticks = new LongAdder();
+        private final LongAdder tasks = new LongAdder();
+        private final LongAdder exhaustedTicks = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        private TickMetrics() {
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        void record(long nanos, int worked, boolean exhausted) {
+            // idle ticks would drown the histogram
+            if (worked == 0) return;
+
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[bucket]) bucket++;
+            buckets[bucket].increment();
+
+            ticks.increment();
+            tasks.add(worked);
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            if (exhausted) exhaustedTicks.increment();
+        }
+
+        /**
+         * Returns the upper bounds of the histogram buckets, the last bucket has no bound.
+         */
+        public static long @NotNull [] getBucketBoundsNanos() {
+            return BUCKET_BOUNDS_NANOS.clone();
+        }
+
+        /**
+         * Returns the number of ticks per bucket, one more than there are bounds.
+         */
+        public long @NotNull [] getBucketCounts() {
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < counts.length; i++) counts[i] = buckets[i].sum();
+            return counts;
+        }
+
+        /**
+         * Returns the number of ticks in which at least one task did work.
+         */
+        public long getTicks() {
+            return ticks.sum();
+        }
+
+        /**
+         * Returns the number of task runs that did work, idle runs are not counted.
+         */
+        public long getTasks() {
+            return tasks.sum();
+        }
+
+        /**
+         * Returns the number of ticks that used up their budget and left work for the next tick.
+         */
+        public long getExhaustedTicks() {
+            return exhaustedTicks.sum();
+        }
+
+        public long getAverageNanos() {
+            long samples = ticks.sum();
+            return samples == 0 ? 0 : totalNanos.sum() / samples;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public void reset() {
+            for (LongAdder bucket : buckets) bucket.reset();
+            ticks.reset();
+            tasks.reset();
+            exhaustedTicks.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.world;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Positions of custom blocks that changed since the last flush, grouped by chunk section.
+ * <p>
+ * A position is only recorded once per flush no matter how often it changes, the flush
+ * reads the block state at that time.
+ */
+public final class VoxelBlockChanges {
+
+    private final Map<Long, Section> sections = new ConcurrentHashMap<>();
+
+    /**
+     * Receives the changed positions of one section.
+     */
+    @FunctionalInterface
+    public interface Consumer {
+
+        /**
+         * @param sectionX  the section x coordinate
+         * @param sectionY  the section y coordinate
+         * @param sectionZ  the section z coordinate
+         * @param positions the changed positions as {@code y << 8 | z << 4 | x} inside the section
+         * @param count     the number of valid entries in positions
+         */
+        void accept(int sectionX, int sectionY, int sectionZ, short @NotNull [] positions, int count);
+    }
+
+    /**
+     * Packs section coordinates into a single key.
+     */
+    public static long sectionKey(int sectionX, int sectionY, int sectionZ) {
+        return ((long) sectionX & 0x3FFFFF) << 42 | ((long) sectionZ & 0x3FFFFF) << 20 | (long) sectionY & 0xFFFFF;
+    }
+
+    /**
+     * Records a changed block position.
+     */
+    public void record(int x, int y, int z) {
+        int index = (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+        sections.compute(sectionKey(x >> 4, y >> 4, z >> 4), (key, section) -> {
+            if (section == null) section = new Section(x >> 4, y >> 4, z >> 4);
+            section.add(index);
+            return section;
+        });
+    }
+
+    /**
+     * Returns true if no change is recorded.
+     */
+    public boolean isEmpty() {
+        return sections.isEmpty();
+    }
+
+    /**
+     * Passes every section with changes to the consumer and forgets them.
+     *
+     * @return the number of drained sections
+     */
+    public int drain(@NotNull Consumer consumer) {
+        return drain(consumer, false, 0L);
+    }
+
+    /**
+     * Passes sections with changes to the consumer and forgets them, until the deadline passed.
+     * At least one section is drained, the remaining sections are kept for the next drain.
+     *
+     * @param deadlineNanos the {@link System#nanoTime()} after which no more sections are drained
+     * @return the number of drained sections
+     */
+    public int drain(@NotNull Consumer consumer, long deadlineNanos) {
+        return drain(consumer, true, deadlineNanos);
+    }
+
+    private int drain(@NotNull Consumer consumer, boolean bounded, long deadlineNanos) {
+        int drained = 0;
+        short[] positions = new short[64];
+
+        Iterator<Long> keys = sections.keySet().iterator();
+        while (keys.hasNext()) {
+            if (bounded && drained > 0 && System.nanoTime() - deadlineNanos >= 0) break;
+
+            Section section = sections.remove(keys.next());
+            if (section == null) continue;
+
+            if (positions.length < section.count) positions = new short[Integer.highestOneBit(section.count - 1) << 1];
+            int count = section.copyTo(positions);
+            consumer.accept(section.x, section.y, section.z, positions, count);
+            drained++;
+        }
+
+        return drained;
+    }
+
+    private static final class Section {
+        private final int x;
+        private final int y;
+        private final int z;
+        private final long[] bits = new long[64];
+        private int count;
+
+        private Section(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        private void add(int index) {
+            long mask = 1L << index;
+            if ((bits[index >> 6] & mask) != 0) return;
+
+            bits[index >> 6] |= mask;
+            count++;
+        }
+
+        private int copyTo(short @NotNull [] positions) {
+            int written = 0;
+            for (int word = 0; word < bits.length; word++) {
+                long remaining = bits[word];
+                while (remaining != 0) {
+                    positions[written++] = (short) (word << 6 | Long.numberOfTrailingZeros(remaining));
+                    remaining &= remaining - 1;
+                }
+            }
+            return written;
+        }
+    }
+}
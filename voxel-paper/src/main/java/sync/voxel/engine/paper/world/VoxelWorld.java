@@ -9,14 +9,271 @@
  */
 package sync.voxel.engine.paper.world;
 
+import org.bukkit.World;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.api.material.VoxMaterial;
+import sync.voxel.engine.api.registry.VoxIndexedRegistry;
+import sync.voxel.engine.api.registry.VoxRegistries;
 import sync.voxel.engine.api.world.VoxWorld;
+import sync.voxel.engine.paper.VoxelEngine;
+import sync.voxel.engine.paper.world.storage.VoxelChunk;
+import sync.voxel.engine.paper.world.storage.VoxelChunkSection;
+import sync.voxel.engine.paper.world.storage.VoxelRegionStorage;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class VoxelWorld implements VoxWorld {
 
+    private final World world;
+    private final UUID uuid;
+    private final int handle;
+    private final int minSection;
+    private final int sectionCount;
+    private final Map<Long, VoxelChunk> chunks = new ConcurrentHashMap<>();
+    // unloaded chunks whose save is still running, a reload takes them back instead of reading stale data
+    private final Map<Long, VoxelChunk> saving = new ConcurrentHashMap<>();
+    private final VoxelRegionStorage storage;
+    private final VoxelBlockChanges blockChanges = new VoxelBlockChanges();
+
+    public VoxelWorld(@NotNull World world, int handle) {
+        this.world = world;
+        this.uuid = world.getUID();
+        this.handle = handle;
+        this.minSection = world.getMinHeight() >> 4;
+        this.sectionCount = ((world.getMaxHeight() - 1) >> 4) - minSection + 1;
+        this.storage = new VoxelRegionStorage(uuid);
+    }
+
     @Override
     public UUID uuid() {
-        return null;
+        return uuid;
+    }
+
+    /**
+     * Returns the small integer handle of this world.
+     * <p>
+     * Handles are dense and reused after a world unloads, see {@link sync.voxel.engine.paper.VoxelEngine#getWorld(int)}.
+     */
+    public int handle() {
+        return handle;
+    }
+
+    public @NotNull World getBukkitWorld() {
+        return world;
+    }
+
+    @Override
+    public @Nullable VoxMaterial getCustomBlock(int x, int y, int z) {
+        VoxelChunk chunk = chunks.get(VoxelChunk.key(x >> 4, z >> 4));
+        if (chunk == null) return null;
+
+        int rawId = chunk.get(x, y, z);
+        return rawId == VoxelChunkSection.NO_BLOCK ? null : VoxRegistries.MATERIAL.valueOf(rawId);
+    }
+
+    @Override
+    public boolean setCustomBlock(int x, int y, int z, @Nullable VoxMaterial material) {
+        int rawId = VoxelChunkSection.NO_BLOCK;
+        if (material != null) {
+            rawId = VoxRegistries.MATERIAL.rawIdOf(material);
+            if (rawId == VoxIndexedRegistry.UNKNOWN_RAW_ID) {
+                throw new IllegalArgumentException("Material " + material.identifier() + " is not registered");
+            }
+        }
+
+        // a removal while the chunk loads has to be recorded, or the stored block would come back
+        boolean create = rawId != VoxelChunkSection.NO_BLOCK || VoxelEngine.getChunkPipeline().isRequested(this, x >> 4, z >> 4);
+        VoxelChunk chunk = create ? getOrCreateChunk(x >> 4, z >> 4) : getChunk(x >> 4, z >> 4);
+        if (chunk == null) return false;
+
+        if (!chunk.set(x, y, z, rawId)) return false;
+
+        blockChanges.record(x, y, z);
+        VoxelEngine.getChunkPacketCache().invalidate(handle, x >> 4, z >> 4);
+        return true;
+    }
+
+    /**
+     * Returns the custom block storage of a chunk, null if the chunk holds no custom blocks.
+     */
+    public @Nullable VoxelChunk getChunk(int chunkX, int chunkZ) {
+        return chunks.get(VoxelChunk.key(chunkX, chunkZ));
+    }
+
+    /**
+     * Returns the custom block storage of a chunk, creating it if needed.
+     * <p>
+     * A created chunk is provisional and its stored blocks are requested, they are merged below
+     * the blocks set in the meantime once they are loaded.
+     */
+    public @NotNull VoxelChunk getOrCreateChunk(int chunkX, int chunkZ) {
+        VoxelChunk chunk = getChunk(chunkX, chunkZ);
+        if (chunk != null) return chunk;
+
+        VoxelChunk unsaved = saving.remove(VoxelChunk.key(chunkX, chunkZ));
+        if (unsaved != null) {
+            chunk = chunks.putIfAbsent(VoxelChunk.key(chunkX, chunkZ), unsaved);
+            return chunk != null ? chunk : unsaved;
+        }
+
+        VoxelChunk created = new VoxelChunk(chunkX, chunkZ, minSection, sectionCount, true);
+        chunk = chunks.putIfAbsent(VoxelChunk.key(chunkX, chunkZ), created);
+        if (chunk != null) return chunk;
+
+        VoxelEngine.getChunkPipeline().request(this, chunkX, chunkZ);
+        return created;
+    }
+
+    /**
+     * Records every loaded custom block with one of the given raw ids as changed, so the next
+     * flush of the {@link #getBlockChanges() block changes} sends it to the players again.
+     * <p>
+     * Sections whose palette holds none of the raw ids are skipped without reading their blocks.
+     *
+     * @param rawIds the material raw ids whose blocks look different now
+     * @return the number of recorded blocks
+     */
+    public int recordBlocks(@NotNull BitSet rawIds) {
+        if (rawIds.isEmpty()) return 0;
+
+        int recorded = 0;
+        int[] blocks = new int[VoxelChunkSection.VOLUME];
+        for (VoxelChunk chunk : chunks.values()) {
+            for (int sectionY = minSection; sectionY < minSection + sectionCount; sectionY++) {
+                VoxelChunkSection section = chunk.getSection(sectionY);
+                if (section == null || section.isEmpty() || !section.mayContainAny(rawIds)) continue;
+
+                section.copyTo(blocks);
+                for (int index = 0; index < blocks.length; index++) {
+                    int rawId = blocks[index];
+                    if (rawId == VoxelChunkSection.NO_BLOCK || !rawIds.get(rawId)) continue;
+
+                    blockChanges.record(chunk.getX() << 4 | index & 15, sectionY << 4 | index >> 8, chunk.getZ() << 4 | index >> 4 & 15);
+                    recorded++;
+                }
+            }
+        }
+        return recorded;
+    }
+
+    /**
+     * Returns the number of off-heap bytes used by the custom block storage of this world.
+     */
+    public long getCustomBlockMemory() {
+        long bytes = 0;
+        for (VoxelChunk chunk : chunks.values()) bytes += chunk.getMemoryBytes();
+        return bytes;
+    }
+
+    /**
+     * Loads the custom blocks of a chunk from disk without blocking the calling thread.
+     *
+     * @return a future completing on the main thread with the chunk, or null if the chunk holds no custom blocks
+     * @see VoxelEngine#getChunkPipeline()
+     */
+    public @NotNull CompletableFuture<VoxelChunk> loadChunkAsync(int chunkX, int chunkZ) {
+        return VoxelEngine.getChunkPipeline().request(this, chunkX, chunkZ);
+    }
+
+    /**
+     * Installs a chunk loaded by the {@link sync.voxel.engine.paper.world.storage.VoxelChunkPipeline}.
+     * <p>
+     * If an unloaded copy is still being saved, it is installed instead of the stored chunk. If the
+     * chunk got custom blocks while loading, the loaded blocks are merged below them.
+     *
+     * @param stored the chunk read from disk, null if nothing is stored
+     * @return the chunk that is installed now, or null if the chunk holds no custom blocks
+     */
+    @ApiStatus.Internal
+    public @Nullable VoxelChunk installChunk(int chunkX, int chunkZ, @Nullable VoxelChunk stored) {
+        long key = VoxelChunk.key(chunkX, chunkZ);
+        VoxelChunk unsaved = saving.remove(key);
+        VoxelChunk loaded = unsaved != null ? unsaved : stored;
+
+        VoxelChunk installed = loaded == null ? chunks.get(key) : chunks.putIfAbsent(key, loaded);
+        if (installed != null) installed.merge(loaded);
+        VoxelEngine.getChunkPacketCache().invalidate(handle, chunkX, chunkZ);
+        return installed != null ? installed : loaded;
+    }
+
+    /**
+     * Removes the custom blocks of an unloaded chunk from memory, saving them first if they changed.
+     */
+    public void unloadChunk(int chunkX, int chunkZ) {
+        long key = VoxelChunk.key(chunkX, chunkZ);
+        VoxelChunk chunk = chunks.remove(key);
+        VoxelEngine.getChunkPacketCache().invalidate(handle, chunkX, chunkZ);
+        if (chunk == null || !chunk.isDirty() && !chunk.isProvisional()) return;
+
+        saving.put(key, chunk);
+        storage.saveAsync(List.of(chunk)).whenComplete((written, error) -> {
+            saving.remove(key, chunk);
+            if (error == null) return;
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            VoxelEngine.LOGGER.error("Failed to save custom blocks of chunk {}, {}", chunkX, chunkZ, cause);
+        });
+    }
+
+    /**
+     * Writes all changed sections to disk on the I/O pool.
+     *
+     * @return a future completing with the number of written sections
+     */
+    public @NotNull CompletableFuture<Integer> saveAsync() {
+        List<VoxelChunk> dirty = new ArrayList<>();
+        for (VoxelChunk chunk : chunks.values()) {
+            if (chunk.isDirty() || chunk.isProvisional()) dirty.add(chunk);
+        }
+
+        if (dirty.isEmpty()) return CompletableFuture.completedFuture(0);
+        return storage.saveAsync(dirty).whenComplete((written, error) -> {
+            if (error == null) return;
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            VoxelEngine.LOGGER.error("Failed to save custom blocks of {}", world.getName(), cause);
+        });
+    }
+
+    /**
+     * Saves all changed sections and closes the region files of this world.
+     */
+    public @NotNull CompletableFuture<Void> close() {
+        return saveAsync().handle((written, error) -> {
+            storage.close();
+            return null;
+        });
+    }
+
+    /**
+     * Returns the custom block changes that were not sent to players yet.
+     */
+    public @NotNull VoxelBlockChanges getBlockChanges() {
+        return blockChanges;
+    }
+
+    public @NotNull VoxelRegionStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Returns the section y of the lowest section of this world.
+     */
+    public int getMinSection() {
+        return minSection;
+    }
+
+    /**
+     * Returns the number of sections of a chunk in this world.
+     */
+    public int getSectionCount() {
+        return sectionCount;
     }
 }
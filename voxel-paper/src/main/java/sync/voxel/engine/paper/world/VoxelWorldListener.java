@@ -0,0 +1,70 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.world;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.Chunk;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldSaveEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.jetbrains.annotations.NotNull;
+import sync.voxel.engine.paper.VoxelEngine;
+
+/**
+ * Keeps the world index of the {@link VoxelEngine} in sync with bukkit, loads custom blocks
+ * together with their chunks and saves them together with the world.
+ */
+public class VoxelWorldListener implements Listener {
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(@NotNull WorldLoadEvent event) {
+        VoxelEngine.loadWorld(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(@NotNull WorldUnloadEvent event) {
+        VoxelWorld world = VoxelEngine.unloadWorld(event.getWorld());
+        if (world == null) return;
+
+        VoxelEngine.getChunkPipeline().cancelAll(world);
+        world.close();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldSave(@NotNull WorldSaveEvent event) {
+        VoxelWorld world = VoxelEngine.getWorld(event.getWorld());
+        if (world != null) world.saveAsync();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(@NotNull ChunkLoadEvent event) {
+        // freshly generated chunks cannot have stored custom blocks
+        if (event.isNewChunk()) return;
+
+        VoxelWorld world = VoxelEngine.getWorld(event.getWorld());
+        Chunk chunk = event.getChunk();
+        if (world != null) VoxelEngine.getChunkPipeline().request(world, chunk.getX(), chunk.getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(@NotNull ChunkUnloadEvent event) {
+        VoxelWorld world = VoxelEngine.getWorld(event.getWorld());
+        if (world == null) return;
+
+        Chunk chunk = event.getChunk();
+        VoxelEngine.getChunkPipeline().cancel(world, chunk.getX(), chunk.getZ());
+        world.unloadChunk(chunk.getX(), chunk.getZ());
+    }
+
+}
@@ -0,0 +1,232 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.world.storage;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Custom block storage of one chunk column.
+ * <p>
+ * Sections are created on the first custom block. Sections that became empty are kept
+ * until they are saved and dropped by {@link #trim()} afterwards, so a chunk without
+ * custom blocks holds no section storage at all.
+ * <p>
+ * A chunk that gets custom blocks before its stored blocks are loaded is provisional: it
+ * records which positions were written, and {@link #merge(VoxelChunk)} later fills every
+ * other position from the stored chunk. Provisional chunks must not be saved unmerged.
+ */
+public final class VoxelChunk {
+
+    private final int x;
+    private final int z;
+    private final int minSection;
+    private final AtomicReferenceArray<VoxelChunkSection> sections;
+    private volatile long version;
+
+    // positions written while provisional, per section, null once the stored blocks are merged
+    private BitSet[] written;
+
+    public VoxelChunk(int x, int z, int minSection, int sectionCount) {
+        this(x, z, minSection, sectionCount, false);
+    }
+
+    /**
+     * @param provisional true if the stored blocks of the chunk are not loaded yet
+     */
+    public VoxelChunk(int x, int z, int minSection, int sectionCount, boolean provisional) {
+        this.x = x;
+        this.z = z;
+        this.minSection = minSection;
+        this.sections = new AtomicReferenceArray<>(sectionCount);
+        if (provisional) this.written = new BitSet[sectionCount];
+    }
+
+    /**
+     * Packs chunk coordinates into a single key.
+     */
+    public static long key(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public int getMinSection() {
+        return minSection;
+    }
+
+    public int getSectionCount() {
+        return sections.length();
+    }
+
+    /**
+     * Returns the material raw id at the given block position.
+     *
+     * @param blockX the block x coordinate, only the lowest 4 bits are used
+     * @param blockY the world block y coordinate
+     * @param blockZ the block z coordinate, only the lowest 4 bits are used
+     * @return the material raw id, or {@link VoxelChunkSection#NO_BLOCK}
+     */
+    public int get(int blockX, int blockY, int blockZ) {
+        VoxelChunkSection section = getSection(blockY >> 4);
+        return section == null ? VoxelChunkSection.NO_BLOCK : section.get(blockX, blockY, blockZ);
+    }
+
+    /**
+     * Sets the material raw id at the given block position.
+     *
+     * @return true if the chunk changed
+     * @throws IllegalArgumentException if the y coordinate is outside the world height
+     */
+    public synchronized boolean set(int blockX, int blockY, int blockZ, int rawId) {
+        int index = (blockY >> 4) - minSection;
+        if (index < 0 || index >= sections.length()) {
+            throw new IllegalArgumentException("Block y " + blockY + " is outside of the world height");
+        }
+
+        if (written != null) {
+            if (written[index] == null) written[index] = new BitSet(VoxelChunkSection.VOLUME);
+            written[index].set((blockY & 15) << 8 | (blockZ & 15) << 4 | blockX & 15);
+        }
+
+        VoxelChunkSection section = sections.get(index);
+        if (section == null) {
+            if (rawId == VoxelChunkSection.NO_BLOCK) return false;
+
+            sections.compareAndSet(index, null, new VoxelChunkSection());
+            section = sections.get(index);
+        }
+
+        if (!section.set(blockX, blockY, blockZ, rawId)) return false;
+
+        // bumped after the change, a reader seeing the new version also sees the new block
+        version++;
+        return true;
+    }
+
+    /**
+     * Replaces the section at the given section y, used when loading a chunk.
+     */
+    synchronized void setSection(int sectionY, @Nullable VoxelChunkSection section) {
+        int index = sectionY - minSection;
+        if (index < 0 || index >= sections.length()) return;
+
+        sections.set(index, section);
+        version++;
+    }
+
+    /**
+     * Returns true if the stored blocks of this chunk were not merged yet.
+     */
+    public synchronized boolean isProvisional() {
+        return written != null;
+    }
+
+    /**
+     * Fills a provisional chunk with the stored blocks, positions written since the chunk was
+     * created keep their value. Does nothing if the chunk is not provisional.
+     *
+     * @param stored the chunk read from disk, null if nothing is stored
+     */
+    public synchronized void merge(@Nullable VoxelChunk stored) {
+        if (written == null) return;
+
+        if (stored != null) {
+            for (int index = 0; index < sections.length(); index++) {
+                VoxelChunkSection base = index < stored.sections.length() ? stored.sections.get(index) : null;
+                if (base == null) continue;
+
+                // the stored section is saved already, only the positions written on top make it dirty
+                VoxelChunkSection section = sections.get(index);
+                BitSet positions = written[index];
+                if (positions != null) {
+                    for (int position = positions.nextSetBit(0); position >= 0; position = positions.nextSetBit(position + 1)) {
+                        int blockX = position & 15;
+                        int blockY = position >> 8;
+                        int blockZ = position >> 4 & 15;
+                        base.set(blockX, blockY, blockZ, section == null ? VoxelChunkSection.NO_BLOCK : section.get(blockX, blockY, blockZ));
+                    }
+                }
+                sections.set(index, base);
+            }
+        }
+
+        written = null;
+        version++;
+    }
+
+    /**
+     * Returns a counter that increases with every change of a custom block.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the section at the given section y, null if it holds no custom blocks.
+     */
+    public @Nullable VoxelChunkSection getSection(int sectionY) {
+        int index = sectionY - minSection;
+        if (index < 0 || index >= sections.length()) return null;
+        return sections.get(index);
+    }
+
+    /**
+     * Returns true if no section holds a custom block.
+     */
+    public boolean isEmpty() {
+        for (int i = 0; i < sections.length(); i++) {
+            VoxelChunkSection section = sections.get(i);
+            if (section != null && !section.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if any section changed since it was last saved.
+     */
+    public boolean isDirty() {
+        for (int i = 0; i < sections.length(); i++) {
+            VoxelChunkSection section = sections.get(i);
+            if (section != null && section.isDirty()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drops sections that are empty and saved.
+     */
+    public synchronized void trim() {
+        for (int i = 0; i < sections.length(); i++) {
+            VoxelChunkSection section = sections.get(i);
+            if (section != null && section.isEmpty() && !section.isDirty()) sections.set(i, null);
+        }
+    }
+
+    /**
+     * Returns the number of off-heap bytes used by all sections.
+     */
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (int i = 0; i < sections.length(); i++) {
+            VoxelChunkSection section = sections.get(i);
+            if (section != null) bytes += section.getMemoryBytes();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,389 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.world.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.paper.VoxelEngine;
+import sync.voxel.engine.paper.scheduler.VoxelTickScheduler;
+import sync.voxel.engine.paper.world.VoxelWorld;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads the custom blocks of chunks without blocking the main thread.
+ * <p>
+ * A request passes three stages: the compressed sections are read on the shared I/O pool,
+ * decoded on a worker pool and the finished chunk is installed into its {@link VoxelWorld}
+ * on the main thread, as many per tick as the {@link VoxelTickScheduler} budget allows. At most {@code maxInFlight} requests are read or decoded
+ * at the same time, further requests wait in a queue where cancelling them is free. Requests
+ * of chunks that unload before they are installed are cancelled and skip all remaining stages.
+ */
+public final class VoxelChunkPipeline {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    /**
+     * The stages a request passes, {@link #QUEUE} is the time spent waiting for a free slot.
+     */
+    public enum Stage {
+        QUEUE, READ, DECODE, INSTALL
+    }
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int CANCELLED = 2;
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private final int maxInFlight;
+    private final ThreadPoolExecutor decodeExecutor;
+
+    private final Map<RequestKey, Request> requests = new ConcurrentHashMap<>();
+    private final Queue<Request> queue = new ConcurrentLinkedQueue<>();
+    private final Queue<Request> decoded = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger awaitingInstall = new AtomicInteger();
+    private final Map<Stage, StageMetrics> metrics = new EnumMap<>(Stage.class);
+
+    private volatile boolean running;
+    private volatile boolean stopped;
+
+    public VoxelChunkPipeline(int maxInFlight, int decodeThreads) {
+        if (maxInFlight <= 0) throw new IllegalArgumentException("maxInFlight must be positive");
+        if (decodeThreads <= 0) throw new IllegalArgumentException("decodeThreads must be positive");
+
+        this.maxInFlight = maxInFlight;
+        this.decodeExecutor = new ThreadPoolExecutor(decodeThreads, decodeThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "VoxelEngine-Decode-" + THREAD_ID.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (Stage stage : Stage.values()) metrics.put(stage, new StageMetrics());
+    }
+
+    /**
+     * Starts installing loaded chunks every tick, chunks left over when the budget is used up
+     * are installed next tick.
+     */
+    public void start(@NotNull VoxelTickScheduler scheduler) {
+        if (running) throw new IllegalStateException("Chunk pipeline is already running");
+        running = true;
+        scheduler.submit(VoxelTickScheduler.Priority.NORMAL, this::install);
+    }
+
+    /**
+     * Cancels all requests and stops the pipeline.
+     */
+    public void stop() {
+        stopped = true;
+
+        for (Request request : requests.values()) cancel(request);
+        decodeExecutor.shutdown();
+    }
+
+    /**
+     * Requests the custom blocks of a chunk. Requesting a chunk that is already requested
+     * returns the same future.
+     *
+     * @return a future completing on the main thread with the installed chunk, or null if the
+     * chunk holds no custom blocks or the request was cancelled
+     */
+    public @NotNull CompletableFuture<VoxelChunk> request(@NotNull VoxelWorld world, int chunkX, int chunkZ) {
+        RequestKey key = new RequestKey(world.handle(), VoxelChunk.key(chunkX, chunkZ));
+        Request request = requests.get(key);
+        if (request != null) return request.future;
+
+        // a provisional chunk got custom blocks before its stored ones were loaded
+        VoxelChunk loaded = world.getChunk(chunkX, chunkZ);
+        if (loaded != null && !loaded.isProvisional()) return CompletableFuture.completedFuture(loaded);
+
+        Request created = new Request(key, world, chunkX, chunkZ);
+        request = requests.putIfAbsent(key, created);
+        if (request != null) return request.future;
+
+        queued.incrementAndGet();
+        queue.add(created);
+        pump();
+        return created.future;
+    }
+
+    /**
+     * Returns true if the chunk is requested and not installed yet.
+     */
+    public boolean isRequested(@NotNull VoxelWorld world, int chunkX, int chunkZ) {
+        return requests.containsKey(new RequestKey(world.handle(), VoxelChunk.key(chunkX, chunkZ)));
+    }
+
+    /**
+     * Cancels the request of a chunk, if there is one.
+     */
+    public void cancel(@NotNull VoxelWorld world, int chunkX, int chunkZ) {
+        Request request = requests.get(new RequestKey(world.handle(), VoxelChunk.key(chunkX, chunkZ)));
+        if (request != null) cancel(request);
+    }
+
+    /**
+     * Cancels all requests of a world.
+     */
+    public void cancelAll(@NotNull VoxelWorld world) {
+        for (Request request : requests.values()) {
+            if (request.world == world) cancel(request);
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for a free slot.
+     */
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * Returns the number of requests being read or decoded.
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns the number of decoded chunks waiting for the main thread.
+     */
+    public int getAwaitingInstallCount() {
+        return awaitingInstall.get();
+    }
+
+    /**
+     * Returns the number of tasks waiting on the I/O pool, including saves.
+     */
+    public int getIoQueueDepth() {
+        return VoxelRegionStorage.ioExecutor().getQueue().size();
+    }
+
+    /**
+     * Returns the number of tasks waiting on the decode pool.
+     */
+    public int getDecodeQueueDepth() {
+        return decodeExecutor.getQueue().size();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public @NotNull StageMetrics getMetrics(@NotNull Stage stage) {
+        return metrics.get(stage);
+    }
+
+    private void cancel(@NotNull Request request) {
+        int previous = request.state.getAndSet(CANCELLED);
+        if (previous == CANCELLED) return;
+        if (previous == QUEUED) queued.decrementAndGet();
+
+        requests.remove(request.key, request);
+        request.future.complete(null);
+    }
+
+    /**
+     * Moves queued requests to the I/O pool while slots are free.
+     */
+    private void pump() {
+        while (true) {
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                return;
+            }
+
+            Request request = queue.poll();
+            if (request == null) {
+                inFlight.decrementAndGet();
+                // a request may have been queued after the poll but before the slot was released
+                if (queue.isEmpty()) return;
+                continue;
+            }
+
+            if (!request.state.compareAndSet(QUEUED, RUNNING)) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+
+            queued.decrementAndGet();
+            request.stageStart = metrics.get(Stage.QUEUE).record(request.stageStart);
+
+            try {
+                VoxelRegionStorage.ioExecutor().execute(() -> read(request));
+            } catch (RejectedExecutionException e) {
+                fail(request, e);
+            }
+        }
+    }
+
+    private void read(@NotNull Request request) {
+        if (request.isCancelled()) {
+            release();
+            return;
+        }
+
+        try {
+            VoxelWorld world = request.world;
+            byte[][] payloads = world.getStorage().read(request.chunkX, request.chunkZ, world.getMinSection(), world.getSectionCount());
+            request.stageStart = metrics.get(Stage.READ).record(request.stageStart);
+
+            if (payloads == null) {
+                decoded(request, null);
+                return;
+            }
+
+            decodeExecutor.execute(() -> decode(request, payloads));
+        } catch (Exception e) {
+            fail(request, e);
+        }
+    }
+
+    private void decode(@NotNull Request request, byte @NotNull [][] payloads) {
+        if (request.isCancelled()) {
+            release();
+            return;
+        }
+
+        try {
+            VoxelWorld world = request.world;
+            VoxelChunk chunk = world.getStorage().decode(request.chunkX, request.chunkZ, world.getMinSection(), payloads);
+            request.stageStart = metrics.get(Stage.DECODE).record(request.stageStart);
+            decoded(request, chunk);
+        } catch (Exception e) {
+            fail(request, e);
+        }
+    }
+
+    private void decoded(@NotNull Request request, @Nullable VoxelChunk chunk) {
+        request.chunk = chunk;
+        awaitingInstall.incrementAndGet();
+        decoded.add(request);
+        release();
+    }
+
+    private void release() {
+        inFlight.decrementAndGet();
+        pump();
+    }
+
+    private void fail(@NotNull Request request, @NotNull Throwable error) {
+        VoxelEngine.LOGGER.error("Failed to load custom blocks of chunk {}, {}", request.chunkX, request.chunkZ, error);
+        requests.remove(request.key, request);
+        request.future.completeExceptionally(error);
+        release();
+    }
+
+    /**
+     * Installs decoded chunks until the deadline, runs on the main thread.
+     *
+     * @return done once the pipeline is stopped, idle if no chunk was waiting
+     */
+    private @NotNull VoxelTickScheduler.Result install(long deadlineNanos) {
+        if (stopped) return VoxelTickScheduler.Result.DONE;
+
+        // at least one chunk per tick, so installs keep going while the server is behind
+        boolean first = true;
+        Request request;
+        while ((first || System.nanoTime() - deadlineNanos < 0) && (request = decoded.poll()) != null) {
+            awaitingInstall.decrementAndGet();
+            if (request.isCancelled()) continue;
+
+            first = false;
+            requests.remove(request.key, request);
+            VoxelChunk chunk;
+            try {
+                chunk = request.world.installChunk(request.chunkX, request.chunkZ, request.chunk);
+            } catch (RuntimeException e) {
+                VoxelEngine.LOGGER.error("Failed to install custom blocks of chunk {}, {}", request.chunkX, request.chunkZ, e);
+                request.future.completeExceptionally(e);
+                continue;
+            }
+            metrics.get(Stage.INSTALL).record(request.stageStart);
+            request.future.complete(chunk);
+        }
+        return first ? VoxelTickScheduler.Result.IDLE : VoxelTickScheduler.Result.CONTINUE;
+    }
+
+    private record RequestKey(int world, long chunk) {
+    }
+
+    private static final class Request {
+        private final RequestKey key;
+        private final VoxelWorld world;
+        private final int chunkX;
+        private final int chunkZ;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private final CompletableFuture<VoxelChunk> future = new CompletableFuture<>();
+
+        private volatile long stageStart = System.nanoTime();
+        private volatile VoxelChunk chunk;
+
+        private Request(RequestKey key, VoxelWorld world, int chunkX, int chunkZ) {
+            this.key = key;
+            this.world = world;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+        }
+
+        private boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+    }
+
+    /**
+     * Latency of one pipeline stage.
+     */
+    public static final class StageMetrics {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        /**
+         * Records a stage that started at the given time and returns the current time.
+         */
+        long record(long startNanos) {
+            long now = System.nanoTime();
+            long elapsed = now - startNanos;
+            count.increment();
+            totalNanos.add(elapsed);
+            maxNanos.accumulate(elapsed);
+            return now;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getAverageNanos() {
+            long samples = count.sum();
+            return samples == 0 ? 0 : totalNanos.sum() / samples;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+    }
+}
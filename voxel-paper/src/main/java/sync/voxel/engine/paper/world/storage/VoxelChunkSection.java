@@ -0,0 +1,442 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.world.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Custom block storage for one 16x16x16 chunk section.
+ * <p>
+ * Blocks are stored as material raw ids using palette compression. A section with a single
+ * value stores no block data at all, otherwise every block holds an index into a local palette
+ * with as many bits as the palette needs (up to 8). Sections with more than 256 different
+ * materials store raw ids directly with 16 bits, or 32 bits once a raw id does not fit.
+ * Block data lives in direct memory outside the java heap. Buffers of replaced storage are
+ * pooled by size and reused by other sections, so resizing palettes does not leave direct
+ * memory waiting for the garbage collector.
+ * <p>
+ * Reads are lock-free, writes are serialized on the section. A reader may still use a storage
+ * that was just replaced and whose buffer already belongs to another section, so every read
+ * checks afterwards that the storage it used is still the current one and reads again if not.
+ */
+public final class VoxelChunkSection {
+
+    public static final int VOLUME = 16 * 16 * 16;
+
+    /**
+     * Raw id returned for positions without a custom block.
+     */
+    public static final int NO_BLOCK = -1;
+
+    private static final int MAX_PALETTE_BITS = 8;
+    private static final int DIRECT_BITS = 16;
+    private static final int WIDE_DIRECT_BITS = 32;
+
+    // stored values are raw id + 1, so zero-filled memory means "no custom block"
+    private static final int EMPTY = 0;
+    private static final Storage EMPTY_STORAGE = new Storage(0, null, new int[]{EMPTY});
+
+    private volatile Storage storage = EMPTY_STORAGE;
+    private int paletteSize = 1;
+    private int nonEmpty;
+
+    private volatile long version;
+    private volatile long savedVersion;
+
+    // reverse palette lookup: value -> palette index, open addressing
+    private int[] lookupValues = new int[4];
+    private int[] lookupIndices = new int[4];
+
+    /**
+     * Returns the material raw id at the given position.
+     *
+     * @param x the x coordinate inside the section (0-15)
+     * @param y the y coordinate inside the section (0-15)
+     * @param z the z coordinate inside the section (0-15)
+     * @return the material raw id, or {@link #NO_BLOCK}
+     */
+    public int get(int x, int y, int z) {
+        int index = index(x, y, z);
+        while (true) {
+            Storage current = storage;
+            int value = valueAt(current, index);
+            if (isCurrent(current)) return value - 1;
+        }
+    }
+
+    /**
+     * Sets the material raw id at the given position.
+     *
+     * @param x     the x coordinate inside the section (0-15)
+     * @param y     the y coordinate inside the section (0-15)
+     * @param z     the z coordinate inside the section (0-15)
+     * @param rawId the material raw id, or {@link #NO_BLOCK} to remove the custom block
+     * @return true if the section changed
+     */
+    public synchronized boolean set(int x, int y, int z, int rawId) {
+        if (rawId < NO_BLOCK) throw new IllegalArgumentException("Invalid raw id: " + rawId);
+
+        int index = index(x, y, z);
+        int value = rawId + 1;
+        int oldValue = valueAt(storage, index);
+        if (oldValue == value) return false;
+
+        Storage current = storage;
+        if (current.palette == null) {
+            if ((value & ~current.mask) != 0) {
+                rebuild(WIDE_DIRECT_BITS, null);
+                current = storage;
+            }
+            current.write(index, value);
+        } else {
+            int paletteIndex = lookup(value);
+            if (paletteIndex < 0) {
+                paletteIndex = addToPalette(value);
+                current = storage;
+            }
+
+            if (current.palette == null) current.write(index, value);
+            else current.write(index, paletteIndex);
+        }
+
+        if (oldValue == EMPTY) nonEmpty++;
+        if (value == EMPTY && --nonEmpty == 0) reset();
+        version++;
+        return true;
+    }
+
+    /**
+     * Returns the content version, it changes every time a block of the section changes.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns true if the section changed since it was last saved.
+     */
+    public boolean isDirty() {
+        return version != savedVersion;
+    }
+
+    /**
+     * Marks the section as saved up to the given version.
+     * <p>
+     * The version has to be read before the section content is copied, so changes made
+     * while saving keep the section dirty.
+     *
+     * @param savedVersion the version that was saved
+     */
+    public void markSaved(long savedVersion) {
+        this.savedVersion = savedVersion;
+    }
+
+    /**
+     * Returns true if the section holds no custom blocks.
+     */
+    public boolean isEmpty() {
+        return storage == EMPTY_STORAGE;
+    }
+
+    /**
+     * Returns the number of positions holding a custom block.
+     */
+    public synchronized int getBlockCount() {
+        return nonEmpty;
+    }
+
+    /**
+     * Returns the bits used per block, 0 if the section holds a single value.
+     */
+    public int getBitsPerEntry() {
+        return storage.bits;
+    }
+
+    /**
+     * Returns the number of off-heap bytes used for block data.
+     */
+    public int getMemoryBytes() {
+        ByteBuffer data = storage.data;
+        return data == null ? 0 : data.capacity();
+    }
+
+    /**
+     * Copies the raw id of every position into the given array, indexed by {@code y << 8 | z << 4 | x}.
+     *
+     * @param target an array of at least {@link #VOLUME} entries
+     */
+    public void copyTo(int @NotNull [] target) {
+        while (true) {
+            Storage current = storage;
+            for (int index = 0; index < VOLUME; index++) target[index] = valueAt(current, index) - 1;
+            if (isCurrent(current)) return;
+        }
+    }
+
+    /**
+     * Returns true if the section may hold one of the given raw ids.
+     * <p>
+     * Only the palette is checked, sections without a palette always return true.
+     *
+     * @param rawIds the raw ids to look for
+     */
+    public boolean mayContainAny(@NotNull BitSet rawIds) {
+        int[] palette = storage.palette;
+        if (palette == null) return true;
+
+        for (int value : palette) {
+            if (value != EMPTY && rawIds.get(value - 1)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if values read from the storage are valid, the storage was not replaced since.
+     * <p>
+     * Buffers are only released after their storage is replaced, so a storage that is still
+     * current was read from a buffer no other section writes to.
+     */
+    private boolean isCurrent(@NotNull Storage read) {
+        // keeps the reads of the block data before the check, as StampedLock#validate does
+        VarHandle.acquireFence();
+        return storage == read;
+    }
+
+    private static int index(int x, int y, int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+    }
+
+    private static int valueAt(@NotNull Storage storage, int index) {
+        if (storage.bits == 0) return storage.palette[0];
+
+        int stored = storage.read(index);
+        return storage.palette == null ? stored : storage.palette[stored];
+    }
+
+    private int addToPalette(int value) {
+        Storage current = storage;
+        int capacity = current.palette.length;
+
+        if (paletteSize == capacity) {
+            compact();
+            current = storage;
+        }
+
+        if (paletteSize == current.palette.length) {
+            int bits = current.bits + 1;
+            if (bits > MAX_PALETTE_BITS) {
+                // the direct storage has to hold every value already in the palette too
+                int max = value;
+                for (int i = 0; i < paletteSize; i++) max = Math.max(max, current.palette[i]);
+                rebuild((max & ~0xFFFF) == 0 ? DIRECT_BITS : WIDE_DIRECT_BITS, null);
+                return -1;
+            }
+
+            rebuild(bits, Arrays.copyOf(current.palette, 1 << bits));
+            current = storage;
+        }
+
+        int paletteIndex = paletteSize++;
+        current.palette[paletteIndex] = value;
+        insertLookup(value, paletteIndex);
+        return paletteIndex;
+    }
+
+    /**
+     * Drops palette entries that are no longer used by any position.
+     */
+    private void compact() {
+        Storage current = storage;
+        if (current.bits == 0) return;
+
+        int[] usage = new int[paletteSize];
+        for (int index = 0; index < VOLUME; index++) usage[current.read(index)]++;
+        usage[0] = 1; // keep EMPTY at index 0
+
+        int used = 0;
+        for (int count : usage) if (count > 0) used++;
+        if (used == paletteSize) return;
+
+        int[] palette = new int[current.palette.length];
+        int size = 0;
+        for (int i = 0; i < paletteSize; i++) {
+            if (usage[i] > 0) palette[size++] = current.palette[i];
+        }
+
+        rebuild(current.bits, palette);
+    }
+
+    /**
+     * Rewrites all blocks into new storage with the given bits and palette, null for direct storage.
+     */
+    private void rebuild(int bits, int[] palette) {
+        Storage old = storage;
+        Storage rebuilt = new Storage(bits, BufferPool.acquire(bits), palette);
+
+        lookupValues = new int[4];
+        lookupIndices = new int[4];
+        paletteSize = 0;
+        if (palette != null) {
+            while (paletteSize < palette.length && (paletteSize == 0 || palette[paletteSize] != EMPTY)) {
+                insertLookup(palette[paletteSize], paletteSize);
+                paletteSize++;
+            }
+        }
+
+        for (int index = 0; index < VOLUME; index++) {
+            int value = valueAt(old, index);
+            rebuilt.write(index, palette == null ? value : lookup(value));
+        }
+
+        storage = rebuilt;
+        BufferPool.release(old);
+    }
+
+    private void reset() {
+        Storage old = storage;
+        storage = EMPTY_STORAGE;
+        BufferPool.release(old);
+        paletteSize = 1;
+        lookupValues = new int[4];
+        lookupIndices = new int[4];
+    }
+
+    private int lookup(int value) {
+        if (value == EMPTY) return 0;
+
+        int mask = lookupValues.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            if (lookupValues[i] == value) return lookupIndices[i];
+            if (lookupValues[i] == EMPTY) return -1;
+        }
+    }
+
+    private void insertLookup(int value, int paletteIndex) {
+        if (value == EMPTY) return;
+
+        if ((paletteSize + 1) * 2 > lookupValues.length) {
+            int[] oldValues = lookupValues;
+            int[] oldIndices = lookupIndices;
+            lookupValues = new int[oldValues.length << 1];
+            lookupIndices = new int[oldValues.length << 1];
+
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != EMPTY) putLookup(oldValues[i], oldIndices[i]);
+            }
+        }
+
+        putLookup(value, paletteIndex);
+    }
+
+    private void putLookup(int value, int paletteIndex) {
+        int mask = lookupValues.length - 1;
+        int i = mix(value) & mask;
+        while (lookupValues[i] != EMPTY) i = (i + 1) & mask;
+
+        lookupValues[i] = value;
+        lookupIndices[i] = paletteIndex;
+    }
+
+    private static int mix(int value) {
+        return value * 0x9E3779B9 >>> 16;
+    }
+
+    /**
+     * Direct buffers of replaced storage, pooled by bits per entry.
+     * <p>
+     * Reads do not lock, so a reader may still use a storage right after it was replaced and
+     * its buffer handed out again. Such reads are discarded by {@link #isCurrent}. Every entry of
+     * a reused buffer is written before the storage is published.
+     */
+    private static final class BufferPool {
+        private static final int MAX_POOLED = 1024;
+
+        private static final Queue<ByteBuffer>[] POOLS = pools();
+        private static final AtomicInteger[] SIZES = new AtomicInteger[WIDE_DIRECT_BITS + 1];
+
+        static {
+            for (int bits = 0; bits < SIZES.length; bits++) SIZES[bits] = new AtomicInteger();
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Queue<ByteBuffer>[] pools() {
+            Queue<ByteBuffer>[] pools = new Queue[WIDE_DIRECT_BITS + 1];
+            for (int bits = 0; bits < pools.length; bits++) pools[bits] = new ConcurrentLinkedQueue<>();
+            return pools;
+        }
+
+        private static ByteBuffer acquire(int bits) {
+            ByteBuffer pooled = POOLS[bits].poll();
+            if (pooled != null) {
+                SIZES[bits].decrementAndGet();
+                return pooled;
+            }
+            return ByteBuffer.allocateDirect(Storage.byteSize(bits)).order(ByteOrder.nativeOrder());
+        }
+
+        private static void release(@NotNull Storage storage) {
+            if (storage.data == null) return;
+
+            // a full pool leaves the buffer to the garbage collector
+            AtomicInteger size = SIZES[storage.bits];
+            if (size.incrementAndGet() > MAX_POOLED) {
+                size.decrementAndGet();
+                return;
+            }
+            POOLS[storage.bits].add(storage.data);
+        }
+    }
+
+    /**
+     * Block data with a fixed number of bits per entry. Entries never span two longs.
+     */
+    private static final class Storage {
+        private final int bits;
+        private final int valuesPerLong;
+        private final long mask;
+        private final ByteBuffer data;
+        private final int[] palette;
+
+        private Storage(int bits, ByteBuffer data, int[] palette) {
+            this.bits = bits;
+            this.valuesPerLong = bits == 0 ? 0 : 64 / bits;
+            this.mask = bits == 0 ? 0 : (1L << bits) - 1;
+            this.data = data;
+            this.palette = palette;
+        }
+
+        private static int byteSize(int bits) {
+            int valuesPerLong = 64 / bits;
+            return (VOLUME + valuesPerLong - 1) / valuesPerLong * Long.BYTES;
+        }
+
+        private int read(int index) {
+            int offset = index / valuesPerLong;
+            int shift = (index - offset * valuesPerLong) * bits;
+            return (int) (data.getLong(offset << 3) >>> shift & mask);
+        }
+
+        private void write(int index, int value) {
+            int offset = index / valuesPerLong;
+            int shift = (index - offset * valuesPerLong) * bits;
+            long word = data.getLong(offset << 3);
+            data.putLong(offset << 3, word & ~(mask << shift) | ((long) value & mask) << shift);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.world.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.paper.VoxelEngine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Custom block data of a 32x32 chunk region, stored as an append-only log of section records.
+ * <p>
+ * The file starts with a header of magic, format version and 8 reserved bytes. Every record
+ * holds one compressed section: payload length, CRC32 of the rest of the record, the chunk index
+ * inside the region, the section y, a reserved byte and the payload. An empty payload marks a
+ * removed section. The latest record of a section wins.
+ * <p>
+ * Opening the file scans all records. A corrupt record is skipped by searching for the next
+ * valid record after it, the latest valid record of that section wins then. Bytes after the
+ * last valid record are what a crash while appending leaves behind and are truncated. Before
+ * anything is skipped or truncated the file is copied aside. Reads go through a memory mapping
+ * of the file, which limits it to 2 GB. Once more than half of the file is outdated records, or
+ * an append would exceed that limit, it is compacted into a new file that replaces the old one
+ * atomically.
+ * <p>
+ * All methods are synchronized, one instance must own the file. A closed region file is
+ * opened again on the next access.
+ */
+public final class VoxelRegionFile implements Closeable {
+
+    public static final int MAGIC = 0x56585246; // VXRF
+    public static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 12;
+
+    private static final int MAX_PAYLOAD = 1 << 20;
+    private static final int MAX_CHUNK_INDEX = 32 * 32;
+    // offsets are read through an int indexed mapping
+    private static final long MAX_SIZE = Integer.MAX_VALUE;
+    private static final long COMPACT_MIN_SIZE = 256 * 1024;
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long size;
+    private long liveBytes;
+
+    // (chunk index << 8 | section y & 0xFF) -> record offset
+    private Map<Integer, Long> index = new HashMap<>();
+
+    public VoxelRegionFile(@NotNull Path path) throws IOException {
+        this.path = path;
+        Files.createDirectories(path.getParent());
+        open();
+    }
+
+    /**
+     * Returns the region coordinate of a chunk coordinate.
+     */
+    public static int regionCoordinate(int chunkCoordinate) {
+        return chunkCoordinate >> 5;
+    }
+
+    /**
+     * Returns the index of a chunk inside its region.
+     */
+    public static int chunkIndex(int chunkX, int chunkZ) {
+        return (chunkZ & 31) << 5 | (chunkX & 31);
+    }
+
+    /**
+     * Reads the latest payload of a section.
+     *
+     * @return the payload, empty if the section was removed, or null if it was never written
+     */
+    public synchronized byte @Nullable [] read(int chunkIndex, int sectionY) throws IOException {
+        ensureOpen();
+        Long offset = index.get(key(chunkIndex, sectionY));
+        if (offset == null) return null;
+
+        ByteBuffer buffer = map();
+        int length = buffer.getInt((int) (long) offset);
+        byte[] payload = new byte[length];
+        buffer.get((int) (offset + RECORD_HEADER_SIZE), payload);
+        return payload;
+    }
+
+    /**
+     * Returns true if the region holds any record of the given chunk.
+     */
+    public synchronized boolean contains(int chunkIndex) {
+        for (Integer key : index.keySet()) {
+            if (key >>> 8 == chunkIndex) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Appends a section record.
+     *
+     * @param payload the compressed section, empty to mark the section as removed
+     */
+    public synchronized void write(int chunkIndex, int sectionY, byte @NotNull [] payload) throws IOException {
+        ensureOpen();
+        if (payload.length > MAX_PAYLOAD) throw new IllegalArgumentException("Section payload too large: " + payload.length);
+
+        if (size + RECORD_HEADER_SIZE + payload.length > MAX_SIZE) {
+            compact();
+            if (size + RECORD_HEADER_SIZE + payload.length > MAX_SIZE) throw new IOException("Region file " + path + " is full");
+        }
+
+        int key = key(chunkIndex, sectionY);
+        Long previous = index.get(key);
+        if (previous == null && payload.length == 0) return;
+
+        ByteBuffer record = record(chunkIndex, sectionY, payload);
+        long offset = size;
+        while (record.hasRemaining()) channel.write(record, offset + record.position());
+        size += RECORD_HEADER_SIZE + payload.length;
+
+        if (previous != null) liveBytes -= recordSize(previous);
+        if (payload.length > 0) {
+            index.put(key, offset);
+            liveBytes += RECORD_HEADER_SIZE + payload.length;
+        } else {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Forces written records to disk and compacts the file if enough of it is outdated.
+     */
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        channel.force(false);
+        if (size > COMPACT_MIN_SIZE && liveBytes < (size - HEADER_SIZE) / 2) compact();
+    }
+
+    /**
+     * Rewrites the file with only the latest record of every section.
+     */
+    public synchronized void compact() throws IOException {
+        ensureOpen();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteBuffer source = map();
+
+        // the index keeps pointing into the old file until it is replaced
+        Map<Integer, Long> offsets = new HashMap<>();
+        long position = HEADER_SIZE;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.write(header());
+
+            for (Map.Entry<Integer, Long> entry : index.entrySet()) {
+                int offset = (int) (long) entry.getValue();
+                int length = RECORD_HEADER_SIZE + source.getInt(offset);
+                out.write(source.slice(offset, length));
+                offsets.put(entry.getKey(), position);
+                position += length;
+            }
+
+            out.force(true);
+        }
+
+        long before = size;
+        channel.close();
+        channel = null;
+        mapped = null;
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // the new file holds exactly the live records, it does not need to be scanned again
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = offsets;
+        size = position;
+        liveBytes = position - HEADER_SIZE;
+        VoxelEngine.LOGGER.debug("Compacted {} from {} to {} bytes", path.getFileName(), before, size);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) return;
+
+        flush();
+        channel.close();
+        channel = null;
+        mapped = null;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel == null) open();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapped = null;
+        index.clear();
+        liveBytes = 0;
+
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE) {
+            if (fileSize > 0) VoxelEngine.LOGGER.warn("Region file {} has an incomplete header, resetting it.", path);
+            channel.truncate(0);
+            channel.write(header(), 0);
+            channel.force(true);
+            size = HEADER_SIZE;
+            return;
+        }
+
+        if (fileSize > MAX_SIZE) throw new IOException("Region file " + path + " is too large");
+        size = fileSize;
+
+        ByteBuffer buffer = map();
+        if (buffer.getInt(0) != MAGIC) throw new IOException("Not a voxel region file: " + path);
+        int version = buffer.getInt(4);
+        if (version != VERSION) throw new IOException("Unsupported region file version " + version + ": " + path);
+
+        Scan scan = scan(buffer);
+        if (scan.skipped > 0 || scan.end < fileSize) {
+            Path backup = path.resolveSibling(path.getFileName() + ".corrupt-" + System.currentTimeMillis());
+            Files.copy(path, backup, StandardCopyOption.REPLACE_EXISTING);
+            VoxelEngine.LOGGER.warn("Region file {} has {} bytes of corrupt records and {} bytes of incomplete records, a copy was saved to {}.",
+                    path, scan.skipped, fileSize - scan.end, backup.getFileName());
+        }
+
+        if (scan.end < fileSize) {
+            channel.truncate(scan.end);
+            channel.force(true);
+            size = scan.end;
+            mapped = null;
+        }
+
+        // drops the corrupt bytes, so the next open does not report them again
+        if (scan.skipped > 0) compact();
+    }
+
+    /**
+     * @param end     the end of the last valid record
+     * @param skipped the number of corrupt bytes between valid records
+     */
+    private record Scan(long end, long skipped) {
+    }
+
+    /**
+     * Indexes all valid records, skipping corrupt ones.
+     */
+    private @NotNull Scan scan(@NotNull ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        int offset = HEADER_SIZE;
+        int limit = buffer.limit();
+        long skipped = 0;
+
+        while (offset + RECORD_HEADER_SIZE <= limit) {
+            int length = validLength(buffer, offset, crc);
+            if (length < 0) {
+                int next = offset + 1;
+                while (next + RECORD_HEADER_SIZE <= limit && validLength(buffer, next, crc) < 0) next++;
+
+                // nothing valid follows, an incomplete tail
+                if (next + RECORD_HEADER_SIZE > limit) break;
+
+                skipped += next - offset;
+                offset = next;
+                continue;
+            }
+
+            int chunkIndex = buffer.getShort(offset + 8) & 0xFFFF;
+            int sectionY = buffer.get(offset + 10);
+            int key = key(chunkIndex, sectionY);
+
+            Long previous = index.remove(key);
+            if (previous != null) liveBytes -= recordSize(buffer, previous);
+            if (length > 0) {
+                index.put(key, (long) offset);
+                liveBytes += RECORD_HEADER_SIZE + length;
+            }
+
+            offset += RECORD_HEADER_SIZE + length;
+        }
+
+        return new Scan(offset, skipped);
+    }
+
+    /**
+     * Returns the payload length of the record at the offset, or -1 if there is no valid record.
+     */
+    private static int validLength(@NotNull ByteBuffer buffer, int offset, @NotNull CRC32 crc) {
+        int length = buffer.getInt(offset);
+        if (length < 0 || length > MAX_PAYLOAD || (long) offset + RECORD_HEADER_SIZE + length > buffer.limit()) return -1;
+        if ((buffer.getShort(offset + 8) & 0xFFFF) >= MAX_CHUNK_INDEX || buffer.get(offset + 11) != 0) return -1;
+
+        crc.reset();
+        crc.update(buffer.slice(offset + 8, 4 + length));
+        return (int) crc.getValue() == buffer.getInt(offset + 4) ? length : -1;
+    }
+
+    private @NotNull ByteBuffer map() throws IOException {
+        if (mapped == null || mapped.capacity() < size) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        return mapped;
+    }
+
+    private int recordSize(long offset) throws IOException {
+        return recordSize(map(), offset);
+    }
+
+    private static int recordSize(@NotNull ByteBuffer buffer, long offset) {
+        return RECORD_HEADER_SIZE + buffer.getInt((int) offset);
+    }
+
+    private static int key(int chunkIndex, int sectionY) {
+        return chunkIndex << 8 | sectionY & 0xFF;
+    }
+
+    private static @NotNull ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(0L);
+        return header.flip();
+    }
+
+    private static @NotNull ByteBuffer record(int chunkIndex, int sectionY, byte @NotNull [] payload) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt(0)
+                .putShort((short) chunkIndex).put((byte) sectionY).put((byte) 0)
+                .put(payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, 4 + payload.length);
+        record.putInt(4, (int) crc.getValue());
+        return record.flip();
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.world.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.paper.VoxelEngine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Region file storage of the custom blocks of one world, located in {@code plugins/voxel/worlds/<uuid>/}.
+ * <p>
+ * Loading and saving run on a small shared I/O pool, only dirty sections are written. I/O of
+ * one world is serialized, so every region file has a single owner.
+ */
+public final class VoxelRegionStorage {
+
+    private static final Path WORLDS_FOLDER = Paths.get("plugins/voxel/worlds");
+    private static final int MAX_OPEN_REGIONS = 64;
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+    private static final ThreadPoolExecutor IO = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "VoxelEngine-IO-" + THREAD_ID.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path folder;
+    private final Map<Long, VoxelRegionFile> regions = new LinkedHashMap<>(16, 0.75F, true);
+
+    public VoxelRegionStorage(@NotNull UUID world) {
+        this.folder = WORLDS_FOLDER.resolve(world.toString());
+    }
+
+    public @NotNull Path getFolder() {
+        return folder;
+    }
+
+    /**
+     * Returns the shared I/O pool all region files are read and written on.
+     */
+    static @NotNull ThreadPoolExecutor ioExecutor() {
+        return IO;
+    }
+
+    /**
+     * Writes the dirty sections of the given chunks on the I/O pool.
+     *
+     * @return a future completing with the number of written sections
+     */
+    public @NotNull CompletableFuture<Integer> saveAsync(@NotNull Collection<VoxelChunk> chunks) {
+        List<VoxelChunk> copy = List.copyOf(chunks);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return save(copy);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, IO);
+    }
+
+    /**
+     * Reads and decodes a chunk, blocking the calling thread.
+     *
+     * @return the chunk, or null if nothing is stored for it
+     */
+    public @Nullable VoxelChunk load(int chunkX, int chunkZ, int minSection, int sectionCount) throws IOException {
+        byte[][] payloads = read(chunkX, chunkZ, minSection, sectionCount);
+        return payloads == null ? null : decode(chunkX, chunkZ, minSection, payloads);
+    }
+
+    /**
+     * Reads the compressed sections of a chunk, blocking the calling thread.
+     *
+     * @return the payloads indexed by section y minus the min section, or null if nothing is stored for the chunk
+     */
+    public synchronized byte @Nullable [][] read(int chunkX, int chunkZ, int minSection, int sectionCount) throws IOException {
+        VoxelRegionFile region = region(chunkX, chunkZ, false);
+        int chunkIndex = VoxelRegionFile.chunkIndex(chunkX, chunkZ);
+        if (region == null || !region.contains(chunkIndex)) return null;
+
+        byte[][] payloads = new byte[sectionCount][];
+        boolean found = false;
+        for (int i = 0; i < sectionCount; i++) {
+            payloads[i] = region.read(chunkIndex, minSection + i);
+            found |= payloads[i] != null;
+        }
+
+        return found ? payloads : null;
+    }
+
+    /**
+     * Decodes the payloads read by {@link #read(int, int, int, int)}, corrupt sections are skipped.
+     *
+     * @return the chunk, or null if no section holds a known material
+     */
+    public @Nullable VoxelChunk decode(int chunkX, int chunkZ, int minSection, byte @NotNull [][] payloads) {
+        VoxelChunk chunk = new VoxelChunk(chunkX, chunkZ, minSection, payloads.length);
+        boolean found = false;
+
+        for (int i = 0; i < payloads.length; i++) {
+            if (payloads[i] == null) continue;
+
+            VoxelChunkSection section;
+            try {
+                section = VoxelSectionCodec.decode(payloads[i]);
+            } catch (IOException e) {
+                VoxelEngine.LOGGER.error("Skipping corrupt section {} of chunk {}, {} in {}", minSection + i, chunkX, chunkZ, folder, e);
+                continue;
+            }
+
+            if (section == null) continue;
+            chunk.setSection(minSection + i, section);
+            found = true;
+        }
+
+        return found ? chunk : null;
+    }
+
+    /**
+     * Writes the dirty sections of the given chunks, blocking the calling thread. Provisional
+     * chunks are merged with their stored blocks first.
+     *
+     * @return the number of written sections
+     */
+    public synchronized int save(@NotNull Collection<VoxelChunk> chunks) throws IOException {
+        Set<VoxelRegionFile> touched = new HashSet<>();
+        int written = 0;
+
+        for (VoxelChunk chunk : chunks) {
+            // a provisional chunk would overwrite the stored blocks it does not know yet
+            if (chunk.isProvisional()) chunk.merge(load(chunk.getX(), chunk.getZ(), chunk.getMinSection(), chunk.getSectionCount()));
+
+            int chunkIndex = VoxelRegionFile.chunkIndex(chunk.getX(), chunk.getZ());
+            VoxelRegionFile region = null;
+
+            for (int sectionY = chunk.getMinSection(); sectionY < chunk.getMinSection() + chunk.getSectionCount(); sectionY++) {
+                VoxelChunkSection section = chunk.getSection(sectionY);
+                if (section == null || !section.isDirty()) continue;
+
+                if (region == null) region = region(chunk.getX(), chunk.getZ(), true);
+
+                long version = section.getVersion();
+                region.write(chunkIndex, sectionY, VoxelSectionCodec.encode(section));
+                section.markSaved(version);
+                written++;
+            }
+
+            if (region != null) touched.add(region);
+            chunk.trim();
+        }
+
+        for (VoxelRegionFile region : touched) {
+            region.flush();
+            if (!regions.containsValue(region)) closeQuietly(region);
+        }
+        return written;
+    }
+
+    /**
+     * Closes all open region files.
+     */
+    public synchronized void close() {
+        for (VoxelRegionFile region : regions.values()) closeQuietly(region);
+        regions.clear();
+    }
+
+    private @Nullable VoxelRegionFile region(int chunkX, int chunkZ, boolean create) throws IOException {
+        int regionX = VoxelRegionFile.regionCoordinate(chunkX);
+        int regionZ = VoxelRegionFile.regionCoordinate(chunkZ);
+        long key = VoxelChunk.key(regionX, regionZ);
+
+        VoxelRegionFile region = regions.get(key);
+        if (region != null) return region;
+
+        Path path = folder.resolve("r." + regionX + "." + regionZ + ".vxr");
+        if (!create && !Files.isRegularFile(path)) return null;
+
+        region = new VoxelRegionFile(path);
+        regions.put(key, region);
+
+        if (regions.size() > MAX_OPEN_REGIONS) {
+            Iterator<VoxelRegionFile> eldest = regions.values().iterator();
+            VoxelRegionFile evicted = eldest.next();
+            eldest.remove();
+            closeQuietly(evicted);
+        }
+
+        return region;
+    }
+
+    private void closeQuietly(@NotNull VoxelRegionFile region) {
+        try {
+            region.close();
+        } catch (IOException e) {
+            VoxelEngine.LOGGER.error("Failed to close region file in {}", folder, e);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.world.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sync.voxel.engine.api.material.VoxMaterial;
+import sync.voxel.engine.api.registry.VoxIndexedRegistry;
+import sync.voxel.engine.api.registry.VoxRegistries;
+import sync.voxel.engine.api.util.identifier.VoxIdentifier;
+import sync.voxel.engine.paper.VoxelEngine;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes a {@link VoxelChunkSection} into a compressed payload and back.
+ * <p>
+ * The palette is written as material identifiers, raw ids are only valid for one server run.
+ * Payload layout before compression: palette size, the identifiers, then one palette index per
+ * block as byte, or as short for palettes with more than 255 materials.
+ */
+final class VoxelSectionCodec {
+
+    private static final ThreadLocal<int[]> RAW_IDS = ThreadLocal.withInitial(() -> new int[VoxelChunkSection.VOLUME]);
+
+    private VoxelSectionCodec() {
+    }
+
+    /**
+     * Encodes a section, returns an empty payload for an empty section.
+     */
+    static byte @NotNull [] encode(@NotNull VoxelChunkSection section) {
+        int[] rawIds = RAW_IDS.get();
+        section.copyTo(rawIds);
+
+        // palette index 0 is "no custom block", material entries start at 1
+        int[] paletteIndexByRawId = new int[16];
+        VoxIdentifier[] palette = new VoxIdentifier[8];
+        int paletteSize = 0;
+
+        for (int i = 0; i < rawIds.length; i++) {
+            int rawId = rawIds[i];
+            if (rawId == VoxelChunkSection.NO_BLOCK) continue;
+
+            if (rawId >= paletteIndexByRawId.length) {
+                paletteIndexByRawId = Arrays.copyOf(paletteIndexByRawId, Math.max(rawId + 1, paletteIndexByRawId.length * 2));
+            }
+
+            if (paletteIndexByRawId[rawId] == 0) {
+                VoxMaterial material = VoxRegistries.MATERIAL.valueOf(rawId);
+                if (material == null) {
+                    rawIds[i] = VoxelChunkSection.NO_BLOCK;
+                    continue;
+                }
+
+                if (paletteSize == palette.length) palette = Arrays.copyOf(palette, paletteSize * 2);
+                palette[paletteSize++] = material.identifier();
+                paletteIndexByRawId[rawId] = paletteSize;
+            }
+        }
+
+        if (paletteSize == 0) return new byte[0];
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater, 4096))) {
+            out.writeShort(paletteSize);
+            for (int i = 0; i < paletteSize; i++) out.writeUTF(palette[i].toString());
+
+            boolean wide = paletteSize > 0xFF;
+            for (int rawId : rawIds) {
+                int index = rawId == VoxelChunkSection.NO_BLOCK ? 0 : paletteIndexByRawId[rawId];
+                if (wide) out.writeShort(index);
+                else out.writeByte(index);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a payload into a new section, marked as saved.
+     *
+     * @return the section, or null if the payload holds no known material
+     */
+    static @Nullable VoxelChunkSection decode(byte @NotNull [] payload) throws IOException {
+        if (payload.length == 0) return null;
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload);
+            byte[] data = new byte[2 + VoxelChunkSection.VOLUME * 2 + 4096];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == data.length) data = Arrays.copyOf(data, data.length * 2);
+                int read = inflater.inflate(data, length, data.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) throw new EOFException("Truncated section payload");
+                length += read;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, length));
+            int paletteSize = in.readUnsignedShort();
+            int[] rawIdByIndex = new int[paletteSize + 1];
+            rawIdByIndex[0] = VoxelChunkSection.NO_BLOCK;
+
+            for (int i = 1; i <= paletteSize; i++) {
+                String identifier = in.readUTF();
+                VoxMaterial material = VoxRegistries.MATERIAL.valueOf(VoxIdentifier.parse(identifier));
+                int rawId = material == null ? VoxIndexedRegistry.UNKNOWN_RAW_ID : VoxRegistries.MATERIAL.rawIdOf(material);
+
+                if (rawId == VoxIndexedRegistry.UNKNOWN_RAW_ID) {
+                    VoxelEngine.LOGGER.warn("Unknown material {} in saved custom blocks, it will be removed.", identifier);
+                    rawId = VoxelChunkSection.NO_BLOCK;
+                }
+                rawIdByIndex[i] = rawId;
+            }
+
+            boolean wide = paletteSize > 0xFF;
+            VoxelChunkSection section = new VoxelChunkSection();
+            for (int index = 0; index < VoxelChunkSection.VOLUME; index++) {
+                int paletteIndex = wide ? in.readUnsignedShort() : in.readUnsignedByte();
+                if (paletteIndex > paletteSize) throw new IOException("Palette index " + paletteIndex + " out of bounds");
+
+                int rawId = rawIdByIndex[paletteIndex];
+                if (rawId != VoxelChunkSection.NO_BLOCK) section.set(index & 15, index >> 8, (index >> 4) & 15, rawId);
+            }
+
+            if (section.isEmpty()) return null;
+            section.markSaved(section.getVersion());
+            return section;
+        } catch (DataFormatException | IllegalArgumentException e) {
+            throw new IOException("Corrupt section payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
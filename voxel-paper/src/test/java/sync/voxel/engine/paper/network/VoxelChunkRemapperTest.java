@@ -0,0 +1,304 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.network;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import sync.voxel.engine.paper.world.storage.VoxelChunk;
+import sync.voxel.engine.paper.world.storage.VoxelChunkSection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The packets are built after the 1.21.4 protocol description of the chunk data packet, there
+ * is no captured packet to compare with.
+ */
+class VoxelChunkRemapperTest {
+
+    private static final int VOLUME = VoxelChunkSection.VOLUME;
+    private static final int CHUNK_X = 3;
+    private static final int CHUNK_Z = -7;
+    private static final int MIN_SECTION = -4;
+    private static final int SECTIONS = 3;
+
+    private static final int STONE = 1;
+    private static final int DIRT = 10;
+    private static final int CARRIER_DEFAULT = 600;
+    private static final int CARRIER_FIRST = 580;
+    private static final int CUSTOM_STATE = 581;
+
+    // server states 580 to 619 belong to the carrier, the ones handed out show as its default
+    private static final VoxelClientStates.Tables TABLES = tables();
+
+    private static @NotNull VoxelClientStates.Tables tables() {
+        int[] serverToClient = new int[620];
+        for (int state = 0; state < serverToClient.length; state++) serverToClient[state] = state;
+        for (int state = CARRIER_FIRST; state < CARRIER_FIRST + 5; state++) serverToClient[state] = CARRIER_DEFAULT;
+
+        boolean[] air = new boolean[1];
+        air[0] = true;
+        return new VoxelClientStates.Tables(serverToClient, new int[]{CUSTOM_STATE}, air);
+    }
+
+    /**
+     * Builds a chunk data packet body. Sections with a single state use the single value
+     * palette, up to 256 states an indirect palette and more states the 15 bit direct palette.
+     */
+    private static byte @NotNull [] packet(int @NotNull [] @NotNull [] sections) {
+        try {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(data);
+            for (int[] states : sections) writeSection(out, states);
+
+            ByteArrayOutputStream packet = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(packet);
+            body.writeInt(CHUNK_X);
+            body.writeInt(CHUNK_Z);
+
+            // heightmaps as unnamed network compound with one long array
+            body.writeByte(10);
+            body.writeByte(12);
+            body.writeUTF("MOTION_BLOCKING");
+            body.writeInt(37);
+            for (int i = 0; i < 37; i++) body.writeLong(0x0102030405060708L * i);
+            body.writeByte(0);
+
+            writeVarInt(body, data.size());
+            body.write(data.toByteArray());
+
+            // no block entities, then light masks and arrays
+            writeVarInt(body, 0);
+            for (int mask = 0; mask < 4; mask++) {
+                writeVarInt(body, 1);
+                body.writeLong(0x5A5A5A5AL + mask);
+            }
+            writeVarInt(body, 0);
+            writeVarInt(body, 0);
+            return packet.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeSection(@NotNull DataOutputStream out, int @NotNull [] states) throws IOException {
+        int[] palette = Arrays.stream(states).distinct().toArray();
+        out.writeShort((int) Arrays.stream(states).filter(state -> state != 0).count());
+
+        if (palette.length == 1) {
+            out.writeByte(0);
+            writeVarInt(out, palette[0]);
+            writeVarInt(out, 0);
+        } else if (palette.length <= 256) {
+            int bits = Math.max(4, 32 - Integer.numberOfLeadingZeros(palette.length - 1));
+            out.writeByte(bits);
+            writeVarInt(out, palette.length);
+            for (int state : palette) writeVarInt(out, state);
+
+            List<Integer> order = Arrays.stream(palette).boxed().toList();
+            int[] indices = new int[VOLUME];
+            for (int i = 0; i < VOLUME; i++) indices[i] = order.indexOf(states[i]);
+            writeLongs(out, bits, indices);
+        } else {
+            out.writeByte(15);
+            writeLongs(out, 15, states);
+        }
+
+        // plains in a single value biome container
+        out.writeByte(0);
+        writeVarInt(out, 40);
+        writeVarInt(out, 0);
+    }
+
+    private static void writeLongs(@NotNull DataOutputStream out, int bits, int @NotNull [] values) throws IOException {
+        int perLong = 64 / bits;
+        int longs = (VOLUME + perLong - 1) / perLong;
+        writeVarInt(out, longs);
+
+        int index = 0;
+        for (int l = 0; l < longs; l++) {
+            long word = 0;
+            for (int j = 0; j < perLong && index < VOLUME; j++) word |= (long) values[index++] << j * bits;
+            out.writeLong(word);
+        }
+    }
+
+    private static void writeVarInt(@NotNull DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * A decoded chunk data packet.
+     */
+    private record Decoded(int chunkX, int chunkZ, int[][] states, int[] blockCounts, byte[] prefix, byte[] trailer) {
+    }
+
+    private static @NotNull Decoded decode(byte @NotNull [] packet) {
+        VoxelChunkRemapper.Reader in = new VoxelChunkRemapper.Reader().reset(packet, 0, packet.length);
+        int chunkX = in.readInt();
+        int chunkZ = in.readInt();
+        VoxelChunkRemapper.skipNetworkNbt(in);
+
+        int prefixEnd = in.skip(0);
+        int dataLength = in.readVarInt();
+        int dataEnd = in.skip(0) + dataLength;
+
+        int[][] states = new int[SECTIONS][];
+        int[] blockCounts = new int[SECTIONS];
+        for (int section = 0; section < SECTIONS; section++) {
+            blockCounts[section] = in.readShort();
+            states[section] = readContainer(in, packet);
+
+            int biomeBits = in.readUnsignedByte();
+            assertEquals(0, biomeBits);
+            assertEquals(40, in.readVarInt());
+            assertEquals(0, in.readVarInt());
+        }
+        assertEquals(dataEnd, in.skip(0));
+
+        return new Decoded(chunkX, chunkZ, states, blockCounts,
+                Arrays.copyOfRange(packet, 0, prefixEnd), Arrays.copyOfRange(packet, dataEnd, packet.length));
+    }
+
+    private static int @NotNull [] readContainer(@NotNull VoxelChunkRemapper.Reader in, byte @NotNull [] packet) {
+        int bits = in.readUnsignedByte();
+        int[] states = new int[VOLUME];
+
+        if (bits == 0) {
+            Arrays.fill(states, in.readVarInt());
+            assertEquals(0, in.readVarInt());
+            return states;
+        }
+
+        int[] palette = null;
+        if (bits <= 8) {
+            assertTrue(bits >= 4, "indirect palettes use at least 4 bits");
+            palette = new int[in.readVarInt()];
+            for (int i = 0; i < palette.length; i++) palette[i] = in.readVarInt();
+        } else {
+            assertEquals(15, bits);
+        }
+
+        int perLong = 64 / bits;
+        int longs = in.readVarInt();
+        assertEquals((VOLUME + perLong - 1) / perLong, longs);
+
+        int index = 0;
+        for (int l = 0; l < longs; l++) {
+            long word = VoxelChunkRemapper.Reader.getLong(packet, in.skip(8));
+            for (int j = 0; j < perLong && index < VOLUME; j++) {
+                int value = (int) (word >>> j * bits & (1L << bits) - 1);
+                states[index++] = palette == null ? value : palette[value];
+            }
+        }
+        return states;
+    }
+
+    private static @NotNull Decoded remapAndDecode(byte @NotNull [] packet, VoxelChunk chunk) {
+        byte[] remapped = VoxelChunkRemapper.remapChunkPacket(packet, packet.length, TABLES, (x, z) -> {
+            assertEquals(CHUNK_X, x);
+            assertEquals(CHUNK_Z, z);
+            return chunk;
+        });
+        assertNotNull(remapped);
+        return decode(remapped);
+    }
+
+    private static int @NotNull [] filled(int state) {
+        int[] states = new int[VOLUME];
+        Arrays.fill(states, state);
+        return states;
+    }
+
+    private static int @NotNull [] layered(int @NotNull ... layers) {
+        int[] states = new int[VOLUME];
+        for (int i = 0; i < VOLUME; i++) states[i] = layers[(i >> 8) % layers.length];
+        return states;
+    }
+
+    @Test
+    void packetWithoutCarrierStatesIsLeftAlone() {
+        byte[] packet = packet(new int[][]{filled(STONE), layered(STONE, DIRT, 0), filled(0)});
+        assertNull(VoxelChunkRemapper.remapChunkPacket(packet, packet.length, TABLES, (x, z) -> null));
+    }
+
+    @Test
+    void handedOutCarrierStatesAreTranslatedInThePalette() {
+        int[][] sections = {filled(STONE), layered(STONE, CARRIER_FIRST + 1, 0, CARRIER_FIRST + 4), filled(CARRIER_FIRST + 2)};
+        byte[] packet = packet(sections);
+        Decoded original = decode(packet);
+
+        Decoded remapped = remapAndDecode(packet, null);
+
+        assertEquals(CHUNK_X, remapped.chunkX());
+        assertEquals(CHUNK_Z, remapped.chunkZ());
+        assertArrayEquals(original.prefix(), remapped.prefix());
+        assertArrayEquals(original.trailer(), remapped.trailer());
+        assertArrayEquals(filled(STONE), remapped.states()[0]);
+        assertArrayEquals(layered(STONE, CARRIER_DEFAULT, 0, CARRIER_DEFAULT), remapped.states()[1]);
+        assertArrayEquals(filled(CARRIER_DEFAULT), remapped.states()[2]);
+        assertArrayEquals(original.blockCounts(), remapped.blockCounts());
+
+        // only the palette changed, the packed data keeps its size
+        assertEquals(packet.length, VoxelChunkRemapper.remapChunkPacket(packet, packet.length, TABLES, (x, z) -> null).length);
+    }
+
+    @Test
+    void customBlocksAreWrittenIntoTheirSections() {
+        VoxelChunk chunk = new VoxelChunk(CHUNK_X, CHUNK_Z, MIN_SECTION, SECTIONS);
+        int sectionY = (MIN_SECTION + 1) * 16;
+        chunk.set(CHUNK_X * 16 + 2, sectionY + 5, CHUNK_Z * 16 + 9, 0);
+        chunk.set(CHUNK_X * 16 + 15, sectionY + 15, CHUNK_Z * 16 + 15, 0);
+
+        int[][] sections = {filled(STONE), filled(0), layered(STONE, DIRT)};
+        Decoded remapped = remapAndDecode(packet(sections), chunk);
+
+        int[] expected = filled(0);
+        expected[5 << 8 | 9 << 4 | 2] = CUSTOM_STATE;
+        expected[15 << 8 | 15 << 4 | 15] = CUSTOM_STATE;
+        assertArrayEquals(expected, remapped.states()[1]);
+        assertEquals(2, remapped.blockCounts()[1]);
+
+        assertArrayEquals(filled(STONE), remapped.states()[0]);
+        assertArrayEquals(layered(STONE, DIRT), remapped.states()[2]);
+    }
+
+    @Test
+    void directSectionsAreTranslatedPerBlock() {
+        Random random = new Random(3);
+        int[] states = new int[VOLUME];
+        for (int i = 0; i < VOLUME; i++) states[i] = i < 300 ? 1000 + i : random.nextInt(620);
+
+        Decoded remapped = remapAndDecode(packet(new int[][]{filled(STONE), states, filled(0)}), null);
+
+        int[] expected = new int[VOLUME];
+        for (int i = 0; i < VOLUME; i++) expected[i] = TABLES.translate(states[i]);
+        assertArrayEquals(expected, remapped.states()[1]);
+    }
+
+    @Test
+    void truncatedPacketIsRejected() {
+        byte[] packet = packet(new int[][]{filled(STONE), layered(STONE, CARRIER_FIRST + 1), filled(0)});
+        byte[] truncated = Arrays.copyOf(packet, packet.length / 2);
+
+        assertThrows(IllegalStateException.class, () -> VoxelChunkRemapper.remapChunkPacket(truncated, truncated.length, TABLES, (x, z) -> null));
+    }
+}
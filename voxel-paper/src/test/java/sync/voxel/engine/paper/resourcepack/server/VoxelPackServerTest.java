@@ -0,0 +1,222 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.resourcepack.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoxelPackServerTest {
+
+    private static final long SIZE = 1000;
+    private static final long[] IGNORED = new long[0];
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void singleRangesAreResolvedAgainstThePackSize() {
+        assertArrayEquals(new long[]{0, 99}, VoxelPackServer.parseRange("bytes=0-99", SIZE));
+        assertArrayEquals(new long[]{500, 999}, VoxelPackServer.parseRange("bytes=500-", SIZE));
+        assertArrayEquals(new long[]{999, 999}, VoxelPackServer.parseRange("bytes=999-999", SIZE));
+        assertArrayEquals(new long[]{20, 30}, VoxelPackServer.parseRange("bytes= 20 - 30 ", SIZE));
+
+        // an end past the pack is cut to the last byte
+        assertArrayEquals(new long[]{900, 999}, VoxelPackServer.parseRange("bytes=900-5000", SIZE));
+    }
+
+    @Test
+    void suffixRangesSelectTheLastBytes() {
+        assertArrayEquals(new long[]{900, 999}, VoxelPackServer.parseRange("bytes=-100", SIZE));
+        assertArrayEquals(new long[]{0, 999}, VoxelPackServer.parseRange("bytes=-2000", SIZE));
+    }
+
+    @Test
+    void unsatisfiableRangesAreRejected() {
+        assertNull(VoxelPackServer.parseRange("bytes=1000-", SIZE));
+        assertNull(VoxelPackServer.parseRange("bytes=1000-1200", SIZE));
+        assertNull(VoxelPackServer.parseRange("bytes=-0", SIZE));
+        assertNull(VoxelPackServer.parseRange("bytes=0-", 0));
+        assertNull(VoxelPackServer.parseRange("bytes=-10", 0));
+    }
+
+    @Test
+    void invalidAndMultipleRangesAreIgnored() {
+        assertArrayEquals(IGNORED, VoxelPackServer.parseRange("bytes=0-1,5-6", SIZE));
+        assertArrayEquals(IGNORED, VoxelPackServer.parseRange("items=0-5", SIZE));
+        assertArrayEquals(IGNORED, VoxelPackServer.parseRange("bytes=5", SIZE));
+        assertArrayEquals(IGNORED, VoxelPackServer.parseRange("bytes=-", SIZE));
+        assertArrayEquals(IGNORED, VoxelPackServer.parseRange("bytes=abc-", SIZE));
+        assertArrayEquals(IGNORED, VoxelPackServer.parseRange("bytes=5-3", SIZE));
+        assertArrayEquals(IGNORED, VoxelPackServer.parseRange("bytes=3--5", SIZE));
+        assertArrayEquals(IGNORED, VoxelPackServer.parseRange("bytes=--5", SIZE));
+        assertArrayEquals(IGNORED, VoxelPackServer.parseRange("bytes=0-99999999999999999999", SIZE));
+    }
+
+    @Test
+    void servesThePackWithItsHash() throws Exception {
+        byte[] content = new byte[100_000];
+        new Random(5).nextBytes(content);
+        Path file = Files.write(folder.resolve("pack.zip"), content);
+        byte[] sha1 = MessageDigest.getInstance("SHA-1").digest(content);
+        String etag = "\"" + HexFormat.of().formatHex(sha1) + "\"";
+
+        try (VoxelPackServer server = start(VoxelPackServer.DEFAULT_MAX_DOWNLOADS)) {
+            server.setPack(file, sha1);
+
+            Response full = get(server, "");
+            assertEquals(200, full.status);
+            assertEquals(etag, full.headers.get("etag"));
+            assertEquals("100000", full.headers.get("content-length"));
+            assertArrayEquals(content, full.body);
+
+            Response cached = get(server, "If-None-Match: " + etag + "\r\n");
+            assertEquals(304, cached.status);
+            assertEquals(0, cached.body.length);
+
+            Response partial = get(server, "Range: bytes=1000-1999\r\n");
+            assertEquals(206, partial.status);
+            assertEquals("bytes 1000-1999/100000", partial.headers.get("content-range"));
+            assertArrayEquals(Arrays.copyOfRange(content, 1000, 2000), partial.body);
+
+            Response unsatisfiable = get(server, "Range: bytes=100000-\r\n");
+            assertEquals(416, unsatisfiable.status);
+            assertEquals("bytes */100000", unsatisfiable.headers.get("content-range"));
+
+            assertEquals(1, server.getNotModifiedCount());
+            assertEquals(2, server.getDownloadCount());
+        }
+    }
+
+    @Test
+    void downloadsBeyondTheLimitWaitForASlot() throws Exception {
+        // far more than the socket buffers hold, so the first download stays active until it is read
+        long size = 64L * 1024 * 1024;
+        Path file = folder.resolve("large.zip");
+        try (RandomAccessFile pack = new RandomAccessFile(file.toFile(), "rw")) {
+            pack.setLength(size);
+        }
+
+        try (VoxelPackServer server = start(1)) {
+            server.setPack(file, new byte[20]);
+            Socket first = send(server, "");
+            awaitUntil(() -> server.getActiveDownloads() == 1);
+            Socket second = send(server, "");
+
+            awaitUntil(() -> server.getActiveDownloads() == 1 && server.getWaitingDownloads() == 1);
+            assertEquals(0, server.getRejectedCount());
+
+            Response firstResponse = receive(first);
+            assertEquals(200, firstResponse.status);
+            assertEquals(size, firstResponse.body.length);
+
+            Response secondResponse = receive(second);
+            assertEquals(200, secondResponse.status);
+            assertEquals(size, secondResponse.body.length);
+            assertEquals(2, server.getDownloadCount());
+
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    void waitingDownloadsAreDroppedWhenTheClientHangsUp() throws Exception {
+        long size = 64L * 1024 * 1024;
+        Path file = folder.resolve("large.zip");
+        try (RandomAccessFile pack = new RandomAccessFile(file.toFile(), "rw")) {
+            pack.setLength(size);
+        }
+
+        try (VoxelPackServer server = start(1)) {
+            server.setPack(file, new byte[20]);
+            Socket first = send(server, "");
+            awaitUntil(() -> server.getActiveDownloads() == 1);
+            Socket second = send(server, "");
+            awaitUntil(() -> server.getWaitingDownloads() == 1);
+
+            second.close();
+            awaitUntil(() -> server.getWaitingDownloads() == 0);
+
+            assertEquals(size, receive(first).body.length);
+            assertEquals(1, server.getDownloadCount());
+            first.close();
+        }
+    }
+
+    private static @NotNull VoxelPackServer start(int maxDownloads) throws IOException {
+        return new VoxelPackServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), maxDownloads);
+    }
+
+    private static @NotNull Response get(@NotNull VoxelPackServer server, @NotNull String headers) throws IOException {
+        try (Socket socket = send(server, headers)) {
+            return receive(socket);
+        }
+    }
+
+    private static @NotNull Socket send(@NotNull VoxelPackServer server, @NotNull String headers) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout(10_000);
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET /pack.zip HTTP/1.1\r\nHost: localhost\r\n" + headers + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        return socket;
+    }
+
+    /**
+     * Reads the response until the server closes the connection.
+     */
+    private static @NotNull Response receive(@NotNull Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        byte[] data = in.readAllBytes();
+
+        int end = 0;
+        while (!(data[end] == '\r' && data[end + 1] == '\n' && data[end + 2] == '\r' && data[end + 3] == '\n')) end++;
+        String[] lines = new String(data, 0, end, StandardCharsets.ISO_8859_1).split("\r\n");
+
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            headers.put(lines[i].substring(0, colon).trim().toLowerCase(), lines[i].substring(colon + 1).trim());
+        }
+        return new Response(Integer.parseInt(lines[0].split(" ")[1]), headers, Arrays.copyOfRange(data, end + 4, data.length));
+    }
+
+    private static void awaitUntil(@NotNull BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() - deadline < 0, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private record Response(int status, @NotNull Map<String, String> headers, byte @NotNull [] body) {
+    }
+}
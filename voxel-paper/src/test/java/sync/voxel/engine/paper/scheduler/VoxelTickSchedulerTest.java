@@ -0,0 +1,80 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoxelTickSchedulerTest {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Test
+    void failingRecurringTaskStaysQueuedUntilItFailsRepeatedly() {
+        VoxelTickScheduler scheduler = new VoxelTickScheduler(VoxelTickScheduler.DEFAULT_BUDGET_NANOS);
+        AtomicInteger runs = new AtomicInteger();
+        scheduler.submit(VoxelTickScheduler.Priority.NORMAL, deadline -> {
+            // fails on every other run, so it never fails twice in a row
+            if (runs.incrementAndGet() % 2 == 1) throw new IllegalStateException("flaky");
+            return VoxelTickScheduler.Result.CONTINUE;
+        });
+
+        for (int tick = 0; tick < 20; tick++) scheduler.tick(TICK_NANOS);
+        assertEquals(20, runs.get());
+        assertEquals(1, scheduler.getPendingCount());
+
+        AtomicInteger broken = new AtomicInteger();
+        scheduler.submit(VoxelTickScheduler.Priority.NORMAL, deadline -> {
+            broken.incrementAndGet();
+            throw new NullPointerException();
+        });
+
+        for (int tick = 0; tick < 20; tick++) scheduler.tick(TICK_NANOS);
+        assertEquals(VoxelTickScheduler.MAX_FAILURES, broken.get());
+        assertEquals(1, scheduler.getPendingCount());
+    }
+
+    @Test
+    void failingOneShotTaskIsNotRunAgain() {
+        VoxelTickScheduler scheduler = new VoxelTickScheduler(VoxelTickScheduler.DEFAULT_BUDGET_NANOS);
+        AtomicInteger runs = new AtomicInteger();
+        scheduler.execute(() -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("broken");
+        });
+
+        scheduler.tick(TICK_NANOS);
+        scheduler.tick(TICK_NANOS);
+        assertEquals(1, runs.get());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    void busyPriorityDoesNotStarveLowerOnes() {
+        VoxelTickScheduler scheduler = new VoxelTickScheduler(TimeUnit.MICROSECONDS.toNanos(100));
+        AtomicInteger low = new AtomicInteger();
+        scheduler.submit(VoxelTickScheduler.Priority.HIGH, deadline -> {
+            while (System.nanoTime() - deadline < 0) Thread.onSpinWait();
+            return VoxelTickScheduler.Result.CONTINUE;
+        });
+        scheduler.submit(VoxelTickScheduler.Priority.LOW, deadline -> {
+            low.incrementAndGet();
+            return VoxelTickScheduler.Result.CONTINUE;
+        });
+
+        for (int tick = 0; tick < 5; tick++) scheduler.tick(TICK_NANOS);
+        assertEquals(5, low.get());
+        assertEquals(5, scheduler.getMetrics().getTicks());
+    }
+}
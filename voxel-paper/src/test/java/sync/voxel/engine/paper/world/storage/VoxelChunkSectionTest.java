@@ -0,0 +1,243 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.world.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoxelChunkSectionTest {
+
+    private static void set(@NotNull VoxelChunkSection section, int index, int rawId) {
+        section.set(index & 15, index >> 8, index >> 4 & 15, rawId);
+    }
+
+    private static void assertContent(int @NotNull [] expected, @NotNull VoxelChunkSection section) {
+        for (int index = 0; index < VoxelChunkSection.VOLUME; index++) {
+            assertEquals(expected[index], section.get(index & 15, index >> 8, index >> 4 & 15), "index " + index);
+        }
+
+        int[] copy = new int[VoxelChunkSection.VOLUME];
+        section.copyTo(copy);
+        assertArrayEquals(expected, copy);
+    }
+
+    @Test
+    void emptySectionStoresNothing() {
+        VoxelChunkSection section = new VoxelChunkSection();
+
+        assertTrue(section.isEmpty());
+        assertEquals(0, section.getBitsPerEntry());
+        assertEquals(0, section.getMemoryBytes());
+        assertEquals(VoxelChunkSection.NO_BLOCK, section.get(3, 7, 11));
+        assertFalse(section.set(3, 7, 11, VoxelChunkSection.NO_BLOCK));
+    }
+
+    @Test
+    void paletteGrowsWithTheNumberOfMaterials() {
+        VoxelChunkSection section = new VoxelChunkSection();
+        int[] expected = new int[VoxelChunkSection.VOLUME];
+        Arrays.fill(expected, VoxelChunkSection.NO_BLOCK);
+
+        // the palette holds the materials plus the empty value at index 0
+        for (int materials = 1; materials <= 255; materials++) {
+            int index = materials * 13 % VoxelChunkSection.VOLUME;
+            set(section, index, materials * 7);
+            expected[index] = materials * 7;
+
+            int bits = 32 - Integer.numberOfLeadingZeros(materials);
+            assertEquals(bits, section.getBitsPerEntry(), materials + " materials");
+        }
+        assertContent(expected, section);
+
+        set(section, 4000, 9999);
+        expected[4000] = 9999;
+        assertEquals(16, section.getBitsPerEntry());
+        assertEquals(VoxelChunkSection.VOLUME * 2, section.getMemoryBytes());
+        assertContent(expected, section);
+
+        // a raw id past 16 bits widens the direct storage
+        set(section, 4001, 70_000);
+        expected[4001] = 70_000;
+        assertEquals(32, section.getBitsPerEntry());
+        assertContent(expected, section);
+        assertEquals(257, section.getBlockCount());
+    }
+
+    @Test
+    void overflowingAPaletteKeepsWideRawIds() {
+        VoxelChunkSection section = new VoxelChunkSection();
+        int[] expected = new int[VoxelChunkSection.VOLUME];
+        Arrays.fill(expected, VoxelChunkSection.NO_BLOCK);
+
+        set(section, 0, 70_000);
+        expected[0] = 70_000;
+        for (int materials = 1; materials < 255; materials++) {
+            set(section, materials, materials);
+            expected[materials] = materials;
+        }
+        assertEquals(8, section.getBitsPerEntry());
+
+        // the new raw id fits in 16 bits, the one already in the palette does not
+        set(section, 255, 255);
+        expected[255] = 255;
+        assertEquals(32, section.getBitsPerEntry());
+        assertEquals(70_000, section.get(0, 0, 0));
+        assertContent(expected, section);
+    }
+
+    @Test
+    void unusedPaletteEntriesAreReusedBeforeGrowing() {
+        VoxelChunkSection section = new VoxelChunkSection();
+        for (int index = 0; index < VoxelChunkSection.VOLUME; index++) set(section, index, index % 3);
+        assertEquals(2, section.getBitsPerEntry());
+
+        // raw id 0 is no longer used, its slot goes to raw id 3
+        for (int index = 0; index < VoxelChunkSection.VOLUME; index += 3) set(section, index, 1);
+        set(section, 0, 3);
+        assertEquals(2, section.getBitsPerEntry());
+
+        BitSet lookingFor = new BitSet();
+        lookingFor.set(0);
+        assertFalse(section.mayContainAny(lookingFor));
+        lookingFor.set(3);
+        assertTrue(section.mayContainAny(lookingFor));
+
+        assertEquals(3, section.get(0, 0, 0));
+        assertEquals(1, section.get(3, 0, 0));
+        assertEquals(2, section.get(2, 0, 0));
+    }
+
+    @Test
+    void removingEveryBlockReleasesTheStorage() {
+        VoxelChunkSection section = new VoxelChunkSection();
+        for (int index = 0; index < 300; index++) set(section, index, index);
+        assertEquals(16, section.getBitsPerEntry());
+        assertTrue(section.getMemoryBytes() > 0);
+
+        for (int index = 0; index < 300; index++) set(section, index, VoxelChunkSection.NO_BLOCK);
+
+        assertTrue(section.isEmpty());
+        assertEquals(0, section.getBlockCount());
+        assertEquals(0, section.getBitsPerEntry());
+        assertEquals(0, section.getMemoryBytes());
+
+        // the reset section starts over with a small palette
+        set(section, 5, 42);
+        assertEquals(1, section.getBitsPerEntry());
+        assertEquals(42, section.get(5, 0, 0));
+    }
+
+    @Test
+    void randomWritesMatchAPlainArray() {
+        Random random = new Random(7);
+        VoxelChunkSection section = new VoxelChunkSection();
+        int[] expected = new int[VoxelChunkSection.VOLUME];
+        Arrays.fill(expected, VoxelChunkSection.NO_BLOCK);
+
+        // a small working set keeps the palette in use, with occasional bursts past it
+        for (int round = 0; round < 50_000; round++) {
+            int index = random.nextInt(VoxelChunkSection.VOLUME);
+            int rawId = random.nextInt(10) == 0 ? VoxelChunkSection.NO_BLOCK : random.nextInt(round % 10_000 < 9_000 ? 12 : 400);
+
+            boolean changed = expected[index] != rawId;
+            assertEquals(changed, section.set(index & 15, index >> 8, index >> 4 & 15, rawId));
+            expected[index] = rawId;
+        }
+
+        assertContent(expected, section);
+        assertEquals(Arrays.stream(expected).filter(rawId -> rawId != VoxelChunkSection.NO_BLOCK).count(), section.getBlockCount());
+    }
+
+    @Test
+    void onlyChangesBumpTheVersion() {
+        VoxelChunkSection section = new VoxelChunkSection();
+        assertFalse(section.isDirty());
+
+        assertTrue(section.set(1, 2, 3, 5));
+        long version = section.getVersion();
+        assertTrue(section.isDirty());
+
+        assertFalse(section.set(1, 2, 3, 5));
+        assertEquals(version, section.getVersion());
+
+        section.markSaved(version);
+        assertFalse(section.isDirty());
+
+        section.set(1, 2, 3, 6);
+        assertTrue(section.isDirty());
+        assertThrows(IllegalArgumentException.class, () -> section.set(0, 0, 0, -2));
+    }
+
+    @Test
+    void readersNeverSeeDataOfAReusedBuffer() throws Exception {
+        VoxelChunkSection read = new VoxelChunkSection();
+        VoxelChunkSection other = new VoxelChunkSection();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger foreign = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            // the other section stores raw ids from 10000 to 10299, direct storage holds them as they are
+            Future<?> reader = executor.submit(() -> {
+                int[] copy = new int[VoxelChunkSection.VOLUME];
+                while (writing.get()) {
+                    read.copyTo(copy);
+                    for (int rawId : copy) if (isForeign(rawId)) foreign.incrementAndGet();
+                    if (isForeign(read.get(7, 0, 0))) foreign.incrementAndGet();
+                }
+                return null;
+            });
+
+            // both sections grow to 16 bit direct storage and widen to 32 bit, which releases the 16 bit
+            // buffer with the data still in it. The other section takes over the buffers of the read
+            // one while the read one still holds direct storage
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            while (System.nanoTime() - end < 0) {
+                fillAndWiden(read, 0);
+                fillAndWiden(other, 10_000);
+                clear(other);
+                clear(read);
+            }
+
+            writing.set(false);
+            reader.get(10, TimeUnit.SECONDS);
+        } finally {
+            writing.set(false);
+            executor.shutdown();
+        }
+
+        assertEquals(0, foreign.get());
+    }
+
+    private static boolean isForeign(int rawId) {
+        return rawId >= 10_000 && rawId < 10_300;
+    }
+
+    private static void fillAndWiden(@NotNull VoxelChunkSection section, int firstRawId) {
+        for (int index = 0; index < 300; index++) set(section, index, firstRawId + index);
+        set(section, 300, 70_000);
+    }
+
+    private static void clear(@NotNull VoxelChunkSection section) {
+        for (int index = 0; index <= 300; index++) set(section, index, VoxelChunkSection.NO_BLOCK);
+    }
+}
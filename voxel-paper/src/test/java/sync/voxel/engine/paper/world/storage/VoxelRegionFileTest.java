@@ -0,0 +1,171 @@
+/**
+ * VOXEL-LICENSE NOTICE
+ * <br><br>
+ * This software is part of VoxelSync under the Voxel Public License. <br>
+ * Source at: <a href="https://github.com/voxelsync/voxel/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) Ley <cm.ley.cm@gmail.com> <br>
+ * Copyright (c) contributors
+ */
+package sync.voxel.engine.paper.world.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoxelRegionFileTest {
+
+    private static final int PAYLOAD = 100;
+    private static final int RECORD = VoxelRegionFile.RECORD_HEADER_SIZE + PAYLOAD;
+
+    @TempDir
+    Path directory;
+
+    private static byte @NotNull [] payload(int seed, int length) {
+        byte[] payload = new byte[length];
+        new Random(seed).nextBytes(payload);
+        return payload;
+    }
+
+    private long backups() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().contains(".corrupt-")).count();
+        }
+    }
+
+    @Test
+    void latestRecordOfASectionWinsAfterReopening() throws IOException {
+        Path path = directory.resolve("r.0.0.vxr");
+        try (VoxelRegionFile region = new VoxelRegionFile(path)) {
+            region.write(7, 0, payload(1, PAYLOAD));
+            region.write(7, 1, payload(2, PAYLOAD));
+            region.write(7, 0, payload(3, PAYLOAD));
+            region.write(7, -4, payload(4, PAYLOAD));
+            region.write(7, 1, new byte[0]);
+        }
+
+        try (VoxelRegionFile region = new VoxelRegionFile(path)) {
+            assertArrayEquals(payload(3, PAYLOAD), region.read(7, 0));
+            assertArrayEquals(payload(4, PAYLOAD), region.read(7, -4));
+            assertNull(region.read(7, 1));
+            assertNull(region.read(8, 0));
+            assertTrue(region.contains(7));
+            assertFalse(region.contains(8));
+        }
+        assertEquals(0, backups());
+    }
+
+    @Test
+    void tornAppendIsTruncatedAndBackedUp() throws IOException {
+        Path path = directory.resolve("r.0.0.vxr");
+        try (VoxelRegionFile region = new VoxelRegionFile(path)) {
+            for (int section = 0; section < 3; section++) region.write(1, section, payload(section, PAYLOAD));
+        }
+        long intact = Files.size(path);
+
+        // a crash in the middle of appending a record, the header made it but not all of the payload
+        try (VoxelRegionFile region = new VoxelRegionFile(path)) {
+            region.write(1, 3, payload(3, PAYLOAD));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(intact + RECORD / 2);
+        }
+
+        try (VoxelRegionFile region = new VoxelRegionFile(path)) {
+            for (int section = 0; section < 3; section++) assertArrayEquals(payload(section, PAYLOAD), region.read(1, section));
+            assertNull(region.read(1, 3));
+        }
+        assertEquals(intact, Files.size(path));
+        assertEquals(1, backups());
+
+        // the repaired file opens without complaint
+        try (VoxelRegionFile region = new VoxelRegionFile(path)) {
+            assertArrayEquals(payload(2, PAYLOAD), region.read(1, 2));
+        }
+        assertEquals(1, backups());
+    }
+
+    @Test
+    void corruptRecordIsSkippedAndLaterRecordsSurvive() throws IOException {
+        Path path = directory.resolve("r.0.0.vxr");
+        try (VoxelRegionFile region = new VoxelRegionFile(path)) {
+            region.write(2, 0, payload(10, PAYLOAD));
+            region.write(2, 1, payload(11, PAYLOAD));
+            region.write(2, 2, payload(12, PAYLOAD));
+            region.write(2, 0, payload(13, PAYLOAD));
+        }
+
+        // flip a payload byte of the second record, as a bad sector would
+        long corrupted = VoxelRegionFile.HEADER_SIZE + RECORD + VoxelRegionFile.RECORD_HEADER_SIZE + 5;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(corrupted);
+            int value = file.read();
+            file.seek(corrupted);
+            file.write(value ^ 0xFF);
+        }
+
+        try (VoxelRegionFile region = new VoxelRegionFile(path)) {
+            assertArrayEquals(payload(13, PAYLOAD), region.read(2, 0));
+            assertNull(region.read(2, 1));
+            assertArrayEquals(payload(12, PAYLOAD), region.read(2, 2));
+        }
+        assertEquals(1, backups());
+
+        // the corrupt bytes were compacted away together with the outdated record
+        assertEquals(VoxelRegionFile.HEADER_SIZE + 2L * RECORD, Files.size(path));
+        try (VoxelRegionFile region = new VoxelRegionFile(path)) {
+            assertArrayEquals(payload(12, PAYLOAD), region.read(2, 2));
+        }
+        assertEquals(1, backups());
+    }
+
+    @Test
+    void incompleteHeaderResetsTheFile() throws IOException {
+        Path path = directory.resolve("r.0.0.vxr");
+        Files.write(path, new byte[]{0x56, 0x58});
+
+        try (VoxelRegionFile region = new VoxelRegionFile(path)) {
+            assertNull(region.read(0, 0));
+            region.write(0, 0, payload(1, PAYLOAD));
+        }
+        try (VoxelRegionFile region = new VoxelRegionFile(path)) {
+            assertArrayEquals(payload(1, PAYLOAD), region.read(0, 0));
+        }
+    }
+
+    @Test
+    void outdatedRecordsAreCompactedOnFlush() throws IOException {
+        Path path = directory.resolve("r.0.0.vxr");
+        int large = 64 * 1024;
+
+        try (VoxelRegionFile region = new VoxelRegionFile(path)) {
+            for (int round = 0; round < 10; round++) region.write(3, 0, payload(round, large));
+            region.write(3, 1, payload(100, PAYLOAD));
+            region.flush();
+
+            assertEquals(VoxelRegionFile.HEADER_SIZE + 2L * VoxelRegionFile.RECORD_HEADER_SIZE + large + PAYLOAD, Files.size(path));
+            assertArrayEquals(payload(9, large), region.read(3, 0));
+            assertArrayEquals(payload(100, PAYLOAD), region.read(3, 1));
+
+            // appends continue after the compacted records
+            region.write(3, 2, payload(101, PAYLOAD));
+            region.write(3, 1, new byte[0]);
+        }
+
+        try (VoxelRegionFile region = new VoxelRegionFile(path)) {
+            assertArrayEquals(payload(9, large), region.read(3, 0));
+            assertNull(region.read(3, 1));
+            assertArrayEquals(payload(101, PAYLOAD), region.read(3, 2));
+            assertEquals(0, backups());
+        }
+    }
+}